@@ -14,6 +14,7 @@ import org.meveo.service.script.ScriptInterface;
 import javax.ejb.*;
 import javax.inject.Inject;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 
 /**
@@ -59,4 +60,57 @@ public class FiltringJobAsync {
         }
         return new AsyncResult<String>("OK");
     }
+
+    /**
+     * Run script on batches of filtered entities until an empty batch is received. Each batch is processed in a separate transaction. If a batch fails, its
+     * entities are processed again one entity at a time, so only the failing ones are rejected. <br>
+     * The transaction of the failed batch is rolled back, so the transactional work of the script is done once. But the script runs a second time for
+     * the entities processed before the failure: what it did outside of the transaction (messages sent, files written, work committed in other
+     * transactions or storages) is done twice. Such scripts must be idempotent, or run with a batch size of 1.
+     * 
+     * @param batches Batches of filtered entities, ended by an empty batch
+     * @param result Job execution result
+     * @param scriptInterface Script to run
+     * @param recordVariableName Name of a variable to give to an entity being processed
+     * @param lastCurrentUser Current user. In case of multitenancy, when user authentication is forced as result of a fired trigger (scheduled jobs, other timed event
+     *        expirations), current user might be lost, thus there is a need to reestablish.
+     * @return Future String
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NEVER)
+    public Future<String> launchAndForget(BlockingQueue<List<IEntity>> batches, JobExecutionResultImpl result, ScriptInterface scriptInterface, String recordVariableName,
+                                          MeveoUser lastCurrentUser) {
+
+        currentUserProvider.reestablishAuthentication(lastCurrentUser);
+
+        try {
+            List<IEntity> batch;
+            while (!(batch = batches.take()).isEmpty()) {
+                // Keep taking the batches when the job is stopped, so the filter reading is not blocked
+                if (!jobExecutionService.isJobRunningOnThis(result.getJobInstance())) {
+                    continue;
+                }
+
+                try {
+                    List<String> errors = unitFilteringJobBean.executeBatch(batch, scriptInterface, recordVariableName);
+                    for (int i = errors.size(); i < batch.size(); i++) {
+                        result.registerSucces();
+                    }
+                    errors.forEach(result::registerError);
+
+                } catch (Exception e) {
+                    for (IEntity filtredEntity : batch) {
+                        try {
+                            unitFilteringJobBean.execute(result, filtredEntity, scriptInterface, recordVariableName);
+                        } catch (Exception unitException) {
+                            result.registerError(unitException.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new AsyncResult<String>("OK");
+    }
 }
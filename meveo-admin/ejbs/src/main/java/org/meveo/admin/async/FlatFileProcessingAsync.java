@@ -3,19 +3,28 @@
  */
 package org.meveo.admin.async;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+import javax.annotation.Resource;
 import javax.ejb.AsyncResult;
 import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 
 import org.meveo.admin.exception.BusinessException;
@@ -35,10 +44,14 @@ import org.slf4j.Logger;
 
 
 /**
- * Asynchronous FlatFile processing.
+ * Asynchronous FlatFile processing. <br>
+ * In {@link FlatFileProcessingJob#CONTINUE} mode, the records are read by the calling thread and handed over, in batches, to a fixed number of workers
+ * through a bounded queue, so the reading is throttled by the processing and the memory used does not depend on the size of the file. The workers
+ * run on the managed executor of the container.
  * 
  * @author anasseh
- * @lastModifiedVersion willBeSetLater
+ * @author clement.bareth
+ * @lastModifiedVersion 6.14.0
  *
  */
 
@@ -65,6 +78,15 @@ public class FlatFileProcessingAsync {
     @ApplicationProvider
     protected Provider appProvider;
 
+    /** Runs the workers processing the records in parallel */
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ManagedExecutorService executor;
+
+    /**
+     * Marks the end of the records for the workers
+     */
+    private static final List<FlatFileRecord> END_OF_FILE = Collections.emptyList();
+
     /**
      * Read/parse file and execute script for each line.
      * 
@@ -75,91 +97,273 @@ public class FlatFileProcessingAsync {
      * @param fileName file name
      * @param originFilename originFilename var name
      * @param errorAction action to do on error : continue, stop or rollback after an error
-     * @return Future of FlatFileAsyncListResponse
+     * @param nbWorkers number of records processed in parallel, in continue mode
+     * @param batchSize number of records handed over to a worker at once. Job cancellation is checked once per batch.
+     * @param responseHandler called with the outcome of each record, as soon as it is known. Might be called concurrently.
+     * @return Future of the number of records read
      * @throws Exception Exception
      */
     @Asynchronous
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public Future<FlatFileAsyncListResponse> launchAndForget(IFileParser fileParser, JobExecutionResultImpl result, ScriptInterface script, String recordVariableName,
-            String fileName, String originFilename, String errorAction) throws Exception {
-        long cpLines = 0;
-        FlatFileAsyncListResponse flatFileAsyncListResponse = new FlatFileAsyncListResponse();
-        int parallelism = 10;
-		ForkJoinPool pool = new ForkJoinPool(parallelism);
+    public Future<Long> launchAndForget(IFileParser fileParser, JobExecutionResultImpl result, ScriptInterface script, String recordVariableName,
+            String fileName, String originFilename, String errorAction, int nbWorkers, int batchSize, Consumer<FlatFileAsyncUnitResponse> responseHandler)
+            throws Exception {
+
+        nbWorkers = Math.max(nbWorkers, 1);
+        batchSize = Math.max(batchSize, 1);
+
         final AtomicBoolean doStop = new AtomicBoolean(false);
-        final AtomicReference<BusinessException> rollBackException = new AtomicReference<BusinessException>();
-        
-        while (fileParser.hasNext() && jobExecutionService.isJobRunningOnThis(result.getJobInstance()) && !doStop.get()) {
-            RecordContext recordContext = null;
-            cpLines++;
-            FlatFileAsyncUnitResponse flatFileAsyncResponse = new FlatFileAsyncUnitResponse();
-            flatFileAsyncResponse.setLineNumber(cpLines);
-            flatFileAsyncListResponse.getResponses().add(flatFileAsyncResponse);
-			try {
-				recordContext = fileParser.getNextRecord();
-				final RecordContext recordContextFinal = recordContext;
-				flatFileAsyncResponse.setLineRecord(recordContext.getLineContent());
-				log.trace("record line content:{}", recordContext.getLineContent());
-				if (recordContext.getRecord() == null) {
-					throw new Exception(recordContext.getReason());
-				}
-				Map<String, Object> executeParams = new HashMap<String, Object>();
-				executeParams.put(recordVariableName, recordContextFinal.getRecord());
-				executeParams.put(originFilename, fileName);
-				if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
-					executeParams.put(Script.CONTEXT_CURRENT_USER, currentUser);
-					executeParams.put(Script.CONTEXT_APP_PROVIDER, appProvider);
-					script.execute(executeParams);
-					flatFileAsyncResponse.setSuccess(true);
-				} else if (FlatFileProcessingJob.STOP.equals(errorAction)) {
-					unitFlatFileProcessingJobBean.execute(script, executeParams);
-					flatFileAsyncResponse.setSuccess(true);
-				} else {
-					while (pool.hasQueuedSubmissions()) {
-						Thread.sleep(10);
-					}
-
-					pool.submit(new Runnable() {
-						@Override
-						public void run() {
-							try {
-								unitFlatFileProcessingJobBean.execute(script, executeParams);
-								flatFileAsyncResponse.setSuccess(true);
-							} catch (Throwable e) {
-								if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
-									rollBackException.set(new BusinessException(e.getMessage(), e));
-									doStop.set(true);
-								}
-								String erreur = (recordContextFinal == null || recordContextFinal.getReason() == null) ? e.getMessage() : recordContextFinal.getReason();
-								log.warn("record on error :" + erreur);
-								flatFileAsyncResponse.setSuccess(false);
-								flatFileAsyncResponse.setReason(erreur);
-								if (FlatFileProcessingJob.STOP.equals(errorAction)) {
-									doStop.set(true);
-								}
-							}
-						}
-					});
-				}
-
-			} catch (Throwable e) {
-				if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
-					throw new BusinessException(e.getMessage(), e);
-				}
-				String erreur = (recordContext == null || recordContext.getReason() == null) ? e.getMessage() : recordContext.getReason();
-				log.warn("record on error :" + erreur);
-				flatFileAsyncResponse.setSuccess(false);
-				flatFileAsyncResponse.setReason(erreur);
-				if (FlatFileProcessingJob.STOP.equals(errorAction)) {
-					doStop.set(true);
-				}
-			}
+        final AtomicReference<Throwable> handlerException = new AtomicReference<>();
+
+        // In rollback mode, the outcome of the records is only known once all of them are processed
+        final List<FlatFileAsyncUnitResponse> rollbackResponses = new ArrayList<>();
+        final boolean parallel = FlatFileProcessingJob.CONTINUE.equals(errorAction) || errorAction == null;
+
+        BlockingQueue<List<FlatFileRecord>> queue = new ArrayBlockingQueue<>(nbWorkers * 2);
+        // Counts the workers still running
+        final CountDownLatch workers = parallel ? new CountDownLatch(nbWorkers) : null;
+        if (parallel) {
+            for (int i = 0; i < nbWorkers; i++) {
+                try {
+                    executor.execute(() -> {
+                        try {
+                            List<FlatFileRecord> batch;
+                            while ((batch = queue.take()) != END_OF_FILE) {
+                                // Keep draining the queue so the reader is not blocked
+                                if (doStop.get()) {
+                                    continue;
+                                }
+                                for (FlatFileRecord record : batch) {
+                                    executeInNewTransaction(script, record, recordVariableName, fileName, originFilename);
+                                    handle(responseHandler, record.response, handlerException, doStop);
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            workers.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.error("Failed to start a worker to process file {}", fileName, e);
+                    workers.countDown();
+                }
+            }
+        }
+
+        long cpLines = 0;
+        List<FlatFileRecord> batch = new ArrayList<>(batchSize);
+        try {
+            while (fileParser.hasNext() && !doStop.get()) {
+
+                // Check for cancellation once per batch
+                if (cpLines % batchSize == 0 && !jobExecutionService.isJobRunningOnThis(result.getJobInstance())) {
+                    doStop.set(true);
+                    break;
+                }
+
+                cpLines++;
+                FlatFileRecord record = read(fileParser, cpLines);
+
+                if (record.recordContext == null || record.recordContext.getRecord() == null) {
+                    if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
+                        throw new BusinessException(record.response.getReason());
+                    }
+                    handle(responseHandler, record.response, handlerException, doStop);
+                    if (FlatFileProcessingJob.STOP.equals(errorAction)) {
+                        doStop.set(true);
+                    }
+
+                } else if (parallel) {
+                    batch.add(record);
+                    if (batch.size() == batchSize) {
+                        if (!handOver(queue, batch, workers)) {
+                            log.error("All the workers have stopped, the remaining records of file {} won't be processed", fileName);
+                            doStop.set(true);
+                            break;
+                        }
+                        batch = new ArrayList<>(batchSize);
+                    }
+
+                } else if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
+                    Map<String, Object> executeParams = getExecuteParams(record, recordVariableName, fileName, originFilename);
+                    executeParams.put(Script.CONTEXT_CURRENT_USER, currentUser);
+                    executeParams.put(Script.CONTEXT_APP_PROVIDER, appProvider);
+                    try {
+                        script.execute(executeParams);
+                    } catch (Throwable e) {
+                        throw new BusinessException(e.getMessage(), e);
+                    }
+                    record.response.setSuccess(true);
+                    rollbackResponses.add(record.response);
+
+                } else {
+                    executeInNewTransaction(script, record, recordVariableName, fileName, originFilename);
+                    handle(responseHandler, record.response, handlerException, doStop);
+                    if (!record.response.isSuccess()) {
+                        doStop.set(true);
+                    }
+                }
+            }
+
+        } finally {
+            if (workers != null) {
+                stopWorkers(queue, batch, workers, nbWorkers, fileName, doStop);
+            }
+        }
+
+        if (handlerException.get() != null) {
+            throw new BusinessException("Failed to handle the outcome of a record", handlerException.get());
+        }
+
+        rollbackResponses.forEach(responseHandler);
+
+        return new AsyncResult<Long>(cpLines);
+    }
+
+    /**
+     * Hand over a batch to the workers, waiting for room in the queue as long as a worker is running
+     *
+     * @param queue Queue of the batches to process
+     * @param batch Batch to hand over
+     * @param workers Workers still running
+     * @return false if all the workers have stopped, so the batch will never be processed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean handOver(BlockingQueue<List<FlatFileRecord>> queue, List<FlatFileRecord> batch, CountDownLatch workers) throws InterruptedException {
+        while (!queue.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (workers.getCount() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hand over the last batch and the end of the records to the workers, and wait for them to stop, as the file is closed once this method returns.
+     * If interrupted, the remaining records are skipped, but the workers are still waited for.
+     *
+     * @param queue Queue of the batches to process
+     * @param lastBatch Records read but not handed over yet
+     * @param workers Workers still running
+     * @param nbWorkers Number of workers started
+     * @param fileName Name of the file processed
+     * @param doStop Set if interrupted, to stop the processing of the remaining records
+     */
+    private void stopWorkers(BlockingQueue<List<FlatFileRecord>> queue, List<FlatFileRecord> lastBatch, CountDownLatch workers, int nbWorkers,
+            String fileName, AtomicBoolean doStop) {
+
+        List<List<FlatFileRecord>> batches = new ArrayList<>();
+        if (!lastBatch.isEmpty() && !doStop.get()) {
+            batches.add(lastBatch);
+        }
+        batches.addAll(Collections.nCopies(nbWorkers, END_OF_FILE));
+
+        boolean interrupted = Thread.interrupted();
+        try {
+            int handedOver = 0;
+            while (handedOver < batches.size() && workers.getCount() > 0) {
+                try {
+                    if (queue.offer(batches.get(handedOver), 1, TimeUnit.SECONDS)) {
+                        handedOver++;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    doStop.set(true);
+                }
+            }
+
+            boolean stopped = false;
+            while (!stopped) {
+                try {
+                    stopped = workers.await(1, TimeUnit.MINUTES);
+                    if (!stopped) {
+                        log.info("Waiting for the workers to process the remaining records of file {}", fileName);
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    doStop.set(true);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read the next record of the file
+     * 
+     * @param fileParser FlatFile parser
+     * @param lineNumber number of the record
+     * @return the record. Its response is marked as failed if it can't be parsed, and its record context has no record.
+     */
+    private FlatFileRecord read(IFileParser fileParser, long lineNumber) {
+        FlatFileRecord record = new FlatFileRecord(lineNumber);
+        try {
+            record.recordContext = fileParser.getNextRecord();
+            record.response.setLineRecord(record.recordContext.getLineContent());
+            log.trace("record line content:{}", record.recordContext.getLineContent());
+            if (record.recordContext.getRecord() == null) {
+                throw new Exception(record.recordContext.getReason());
+            }
+        } catch (Throwable e) {
+            fail(record, e);
+        }
+        return record;
+    }
+
+    /**
+     * Execute the script for a record in a new transaction, and set the outcome in the record response
+     */
+    private void executeInNewTransaction(ScriptInterface script, FlatFileRecord record, String recordVariableName, String fileName, String originFilename) {
+        try {
+            unitFlatFileProcessingJobBean.execute(script, getExecuteParams(record, recordVariableName, fileName, originFilename));
+            record.response.setSuccess(true);
+        } catch (Throwable e) {
+            fail(record, e);
+        }
+    }
+
+    private Map<String, Object> getExecuteParams(FlatFileRecord record, String recordVariableName, String fileName, String originFilename) {
+        Map<String, Object> executeParams = new HashMap<String, Object>();
+        executeParams.put(recordVariableName, record.recordContext.getRecord());
+        executeParams.put(originFilename, fileName);
+        return executeParams;
+    }
+
+    private void fail(FlatFileRecord record, Throwable e) {
+        String erreur = (record.recordContext == null || record.recordContext.getReason() == null) ? e.getMessage() : record.recordContext.getReason();
+        log.warn("record on error :" + erreur);
+        record.response.setSuccess(false);
+        record.response.setReason(erreur);
+    }
+
+    /**
+     * Pass the outcome of a record to the response handler, stopping the processing if it fails
+     */
+    private void handle(Consumer<FlatFileAsyncUnitResponse> responseHandler, FlatFileAsyncUnitResponse response, AtomicReference<Throwable> handlerException,
+            AtomicBoolean doStop) {
+        try {
+            responseHandler.accept(response);
+        } catch (Throwable e) {
+            handlerException.compareAndSet(null, e);
+            doStop.set(true);
+        }
+    }
+
+    /**
+     * A record of the file, and the outcome of its processing
+     */
+    private static class FlatFileRecord {
+
+        private final FlatFileAsyncUnitResponse response = new FlatFileAsyncUnitResponse();
+
+        private RecordContext recordContext;
+
+        private FlatFileRecord(long lineNumber) {
+            response.setLineNumber(lineNumber);
         }
-        pool.shutdown();
-        pool.awaitTermination(1, TimeUnit.HOURS);
-        
-        if (rollBackException.get() != null)
-        	throw rollBackException.get();
-        return new AsyncResult<FlatFileAsyncListResponse>(flatFileAsyncListResponse);
     }
 }
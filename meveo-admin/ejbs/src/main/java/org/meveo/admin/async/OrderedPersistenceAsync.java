@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.meveo.admin.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+
+import org.meveo.security.MeveoUser;
+import org.meveo.security.keycloak.CurrentUserProvider;
+
+/**
+ * Runs the independent parts of a persistence plan on the asynchronous EJB thread pool. <br>
+ * Each part is executed in its own request context and transaction.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ * @see org.meveo.persistence.scheduler.OrderedPersistenceService
+ */
+@Stateless
+public class OrderedPersistenceAsync {
+
+    @Inject
+    private CurrentUserProvider currentUserProvider;
+
+    /**
+     * Execute a part of a persistence plan
+     *
+     * @param task            Persistence of the part
+     * @param lastCurrentUser Current user. The authentication of the caller is not propagated to the asynchronous call, thus there is a need to
+     *                        reestablish it.
+     * @return the result of the task
+     * @throws Exception if the persistence fails
+     */
+    @Asynchronous
+    public <V> Future<V> execute(Callable<V> task, MeveoUser lastCurrentUser) throws Exception {
+
+        currentUserProvider.reestablishAuthentication(lastCurrentUser);
+
+        return new AsyncResult<>(task.call());
+    }
+}
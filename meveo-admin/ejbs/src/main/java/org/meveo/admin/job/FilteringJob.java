@@ -108,6 +108,25 @@ public class FilteringJob extends Job {
         recordVariableName.setMaxValue(256L);
         result.put("FilteringJob_recordVariableName", recordVariableName);
 
+        CustomFieldTemplate fetchSize = new CustomFieldTemplate();
+        fetchSize.setCode("FilteringJob_fetchSize");
+        fetchSize.setAppliesTo("JOB_FilteringJob");
+        fetchSize.setActive(true);
+        fetchSize.setDescription("Fetch size (streams the filtered entities when set)");
+        fetchSize.setFieldType(CustomFieldTypeEnum.LONG);
+        fetchSize.setValueRequired(false);
+        result.put("FilteringJob_fetchSize", fetchSize);
+
+        CustomFieldTemplate batchSize = new CustomFieldTemplate();
+        batchSize.setCode("FilteringJob_batchSize");
+        batchSize.setAppliesTo("JOB_FilteringJob");
+        batchSize.setActive(true);
+        batchSize.setDescription("Batch size");
+        batchSize.setFieldType(CustomFieldTypeEnum.LONG);
+        batchSize.setValueRequired(false);
+        batchSize.setDefaultValue("100");
+        result.put("FilteringJob_batchSize", batchSize);
+
         return result;
     }
 
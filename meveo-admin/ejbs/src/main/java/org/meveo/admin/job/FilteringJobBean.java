@@ -1,11 +1,15 @@
 package org.meveo.admin.job;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -16,6 +20,7 @@ import javax.persistence.EntityNotFoundException;
 
 import org.meveo.admin.async.FiltringJobAsync;
 import org.meveo.admin.async.SubListCreator;
+import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.exception.InvalidScriptException;
 import org.meveo.admin.job.logging.JobLoggingInterceptor;
 import org.meveo.interceptor.PerformanceInterceptor;
@@ -28,6 +33,7 @@ import org.meveo.security.CurrentUser;
 import org.meveo.security.MeveoUser;
 import org.meveo.service.crm.impl.CustomFieldInstanceService;
 import org.meveo.service.filter.FilterService;
+import org.meveo.service.job.JobExecutionService;
 import org.meveo.service.script.ScriptInstanceService;
 import org.meveo.service.script.ScriptInterface;
 import org.slf4j.Logger;
@@ -56,6 +62,9 @@ public class FilteringJobBean {
     @Inject
     private FiltringJobAsync filtringJobAsync;
 
+    @Inject
+    private JobExecutionService jobExecutionService;
+
     @Inject
     @CurrentUser
     protected MeveoUser currentUser;
@@ -75,12 +84,18 @@ public class FilteringJobBean {
         try {
             Long nbRuns = new Long(1);
             Long waitingMillis = new Long(0);
+            Long fetchSize = null;
+            Long batchSize = new Long(100);
             try {
                 nbRuns = (Long) customFieldInstanceService.getCFValue(jobInstance, "nbRuns");
                 waitingMillis = (Long) customFieldInstanceService.getCFValue(jobInstance, "waitingMillis");
                 if (nbRuns == -1) {
                     nbRuns = (long) Runtime.getRuntime().availableProcessors();
                 }
+                fetchSize = (Long) customFieldInstanceService.getCFValue(jobInstance, "FilteringJob_fetchSize");
+                if (customFieldInstanceService.getCFValue(jobInstance, "FilteringJob_batchSize") != null) {
+                    batchSize = (Long) customFieldInstanceService.getCFValue(jobInstance, "FilteringJob_batchSize");
+                }
             } catch (Exception e) {
                 nbRuns = new Long(1);
                 waitingMillis = new Long(0);
@@ -111,6 +126,12 @@ public class FilteringJobBean {
 
             scriptInterface.init(context);
 
+            if (fetchSize != null && fetchSize > 0) {
+                executeStreaming(result, filter, scriptInterface, recordVariableName, Math.max(nbRuns.intValue(), 1), fetchSize.intValue(),
+                    Math.max(batchSize.intValue(), 1));
+                return;
+            }
+
             List<? extends IEntity> filtredEntities = filterService.filteredListAsObjects(filter);
             int nbItemsToProcess = filtredEntities == null ? 0 : filtredEntities.size();
             result.setNbItemsToProcess(nbItemsToProcess);
@@ -157,4 +178,96 @@ public class FilteringJobBean {
             }
         }
     }
+
+    /**
+     * Read the filtered entities through a cursor and run the script on them in batches. The batches are handed over to the workers through a bounded
+     * queue, so only a few batches are held in memory at once. <br>
+     * The script can't navigate the lazy associations of the entities, see {@link FilterService#scrollFilteredEntities}. When a batch fails, its entities
+     * are processed again one at a time, see {@link FiltringJobAsync}.
+     * 
+     * @param result The result execution
+     * @param filter Filter to execute
+     * @param scriptInterface Script to run
+     * @param recordVariableName Name of a variable to give to an entity being processed
+     * @param nbWorkers Number of batches processed in parallel
+     * @param fetchSize Number of rows fetched from the database at once
+     * @param batchSize Number of entities processed in a transaction
+     * @throws BusinessException Failed to execute the filter
+     */
+    private void executeStreaming(JobExecutionResultImpl result, Filter filter, ScriptInterface scriptInterface, String recordVariableName, int nbWorkers,
+            int fetchSize, int batchSize) throws BusinessException {
+
+        BlockingQueue<List<IEntity>> batches = new ArrayBlockingQueue<>(nbWorkers * 2);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+
+        MeveoUser lastCurrentUser = currentUser.unProxy();
+        for (int i = 0; i < nbWorkers; i++) {
+            futures.add(filtringJobAsync.launchAndForget(batches, result, scriptInterface, recordVariableName, lastCurrentUser));
+        }
+
+        try {
+            long nbItems = filterService.scrollFilteredEntities(filter, fetchSize, batchSize, batch -> {
+                // Check for cancellation once per batch
+                if (!jobExecutionService.isJobRunningOnThis(result.getJobInstance())) {
+                    return false;
+                }
+                try {
+                    if (!handOver(batches, batch, futures)) {
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                result.addNbItemsToProcess(batch.size());
+                return true;
+            });
+            log.debug("NbItemsToProcess:{}, batch size:{}, nbThreads:{}.", nbItems, batchSize, nbWorkers);
+
+        } finally {
+            // Signal the end of the entities to each worker
+            try {
+                for (int i = 0; i < nbWorkers; i++) {
+                    if (!handOver(batches, Collections.emptyList(), futures)) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Wait for all async methods to finish
+        for (Future<String> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // It was cancelled from outside - no interest
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                result.registerError(cause.getMessage());
+                result.addReport(cause.getMessage());
+                log.error("Failed to execute async method", cause);
+            }
+        }
+    }
+
+    /**
+     * Hand over a batch to the workers, waiting for room in the queue as long as a worker is running
+     * 
+     * @param batches Queue of the batches to process
+     * @param batch Batch to hand over
+     * @param workers Workers taking the batches from the queue
+     * @return false if all the workers have stopped, so the batch will never be processed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean handOver(BlockingQueue<List<IEntity>> batches, List<IEntity> batch, List<Future<String>> workers) throws InterruptedException {
+        while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+            if (workers.stream().allMatch(Future::isDone)) {
+                log.error("All the workers have stopped, the remaining entities won't be processed");
+                return false;
+            }
+        }
+        return true;
+    }
 }
\ No newline at end of file
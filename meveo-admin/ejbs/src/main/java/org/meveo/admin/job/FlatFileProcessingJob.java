@@ -65,6 +65,10 @@ public class FlatFileProcessingJob extends Job {
 
     private static final String FLAT_FILE_PROCESSING_JOB_RECORD_VARIABLE_NAME = "FlatFileProcessingJob_recordVariableName";
 
+    private static final String FLAT_FILE_PROCESSING_JOB_NB_WORKERS = "FlatFileProcessingJob_nbWorkers";
+
+    private static final String FLAT_FILE_PROCESSING_JOB_BATCH_SIZE = "FlatFileProcessingJob_batchSize";
+
     /** The flat file processing job bean. */
     @Inject
     private FlatFileProcessingJobBean flatFileProcessingJobBean;
@@ -99,6 +103,8 @@ public class FlatFileProcessingJob extends Job {
             String originFilename = null;
             String formatTransfo = null;
             String errorAction = null;
+            Long nbWorkers = 10L;
+            Long batchSize = 100L;
             Map<String, Object> initContext = new HashMap<String, Object>();
             try {
                 recordVariableName = (String) this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_RECORD_VARIABLE_NAME);
@@ -125,6 +131,15 @@ public class FlatFileProcessingJob extends Job {
                     fileNameFilter = ((String) this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_FILE_NAME_FILTER));
                     fileNameFilter = fileNameFilter.replaceAll(Pattern.quote("*"), "");
                 }
+                if (this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_NB_WORKERS) != null) {
+                    nbWorkers = (Long) this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_NB_WORKERS);
+                    if (nbWorkers == -1) {
+                        nbWorkers = (long) Runtime.getRuntime().availableProcessors();
+                    }
+                }
+                if (this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_BATCH_SIZE) != null) {
+                    batchSize = (Long) this.getParamOrCFValue(jobInstance, FLAT_FILE_PROCESSING_JOB_BATCH_SIZE);
+                }
                 
                 
                 
@@ -154,9 +169,9 @@ public class FlatFileProcessingJob extends Job {
                     break;
                 }
                 if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
-                	flatFileProcessingJobBean.executeWithRollBack(result, inputDir, outputDir, archiveDir, rejectDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, initContext, originFilename, formatTransfo,errorAction);
+                	flatFileProcessingJobBean.executeWithRollBack(result, inputDir, outputDir, archiveDir, rejectDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, initContext, originFilename, formatTransfo, errorAction, nbWorkers.intValue(), batchSize.intValue());
                 } else {
-                	flatFileProcessingJobBean.executeWithoutRollBack(result, inputDir, outputDir, archiveDir, rejectDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, initContext, originFilename, formatTransfo,errorAction);                	
+                	flatFileProcessingJobBean.executeWithoutRollBack(result, inputDir, outputDir, archiveDir, rejectDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, initContext, originFilename, formatTransfo, errorAction, nbWorkers.intValue(), batchSize.intValue());                	
                 }
             }
 
@@ -325,6 +340,26 @@ public class FlatFileProcessingJob extends Job {
         errorAction.setListValues(listValuesErrorAction);
         result.put(FLAT_FILE_PROCESSING_JOB_ERROR_ACTION, errorAction);
 
+        CustomFieldTemplate nbWorkers = new CustomFieldTemplate();
+        nbWorkers.setCode(FLAT_FILE_PROCESSING_JOB_NB_WORKERS);
+        nbWorkers.setAppliesTo(JOB_FLAT_FILE_PROCESSING_JOB);
+        nbWorkers.setActive(true);
+        nbWorkers.setDefaultValue("10");
+        nbWorkers.setDescription(resourceMessages.getString("flatFile.nbWorkers"));
+        nbWorkers.setFieldType(CustomFieldTypeEnum.LONG);
+        nbWorkers.setValueRequired(false);
+        result.put(FLAT_FILE_PROCESSING_JOB_NB_WORKERS, nbWorkers);
+
+        CustomFieldTemplate batchSize = new CustomFieldTemplate();
+        batchSize.setCode(FLAT_FILE_PROCESSING_JOB_BATCH_SIZE);
+        batchSize.setAppliesTo(JOB_FLAT_FILE_PROCESSING_JOB);
+        batchSize.setActive(true);
+        batchSize.setDefaultValue("100");
+        batchSize.setDescription(resourceMessages.getString("flatFile.batchSize"));
+        batchSize.setFieldType(CustomFieldTypeEnum.LONG);
+        batchSize.setValueRequired(false);
+        result.put(FLAT_FILE_PROCESSING_JOB_BATCH_SIZE, batchSize);
+
         return result;
     }
 }
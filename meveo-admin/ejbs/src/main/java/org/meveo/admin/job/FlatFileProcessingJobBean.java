@@ -3,17 +3,20 @@ package org.meveo.admin.job;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.Future;
 
+import javax.annotation.Resource;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.interceptor.Interceptors;
 
-import org.meveo.admin.async.FlatFileAsyncListResponse;
 import org.meveo.admin.async.FlatFileAsyncUnitResponse;
 import org.meveo.admin.async.FlatFileProcessingAsync;
 import org.meveo.admin.job.logging.JobLoggingInterceptor;
@@ -24,6 +27,7 @@ import org.meveo.commons.utils.EjbUtils;
 import org.meveo.commons.utils.ExcelToCsv;
 import org.meveo.commons.utils.FileParsers;
 import org.meveo.commons.utils.FileUtils;
+import org.meveo.commons.utils.XlsxToCsvReader;
 import org.meveo.interceptor.PerformanceInterceptor;
 import org.meveo.jpa.JpaAmpNewTx;
 import org.meveo.model.jobs.JobExecutionResultImpl;
@@ -52,6 +56,10 @@ public class FlatFileProcessingJobBean {
 
     @Inject
     private FlatFileProcessingAsync flatFileProcessingAsync;
+
+    /** Parses the excel files streamed to the file parser */
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ManagedExecutorService executor;
     
     /** The Constant DATETIME_FORMAT. */
     private static final String DATETIME_FORMAT = "dd_MM_yyyy-HHmmss";
@@ -90,12 +98,14 @@ public class FlatFileProcessingJobBean {
      * @param originFilename the origin filename
      * @param formatTransfo the format transfo
      * @param errorAction action to do on error : continue, stop or rollback after an error
+     * @param nbWorkers number of records processed in parallel, in continue mode
+     * @param batchSize number of records handed over to a worker at once
      */
     @Interceptors({ JobLoggingInterceptor.class, PerformanceInterceptor.class })
     @TransactionAttribute(TransactionAttributeType.NEVER)
     public void executeWithoutRollBack(JobExecutionResultImpl result, String inputDir, String outDir, String archDir, String rejDir, File file, String mappingConf, String scriptInstanceFlowCode, String recordVariableName,
-            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction) {
-    	execute(result, inputDir, outDir, archDir, rejDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, context, originFilename, formatTransfo, errorAction);
+            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction, int nbWorkers, int batchSize) {
+    	execute(result, inputDir, outDir, archDir, rejDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, context, originFilename, formatTransfo, errorAction, nbWorkers, batchSize);
     }
     /**
      * Execute. in a new transaction, so rollback is possible
@@ -110,13 +120,15 @@ public class FlatFileProcessingJobBean {
      * @param originFilename the origin filename
      * @param formatTransfo the format transfo
      * @param errorAction action to do on error : continue, stop or rollback after an error
+     * @param nbWorkers number of records processed in parallel, in continue mode
+     * @param batchSize number of records handed over to a worker at once
      */
     @JpaAmpNewTx
     @Interceptors({ JobLoggingInterceptor.class, PerformanceInterceptor.class })
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void executeWithRollBack(JobExecutionResultImpl result, String inputDir, String outDir, String archDir, String rejDir, File file, String mappingConf, String scriptInstanceFlowCode, String recordVariableName,
-            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction) {
-    	execute(result, inputDir, outDir, archDir, rejDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, context, originFilename, formatTransfo, errorAction);
+            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction, int nbWorkers, int batchSize) {
+    	execute(result, inputDir, outDir, archDir, rejDir, file, mappingConf, scriptInstanceFlowCode, recordVariableName, context, originFilename, formatTransfo, errorAction, nbWorkers, batchSize);
     }
     
     /**
@@ -132,9 +144,11 @@ public class FlatFileProcessingJobBean {
      * @param originFilename the origin filename
      * @param formatTransfo the format transfo
      * @param errorAction action to do on error : continue, stop or rollback after an error
+     * @param nbWorkers number of records processed in parallel, in continue mode
+     * @param batchSize number of records handed over to a worker at once
      */
       protected void execute(JobExecutionResultImpl result, String inputDir, String outDir, String archDir, String rejDir, File file, String mappingConf, String scriptInstanceFlowCode, String recordVariableName,
-            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction) {
+            Map<String, Object> context, String originFilename, String formatTransfo, String errorAction, int nbWorkers, int batchSize) {
         log.debug("Running for inputDir={}, scriptInstanceFlowCode={},formatTransfo={}, errorAction={}", inputDir, scriptInstanceFlowCode, formatTransfo, errorAction);
 
         outputDir = outDir != null ? outDir : inputDir + File.separator + "output";
@@ -173,9 +187,14 @@ public class FlatFileProcessingJobBean {
             IFileParser fileParser = null;
             File currentFile = null;
             boolean isCsvFromExcel = false;
+            boolean isStreamedFromExcel = false;
+            Reader excelReader = null;
             try {
                 log.info("InputFiles job {} in progress...", file.getAbsolutePath());
-                if ("Xlsx_to_Csv".equals(formatTransfo)) {
+                if ("Xlsx_to_Csv".equals(formatTransfo) && fileName.endsWith(".xlsx")) {
+                    // Rows are streamed from the workbook to the parser, without intermediate CSV file
+                    isStreamedFromExcel = true;
+                } else if ("Xlsx_to_Csv".equals(formatTransfo)) {
                     isCsvFromExcel = true;
                     ExcelToCsv excelToCsv = new ExcelToCsv();
                     excelToCsv.convertExcelToCSV(file.getAbsolutePath(), file.getParent(), ";");
@@ -198,23 +217,20 @@ public class FlatFileProcessingJobBean {
                     throw new Exception("Check your mapping discriptor, only flatworm or beanio are allowed");
                 }
 
-                fileParser.setDataFile(currentFile);
+                if (isStreamedFromExcel) {
+                    excelReader = new XlsxToCsvReader(currentFile, ";", executor);
+                    fileParser.setDataReader(excelReader);
+                } else {
+                    fileParser.setDataFile(currentFile);
+                }
                 fileParser.setMappingDescriptor(mappingConf);
                 fileParser.setDataName(recordVariableName);
                 fileParser.parsing();
 
-                Future<FlatFileAsyncListResponse> futures = flatFileProcessingAsync.launchAndForget(fileParser, result, script, recordVariableName, fileName, originFilename,
-                    errorAction);
-                for (FlatFileAsyncUnitResponse flatFileAsyncResponse : futures.get().getResponses()) {
-                    cpLines++;
-                    if (!flatFileAsyncResponse.isSuccess()) {
-                        result.registerError("file=" + fileName + ", line=" + flatFileAsyncResponse.getLineNumber() + ": " + flatFileAsyncResponse.getReason());
-                        rejectRecord(flatFileAsyncResponse.getLineRecord(), flatFileAsyncResponse.getReason());
-                    } else {
-                        outputRecord(flatFileAsyncResponse.getLineRecord());
-                        result.registerSucces();
-                    }
-                }
+                // Output and rejected records are written as soon as they are processed
+                Future<Long> future = flatFileProcessingAsync.launchAndForget(fileParser, result, script, recordVariableName, fileName, originFilename,
+                    errorAction, nbWorkers, batchSize, flatFileAsyncResponse -> handleResponse(result, flatFileAsyncResponse));
+                cpLines = future.get();
                 if (cpLines == 0) {
                     String stateFile = "empty";
                     if (FlatFileProcessingJob.ROLLBBACK.equals(errorAction)) {
@@ -240,6 +256,13 @@ public class FlatFileProcessingJobBean {
                 } catch (Exception e) {
                     log.error("Failed to close file parser");
                 }
+                try {
+                    if (excelReader != null) {
+                        excelReader.close();
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to close workbook reader for file {}", fileName, e);
+                }
                 try {
                     if (script != null) {
                         script.finalize(context);
@@ -285,6 +308,26 @@ public class FlatFileProcessingJobBean {
 
     }
 
+    /**
+     * Register the outcome of a record and write it to the output or reject file.
+     *
+     * @param result job execution result
+     * @param flatFileAsyncResponse the outcome of the record
+     */
+    private synchronized void handleResponse(JobExecutionResultImpl result, FlatFileAsyncUnitResponse flatFileAsyncResponse) {
+        if (!flatFileAsyncResponse.isSuccess()) {
+            result.registerError("file=" + fileName + ", line=" + flatFileAsyncResponse.getLineNumber() + ": " + flatFileAsyncResponse.getReason());
+            rejectRecord(flatFileAsyncResponse.getLineRecord(), flatFileAsyncResponse.getReason());
+        } else {
+            try {
+                outputRecord(flatFileAsyncResponse.getLineRecord());
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+            result.registerSucces();
+        }
+    }
+
     /**
      * Move file.
      *
@@ -1,6 +1,8 @@
 package org.meveo.admin.job;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.ejb.Stateless;
@@ -40,4 +42,32 @@ public class UnitFilteringJobBean {
             result.registerError(ex.getMessage());
         }
     }
+
+    /**
+     * Execute the script for a batch of filtered entities in a single transaction. <br>
+     * A {@link BusinessException} of the script is reported as the error of its entity, and the next entities are processed. Any other exception
+     * rolls the whole batch back.
+     * 
+     * @param entities the filtered entities
+     * @param scriptInterface the script to execute
+     * @param recordVariableName the recordVariableName
+     * @return the errors of the entities the script failed for
+     */
+    @JpaAmpNewTx
+    @Interceptors({ JobLoggingInterceptor.class, PerformanceInterceptor.class })
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<String> executeBatch(List<?> entities, ScriptInterface scriptInterface, String recordVariableName) {
+
+        List<String> errors = new ArrayList<>();
+        for (Object obj : entities) {
+            Map<String, Object> context = new HashMap<String, Object>();
+            context.put(recordVariableName, obj);
+            try {
+                scriptInterface.execute(context);
+            } catch (BusinessException ex) {
+                errors.add(ex.getMessage());
+            }
+        }
+        return errors;
+    }
 }
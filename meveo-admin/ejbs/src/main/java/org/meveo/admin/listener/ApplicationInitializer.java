@@ -138,6 +138,11 @@ public class ApplicationInitializer {
             throw new RuntimeException(e);
         }
 
+        // Compile the scripts changed since last startup
+        if ("true".equals(paramBeanFactory.getInstance().getProperty("scripts.compileAll", "true"))) {
+            scriptInstanceService.compileAll();
+        }
+
         try {
 
             if (createESIndex) {
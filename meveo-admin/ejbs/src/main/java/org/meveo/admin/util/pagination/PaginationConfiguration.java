@@ -71,6 +71,22 @@ public class PaginationConfiguration implements Serializable {
      * Fields that belongs to the super type
      */
     private Collection<String> superTypeFields;
+
+    /**
+     * Whether to paginate by seeking after the last retrieved record instead of skipping {@link #firstRow} records.
+     * The records are then ordered by the sort field, if any, and by uuid.
+     */
+    private boolean keyset;
+
+    /**
+     * Value of the sort field of the last retrieved record, used for keyset pagination
+     */
+    private Object seekSortValue;
+
+    /**
+     * UUID of the last retrieved record, used for keyset pagination
+     */
+    private String seekUuid;
     
     /**
      *
@@ -164,6 +180,11 @@ public class PaginationConfiguration implements Serializable {
         this.ordering = paginationConfiguration.ordering;
         this.randomize = paginationConfiguration.randomize;
         this.sortField = paginationConfiguration.sortField;
+        this.superType = paginationConfiguration.superType;
+        this.superTypeFields = paginationConfiguration.superTypeFields;
+        this.keyset = paginationConfiguration.keyset;
+        this.seekSortValue = paginationConfiguration.seekSortValue;
+        this.seekUuid = paginationConfiguration.seekUuid;
     }
 
 
@@ -307,5 +328,65 @@ public class PaginationConfiguration implements Serializable {
 	public void setSuperTypeFields(Collection<String> superTypeFields) {
 		this.superTypeFields = superTypeFields;
 	}
+
+	/**
+	 * @return the {@link #keyset}
+	 */
+	public boolean isKeyset() {
+		return keyset;
+	}
+
+	/**
+	 * @param keyset the keyset to set
+	 */
+	public void setKeyset(boolean keyset) {
+		this.keyset = keyset;
+	}
+
+	/**
+	 * @return the {@link #seekSortValue}
+	 */
+	public Object getSeekSortValue() {
+		return seekSortValue;
+	}
+
+	/**
+	 * @param seekSortValue the seekSortValue to set
+	 */
+	public void setSeekSortValue(Object seekSortValue) {
+		this.seekSortValue = seekSortValue;
+	}
+
+	/**
+	 * @return the {@link #seekUuid}
+	 */
+	public String getSeekUuid() {
+		return seekUuid;
+	}
+
+	/**
+	 * @param seekUuid the seekUuid to set
+	 */
+	public void setSeekUuid(String seekUuid) {
+		this.seekUuid = seekUuid;
+	}
+
+	/**
+	 * @return whether the records should be retrieved after a given record
+	 */
+	public boolean hasSeek() {
+		return keyset && seekUuid != null;
+	}
+
+	/**
+	 * Position the keyset pagination after a given record
+	 *
+	 * @param lastRecord last retrieved record, with its values indexed by column name
+	 */
+	public void seekAfter(Map<String, Object> lastRecord) {
+		this.keyset = true;
+		this.seekUuid = (String) lastRecord.get("uuid");
+		this.seekSortValue = isSorted() ? lastRecord.get(sortField) : null;
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache whose missing values are loaded only once, even when they are requested concurrently. <br>
+ * Lookups of cached values never block. Concurrent requests of the same missing key wait for a single load, while loads of different keys run in parallel.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class LoadOnceCache<K, V> {
+
+	/**
+	 * Loads a missing value
+	 *
+	 * @param <V> Type of the value
+	 * @param <E> Type of the exception thrown when the value can't be loaded
+	 */
+	@FunctionalInterface
+	public interface Loader<V, E extends Exception> {
+		V load() throws E;
+	}
+
+	private final Map<K, V> values;
+
+	private final Map<K, CompletableFuture<V>> pendingLoads = new ConcurrentHashMap<>();
+
+	/**
+	 * @param values Cached values. Must support concurrent accesses.
+	 */
+	public LoadOnceCache(Map<K, V> values) {
+		this.values = values;
+	}
+
+	/**
+	 * Retrieve a value, loading it if it is not cached yet
+	 *
+	 * @param <E>    Type of the exception thrown by the loader
+	 * @param key    Key of the value
+	 * @param loader Function used to load the value if it is missing. It may store the value itself, otherwise the loaded value is cached once loaded.
+	 * @return the cached or loaded value
+	 * @throws E if the value can't be loaded. Requests waiting for the same load receive the same exception.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Exception> V get(K key, Loader<V, E> loader) throws E {
+		V value = values.get(key);
+		if (value != null) {
+			return value;
+		}
+
+		CompletableFuture<V> load = new CompletableFuture<>();
+		CompletableFuture<V> pendingLoad = pendingLoads.putIfAbsent(key, load);
+		if (pendingLoad != null) {
+			return await(pendingLoad);
+		}
+
+		try {
+			// The value may have been stored between the lookup and the registration of the load
+			value = values.get(key);
+			if (value == null) {
+				value = loader.load();
+				if (value != null) {
+					values.putIfAbsent(key, value);
+				}
+			}
+
+			load.complete(value);
+			return value;
+
+		} catch (RuntimeException | Error e) {
+			load.completeExceptionally(e);
+			throw e;
+
+		} catch (Exception e) {
+			load.completeExceptionally(e);
+			throw (E) e;
+
+		} finally {
+			pendingLoads.remove(key, load);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <E extends Exception> V await(CompletableFuture<V> pendingLoad) throws E {
+		try {
+			return pendingLoad.join();
+
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (E) cause;
+		}
+	}
+
+}
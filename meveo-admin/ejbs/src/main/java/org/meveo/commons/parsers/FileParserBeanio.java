@@ -2,6 +2,7 @@ package org.meveo.commons.parsers;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 
 import org.beanio.BeanReader;
@@ -13,6 +14,7 @@ public class FileParserBeanio implements IFileParser {
 	
     private StreamFactory factory = null;	    
     private File dataFile =null;    
+    private Reader dataReader = null;
     private BeanReader beanReader = null;     
     private String mappingDescriptor = null;    
     private String streamName = null;
@@ -29,6 +31,11 @@ public class FileParserBeanio implements IFileParser {
 		this.dataFile = file;
 	}
 
+	@Override
+	public void setDataReader(Reader reader) {
+		this.dataReader = reader;
+	}
+
 	@Override
 	public void setMappingDescriptor(String mappingDescriptor){
 		this.mappingDescriptor = mappingDescriptor;
@@ -42,7 +49,7 @@ public class FileParserBeanio implements IFileParser {
 	@Override
 	public void parsing() throws Exception {
 		factory.load( new ByteArrayInputStream(mappingDescriptor.getBytes(StandardCharsets.UTF_8)));
-		beanReader = factory.createReader(streamName, dataFile);		
+		beanReader = dataReader != null ? factory.createReader(streamName, dataReader) : factory.createReader(streamName, dataFile);		
 	}
 	
 	@Override
@@ -5,6 +5,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 
 import com.blackbear.flatworm.ConfigurationReader;
@@ -16,6 +17,7 @@ public class FileParserFlatworm implements IFileParser {
 	private FileFormat fileFormat = null;
     private ConfigurationReader parser = null;	    
     private File dataFile =null;    
+    private Reader dataReader = null;
     private MatchedRecord record = null;
     private String mappingDescriptor = null;    
     private String recordName = null;
@@ -33,6 +35,11 @@ public class FileParserFlatworm implements IFileParser {
 		this.dataFile = file;
 	}
 
+	@Override
+	public void setDataReader(Reader reader) {
+		this.dataReader = reader;
+	}
+
 	@Override
 	public void setMappingDescriptor(String mappingDescriptor){
 		this.mappingDescriptor = mappingDescriptor;
@@ -46,7 +53,7 @@ public class FileParserFlatworm implements IFileParser {
 	@Override
 	public void parsing() throws Exception {
 		fileFormat = parser.loadConfigurationFile( new ByteArrayInputStream(mappingDescriptor.getBytes(StandardCharsets.UTF_8)));
-		bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile)));		
+		bufferedReader = new BufferedReader(dataReader != null ? dataReader : new InputStreamReader(new FileInputStream(dataFile)));		
 	}
 	
 	@Override
@@ -1,6 +1,7 @@
 package org.meveo.commons.parsers;
 
 import java.io.File;
+import java.io.Reader;
 
 /**
  * 
@@ -10,6 +11,11 @@ import java.io.File;
 public interface IFileParser {
 
 	public void setDataFile(File file);
+	/**
+	 * Read the records from a reader instead of the data file
+	 * @param reader the reader, closed with the parser
+	 */
+	public void setDataReader(Reader reader);
 	public void setMappingDescriptor(String mappingDescriptor);
 	public void setDataName(String dataName);
 	public void parsing()throws  Exception;
@@ -346,12 +346,6 @@ public class ExcelToCsv {
      // for both CSV files will be identical and one CSV file will,
      // therefore, over-write the other.
      for(File excelFile : filesList) {
-         // Open the workbook
-         this.openWorkbook(excelFile);
-
-         // Convert it's contents into a CSV file
-         this.convertToCSV();
-
          // Build the name of the csv folder from that of the Excel workbook.
          // Simply replace the .xls or .xlsx file extension with .csv
          destinationFilename = excelFile.getName();
@@ -359,6 +353,24 @@ public class ExcelToCsv {
                  0, destinationFilename.lastIndexOf(".")) +
                  ExcelToCsv.CSV_FILE_EXTENSION;
 
+         // SpreadsheetML workbooks are streamed row by row into the CSV
+         // file, without loading the workbook in memory.
+         if(excelFile.getName().endsWith(".xlsx")) {
+             log.debug("Streaming workbook [" + excelFile.getName() + "]");
+             try(BufferedWriter bw = new BufferedWriter(new FileWriter(
+                     new File(destination, destinationFilename)))) {
+                 XlsxToCsvReader.convert(excelFile, bw, separator,
+                         formattingConvention);
+             }
+             continue;
+         }
+
+         // Open the workbook
+         this.openWorkbook(excelFile);
+
+         // Convert it's contents into a CSV file
+         this.convertToCSV();
+
          // Save the CSV file away using the newly constricted file name
          // and to the specified directory.
          this.saveCSVFile(new File(destination, destinationFilename));
@@ -484,8 +496,9 @@ public class ExcelToCsv {
                  if(line.size() > j) {
                      csvLineElement = line.get(j);
                      if(csvLineElement != null) {
-                         buffer.append(this.escapeEmbeddedCharacters(
-                                 csvLineElement));
+                         buffer.append(ExcelToCsv.escapeEmbeddedCharacters(
+                                 csvLineElement, this.separator,
+                                 this.formattingConvention));
                      }
                  }
                  if(j < (this.maxRowWidth - 1)) {
@@ -595,16 +608,20 @@ public class ExcelToCsv {
   *
   * @param field An instance of the String class encapsulating the formatted
   *        contents of a cell on an Excel worksheet.
+  * @param separator The field separator.
+  * @param formattingConvention The formatting convention to obey, either
+  *        EXCEL_STYLE_ESCAPING or UNIX_STYLE_ESCAPING.
   * @return A String that encapsulates the formatted contents of that
   *         Excel worksheet cell but with any embedded separator, EOL or
   *         speech mark characters correctly escaped.
   */
- private String escapeEmbeddedCharacters(String field) {
+ static String escapeEmbeddedCharacters(String field, String separator,
+                                         int formattingConvention) {
      StringBuffer buffer = null;
 
      // If the fields contents should be formatted to confrom with Excel's
      // convention....
-     if(this.formattingConvention == ExcelToCsv.EXCEL_STYLE_ESCAPING) {
+     if(formattingConvention == ExcelToCsv.EXCEL_STYLE_ESCAPING) {
 
          // Firstly, check if there are any speech marks (") in the field;
          // each occurrence must be escaped with another set of spech marks
@@ -621,7 +638,7 @@ public class ExcelToCsv {
              // characters, then escape the whole field by surrounding it
              // with speech marks.
              buffer = new StringBuffer(field);
-             if((buffer.indexOf(this.separator)) > -1 ||
+             if((buffer.indexOf(separator)) > -1 ||
                       (buffer.indexOf("\n")) > -1) {
                  buffer.insert(0, "\"");
                  buffer.append("\"");
@@ -633,8 +650,8 @@ public class ExcelToCsv {
      // where any occurrence of the field separator or EOL character will
      // be escaped by preceding it with a backslash.
      else {
-         if(field.contains(this.separator)) {
-             field = field.replaceAll(this.separator, ("\\\\" + this.separator));
+         if(field.contains(separator)) {
+             field = field.replaceAll(separator, ("\\\\" + separator));
          }
          if(field.contains("\n")) {
              field = field.replaceAll("\n", "\\\\\n");
@@ -752,6 +752,49 @@ public class QueryBuilder {
         return this;
     }
 
+    /**
+     * Keyset pagination : restrict the query to the records that come after a given record and order the records by the sort column then by the id column. <br>
+     * Should be called once all the criteria have been added.
+     *
+     * @param sortColumn sort column, can be null or equal to the id column to only order by id
+     * @param ascending true/false
+     * @param idColumn unique column used to order records having the same sort value
+     * @param lastSortValue value of the sort column for the last retrieved record
+     * @param lastId value of the id column for the last retrieved record. If null, no restriction is applied.
+     * @return instance of QueryBuilder
+     */
+    public QueryBuilder addKeysetCriterion(String sortColumn, boolean ascending, String idColumn, Object lastSortValue, Object lastId) {
+        String comparator = ascending ? " > " : " < ";
+        boolean sortOnId = sortColumn == null || sortColumn.equals(idColumn);
+
+        if (lastId != null) {
+            String idParam = convertFieldToParam(idColumn) + "_seek";
+            if (sortOnId) {
+                addSqlCriterion(idColumn + comparator + ":" + idParam, idParam, lastId);
+
+            } else if (lastSortValue == null) {
+                // Null values are sorted last in ascending order and first in descending order
+                String sql = ascending ? "(" + sortColumn + " IS NULL AND " + idColumn + comparator + ":" + idParam + ")"
+                        : "(" + sortColumn + " IS NOT NULL OR " + idColumn + comparator + ":" + idParam + ")";
+                addSqlCriterion(sql, idParam, lastId);
+
+            } else {
+                String sortParam = convertFieldToParam(sortColumn) + "_seek";
+                String sql = "(" + sortColumn + comparator + ":" + sortParam + " OR (" + sortColumn + " = :" + sortParam + " AND " + idColumn + comparator + ":" + idParam + ")"
+                        + (ascending ? " OR " + sortColumn + " IS NULL" : "") + ")";
+                addSqlCriterionMultiple(sql, sortParam, lastSortValue, idParam, lastId);
+            }
+        }
+
+        if (sortOnId) {
+            addOrderUniqueCriterion(idColumn, ascending);
+        } else {
+            addOrderDoubleCriterion(sortColumn, ascending, idColumn, ascending);
+        }
+
+        return this;
+    }
+
     /**
      * @return instance QueryBuilder.
      */
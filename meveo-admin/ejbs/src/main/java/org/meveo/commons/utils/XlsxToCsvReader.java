@@ -0,0 +1,239 @@
+package org.meveo.commons.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the first sheet of an XLSX workbook as CSV, in the same format as {@link ExcelToCsv}. <br>
+ * The sheet is parsed with the POI event model, so rows are available as soon as they are read and the workbook is never loaded in memory. Only the
+ * shared strings table of the workbook is kept in memory. <br>
+ * The sheet is parsed by a task of the given executor, that writes the CSV lines in a pipe read by this reader.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class XlsxToCsvReader extends Reader {
+
+    private static final Logger log = LoggerFactory.getLogger(XlsxToCsvReader.class);
+
+    /** Number of characters buffered between the parsing task and the reader */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final PipedReader pipe;
+
+    private final Future<?> parsing;
+
+    private volatile Exception parsingException;
+
+    private boolean closed;
+
+    /**
+     * Start reading the workbook
+     *
+     * @param file the XLSX workbook
+     * @param separator the field separator
+     * @param executor executor running the parsing of the sheet
+     * @throws IOException if the pipe can't be created
+     */
+    public XlsxToCsvReader(File file, String separator, ExecutorService executor) throws IOException {
+        this.pipe = new PipedReader(PIPE_SIZE);
+        PipedWriter writer = new PipedWriter(pipe);
+
+        this.parsing = executor.submit(() -> {
+            try {
+                convert(file, writer, separator, ExcelToCsv.EXCEL_STYLE_ESCAPING);
+            } catch (Exception e) {
+                // The pipe is closed when the reader is closed before the end of the sheet
+                if (!isClosed()) {
+                    log.error("Failed to read workbook {}", file.getName(), e);
+                    parsingException = e;
+                }
+            } finally {
+                // Closed once the exception is set, so the reader never reaches the end of the pipe without seeing it
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close pipe of workbook {}", file.getName(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Convert the first sheet of a workbook to CSV
+     *
+     * @param file the XLSX workbook
+     * @param out where to write the CSV lines
+     * @param separator the field separator
+     * @param formattingConvention {@link ExcelToCsv#EXCEL_STYLE_ESCAPING} or {@link ExcelToCsv#UNIX_STYLE_ESCAPING}
+     * @throws IOException if the workbook can't be read or the CSV can't be written
+     */
+    public static void convert(File file, Writer out, String separator, int formattingConvention) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = xssfReader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            SheetToCsv sheetToCsv = new SheetToCsv(out, separator, formattingConvention);
+            try (InputStream sheet = sheets.next()) {
+                log.debug("Converting sheet {} of workbook {} to CSV format.", sheets.getSheetName(), file.getName());
+
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, sheetToCsv, new DataFormatter(true), false));
+                parser.parse(new InputSource(sheet));
+            }
+            sheetToCsv.flush();
+
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to convert workbook " + file.getName() + " to CSV", e);
+        } finally {
+            // Package is opened read only, so there is nothing to save
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int read = pipe.read(cbuf, off, len);
+        if (read == -1 && parsingException != null) {
+            throw new IOException(parsingException);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+        }
+        pipe.close();
+        parsing.cancel(true);
+    }
+
+    private boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    /**
+     * Writes each row of the sheet as a CSV line. <br>
+     * As the lines are written as soon as they are read, each line is padded to the widest row read so far, instead of the widest row of the sheet
+     * as {@link ExcelToCsv} does. The dimension declared by the sheet can't be used instead, as POI declares one more column than the sheet has.
+     */
+    private static class SheetToCsv implements SheetContentsHandler {
+
+        private final Writer out;
+
+        private final String separator;
+
+        private final int formattingConvention;
+
+        private final List<String> fields = new ArrayList<>();
+
+        /** Number of fields of a line, the width of the widest row read so far */
+        private int width;
+
+        private int lastRowNum = -1;
+
+        private boolean firstLine = true;
+
+        private SheetToCsv(Writer out, String separator, int formattingConvention) {
+            this.out = out;
+            this.separator = separator;
+            this.formattingConvention = formattingConvention;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            // Missing rows are represented by empty lines
+            for (int i = lastRowNum + 1; i < rowNum; i++) {
+                writeLine();
+            }
+            lastRowNum = rowNum;
+            fields.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            width = Math.max(width, fields.size());
+            writeLine();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : fields.size();
+            while (fields.size() < column) {
+                fields.add(null);
+            }
+            fields.add(formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+
+        private void writeLine() {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < width; i++) {
+                if (i < fields.size() && fields.get(i) != null) {
+                    line.append(ExcelToCsv.escapeEmbeddedCharacters(fields.get(i), separator, formattingConvention));
+                }
+                if (i < width - 1) {
+                    line.append(separator);
+                }
+            }
+            fields.clear();
+
+            try {
+                if (!firstLine) {
+                    out.write(System.lineSeparator());
+                }
+                firstLine = false;
+                out.write(line.toString().trim());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.persistence;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.meveo.admin.util.pagination.PaginationConfiguration;
+import org.meveo.api.exception.EntityDoesNotExistsException;
+
+/**
+ * Iterates over the records matching a pagination configuration by loading them page by page, so that only one page is held in memory at a time. <br>
+ * The first row and number of rows of the initial pagination configuration, if any, delimit the iterated records.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class CrossStorageCursor implements Iterator<Map<String, Object>> {
+
+	/**
+	 * Loads one page of records
+	 */
+	@FunctionalInterface
+	public interface PageLoader {
+		List<Map<String, Object>> load(PaginationConfiguration page) throws EntityDoesNotExistsException;
+	}
+
+	private final PageLoader pageLoader;
+
+	private final PaginationConfiguration page;
+
+	private final int fetchSize;
+
+	private final boolean paginated;
+
+	private final boolean keyset;
+
+	private Integer remainingRows;
+
+	private Iterator<Map<String, Object>> currentPage = Collections.emptyIterator();
+
+	private boolean lastPageLoaded;
+
+	/**
+	 * @param pageLoader              function used to load a page
+	 * @param paginationConfiguration filters and bounds of the records to iterate
+	 * @param fetchSize               number of records to load per page
+	 * @param paginated               whether the records can be loaded page by page. If false, they are all loaded with a single call.
+	 */
+	public CrossStorageCursor(PageLoader pageLoader, PaginationConfiguration paginationConfiguration, int fetchSize, boolean paginated) {
+		this(pageLoader, paginationConfiguration, fetchSize, paginated, false);
+	}
+
+	/**
+	 * @param pageLoader              function used to load a page
+	 * @param paginationConfiguration filters and bounds of the records to iterate
+	 * @param fetchSize               number of records to load per page
+	 * @param paginated               whether the records can be loaded page by page. If false, they are all loaded with a single call.
+	 * @param keyset                  whether the next pages should be positioned after the last loaded record instead of using an offset
+	 */
+	public CrossStorageCursor(PageLoader pageLoader, PaginationConfiguration paginationConfiguration, int fetchSize, boolean paginated, boolean keyset) {
+		this.pageLoader = pageLoader;
+		this.page = new PaginationConfiguration(paginationConfiguration);
+		this.fetchSize = fetchSize;
+		this.paginated = paginated;
+		this.keyset = paginated && keyset;
+		this.remainingRows = page.getNumberOfRows();
+		this.page.setKeyset(this.keyset);
+
+		if (page.getFirstRow() == null) {
+			page.setFirstRow(0);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!currentPage.hasNext() && !lastPageLoaded) {
+			loadNextPage();
+		}
+
+		return currentPage.hasNext();
+	}
+
+	@Override
+	public Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return currentPage.next();
+	}
+
+	private void loadNextPage() {
+		if (!paginated) {
+			lastPageLoaded = true;
+			currentPage = load().iterator();
+			return;
+		}
+
+		int pageSize = remainingRows == null ? fetchSize : Math.min(fetchSize, remainingRows);
+		if (pageSize <= 0) {
+			lastPageLoaded = true;
+			return;
+		}
+
+		page.setNumberOfRows(pageSize);
+		List<Map<String, Object>> records = load();
+
+		page.setFirstRow(page.getFirstRow() + records.size());
+		if (keyset && !records.isEmpty()) {
+			page.seekAfter(records.get(records.size() - 1));
+		}
+		if (remainingRows != null) {
+			remainingRows -= records.size();
+		}
+
+		lastPageLoaded = records.size() < pageSize;
+		currentPage = records.iterator();
+	}
+
+	private List<Map<String, Object>> load() {
+		try {
+			return pageLoader.load(page);
+		} catch (EntityDoesNotExistsException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -18,11 +18,15 @@ package org.meveo.persistence;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -66,6 +70,7 @@ import org.meveo.persistence.neo4j.base.Neo4jDao;
 import org.meveo.persistence.neo4j.service.Neo4jService;
 import org.meveo.persistence.scheduler.EntityRef;
 import org.meveo.security.PasswordUtils;
+import org.meveo.service.base.NativePersistenceService;
 import org.meveo.service.crm.impl.CustomFieldInstanceService;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
 import org.meveo.service.custom.CustomEntityInstanceService;
@@ -76,6 +81,8 @@ import org.meveo.service.storage.FileSystemService;
 import org.neo4j.driver.v1.exceptions.NoSuchRecordException;
 import org.slf4j.Logger;
 
+import com.google.common.collect.Lists;
+
 /**
  * @author Edward P. Legaspi | czetsuya@gmail.com
  * @author clement.bareth
@@ -86,6 +93,11 @@ import org.slf4j.Logger;
 // @TransactionManagement(TransactionManagementType.BEAN)
 public class CrossStorageService implements CustomPersistenceService {
 
+	/**
+	 * Maximum number of records whose missing data are fetched with a single query
+	 */
+	private static final int HYDRATION_BATCH_SIZE = 500;
+
 //	@Resource
 //	private UserTransaction transaction;
 	
@@ -312,6 +324,143 @@ public class CrossStorageService implements CustomPersistenceService {
 		return find(repository, cet, uuid, actualFetchField, false);
 	}
 
+	/**
+	 * Completes the data of several records spread across multiple storage. <br>
+	 * The missing values are fetched by batches of {@value #HYDRATION_BATCH_SIZE} records, using one query per storage and per batch.
+	 * 
+	 * @param valuesList   the records to complete
+	 * @param repository   the repository to get data from
+	 * @param cet          data type
+	 * @param selectFields the field to fetch
+	 * @throws EntityDoesNotExistsException if a referenced entity can't be found
+	 */
+	public void getMissingData(List<Map<String, Object>> valuesList, Repository repository, CustomEntityTemplate cet, Collection<String> selectFields) throws EntityDoesNotExistsException {
+		getMissingData(valuesList, repository, cet, selectFields, uuidsOf(valuesList));
+	}
+
+	/**
+	 * @param visited uuids of the records already fetched, whose references are not fetched again
+	 * @return the uuids of the records that were not found in any storage
+	 */
+	private Set<String> getMissingData(List<Map<String, Object>> valuesList, Repository repository, CustomEntityTemplate cet, Collection<String> selectFields, Set<String> visited) throws EntityDoesNotExistsException {
+		// Index the records by uuid along with the fields they miss
+		Map<String, Map<String, Object>> recordsById = new LinkedHashMap<>();
+		Map<String, List<String>> missingFieldsById = new HashMap<>();
+		Set<String> missingFields = new HashSet<>();
+
+		for (Map<String, Object> data : valuesList) {
+			String uuid = RecordsByUuid.getUuid(data);
+			List<String> actualFetchField = new ArrayList<>(selectFields);
+			actualFetchField.removeAll(data.keySet());
+
+			// Every field has been already retrieved
+			if (uuid == null || actualFetchField.isEmpty()) {
+				continue;
+			}
+
+			recordsById.put(uuid, data);
+			missingFieldsById.put(uuid, actualFetchField);
+			missingFields.addAll(actualFetchField);
+		}
+
+		if (recordsById.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		List<String> fieldsToFetch = new ArrayList<>(missingFields);
+		Map<String, Map<String, Object>> missingData = new HashMap<>();
+		Set<String> notFound = new HashSet<>(recordsById.keySet());
+		recordsById.keySet().forEach(uuid -> missingData.put(uuid, new HashMap<>()));
+
+		for (List<String> uuids : Lists.partition(new ArrayList<>(recordsById.keySet()), HYDRATION_BATCH_SIZE)) {
+			boolean queried = false;
+
+			if (cet.getAvailableStorages().contains(DBStorageType.NEO4J) && repository.getNeo4jConfiguration() != null) {
+				List<String> neo4jFields = filterFields(fieldsToFetch, cet, DBStorageType.NEO4J);
+				if (!neo4jFields.isEmpty()) {
+					queried = true;
+					neo4jDao.findNodesByIds(repository.getNeo4jConfiguration().getCode(), cet.getCode(), uuids, neo4jFields)
+						.forEach((uuid, nodeValues) -> {
+							missingData.get(uuid).putAll(nodeValues);
+							notFound.remove(uuid);
+						});
+				}
+			}
+
+			if (!cet.getAvailableStorages().contains(DBStorageType.SQL)) {
+				// Without any query, the existence of the records is unknown
+				if (!queried) {
+					notFound.removeAll(uuids);
+				}
+				continue;
+			}
+
+			List<String> sqlFields = filterFields(fieldsToFetch, cet, DBStorageType.SQL);
+
+			try {
+				transaction.beginTransaction(repository);
+
+				if (cet.getSqlStorageConfiguration().isStoreAsTable()) {
+					customTableService.findByIds(repository.getSqlConfigurationCode(), cet, uuids, sqlFields)
+						.forEach((uuid, customTableValue) -> {
+							replaceKeys(cet, sqlFields, customTableValue);
+							// Values already fetched from Neo4J take precedence
+							customTableValue.forEach(missingData.get(uuid)::putIfAbsent);
+							notFound.remove(uuid);
+						});
+				} else {
+					for (CustomEntityInstance cei : customEntityInstanceService.findByUuids(cet.getCode(), uuids)) {
+						Map<String, Object> values = missingData.get(cei.getUuid());
+						notFound.remove(cei.getUuid());
+						values.put("code", cei.getCode());
+						values.put("description", cei.getDescription());
+						for (String field : sqlFields) {
+							if (cei.getCfValues() != null && cei.getCfValues().getCfValue(field) != null) {
+								values.putIfAbsent(field, cei.getCfValues().getCfValue(field).getValue());
+							}
+						}
+					}
+				}
+
+				transaction.commitTransaction(repository);
+			} catch (Exception e) {
+				transaction.rollbackTransaction(e);
+				log.error("Can't retrieve data stored in SQL", e);
+				throw new RuntimeException(e);
+			}
+		}
+
+		Collection<CustomFieldTemplate> cfts = cache.getCustomFieldTemplates(cet.getAppliesTo()).values();
+
+		for (Map.Entry<String, Map<String, Object>> record : recordsById.entrySet()) {
+			// Only keep the values the record was missing
+			List<String> recordMissingFields = missingFieldsById.get(record.getKey());
+			Map<String, Object> values = missingData.get(record.getKey());
+			values.keySet().removeIf(key -> !recordMissingFields.contains(key) && !key.equals("code") && !key.equals("description"));
+			values.values().removeIf(Objects::isNull);
+		}
+
+		// Fetch entity references of the whole page at once
+		fetchEntityReferences(repository, cet, new ArrayList<>(missingData.values()), visited);
+
+		for (Map.Entry<String, Map<String, Object>> record : recordsById.entrySet()) {
+			record.getValue().putAll(deserializeData(missingData.get(record.getKey()), cfts));
+		}
+
+		return notFound;
+	}
+
+	private static Set<String> uuidsOf(List<Map<String, Object>> valuesList) {
+		Set<String> uuids = new HashSet<>();
+		for (Map<String, Object> values : valuesList) {
+			String uuid = RecordsByUuid.getUuid(values);
+			if (uuid != null) {
+				uuids.add(uuid);
+			}
+		}
+		return uuids;
+	}
+
 	/**
 	 * Retrieves entity instances
 	 *
@@ -348,8 +497,7 @@ public class CrossStorageService implements CustomPersistenceService {
 		if(filters != null) {
 			filters.keySet()
 				.forEach(key -> {
-					String[] fieldInfo = key.split(" ");
-					String fieldName = fieldInfo.length == 1 ? fieldInfo[0] : fieldInfo[1];
+					String fieldName = getFilteredField(key);
 					if(fields.get(fieldName) == null && !"uuid".equals(fieldName)) {
 						throw new IllegalArgumentException("Filter " + key + " does not match fields of " + cet.getCode());
 					}
@@ -388,7 +536,29 @@ public class CrossStorageService implements CustomPersistenceService {
 			}
 		}
 
-		if (cet.getAvailableStorages() != null && cet.getAvailableStorages().contains(DBStorageType.NEO4J)) {
+		// Check if filters contains a field not stored in Neo4J
+		var dontFilterOnNeo4J = filters != null && filters.keySet().stream()
+				.map(CrossStorageService::getFilteredField)
+				.anyMatch(f -> !"uuid".equals(f) && !fields.get(f).getStorages().contains(DBStorageType.NEO4J));
+
+		// Search in Cypher when the filters can be converted, the same way the records are counted
+		List<String> neo4jUuids = null;
+		if (cet.getAvailableStorages() != null && cet.getAvailableStorages().contains(DBStorageType.NEO4J) && !dontFilterOnNeo4J) {
+			// Only fetch the requested page when the records are not merged with the SQL ones
+			boolean paginate = cet.getAvailableStorages().size() == 1;
+			neo4jUuids = neo4jService.findUuids(repository, cet, paginationConfiguration, paginate);
+		}
+
+		if (neo4jUuids != null) {
+			// The missing fields are retrieved below, along with the entity references
+			RecordsByUuid recordsByUuid = new RecordsByUuid(valuesList);
+			for (String uuid : neo4jUuids) {
+				Map<String, Object> record = new HashMap<>();
+				record.put("uuid", uuid);
+				recordsByUuid.merge(record);
+			}
+
+		} else if (cet.getAvailableStorages() != null && cet.getAvailableStorages().contains(DBStorageType.NEO4J)) {
 			String graphQlQuery;
 
 			// Find by graphql if query provided
@@ -404,13 +574,11 @@ public class CrossStorageService implements CustomPersistenceService {
 				if(actualFetchFields != null) { 
 					actualFetchFields.forEach(builder::field);
 				}
+
+				// No paging : GraphQL can't sort the nodes, so the pages would not be stable
 				graphQlQuery = builder.toString();
 			}
 			
-			// Check if filters contains a field not stored in Neo4J
-			var dontFilterOnNeo4J = filters != null && filters.keySet().stream()
-					.anyMatch(f -> !fields.get(f).getStorages().contains(DBStorageType.NEO4J));
-				
 			Map<String, Object> result = null;
 			if (!dontFilterOnNeo4J && repository.getNeo4jConfiguration() != null) {
 				result = neo4jDao.executeGraphQLQuery(repository.getNeo4jConfiguration().getCode(), graphQlQuery, null, null);
@@ -420,6 +588,9 @@ public class CrossStorageService implements CustomPersistenceService {
 				List<Map<String, Object>> values = (List<Map<String, Object>>) result.get(cet.getCode());
 				values = values != null ? values : new ArrayList<>();
 
+				// Index the SQL results once so that each Neo4J result is merged in constant time
+				RecordsByUuid recordsByUuid = new RecordsByUuid(valuesList);
+
 				values.forEach(map -> {
 					final HashMap<String, Object> resultMap = new HashMap<>(map);
 					map.forEach((key, mapValue) -> {
@@ -444,21 +615,14 @@ public class CrossStorageService implements CustomPersistenceService {
 					}
 
 					// merge the values from sql and neo4j
-					// valuesList.add(resultMap);
-					mergeData(valuesList, resultMap);
+					recordsByUuid.merge(resultMap);
 				});
 			}
 		}
 
 		// Complete missing data
-		for (Map<String, Object> data : valuesList) {
-			String uuid = (String) (data.get("uuid") != null ? data.get("uuid") : data.get("meveo_uuid"));
-
-			Collection<String> fetchFields = actualFetchFields != null ? actualFetchFields : customFieldTemplateService.findByAppliesTo(cet.getAppliesTo()).keySet();
-
-			final Map<String, Object> missingData = getMissingData(data, repository, cet, uuid, fetchFields);
-			data.putAll(missingData);
-		}
+		Collection<String> fetchFields = actualFetchFields != null ? actualFetchFields : customFieldTemplateService.findByAppliesTo(cet.getAppliesTo()).keySet();
+		getMissingData(valuesList, repository, cet, fetchFields);
 		
 		Collection<CustomFieldTemplate> cfts = cache.getCustomFieldTemplates(cet.getAppliesTo())
 				.values();
@@ -469,28 +633,47 @@ public class CrossStorageService implements CustomPersistenceService {
 	}
 
 	/**
-	 * Add or merge a map of data to a list.
-	 * 
-	 * @param valuesList list of map of values
-	 * @param resultMap  map to merge or add
+	 * @param filterKey Filter key, as <code>field</code> or <code>condition field</code>
+	 * @return the field the filter applies to
 	 */
-	private void mergeData(List<Map<String, Object>> valuesList, HashMap<String, Object> resultMap) {
-
-		String uuid = (String) (resultMap.get("uuid") != null ? resultMap.get("uuid") : resultMap.get("meveo_uuid"));
-
-		boolean found = false;
-		for (Map<String, Object> mapOfValues : valuesList) {
-			String uuid2 = (String) (mapOfValues.get("uuid") != null ? mapOfValues.get("uuid") : mapOfValues.get("meveo_uuid"));
-			if (uuid.equals(uuid2)) {
-				mapOfValues.putAll(resultMap);
-				found = true;
-				break;
-			}
-		}
+	private static String getFilteredField(String filterKey) {
+		String[] fieldInfo = filterKey.split(" ");
+		return fieldInfo.length == 1 ? fieldInfo[0] : fieldInfo[1];
+	}
 
-		if (!found) {
-			valuesList.add(resultMap);
-		}
+	/**
+	 * Retrieves entity instances through a cursor that loads them page by page. <br>
+	 * Only the templates stored in a single storage can be paginated, the records of the other templates are loaded at once. The templates stored in
+	 * Neo4J are paginated when their filters can be expressed in Cypher, as the pages are then sorted in a stable order.
+	 *
+	 * @param repository              Repository code
+	 * @param cet                     Template of the entities to retrieve
+	 * @param paginationConfiguration Pagination and filters
+	 * @param fetchSize               Number of records to load per page
+	 * @return a cursor over the matching entities
+	 */
+	public Iterator<Map<String, Object>> iterate(Repository repository, CustomEntityTemplate cet, PaginationConfiguration paginationConfiguration, int fetchSize) {
+		boolean sqlOnly = cet.getAvailableStorages() != null 
+				&& cet.getAvailableStorages().size() == 1 
+				&& cet.getAvailableStorages().contains(DBStorageType.SQL);
+
+		boolean neo4jOnly = cet.getAvailableStorages() != null 
+				&& cet.getAvailableStorages().size() == 1 
+				&& cet.getAvailableStorages().contains(DBStorageType.NEO4J)
+				&& repository.getNeo4jConfiguration() != null
+				&& neo4jService.createQuery(cet, paginationConfiguration) != null;
+
+		boolean paginated = (sqlOnly || neo4jOnly)
+				&& (paginationConfiguration == null || paginationConfiguration.getGraphQlQuery() == null);
+
+		// Seek on uuid for custom tables, as the records are not keyed by column name when sorted on another field
+		boolean keyset = paginated 
+				&& sqlOnly
+				&& cet.getSqlStorageConfiguration() != null
+				&& cet.getSqlStorageConfiguration().isStoreAsTable()
+				&& (paginationConfiguration == null || !paginationConfiguration.isSorted() || NativePersistenceService.FIELD_ID.equals(paginationConfiguration.getSortField()));
+
+		return new CrossStorageCursor(page -> find(repository, cet, page), paginationConfiguration, fetchSize, paginated, keyset);
 	}
 
 	/**
@@ -1130,6 +1313,34 @@ public class CrossStorageService implements CustomPersistenceService {
 		return null;
 	}
 
+	@Override
+	public List<PersistenceActionResult> addCRTByUuids(Repository repository, String relationCode, Map<String, Object> relationValues, Collection<Map.Entry<String, String>> uuids) throws ELException, BusinessException {
+		CustomRelationshipTemplate crt = cache.getCustomRelationshipTemplate(relationCode);
+		var cfts = cache.getCustomFieldTemplates(crt.getAppliesTo());
+
+		// All neo4j storage : relationships are sent by batches
+		if (isEverythingStoredInNeo4J(crt)) {
+			return neo4jService.addCRTByUuids(repository, relationCode, filterValues(cfts, relationValues, crt, DBStorageType.NEO4J), uuids);
+		}
+
+		// SQL Storage
+		if (crt.getAvailableStorages().contains(DBStorageType.SQL)) {
+			List<PersistenceActionResult> results = new ArrayList<>(uuids.size());
+			for (Map.Entry<String, String> sourceAndTarget : uuids) {
+				String relationUuid = customTableRelationService.createRelation(crt, sourceAndTarget.getKey(), sourceAndTarget.getValue(), relationValues);
+				results.add(new PersistenceActionResult(relationUuid));
+			}
+			return results;
+		}
+
+		// Neo4J Storage
+		if (crt.getAvailableStorages().contains(DBStorageType.NEO4J)) {
+			return neo4jService.addCRTByUuids(repository, relationCode, relationValues, uuids);
+		}
+
+		return Collections.emptyList();
+	}
+
 	/**
 	 * Retrieve the uuid of an entity
 	 * 
@@ -1555,43 +1766,123 @@ public class CrossStorageService implements CustomPersistenceService {
 	}
 
 	public void fetchEntityReferences(Repository repository, CustomModelObject customModelObject, Map<String, Object> values) throws EntityDoesNotExistsException {
-		for (Map.Entry<String, Object> entry : new HashSet<>(values.entrySet())) {
-			CustomFieldTemplate cft = cache.getCustomFieldTemplate(entry.getKey(), customModelObject.getAppliesTo());
-			if (cft != null && cft.getFieldType() == CustomFieldTypeEnum.ENTITY && cft.getStorageType() == CustomFieldStorageTypeEnum.SINGLE) {
-								
-				// Check if target is not JPA entity
-				try {
-					var session = transaction.getHibernateSession(repository.getSqlConfigurationCode());
-					Class<?> clazz = Class.forName(cft.getEntityClazzCetCode());
-					values.put(
-						entry.getKey(), 
-						session.find(clazz, entry.getValue())
-					);
-					continue;
-					
-				} catch (ClassNotFoundException e) {
-					//NOOP
-				
-				} catch(Exception e) {
-					log.error("Cannot find referenced entity {}", e.getMessage());
-					throw new RuntimeException(e);
+		fetchEntityReferences(repository, customModelObject, Collections.singletonList(values));
+	}
+
+	/**
+	 * Replaces the entity references of several records by the referenced entities. <br>
+	 * The referenced entities are fetched by target class or template, by batches of {@value #HYDRATION_BATCH_SIZE}, so the number of queries doesn't
+	 * depend on the number of records per level. References of the referenced entities are fetched the same way, level by level. A record that was
+	 * already fetched, for example in a reference cycle, is left as its uuid.
+	 * 
+	 * @param repository        the repository to get data from
+	 * @param customModelObject template of the records
+	 * @param valuesList        the records
+	 * @throws EntityDoesNotExistsException if a referenced entity can't be found
+	 */
+	public void fetchEntityReferences(Repository repository, CustomModelObject customModelObject, List<Map<String, Object>> valuesList) throws EntityDoesNotExistsException {
+		fetchEntityReferences(repository, customModelObject, valuesList, uuidsOf(valuesList));
+	}
+
+	private void fetchEntityReferences(Repository repository, CustomModelObject customModelObject, List<Map<String, Object>> valuesList, Set<String> visited) throws EntityDoesNotExistsException {
+		// Referenced ids, by JPA class or by referenced template
+		Map<CustomFieldTemplate, Class<?>> jpaReferences = new HashMap<>();
+		Map<CustomFieldTemplate, CustomEntityTemplate> cetReferences = new HashMap<>();
+		Map<Class<?>, Set<Serializable>> idsByClass = new HashMap<>();
+		Map<String, Set<String>> uuidsByCet = new HashMap<>();
+
+		for (CustomFieldTemplate cft : cache.getCustomFieldTemplates(customModelObject.getAppliesTo()).values()) {
+			if (cft.getFieldType() != CustomFieldTypeEnum.ENTITY || cft.getStorageType() != CustomFieldStorageTypeEnum.SINGLE) {
+				continue;
+			}
+			if (valuesList.stream().noneMatch(values -> values.get(cft.getCode()) != null)) {
+				continue;
+			}
+
+			// Check if target is not JPA entity
+			try {
+				Class<?> clazz = Class.forName(cft.getEntityClazzCetCode());
+				jpaReferences.put(cft, clazz);
+				for (Map<String, Object> values : valuesList) {
+					if (values.get(cft.getCode()) != null) {
+						idsByClass.computeIfAbsent(clazz, c -> new LinkedHashSet<>()).add((Serializable) values.get(cft.getCode()));
+					}
 				}
-				
-				CustomEntityTemplate cet = cache.getCustomEntityTemplate(cft.getEntityClazzCetCode());
-				var nConf = cet.getNeo4JStorageConfiguration();
-				
-				// Don't fetch primitive entities
-				if(nConf != null && nConf.isPrimitiveEntity()) {
-					continue;
+				continue;
+
+			} catch (ClassNotFoundException e) {
+				//NOOP
+			}
+
+			CustomEntityTemplate cet = cache.getCustomEntityTemplate(cft.getEntityClazzCetCode());
+			var nConf = cet.getNeo4JStorageConfiguration();
+
+			// Don't fetch primitive entities
+			if (nConf != null && nConf.isPrimitiveEntity()) {
+				continue;
+			}
+
+			cetReferences.put(cft, cet);
+			for (Map<String, Object> values : valuesList) {
+				if (values.get(cft.getCode()) instanceof String && !visited.contains(values.get(cft.getCode()))) {
+					uuidsByCet.computeIfAbsent(cet.getCode(), code -> new LinkedHashSet<>()).add((String) values.get(cft.getCode()));
 				}
-				
-				if(entry.getValue() instanceof String) {
-					Map<String, Object> refValues = find(repository, cet, (String) entry.getValue(), false);
-					values.put(cft.getCode(), refValues);
-				} else if(entry.getValue() instanceof Map) {
-					values.put(cft.getCode(), entry.getValue());
+			}
+		}
+
+		// Referenced JPA entities, by class and id
+		Map<Class<?>, Map<Object, Object>> entitiesByClass = new HashMap<>();
+		for (Map.Entry<Class<?>, Set<Serializable>> ids : idsByClass.entrySet()) {
+			Map<Object, Object> entities = new HashMap<>();
+			try {
+				var session = transaction.getHibernateSession(repository.getSqlConfigurationCode());
+				for (List<Serializable> batch : Lists.partition(new ArrayList<>(ids.getValue()), HYDRATION_BATCH_SIZE)) {
+					List<?> found = session.byMultipleIds(ids.getKey()).multiLoad(batch);
+					for (int i = 0; i < batch.size(); i++) {
+						entities.put(batch.get(i), found.get(i));
+					}
 				}
+			} catch (Exception e) {
+				log.error("Cannot find referenced entity {}", e.getMessage());
+				throw new RuntimeException(e);
 			}
+			entitiesByClass.put(ids.getKey(), entities);
+		}
+
+		// Referenced custom entities, by template and uuid
+		uuidsByCet.values().forEach(visited::addAll);
+		Map<String, Map<String, Map<String, Object>>> recordsByCet = new HashMap<>();
+		for (Map.Entry<String, Set<String>> uuids : uuidsByCet.entrySet()) {
+			CustomEntityTemplate cet = cache.getCustomEntityTemplate(uuids.getKey());
+			Map<String, Map<String, Object>> records = new LinkedHashMap<>();
+			for (String uuid : uuids.getValue()) {
+				Map<String, Object> record = new HashMap<>();
+				record.put("uuid", uuid);
+				records.put(uuid, record);
+			}
+
+			List<String> fields = cache.getCustomFieldTemplates(cet.getAppliesTo()).values().stream()
+					.map(CustomFieldTemplate::getCode)
+					.collect(Collectors.toList());
+			Set<String> notFound = getMissingData(new ArrayList<>(records.values()), repository, cet, fields, visited);
+			if (!notFound.isEmpty()) {
+				throw new EntityDoesNotExistsException(cet.getCode() + " instance with UUID : " + notFound.iterator().next() + " does not exist");
+			}
+			recordsByCet.put(cet.getCode(), records);
+		}
+
+		for (Map<String, Object> values : valuesList) {
+			jpaReferences.forEach((cft, clazz) -> {
+				if (values.get(cft.getCode()) != null) {
+					values.put(cft.getCode(), entitiesByClass.get(clazz).get(values.get(cft.getCode())));
+				}
+			});
+			cetReferences.forEach((cft, cet) -> {
+				Map<String, Map<String, Object>> records = recordsByCet.get(cet.getCode());
+				if (records != null && records.containsKey(values.get(cft.getCode()))) {
+					values.put(cft.getCode(), records.get(values.get(cft.getCode())));
+				}
+			});
 		}
 	}
 
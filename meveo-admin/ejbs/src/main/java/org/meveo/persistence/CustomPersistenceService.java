@@ -17,6 +17,8 @@
 package org.meveo.persistence;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +46,23 @@ public interface CustomPersistenceService {
 
     PersistenceActionResult addCRTByUuids(Repository repository, String relationCode, Map<String, Object> relationValues, String sourceUuid, String targetUuid) throws ELException, BusinessException;
 
+    /**
+     * Create relations of the same template between several pairs of entities. Implementations may send them all at once.
+     *
+     * @param repository     Repository where the entities are stored
+     * @param relationCode   Code of the relation template
+     * @param relationValues Fields values of the relations
+     * @param uuids          Uuids of the source and target entity of each relation
+     * @return the result of each relation creation
+     */
+    default List<PersistenceActionResult> addCRTByUuids(Repository repository, String relationCode, Map<String, Object> relationValues, Collection<Map.Entry<String, String>> uuids) throws ELException, BusinessException {
+        List<PersistenceActionResult> results = new ArrayList<>(uuids.size());
+        for (Map.Entry<String, String> sourceAndTarget : uuids) {
+            results.add(addCRTByUuids(repository, relationCode, relationValues, sourceAndTarget.getKey(), sourceAndTarget.getValue()));
+        }
+        return results;
+    }
+
     default List<String> getTrustedUuids(Set<EntityRef> createdEntityReferences) {
         return createdEntityReferences.stream()
                 .filter(EntityRef::isTrusted)
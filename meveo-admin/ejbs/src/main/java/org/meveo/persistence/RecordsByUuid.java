@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.persistence;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * List of records coming from different storages, indexed by uuid so that records of the same entity can be merged in constant time. <br>
+ * The order of the underlying list is preserved, records that do not match any existing uuid are appended at its end.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class RecordsByUuid {
+
+	private final List<Map<String, Object>> records;
+
+	private final Map<String, Map<String, Object>> index;
+
+	/**
+	 * @param records the list to merge records into, its existing elements are indexed once
+	 */
+	public RecordsByUuid(List<Map<String, Object>> records) {
+		this.records = records;
+		this.index = new HashMap<>(Math.max(16, records.size() * 2));
+
+		for (Map<String, Object> record : records) {
+			String uuid = getUuid(record);
+			if (uuid != null) {
+				index.putIfAbsent(uuid, record);
+			}
+		}
+	}
+
+	/**
+	 * Add or merge a map of data to the list.
+	 *
+	 * @param values map to merge or add
+	 */
+	public void merge(Map<String, Object> values) {
+		String uuid = getUuid(values);
+
+		Map<String, Object> existingRecord = uuid == null ? null : index.get(uuid);
+		if (existingRecord != null) {
+			existingRecord.putAll(values);
+		} else {
+			records.add(values);
+			if (uuid != null) {
+				index.put(uuid, values);
+			}
+		}
+	}
+
+	/**
+	 * @return the underlying list of records
+	 */
+	public List<Map<String, Object>> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @param record a record
+	 * @return the uuid of the record, stored either as "uuid" or "meveo_uuid"
+	 */
+	public static String getUuid(Map<String, Object> record) {
+		return (String) (record.get("uuid") != null ? record.get("uuid") : record.get("meveo_uuid"));
+	}
+
+}
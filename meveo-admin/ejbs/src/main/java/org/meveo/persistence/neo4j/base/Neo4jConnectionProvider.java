@@ -15,8 +15,13 @@
  */
 package org.meveo.persistence.neo4j.base;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
 import javax.ejb.ConcurrencyManagement;
@@ -40,6 +45,7 @@ import org.meveo.jpa.MeveoJpa;
 import org.meveo.model.neo4j.Neo4JConfiguration;
 import org.meveo.security.PasswordUtils;
 import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
 import org.neo4j.driver.v1.Driver;
 import org.neo4j.driver.v1.GraphDatabase;
 import org.neo4j.driver.v1.Session;
@@ -65,6 +71,7 @@ public class Neo4jConnectionProvider {
 
     private static final Map<String, Neo4JConfiguration> configurationMap = new ConcurrentHashMap<>();
     private static final Map<String, Driver> DRIVER_MAP = new ConcurrentHashMap<>();
+    private static final Map<String, Neo4jSessionMetrics> METRICS_MAP = new ConcurrentHashMap<>();
 
     static {
       Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -106,33 +113,77 @@ public class Neo4jConnectionProvider {
     }
 
     /**
+     * Open a session on a repository. The drivers are created once per repository and the sessions are opened without locking,
+     * the concurrent accesses being handled by the connection pool of the driver.
+     *
      * @return a neo4j session, or null if a problem has occured
      */
     public Session getSession(String neo4JConfigurationCode) {
+        // Null keys are not allowed in the maps
+        String key = neo4JConfigurationCode != null ? neo4JConfigurationCode : Neo4JConfiguration.DEFAULT_NEO4J_CONNECTION;
+        Neo4jSessionMetrics metrics = METRICS_MAP.computeIfAbsent(key, k -> new Neo4jSessionMetrics());
 
-        Neo4JConfiguration neo4JConfiguration = defaultConfiguration;
-        if (neo4JConfigurationCode != null) {
-            try {
-                neo4JConfiguration = configurationMap.computeIfAbsent(neo4JConfigurationCode, this::findByCode);
-            } catch (NoResultException e) {
-                LOGGER.warn("Unknown Neo4j repository {}, using default configuration", neo4JConfigurationCode);
-            }
-        }
-
+        Driver driver = null;
         try{
-        	Driver driver = DRIVER_MAP.computeIfAbsent(neo4JConfigurationCode, this::generateDriver);
-        	synchronized (this) {
-                return driver.session();
-            }
+        	driver = getDriver(key, neo4JConfigurationCode);
+        	return trackSession(driver.session(), metrics);
         }catch (Exception e){
-            LOGGER.warn("Can't connect to {} ({}): {}", neo4JConfigurationCode, neo4JConfiguration.getNeo4jUrl(), e.getMessage());
-        	DRIVER_MAP.remove(neo4JConfigurationCode);
+            metrics.sessionFailed();
+            LOGGER.warn("Can't connect to {} ({}): {}", neo4JConfigurationCode, getConfiguration(neo4JConfigurationCode).getNeo4jUrl(), e.getMessage());
+            // Don't keep a driver that can't connect, unless it has already been replaced
+            if (driver != null && DRIVER_MAP.remove(key, driver)) {
+            	closeDriver(key, driver);
+            }
             return null;
         }
 
     }
 
-	private synchronized Driver generateDriver(String neo4JConfigurationCode) {
+    /**
+     * Get the driver of a repository, creating it if needed. <br>
+     * The driver is created outside of the drivers map, so that connecting to a repository doesn't block the access to the other ones. If two
+     * threads create the driver of the same repository, the one that loses the race closes its driver.
+     */
+    private Driver getDriver(String key, String neo4JConfigurationCode) {
+    	Driver driver = DRIVER_MAP.get(key);
+    	if (driver != null) {
+    		return driver;
+    	}
+
+    	Driver newDriver = createDriver(getConfiguration(neo4JConfigurationCode));
+    	driver = DRIVER_MAP.putIfAbsent(key, newDriver);
+    	if (driver == null) {
+    		return newDriver;
+    	}
+
+    	closeDriver(key, newDriver);
+    	return driver;
+    }
+
+    /**
+     * Close a driver and its connection pool
+     */
+    private static void closeDriver(String key, Driver driver) {
+    	try {
+    		driver.close();
+    	} catch (Exception e) {
+    		LOGGER.warn("Error closing neo4j driver of {}", key, e);
+    	}
+    }
+
+    /**
+     * @return the usage of the sessions and the pool settings of each repository, by repository code
+     */
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> metrics = new HashMap<>();
+        METRICS_MAP.forEach((code, repositoryMetrics) -> {
+            Neo4JConfiguration configuration = Neo4JConfiguration.DEFAULT_NEO4J_CONNECTION.equals(code) ? defaultConfiguration : configurationMap.get(code);
+            metrics.put(code, repositoryMetrics.toMap(configuration));
+        });
+        return metrics;
+    }
+
+	private Neo4JConfiguration getConfiguration(String neo4JConfigurationCode) {
 		Neo4JConfiguration neo4JConfiguration = defaultConfiguration;
 		if (neo4JConfigurationCode != null) {
 			try {
@@ -142,18 +193,65 @@ public class Neo4jConnectionProvider {
 			}
 		}
 
-		return createDriver(neo4JConfiguration);
+		return neo4JConfiguration;
+	}
+
+	/**
+	 * Wrap the session so the metrics are updated when it is closed
+	 */
+	private static Session trackSession(Session session, Neo4jSessionMetrics metrics) {
+		metrics.sessionOpened();
+		AtomicBoolean closed = new AtomicBoolean();
+
+		return (Session) Proxy.newProxyInstance(Neo4jConnectionProvider.class.getClassLoader(), new Class<?>[] { Session.class }, (proxy, method, args) -> {
+			if (method.getName().equals("close") && method.getParameterCount() == 0 && closed.compareAndSet(false, true)) {
+				metrics.sessionClosed();
+			}
+
+			try {
+				return method.invoke(session, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
 	}
 
 	public Driver createDriver(Neo4JConfiguration neo4JConfiguration) {
 		String salt = PasswordUtils.getSalt(neo4JConfiguration.getId(), neo4JConfiguration.getCode());
 		String pwd = PasswordUtils.decrypt(salt, neo4JConfiguration.getNeo4jPassword());
-		var driver =  GraphDatabase.driver(neo4JConfiguration.getProtocol() + "://" + neo4JConfiguration.getNeo4jUrl(), AuthTokens.basic(neo4JConfiguration.getNeo4jLogin(), pwd));
+		var driver =  GraphDatabase.driver(neo4JConfiguration.getProtocol() + "://" + neo4JConfiguration.getNeo4jUrl(), AuthTokens.basic(neo4JConfiguration.getNeo4jLogin(), pwd), buildConfig(neo4JConfiguration));
 		// Test connection
-		driver.session().close();
+		try {
+			driver.session().close();
+		} catch (RuntimeException e) {
+			closeDriver(neo4JConfiguration.getCode(), driver);
+			throw e;
+		}
 		return driver;
 	}
 
+	/**
+	 * @param neo4JConfiguration Configuration of the repository
+	 * @return the driver configuration, with the pool settings of the repository when they are defined
+	 */
+	private static Config buildConfig(Neo4JConfiguration neo4JConfiguration) {
+		Config.ConfigBuilder config = Config.build();
+
+		if (neo4JConfiguration.getMaxConnectionPoolSize() != null) {
+			config.withMaxConnectionPoolSize(neo4JConfiguration.getMaxConnectionPoolSize());
+		}
+
+		if (neo4JConfiguration.getConnectionAcquisitionTimeout() != null) {
+			config.withConnectionAcquisitionTimeout(neo4JConfiguration.getConnectionAcquisitionTimeout(), TimeUnit.MILLISECONDS);
+		}
+
+		if (neo4JConfiguration.getMaxConnectionLifetime() != null) {
+			config.withMaxConnectionLifetime(neo4JConfiguration.getMaxConnectionLifetime(), TimeUnit.MILLISECONDS);
+		}
+
+		return config.toConfig();
+	}
+
     public String getNeo4jUrl() {
         return neo4jUrl;
     }
@@ -205,7 +303,10 @@ public class Neo4jConnectionProvider {
 
 	public void onNeo4jConnectionCreated(@Observes Neo4JConfiguration entity) {
 		configurationMap.remove(entity.getCode());
-		DRIVER_MAP.remove(entity.getCode());
+		Driver driver = DRIVER_MAP.remove(entity.getCode());
+		if (driver != null) {
+			closeDriver(entity.getCode(), driver);
+		}
 	}
 
 }
@@ -20,6 +20,7 @@ import static org.meveo.persistence.neo4j.service.Neo4JRequests.CREATION_DATE;
 import static org.meveo.persistence.neo4j.service.Neo4JRequests.INTERNAL_UPDATE_DATE;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import javax.inject.Inject;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrSubstitutor;
+import org.meveo.commons.utils.ParamBean;
 import org.meveo.event.qualifier.Created;
 import org.meveo.event.qualifier.Updated;
 import org.meveo.model.crm.CustomEntityTemplateUniqueConstraint;
@@ -43,6 +45,7 @@ import org.meveo.persistence.neo4j.NonUniqueResult;
 import org.meveo.persistence.neo4j.graph.Neo4jEntity;
 import org.meveo.persistence.neo4j.graph.Neo4jRelationship;
 import org.meveo.persistence.neo4j.helper.CypherHelper;
+import org.meveo.persistence.neo4j.helper.CypherQueryBuilder;
 import org.meveo.persistence.neo4j.service.Neo4JRequests;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
@@ -57,6 +60,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 
 /**
  * @author Edward P. Legaspi | czetsuya@gmail.com
@@ -70,6 +74,10 @@ public class Neo4jDao {
     public static final String ID = "id";
     private static final String CET_CODE = "cetCode";
     public static final String NODE_ID = "NODE_ID";
+    private static final String ROWS = "rows";
+
+    /** Number of rows sent by each statement of the batch writes */
+    public static final int BATCH_SIZE = Integer.parseInt(ParamBean.getInstance().getProperty("neo4j.batchSize", "1000"));
 
     Logger LOGGER = LoggerFactory.getLogger(Neo4jDao.class);
 
@@ -418,6 +426,56 @@ public class Neo4jDao {
 		}
     }
 
+    /**
+     * Retrieves the values of several nodes in one round-trip
+     *
+     * @param neo4jConfiguration Repository code
+     * @param label              Label of the nodes
+     * @param uuids              UUIDs of the nodes
+     * @param fields             fields to return, all fields if null or empty
+     * @return the values of the nodes, indexed by UUID
+     */
+    public Map<String, Map<String, Object>> findNodesByIds(String neo4jConfiguration, String label, Collection<String> uuids, List<String> fields) {
+    	if(uuids == null || uuids.isEmpty()) {
+    		return new HashMap<>();
+    	}
+
+        StringBuilder query = new StringBuilder()
+        		.append("UNWIND $uuids AS uuid \n")
+                .append("MATCH (n:").append(label).append(") \n")
+                .append("WHERE n.meveo_uuid = uuid \n");
+
+        query.append("RETURN uuid, n { ");
+
+        if(fields != null && !fields.isEmpty()){
+            for(String field : fields){
+                query.append(".").append(field).append(", ");
+            }
+            query.delete(query.length() - 2, query.length());
+        } else {
+            query.append(".*");
+        }
+
+        query.append(" }");
+
+        Map<String, Map<String, Object>> nodes = cypherHelper.execute(neo4jConfiguration,
+        		query.toString(),
+        		Collections.singletonMap("uuids", List.copyOf(uuids)),
+        		(t, r) -> {
+        			Map<String, Map<String, Object>> values = new HashMap<>();
+        			r.list().forEach(record -> {
+        				var previous = values.put(record.get(0).asString(), record.get(1).asMap());
+        				if(previous != null) {
+        					LOGGER.warn("findNodesByIds: Multiple {} nodes found for uuid {}", label, record.get(0).asString());
+        				}
+        			});
+        			return values;
+        		}
+		);
+
+        return nodes != null ? nodes : new HashMap<>();
+    }
+
     public String findNodeId(String neo4jConfiguration, String code, Map<String, Object> fieldsKeys){
         final Map<String, Object> values = new HashMap<>();
         values.put(FIELD_KEYS, Values.value(fieldsKeys));
@@ -490,6 +548,59 @@ public class Neo4jDao {
 
     }
 
+    /**
+     * Count the nodes matched by a query
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param query              Query to execute
+     * @return the number of matching nodes
+     */
+    public long count(String neo4JConfiguration, CypherQueryBuilder query) {
+        String statement = query.toCountStatement();
+
+        // Begin transaction
+        var transaction = crossStorageTransaction.getNeo4jTransaction(neo4JConfiguration);
+
+        try {
+            // Execute query and parse results
+            long count = transaction.run(statement, query.getParameters()).single().get("count").asLong();
+            transaction.success();  // Commit transaction
+            return count;
+        } catch (Exception e) {
+            crossStorageTransaction.rollbackTransaction(e);
+            LOGGER.error("[{}] Error while counting nodes : {}", neo4JConfiguration, statement, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find the uuids of the nodes matched by a query
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param query              Query to execute
+     * @param skip               Number of nodes to skip, if not null
+     * @param limit              Maximum number of nodes to return, if not null
+     * @return the uuids of the matching nodes, in the order of the query
+     */
+    public List<String> findUuids(String neo4JConfiguration, CypherQueryBuilder query, Integer skip, Integer limit) {
+        String statement = query.toUuidsStatement(skip, limit);
+
+        // Begin transaction
+        var transaction = crossStorageTransaction.getNeo4jTransaction(neo4JConfiguration);
+
+        try {
+            // Execute query and parse results
+            List<String> uuids = transaction.run(statement, query.getParameters())
+                    .list(record -> record.get("uuid").isNull() ? null : record.get("uuid").asString());
+            transaction.success();  // Commit transaction
+            return uuids;
+        } catch (Exception e) {
+            crossStorageTransaction.rollbackTransaction(e);
+            LOGGER.error("[{}] Error while searching nodes : {}", neo4JConfiguration, statement, e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
 	 * Merge a Neo4J node based on its unique fields
 	 *
@@ -659,6 +770,136 @@ public class Neo4jDao {
         return nodeId;
     }
 
+    /**
+     * Merge several nodes of the same template based on their unique fields, sending them by batches of {@link #BATCH_SIZE} nodes
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param cetCode            Code of the corresponding CustomEntityTemplate
+     * @param uniqueKeys         Unique fields that identify the nodes - each node must have a value for them
+     * @param nodes              Properties of the nodes
+     * @param updatableKeys      Properties updated when the node already exists
+     * @param labels             Additionnal labels of the nodes
+     * @return the uuids of the merged nodes
+     */
+    public List<String> mergeNodes(String neo4JConfiguration, String cetCode, Collection<String> uniqueKeys, List<Map<String, Object>> nodes, Collection<String> updatableKeys, List<String> labels) {
+        if (uniqueKeys.isEmpty()) {
+            throw new IllegalArgumentException("Can't merge nodes without unique fields");
+        }
+
+        // Build values map
+        Map<String, Object> valuesMap = new HashMap<>();
+        valuesMap.put(CET_CODE, cetCode);
+        valuesMap.put(FIELD_KEYS, getRowFieldsString(uniqueKeys, FIELD_KEYS));
+
+        List<Map<String, Object>> rows = new ArrayList<>(nodes.size());
+        for (Map<String, Object> node : nodes) {
+            Map<String, Object> keyValues = new HashMap<>();
+            uniqueKeys.forEach(key -> keyValues.put(key, node.get(key)));
+
+            Map<String, Object> updatableValues = new HashMap<>();
+            updatableKeys.stream().filter(node::containsKey).forEach(key -> updatableValues.put(key, node.get(key)));
+
+            Map<String, Object> row = new HashMap<>();
+            row.put(FIELD_KEYS, keyValues);
+            row.put(FIELDS, node);
+            row.put(UPDATABLE_FIELDS, updatableValues);
+            row.put(NODE_ID, UUID.randomUUID().toString());
+            rows.add(row);
+        }
+
+        return writeNodes(neo4JConfiguration, Neo4JRequests.mergeCetBatchStatement, valuesMap, rows, labels);
+    }
+
+    /**
+     * Create several nodes of the same template, sending them by batches of {@link #BATCH_SIZE} nodes
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param cetCode            Code of the corresponding CustomEntityTemplate
+     * @param nodes              Properties of the nodes
+     * @param labels             Additionnal labels of the nodes
+     * @return the uuids of the created nodes
+     */
+    public List<String> createNodes(String neo4JConfiguration, String cetCode, List<Map<String, Object>> nodes, List<String> labels) {
+        Map<String, Object> valuesMap = new HashMap<>();
+        valuesMap.put(CET_CODE, cetCode);
+
+        List<Map<String, Object>> rows = new ArrayList<>(nodes.size());
+        for (Map<String, Object> node : nodes) {
+            Map<String, Object> row = new HashMap<>();
+            row.put(FIELDS, node);
+            row.put(NODE_ID, UUID.randomUUID().toString());
+            rows.add(row);
+        }
+
+        return writeNodes(neo4JConfiguration, Neo4JRequests.createCetBatchStatement, valuesMap, rows, labels);
+    }
+
+    private List<String> writeNodes(String neo4JConfiguration, StringBuffer baseStatement, Map<String, Object> valuesMap, List<Map<String, Object>> rows, List<String> labels) {
+        String alias = "n"; // Alias to use in query
+
+        // Build statement
+        StringBuffer statement = baseStatement;
+        if (labels != null) {
+            statement = appendAdditionalLabels(statement, labels, alias, valuesMap);
+        }
+
+        statement = appendReturnStatement(statement, alias, valuesMap);
+        String resolvedStatement = new StrSubstitutor(valuesMap).replace(statement);
+        resolvedStatement = resolvedStatement.replace('"', '\'');
+
+        // Begin transaction
+        var transaction = crossStorageTransaction.getNeo4jTransaction(neo4JConfiguration);
+
+        List<Node> nodes = new ArrayList<>(rows.size());
+
+        try {
+            // Execute query and parse results
+            LOGGER.info(resolvedStatement + "\n");
+            for (Record record : runBatches(transaction, resolvedStatement, Collections.emptyMap(), rows)) {
+                nodes.add(record.get(alias).asNode());
+            }
+            transaction.success();  // Commit transaction
+        } catch (Exception e) {
+            crossStorageTransaction.rollbackTransaction(e);
+            LOGGER.error("Error while writing {} Neo4J nodes.\n\nquery = {}", rows.size(), resolvedStatement, e);
+            throw new RuntimeException(e);
+        }
+
+        List<String> nodeIds = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            nodeIds.add(getMeveoUUID(node));
+
+            //  If node has been created, fire creation event. If it was updated, fire update event.
+            final Neo4jEntity neo4jEntity = new Neo4jEntity(node, neo4JConfiguration);
+            if (node.containsKey(INTERNAL_UPDATE_DATE)) {
+                nodeUpdatedEvent.fire(neo4jEntity);
+            } else {
+                nodeCreatedEvent.fire(neo4jEntity);
+            }
+        }
+
+        return nodeIds;
+    }
+
+    /**
+     * Run an <code>UNWIND $rows</code> statement for each batch of {@link #BATCH_SIZE} rows
+     *
+     * @param transaction Transaction to use
+     * @param statement   Statement to execute, that iterates over the <code>rows</code> parameter
+     * @param parameters  Parameters shared by all the batches
+     * @param rows        Rows to send
+     * @return the records returned by all the batches
+     */
+    public List<Record> runBatches(Transaction transaction, String statement, Map<String, Object> parameters, List<Map<String, Object>> rows) {
+        List<Record> records = new ArrayList<>(rows.size());
+        for (List<Map<String, Object>> batch : Lists.partition(rows, BATCH_SIZE)) {
+            Map<String, Object> batchParameters = new HashMap<>(parameters);
+            batchParameters.put(ROWS, batch);
+            records.addAll(transaction.run(statement, batchParameters).list());
+        }
+        return records;
+    }
+
     public void updateNodeByNodeId(String neo4JConfiguration, String nodeId, String cetCode, Map<String, Object> fields, List<String> labels) {
 
         String alias = "startNode"; // Alias to use in query
@@ -793,6 +1034,64 @@ public class Neo4jDao {
         }
     }
 
+    /**
+     * Create or update relationships of the same type between several pairs of nodes, sending them by batches of {@link #BATCH_SIZE} relationships
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param startNodeLabel     Label of the start nodes
+     * @param label              Type of the relationships
+     * @param endNodeLabel       Label of the end nodes
+     * @param nodeIds            Uuids of the start and end node of each relationship
+     * @param fields             Properties of the relationships
+     */
+    public void createRelationsBetweenNodes(String neo4JConfiguration, String startNodeLabel, String label, String endNodeLabel, Collection<Map.Entry<String, String>> nodeIds, Map<String, Object> fields) {
+        if(StringUtils.isBlank(label)){
+            throw new IllegalArgumentException("Cannot create relations between " + startNodeLabel + " and " + endNodeLabel + " nodes with fields "+ fields + " : relationship label must be provided");
+        }
+
+        /* Build values map */
+        final Map<String, Object> values = new HashMap<>();
+        values.put("relationshipLabel", label);
+        values.put("startNodeLabel", startNodeLabel);
+        values.put("endNodeLabel", endNodeLabel);
+        values.put(FIELDS, getFieldsString(fields.keySet()));
+        values.putAll(fields);
+
+        List<Map<String, Object>> rows = new ArrayList<>(nodeIds.size());
+        for (Map.Entry<String, String> nodeIdPair : nodeIds) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("startNodeId", nodeIdPair.getKey());
+            row.put("endNodeId", nodeIdPair.getValue());
+            row.put(NODE_ID, UUID.randomUUID().toString());
+            rows.add(row);
+        }
+
+        StrSubstitutor sub = new StrSubstitutor(values);
+        String statement = sub.replace(Neo4JRequests.createRelationships);
+        // Begin transaction
+        var transaction = crossStorageTransaction.getNeo4jTransaction(neo4JConfiguration);
+        List<Record> records = Collections.emptyList();
+
+        try {
+            // Execute query and parse results
+            records = runBatches(transaction, statement, values, rows);
+            transaction.success();  // Commit transaction
+        } catch (Exception e) {
+            crossStorageTransaction.rollbackTransaction(e);
+            LOGGER.error("Error while creating {} relations between Neo4J nodes: (:{})-[:{}]->(:{})", rows.size(), startNodeLabel, label, endNodeLabel, e);
+        }
+
+        for (Record record : records) {
+            //  If relationship has been created, fire creation event. If it was updated, fire update event.
+            final Neo4jRelationship neo4jRelationship = new Neo4jRelationship(record.get("relationship").asRelationship(), neo4JConfiguration);
+            if (neo4jRelationship.containsKey(INTERNAL_UPDATE_DATE)) {
+                edgeUpdatedEvent.fire(neo4jRelationship);
+            } else {
+                edgeCreatedEvent.fire(neo4jRelationship);
+            }
+        }
+    }
+
     /**
      * Append a return statement for the given query
      *
@@ -844,6 +1143,18 @@ public class Neo4jDao {
                 .collect(Collectors.joining(", ")) + " }";
     }
 
+    /**
+     * @param keys  Names of the fields
+     * @param field Field of the current row holding the values
+     * @return a map literal reading the values of the given fields in the current row of an <code>UNWIND $rows AS row</code> statement
+     */
+    public String getRowFieldsString(Collection<String> keys, String field) {
+        return "{ " + keys
+                .stream()
+                .map(s -> s + ": row." + field + "." + s)
+                .collect(Collectors.joining(", ")) + " }";
+    }
+
     /**
      * Update the first node with the properties of the second node
      *
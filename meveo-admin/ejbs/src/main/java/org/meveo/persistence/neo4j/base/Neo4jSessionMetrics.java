@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.meveo.persistence.neo4j.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.meveo.model.neo4j.Neo4JConfiguration;
+
+/**
+ * Usage statistics of the sessions opened on a Neo4j repository
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class Neo4jSessionMetrics {
+
+	private final LongAdder openedSessions = new LongAdder();
+
+	private final LongAdder failedSessions = new LongAdder();
+
+	private final AtomicInteger activeSessions = new AtomicInteger();
+
+	private final AtomicInteger peakActiveSessions = new AtomicInteger();
+
+	void sessionOpened() {
+		openedSessions.increment();
+		peakActiveSessions.accumulateAndGet(activeSessions.incrementAndGet(), Math::max);
+	}
+
+	void sessionClosed() {
+		activeSessions.decrementAndGet();
+	}
+
+	void sessionFailed() {
+		failedSessions.increment();
+	}
+
+	/**
+	 * @return the number of sessions opened since startup
+	 */
+	public long getOpenedSessions() {
+		return openedSessions.sum();
+	}
+
+	/**
+	 * @return the number of sessions that could not be opened since startup
+	 */
+	public long getFailedSessions() {
+		return failedSessions.sum();
+	}
+
+	/**
+	 * @return the number of sessions currently opened
+	 */
+	public int getActiveSessions() {
+		return activeSessions.get();
+	}
+
+	/**
+	 * @return the highest number of sessions opened at the same time
+	 */
+	public int getPeakActiveSessions() {
+		return peakActiveSessions.get();
+	}
+
+	/**
+	 * @param configuration Configuration of the repository, holding the pool settings
+	 * @return the metrics and the pool settings, as a map
+	 */
+	public Map<String, Object> toMap(Neo4JConfiguration configuration) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("openedSessions", getOpenedSessions());
+		map.put("failedSessions", getFailedSessions());
+		map.put("activeSessions", getActiveSessions());
+		map.put("peakActiveSessions", getPeakActiveSessions());
+		if (configuration != null) {
+			map.put("maxConnectionPoolSize", configuration.getMaxConnectionPoolSize());
+			map.put("connectionAcquisitionTimeout", configuration.getConnectionAcquisitionTimeout());
+			map.put("maxConnectionLifetime", configuration.getMaxConnectionLifetime());
+		}
+		return map;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.meveo.persistence.neo4j.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.meveo.service.base.PersistenceService;
+
+/**
+ * Builds a Cypher query matching the nodes of a label from the filters of a {@link org.meveo.admin.util.pagination.PaginationConfiguration}. <br>
+ * The filter keys follow the format used for the SQL storage : <code>field</code> or <code>condition field</code>, with the conditions
+ * <code>ne</code>, <code>fromRange</code>, <code>toRange</code>, <code>inList</code> and <code>not-inList</code>. When a filter can't be
+ * expressed in Cypher, the query is marked as not {@link #isSupported() supported}.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class CypherQueryBuilder {
+
+	private static final String ALIAS = "n";
+
+	private final String label;
+	private final List<String> conditions = new ArrayList<>();
+	private final Map<String, Object> parameters = new HashMap<>();
+	private boolean supported = true;
+	private String orderBy;
+
+	public static CypherQueryBuilder create(String label) {
+		return new CypherQueryBuilder(label);
+	}
+
+	private CypherQueryBuilder(String label) {
+		this.label = label;
+	}
+
+	public CypherQueryBuilder filters(Map<String, Object> filters) {
+		if (filters != null) {
+			filters.forEach(this::filter);
+		}
+		return this;
+	}
+
+	public CypherQueryBuilder filter(String key, Object value) {
+		String[] fieldInfo = key.split(" ");
+		if (fieldInfo.length > 2) {
+			supported = false;
+			return this;
+		}
+
+		String condition = fieldInfo.length == 1 ? null : fieldInfo[0];
+		String fieldName = fieldInfo.length == 1 ? fieldInfo[0] : fieldInfo[1];
+		String property = property(fieldName);
+		boolean not = "ne".equals(condition) || "not-inList".equals(condition);
+
+		if ("fromRange".equals(condition) && value instanceof Number) {
+			conditions.add(property + " >= " + parameter(value));
+
+		} else if ("toRange".equals(condition) && value instanceof Number) {
+			conditions.add(property + " <= " + parameter(value));
+
+		} else if (("inList".equals(condition) || "not-inList".equals(condition)) && isSupportedList(value)) {
+			conditions.add((not ? "NOT " : "") + property + " IN " + parameter(value));
+
+		} else if (condition == null || "ne".equals(condition)) {
+			if (PersistenceService.SEARCH_IS_NULL.equals(value)) {
+				conditions.add(property + " IS NULL");
+			} else if (PersistenceService.SEARCH_IS_NOT_NULL.equals(value)) {
+				conditions.add(property + " IS NOT NULL");
+			} else if (value instanceof String && ((String) value).contains("*")) {
+				conditions.add((not ? "NOT " : "") + property + " =~ " + parameter(toRegex((String) value)));
+			} else if (isSupportedValue(value)) {
+				conditions.add(property + (not ? " <> " : " = ") + parameter(value));
+			} else if (isSupportedList(value)) {
+				conditions.add((not ? "NOT " : "") + property + " IN " + parameter(value));
+			} else {
+				supported = false;
+			}
+
+		} else {
+			supported = false;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Sort the nodes on a property, then on their uuid so that the order is stable between two pages
+	 *
+	 * @param fieldName Field to sort on, or null to only sort on the uuid
+	 * @param ascending Whether to sort in ascending order
+	 * @return the builder
+	 */
+	public CypherQueryBuilder orderBy(String fieldName, boolean ascending) {
+		String direction = ascending ? " ASC" : " DESC";
+		if (fieldName == null || "uuid".equals(fieldName)) {
+			orderBy = property("uuid") + direction;
+		} else {
+			orderBy = property(fieldName) + direction + ", " + property("uuid") + direction;
+		}
+		return this;
+	}
+
+	/**
+	 * @return whether all the filters could be converted to Cypher
+	 */
+	public boolean isSupported() {
+		return supported;
+	}
+
+	/**
+	 * @return the parameters of the statements
+	 */
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return a statement returning the number of matching nodes, as <code>count</code>
+	 */
+	public String toCountStatement() {
+		return match() + " RETURN count(" + ALIAS + ") AS count";
+	}
+
+	/**
+	 * @param skip  Number of nodes to skip, if not null
+	 * @param limit Maximum number of nodes to return, if not null
+	 * @return a statement returning the uuids of the matching nodes, as <code>uuid</code>, in the order defined by {@link #orderBy(String, boolean)}
+	 */
+	public String toUuidsStatement(Integer skip, Integer limit) {
+		StringBuilder statement = new StringBuilder(match()).append(" RETURN ").append(property("uuid")).append(" AS uuid");
+		if (orderBy != null) {
+			statement.append(" ORDER BY ").append(orderBy);
+		}
+		if (skip != null && skip > 0) {
+			statement.append(" SKIP ").append(skip.intValue());
+		}
+		if (limit != null) {
+			statement.append(" LIMIT ").append(limit.intValue());
+		}
+		return statement.toString();
+	}
+
+	private String match() {
+		StringBuilder statement = new StringBuilder("MATCH (").append(ALIAS).append(":").append(label).append(")");
+		if (!conditions.isEmpty()) {
+			statement.append(" WHERE ").append(String.join(" AND ", conditions));
+		}
+		return statement.toString();
+	}
+
+	private static String property(String fieldName) {
+		return ALIAS + "." + ("uuid".equals(fieldName) ? "meveo_uuid" : "`" + fieldName.replace("`", "``") + "`");
+	}
+
+	private String parameter(Object value) {
+		String name = "p" + parameters.size();
+		parameters.put(name, toDriverValue(value));
+		return "$" + name;
+	}
+
+	private static boolean isSupportedValue(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean;
+	}
+
+	private static boolean isSupportedList(Object value) {
+		return value instanceof Collection && ((Collection<?>) value).stream().allMatch(CypherQueryBuilder::isSupportedValue);
+	}
+
+	/**
+	 * The driver only accepts the java primitive number types
+	 */
+	private static Object toDriverValue(Object value) {
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).stream().map(CypherQueryBuilder::toDriverValue).collect(Collectors.toList());
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		} else if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		return value;
+	}
+
+	/**
+	 * Convert a wildcard filter to a case insensitive regular expression, as done by the SQL storage with "like"
+	 */
+	private static String toRegex(String value) {
+		String[] parts = value.split("\\*", -1);
+		return "(?i)" + Arrays.stream(parts)
+				.map(part -> part.isEmpty() ? "" : Pattern.quote(part))
+				.collect(Collectors.joining(".*"));
+	}
+
+}
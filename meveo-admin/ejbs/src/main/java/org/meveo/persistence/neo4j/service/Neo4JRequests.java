@@ -81,6 +81,62 @@ public class Neo4JRequests {
             .append("ON MATCH SET relationship += ${fields}, ${startAlias}." + INTERNAL_UPDATE_DATE + "= $updateDate, ${endAlias}." + INTERNAL_UPDATE_DATE + "= $updateDate, relationship." + INTERNAL_UPDATE_DATE + " = $updateDate \n")
             .append("ON CREATE SET relationship = ${fields}, relationship." + CREATION_DATE + " = $updateDate, relationship.meveo_uuid = $").append(NODE_ID).append("\n");
 
+    /**
+     * Create or update relationships between the pairs of nodes given in the <code>rows</code> parameter
+     * Parameters : <br>
+     * - rows : list of maps with the id of the start node (startNodeId), the id of the end node (endNodeId) and the uuid of the relationship if it is created (NODE_ID) <br>
+     * - fields : properties of the relationships <br>
+     */
+    public final static StringBuffer createRelationships = new StringBuffer("UNWIND $rows AS row \n")
+            .append("MATCH (startNode:${startNodeLabel}) WHERE startNode.meveo_uuid = row.startNodeId \n")
+            .append("MATCH (endNode:${endNodeLabel}) WHERE endNode.meveo_uuid = row.endNodeId \n")
+            .append("MERGE (startNode)-[relationship :${relationshipLabel} ${fields}]->(endNode) \n")
+            .append("ON CREATE SET relationship." + CREATION_DATE + " = timestamp(), relationship.meveo_uuid = row.").append(NODE_ID).append("\n")
+            .append("ON MATCH SET relationship." + INTERNAL_UPDATE_DATE + " = timestamp() \n")
+            .append("RETURN relationship");
+
+    /**
+     * Batch version of {@link #crtStatementByNodeIds}, the pairs of nodes to link being given in the <code>rows</code> parameter
+     */
+    public final static StringBuffer crtStatementByNodeIdsBatch = new StringBuffer()
+            .append("UNWIND $rows AS row \n")
+            .append("MATCH (${startAlias}:${startNode}) WHERE ${startAlias}.meveo_uuid = row.startNodeId \n")
+            .append("MATCH (${endAlias}:${endNode}) WHERE ${endAlias}.meveo_uuid = row.endNodeId \n")
+            .append("MERGE (${startAlias})-[relationship :${relationType} ${fields}]->(${endAlias}) \n")
+            .append("ON MATCH SET ${startAlias}." + INTERNAL_UPDATE_DATE + " = $updateDate, ${endAlias}." + INTERNAL_UPDATE_DATE + " = $updateDate, relationship." + INTERNAL_UPDATE_DATE + " = $updateDate \n")
+            .append("ON CREATE SET relationship." + CREATION_DATE + " = $updateDate, relationship.meveo_uuid = row.").append(NODE_ID).append("\n");
+
+    /**
+     * Batch version of {@link #uniqueCrtStatementByNodeIds}, the pairs of nodes to link being given in the <code>rows</code> parameter
+     */
+    public final static StringBuffer uniqueCrtStatementByNodeIdsBatch = new StringBuffer()
+            .append("UNWIND $rows AS row \n")
+            .append("MATCH (${startAlias}:${startNode}) WHERE ${startAlias}.meveo_uuid = row.startNodeId \n")
+            .append("MATCH (${endAlias}:${endNode}) WHERE ${endAlias}.meveo_uuid = row.endNodeId \n")
+            .append("MERGE (${startAlias})-[relationship :${relationType}]->(${endAlias}) \n")
+            .append("ON MATCH SET relationship += ${fields}, ${startAlias}." + INTERNAL_UPDATE_DATE + "= $updateDate, ${endAlias}." + INTERNAL_UPDATE_DATE + "= $updateDate, relationship." + INTERNAL_UPDATE_DATE + " = $updateDate \n")
+            .append("ON CREATE SET relationship = ${fields}, relationship." + CREATION_DATE + " = $updateDate, relationship.meveo_uuid = row.").append(NODE_ID).append("\n");
+
+    /**
+     * Merge the nodes given in the <code>rows</code> parameter
+     * Parameters : <br>
+     * - rows : list of maps with the unique fields (fieldKeys), the fields set on creation (fields), the fields set on update (updatableFields) and the uuid of
+     * the node if it is created (NODE_ID) <br>
+     */
+    public final static StringBuffer mergeCetBatchStatement = new StringBuffer("UNWIND $rows AS row \n")
+            .append("MERGE (n:${cetCode}${fieldKeys}) \n")
+            .append("ON CREATE SET n.meveo_uuid = row.").append(NODE_ID).append(", n += row.fields, n." + CREATION_DATE + " = timestamp()\n")
+            .append("ON MATCH SET n += row.updatableFields, n." + INTERNAL_UPDATE_DATE + " = timestamp() \n");
+
+    /**
+     * Create the nodes given in the <code>rows</code> parameter
+     * Parameters : <br>
+     * - rows : list of maps with the fields of the node (fields) and its uuid (NODE_ID) <br>
+     */
+    public final static StringBuffer createCetBatchStatement = new StringBuffer("UNWIND $rows AS row \n")
+            .append("CREATE (n:${cetCode}) \n")
+            .append("SET n = row.fields, n." + CREATION_DATE + " = timestamp(), n.meveo_uuid = row.").append(NODE_ID).append("\n");
+
     public final static StringBuffer mergeCetStatement = new StringBuffer("MERGE (n:${cetCode}${fieldKeys}) \n")
             .append("ON CREATE SET n.meveo_uuid = $").append(NODE_ID).append(", n += ${fields}, n." + CREATION_DATE + " = timestamp()\n")
             .append("ON MATCH SET n += ${updatableFields}, n." + INTERNAL_UPDATE_DATE + " = timestamp() \n");
@@ -62,10 +62,12 @@ import org.meveo.model.storage.Repository;
 import org.meveo.persistence.CrossStorageTransaction;
 import org.meveo.persistence.CustomPersistenceService;
 import org.meveo.persistence.PersistenceActionResult;
+import org.meveo.persistence.graphql.GraphQLQueryBuilder;
 import org.meveo.persistence.neo4j.base.Neo4jConnectionProvider;
 import org.meveo.persistence.neo4j.base.Neo4jDao;
 import org.meveo.persistence.neo4j.graph.Neo4jEntity;
 import org.meveo.persistence.neo4j.graph.Neo4jRelationship;
+import org.meveo.persistence.neo4j.helper.CypherQueryBuilder;
 import org.meveo.persistence.scheduler.EntityRef;
 import org.meveo.service.base.MeveoValueExpressionWrapper;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
@@ -396,6 +398,27 @@ public class Neo4jService implements CustomPersistenceService {
                     values = Collections.singletonList(referencedCetValue);
                 }
 
+                // Primitive values without unique constraints nor pre-persist script are merged all at once
+                if (entityReference.getStorageType().equals(CustomFieldStorageTypeEnum.LIST)
+                        && referencedCet.getNeo4JStorageConfiguration() != null
+                        && referencedCet.getNeo4JStorageConfiguration().isPrimitiveEntity()
+                        && referencedCet.getNeo4JStorageConfiguration().getUniqueConstraints().isEmpty()
+                        && referencedCet.getPrePersistScript() == null) {
+
+                    List<Map<String, Object>> valueMaps = values.stream()
+                            .map(value -> Collections.singletonMap("value", value))
+                            .collect(Collectors.toList());
+
+                    List<String> createdNodeIds = neo4jDao.mergeNodes(neo4JConfiguration, referencedCetCode, List.of("value"), valueMaps, List.of("value"), getAdditionalLabels(referencedCet));
+                    ((List<Object>) fields.get(entityReference.getCode())).addAll(values);
+
+                    String relationshipName = getRelationshipName(entityReference);
+                    for (String createdNodeId : createdNodeIds) {
+                        relationshipsToCreate.put(new EntityRef(createdNodeId, referencedCet.getCode()), relationshipName);
+                    }
+                    continue;
+                }
+
                 for (Object value : values) {
                     Set<EntityRef> relatedPersistedEntities = new HashSet<>();
                     if (referencedCet.getNeo4JStorageConfiguration() != null && referencedCet.getNeo4JStorageConfiguration().isPrimitiveEntity()) {
@@ -450,13 +473,7 @@ public class Neo4jService implements CustomPersistenceService {
                     }
 
                     if (relatedPersistedEntities != null) {
-                        String relationshipName = Optional.ofNullable(entityReference.getRelationshipName())
-                        		.orElseGet(() -> entityReference.getRelationship() != null ? entityReference.getRelationship().getName() : null);
-                        
-                        if(relationshipName == null) {
-                        	throw new BusinessException(entityReference.getAppliesTo() + "#" + entityReference.getCode() + ": Relationship name must be provided !");
-                        }
-                        
+                        String relationshipName = getRelationshipName(entityReference);
                         for (EntityRef entityRef : relatedPersistedEntities) {
                             relationshipsToCreate.put(entityRef, relationshipName);
                         }
@@ -568,7 +585,8 @@ public class Neo4jService implements CustomPersistenceService {
                 }
             }
 
-            /* Create relationships collected in the relationshipsToCreate map */
+            /* Create relationships collected in the relationshipsToCreate map, grouped by start label, type and end label */
+            Map<List<String>, List<Entry<String, String>>> relationshipsByType = new HashMap<>();
             for (EntityRef entityRef : persistedEntities) {
                 if (!entityRef.isTrusted()) {
                     continue;
@@ -580,17 +598,23 @@ public class Neo4jService implements CustomPersistenceService {
                         continue;
                     }
 
-                    String relationshipType = relationshipsEntry.getValue();
-                    final Map<String, Object> values = Collections.emptyMap();
-                    neo4jDao.createRelationBetweenNodes(
-                            neo4JConfiguration,
-                            entityRef.getUuid(), entityRef.getLabel(),
-                            relationshipType, relatedEntityRef.getUuid(),
-                            relatedEntityRef.getLabel(),
-                            values
-                    );
+                    List<String> relationshipType = List.of(entityRef.getLabel(), relationshipsEntry.getValue(), relatedEntityRef.getLabel());
+                    relationshipsByType.computeIfAbsent(relationshipType, k -> new ArrayList<>())
+                            .add(new AbstractMap.SimpleEntry<>(entityRef.getUuid(), relatedEntityRef.getUuid()));
                 }
             }
+
+            for (Entry<List<String>, List<Entry<String, String>>> relationships : relationshipsByType.entrySet()) {
+                List<String> relationshipType = relationships.getKey();
+                neo4jDao.createRelationsBetweenNodes(
+                        neo4JConfiguration,
+                        relationshipType.get(0),
+                        relationshipType.get(1),
+                        relationshipType.get(2),
+                        relationships.getValue(),
+                        Collections.emptyMap()
+                );
+            }
             
         } catch (BusinessException e) {
             log.error("addCetNode cet={}, errorMsg={}", cet, e.getMessage(), e);
@@ -602,6 +626,22 @@ public class Neo4jService implements CustomPersistenceService {
         return new PersistenceActionResult(persistedEntities, nodeUuid);
     }
 
+	/**
+	 * @param entityReference Entity reference field
+	 * @return the name of the relationship to create between the node and the referenced nodes
+	 * @throws BusinessException if the entity reference defines no relationship name
+	 */
+	private String getRelationshipName(CustomFieldTemplate entityReference) throws BusinessException {
+		String relationshipName = Optional.ofNullable(entityReference.getRelationshipName())
+				.orElseGet(() -> entityReference.getRelationship() != null ? entityReference.getRelationship().getName() : null);
+
+		if(relationshipName == null) {
+			throw new BusinessException(entityReference.getAppliesTo() + "#" + entityReference.getCode() + ": Relationship name must be provided !");
+		}
+
+		return relationshipName;
+	}
+
 	/**
 	 * @param neo4JConfiguration
 	 * @param cet
@@ -738,6 +778,41 @@ public class Neo4jService implements CustomPersistenceService {
         return null;
     }
 
+    /**
+     * Create or update relationships of the same template between several pairs of nodes. The relationship fields are validated once
+     * and the relationships are sent by batches.
+     *
+     * @param neo4JConfiguration Neo4J coordinates
+     * @param crtCode            Code of the CRT
+     * @param crtValues          Fields values of the relationships
+     * @param nodeIds            Uuids of the start and end node of each relationship
+     * @return the uuids of the relationships
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<String> addCRTByNodeIds(
+            String neo4JConfiguration,
+            String crtCode,
+            Map<String, Object> crtValues,
+            Collection<Entry<String, String>> nodeIds
+    ) throws BusinessException, ELException {
+
+        log.info("Persisting {} links with crtCode = {}", nodeIds.size(), crtCode);
+
+        /* Try to retrieve the associated CRT */
+        CustomRelationshipTemplate customRelationshipTemplate = customFieldsCache.getCustomRelationshipTemplate(crtCode);
+        if (customRelationshipTemplate == null) {
+            log.error("Can't find CRT with code {}", crtCode);
+            throw new ElementNotFoundException(crtCode, CustomRelationshipTemplate.class.getName());
+        }
+
+        /* Recuperation of the custom fields of the CRT */
+        Map<String, CustomFieldTemplate> crtCustomFields = customFieldTemplateService.findByAppliesTo(customRelationshipTemplate.getAppliesTo());
+        Map<String, Object> crtFields = validateAndConvertCustomFields(crtCustomFields, crtValues, null, true);
+
+        return saveCRT2Neo4jByNodeIds(neo4JConfiguration, customRelationshipTemplate, nodeIds, crtFields, false);
+    }
+
     /**
      * Save CRT to Neo4j
      *
@@ -812,8 +887,36 @@ public class Neo4jService implements CustomPersistenceService {
         return relationUuids;
     }
 
+    /**
+     * Save a relationship between two nodes, through the batch statement of
+     * {@link #saveCRT2Neo4jByNodeIds(String, CustomRelationshipTemplate, Collection, Map, boolean)}. <br>
+     * This is a plain method call, so the relationship is written in the Neo4j transaction of the caller, held by the cross storage transaction.
+     *
+     * @param neo4JConfiguration         Neo4J coordinates
+     * @param customRelationshipTemplate Template of the CRT
+     * @param startNodeId                Uuid of the start node
+     * @param endNodeId                  Uuid of the end node
+     * @param crtFields                  Fields values of the relationship
+     * @param isTemporaryCET             Whether the relationship is temporary
+     * @return the uuids of the relationship
+     */
     public List<String> saveCRT2Neo4jByNodeIds(String neo4JConfiguration, CustomRelationshipTemplate customRelationshipTemplate, String startNodeId,
                                        String endNodeId, Map<String, Object> crtFields, boolean isTemporaryCET) {
+        return saveCRT2Neo4jByNodeIds(neo4JConfiguration, customRelationshipTemplate, List.of(new AbstractMap.SimpleEntry<>(startNodeId, endNodeId)), crtFields, isTemporaryCET);
+    }
+
+    /**
+     * Batch version of {@link #saveCRT2Neo4jByNodeIds(String, CustomRelationshipTemplate, String, String, Map, boolean)}, sending the relationships by batches of {@link Neo4jDao#BATCH_SIZE}
+     *
+     * @param neo4JConfiguration         Neo4J coordinates
+     * @param customRelationshipTemplate Template of the CRT
+     * @param nodeIds                    Uuids of the start and end node of each relationship
+     * @param crtFields                  Fields values of the relationships
+     * @param isTemporaryCET             Whether the relationships are temporary
+     * @return the uuids of the relationships
+     */
+    public List<String> saveCRT2Neo4jByNodeIds(String neo4JConfiguration, CustomRelationshipTemplate customRelationshipTemplate, Collection<Entry<String, String>> nodeIds,
+                                       Map<String, Object> crtFields, boolean isTemporaryCET) {
 
         final String relationshipAlias = "relationship";    // Alias to use in query
 
@@ -824,23 +927,29 @@ public class Neo4jService implements CustomPersistenceService {
         valuesMap.put("startNode", customRelationshipTemplate.getStartNode().getCode());
         valuesMap.put("endNode", customRelationshipTemplate.getEndNode().getCode());
         valuesMap.put("relationType", customRelationshipTemplate.getName());
-        valuesMap.put("startNodeId", startNodeId);
-        valuesMap.put("endNodeId", endNodeId);
         valuesMap.put("updateDate", isTemporaryCET ? -1 : System.currentTimeMillis());
         final String fieldsString = neo4jDao.getFieldsString(crtFields.keySet());
         valuesMap.put(FIELDS, fieldsString);
         valuesMap.putAll(crtFields);
-        valuesMap.put(NODE_ID, UUID.randomUUID().toString());
+
+        List<Map<String, Object>> rows = new ArrayList<>(nodeIds.size());
+        for (Entry<String, String> nodeIdPair : nodeIds) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("startNodeId", nodeIdPair.getKey());
+            row.put("endNodeId", nodeIdPair.getValue());
+            row.put(NODE_ID, UUID.randomUUID().toString());
+            rows.add(row);
+        }
 
         // Build the statement
         StringBuffer statement;
 
         if (customRelationshipTemplate.isUnique()) {
-            statement = neo4jDao.appendReturnStatement(Neo4JRequests.uniqueCrtStatementByNodeIds, relationshipAlias, valuesMap);
+            statement = neo4jDao.appendReturnStatement(Neo4JRequests.uniqueCrtStatementByNodeIdsBatch, relationshipAlias, valuesMap);
         } else {
-            statement = neo4jDao.appendReturnStatement(Neo4JRequests.crtStatementByNodeIds, relationshipAlias, valuesMap);
+            statement = neo4jDao.appendReturnStatement(Neo4JRequests.crtStatementByNodeIdsBatch, relationshipAlias, valuesMap);
         }
-        
+
         StrSubstitutor sub = new StrSubstitutor(valuesMap);
         String resolvedStatement = sub.replace(statement);
 
@@ -850,19 +959,15 @@ public class Neo4jService implements CustomPersistenceService {
         List<Record> recordList = new ArrayList<>();
 
         try {
-            /* Execute query and parse result inside a relationship.
-            If relationship was created fire creation event, fire update event when updated. */
             LOGGER.info(resolvedStatement);
 
-            final StatementResult result = transaction.run(resolvedStatement, valuesMap);  // Execute query
-
-            // Fire notification for each relation created or updated
-            recordList = result.list();
+            // Execute query by batches
+            recordList = neo4jDao.runBatches(transaction, resolvedStatement, valuesMap, rows);
 
             transaction.success();  // Commit transaction
 
         } catch (Exception e) {
-            log.error("Failed to save relationship", e);
+            log.error("Failed to save {} relationships", rows.size(), e);
             transaction.failure();
         }
 
@@ -1314,6 +1419,14 @@ public class Neo4jService implements CustomPersistenceService {
         return addCRTByNodeIds(repository.getNeo4jConfiguration().getCode(), relationCode, relationValues, sourceUuid, targetUuid);
     }
 
+    @Override
+    public List<PersistenceActionResult> addCRTByUuids(Repository repository, String relationCode, Map<String, Object> relationValues, Collection<Entry<String, String>> uuids) throws ELException, BusinessException {
+        return addCRTByNodeIds(repository.getNeo4jConfiguration().getCode(), relationCode, relationValues, uuids)
+                .stream()
+                .map(PersistenceActionResult::new)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Merge all nodes properties and relationships onto the oldest node, and delete the other.
      *
@@ -1506,10 +1619,66 @@ public class Neo4jService implements CustomPersistenceService {
         }
     }
     
+    /**
+     * Convert the filters of a pagination to a Cypher query. <br>
+     * The same query is used to count and to search the nodes, so that both match the same records.
+     *
+     * @param cet                     Template of the nodes
+     * @param paginationConfiguration Pagination and filters
+     * @return the query, or null if a GraphQL query is given or if the filters can't be expressed in Cypher
+     */
+    public CypherQueryBuilder createQuery(CustomEntityTemplate cet, PaginationConfiguration paginationConfiguration) {
+		if (paginationConfiguration != null && paginationConfiguration.getGraphQlQuery() != null) {
+			return null;
+		}
+
+		CypherQueryBuilder query = CypherQueryBuilder.create(cet.getCode())
+				.filters(paginationConfiguration == null ? null : paginationConfiguration.getFilters());
+		return query.isSupported() ? query : null;
+    }
+
+    /**
+     * Find the uuids of the nodes matching the filters of a pagination, sorted on the requested field then on the uuid
+     *
+     * @param repository              Repository of the nodes
+     * @param cet                     Template of the nodes
+     * @param paginationConfiguration Pagination and filters
+     * @param paginate                Whether to only return the requested page
+     * @return the uuids of the matching nodes, or null if the filters can't be expressed in Cypher
+     */
+    public List<String> findUuids(Repository repository, CustomEntityTemplate cet, PaginationConfiguration paginationConfiguration, boolean paginate) {
+		CypherQueryBuilder query = createQuery(cet, paginationConfiguration);
+		if (query == null || repository.getNeo4jConfiguration() == null) {
+			return null;
+		}
+
+		Integer skip = null;
+		Integer limit = null;
+		if (paginationConfiguration != null) {
+			if (paginationConfiguration.isSorted()) {
+				query.orderBy(paginationConfiguration.getSortField(), paginationConfiguration.isAscendingSorting());
+			} else {
+				query.orderBy(null, true);
+			}
+			if (paginate) {
+				skip = paginationConfiguration.getFirstRow();
+				limit = paginationConfiguration.getNumberOfRows();
+			}
+		}
+
+		return neo4jDao.findUuids(repository.getNeo4jConfiguration().getCode(), query, skip, limit);
+    }
+
     public int count(Repository repository, CustomEntityTemplate cet, PaginationConfiguration paginationConfiguration) {
 		if(repository.getNeo4jConfiguration() == null) {
 			return 0;
 		}
+
+		// Count directly in Cypher when the filters can be converted
+		CypherQueryBuilder query = createQuery(cet, paginationConfiguration);
+		if (query != null) {
+			return (int) neo4jDao.count(repository.getNeo4jConfiguration().getCode(), query);
+		}
 	
 		String graphQlQuery;
 
@@ -1517,7 +1686,12 @@ public class Neo4jService implements CustomPersistenceService {
 		if (paginationConfiguration != null && paginationConfiguration.getGraphQlQuery() != null) {
 			graphQlQuery = paginationConfiguration.getGraphQlQuery();
 		} else {
-			graphQlQuery = "{ " + cet.getCode() + " { } }";
+			// Same filters as the ones applied by CrossStorageService#find when they can't be converted to Cypher
+			GraphQLQueryBuilder builder = GraphQLQueryBuilder.create(cet.getCode());
+			if (paginationConfiguration != null && paginationConfiguration.getFilters() != null) {
+				paginationConfiguration.getFilters().forEach(builder::filter);
+			}
+			graphQlQuery = builder.toString();
 		}
 
 		graphQlQuery = graphQlQuery.replaceAll("([\\w)]\\s*\\{)(\\s*\\w*)", "$1meveo_uuid,$2");
@@ -1526,7 +1700,13 @@ public class Neo4jService implements CustomPersistenceService {
 		if(result == null) {
 			return 0;
 		}
-		return result.size();
+
+		// The result holds the list of matching nodes under the name of the queried type
+		return result.values()
+				.stream()
+				.filter(Collection.class::isInstance)
+				.mapToInt(nodes -> ((Collection<?>) nodes).size())
+				.sum();
     }
 
     private Object setExpressionField(Map<String, Object> fieldValues, CustomFieldTemplate cft, Map<String, Object> convertedFields) throws ELException {
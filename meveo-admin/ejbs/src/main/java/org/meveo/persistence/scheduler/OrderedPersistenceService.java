@@ -17,27 +17,40 @@
 package org.meveo.persistence.scheduler;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.ejb.AsyncResult;
 import javax.inject.Inject;
 
+import org.meveo.admin.async.OrderedPersistenceAsync;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.api.exception.BusinessApiException;
 import org.meveo.api.exception.EntityDoesNotExistsException;
 import org.meveo.cache.CustomFieldsCacheContainerProvider;
+import org.meveo.commons.utils.ParamBean;
 import org.meveo.elresolver.ELException;
 import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.storage.Repository;
 import org.meveo.persistence.CrossStorageTransaction;
 import org.meveo.persistence.CustomPersistenceService;
 import org.meveo.persistence.PersistenceActionResult;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
 import org.meveo.service.crm.impl.CustomFieldInstanceService;
 import org.meveo.service.storage.RepositoryService;
 
+import com.google.common.collect.Lists;
+
 /**
  * @author Edward P. Legaspi <czetsuya@gmail.com>
  * @lastModifiedVersion 6.4.0
@@ -56,6 +69,19 @@ public abstract class OrderedPersistenceService<T extends CustomPersistenceServi
     
 	@Inject
 	private CrossStorageTransaction crossStorageTx;
+
+    @Inject
+    private OrderedPersistenceAsync orderedPersistenceAsync;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    /** Maximum number of items persisted in a single transaction */
+    private static final int CHUNK_SIZE = Integer.parseInt(ParamBean.getInstance().getProperty("persistence.chunkSize", "100"));
+
+    /** Maximum number of chunks persisted at the same time */
+    private static final int PARALLELISM = Integer.parseInt(ParamBean.getInstance().getProperty("persistence.parallelism", "4"));
     
     private T storageService;
 
@@ -67,7 +93,10 @@ public abstract class OrderedPersistenceService<T extends CustomPersistenceServi
     protected abstract T getStorageService();
 
     /**
-     * Iterate over the persistence schedule and persist the provided entities
+     * Iterate over the persistence schedule and persist the provided entities. <br>
+     * The sets of the schedule are persisted one after another, so the relations are always persisted after their nodes. The items of a set are
+     * grouped by type and template, then split in chunks of <code>persistence.chunkSize</code> items, each chunk being persisted in a single
+     * transaction. The chunks of entities are persisted concurrently, at most <code>persistence.parallelism</code> at a time.
      *
      * @param repositoryCode Repository coordinates
      * @param atomicPersistencePlan The schedule to follow
@@ -82,98 +111,206 @@ public abstract class OrderedPersistenceService<T extends CustomPersistenceServi
         List<PersistedItem> persistedItems = new ArrayList<>();
 
         Repository repository = repositoryService.findByCode(repositoryCode);
+        MeveoUser lastCurrentUser = currentUser.unProxy();
 
         while (iterator.hasNext()) {
 
-            for (ItemToPersist itemToPersist : iterator.next()) {
-            	
-            	crossStorageTx.beginTransaction(repository);
+            List<List<ItemToPersist>> chunks = split(iterator.next());
+            List<Future<List<PersistedItem>>> futures = new ArrayList<>();
+            List<Future<List<PersistedItem>>> runningFutures = new ArrayList<>();
 
-                PersistenceActionResult result;
+            for (List<ItemToPersist> chunk : chunks) {
+                if (PARALLELISM <= 1 || chunks.size() == 1 || !isParallelizable(chunk)) {
+                    futures.add(new AsyncResult<>(persistChunk(repository, chunk, context)));
+                    continue;
+                }
 
-                if (itemToPersist instanceof SourceEntityToPersist) {
+                /* Don't have more than the allowed number of chunks being persisted at the same time */
+                if (runningFutures.size() >= PARALLELISM) {
+                    getResult(runningFutures.get(runningFutures.size() - PARALLELISM));
+                }
 
-                    /* Node is a source node */
-                    final SourceEntityToPersist sourceNode = (SourceEntityToPersist) itemToPersist;
-                    result = storageService.addSourceEntityUniqueCrt(
-                    	  repository,
-                          sourceNode.getRelationToPersist().getCode(),
-                          sourceNode.getValues(),
-                          sourceNode.getRelationToPersist().getEndEntityToPersist().getValues()
-                    );
+                Future<List<PersistedItem>> future;
+                try {
+                    future = orderedPersistenceAsync.execute(() -> persistChunk(repository, chunk, context), lastCurrentUser);
+                } catch (Exception e) {
+                    throw new BusinessException(e);
+                }
+                futures.add(future);
+                runningFutures.add(future);
+            }
+
+            /* Wait for the whole set to be persisted before persisting the next one */
+            for (Future<List<PersistedItem>> future : futures) {
+                persistedItems.addAll(getResult(future));
+            }
+        }
+
+        return persistedItems;
+    }
 
-                } else if (itemToPersist instanceof EntityToPersist) {
+    /**
+     * Group the items of a set by type and template, and split the groups in chunks
+     */
+    static List<List<ItemToPersist>> split(Set<ItemToPersist> items) {
+        Map<List<Object>, List<ItemToPersist>> groups = items.stream()
+                .collect(Collectors.groupingBy(item -> List.of(item.getClass(), item.getCode()), LinkedHashMap::new, Collectors.toList()));
 
-                    /* Node is target or leaf node */
-                    final EntityToPersist entityToPersist = (EntityToPersist) itemToPersist;
-                    
-                    CustomEntityInstance cei = new CustomEntityInstance();
-                    cei.setCode((String) entityToPersist.getValues().get("code"));
-                    cei.setCetCode(entityToPersist.getCode());
-                    cei.setCet(cacheContainerProvider.getCustomEntityTemplate(cei.getCetCode()));
-                    customFieldInstanceService.setCfValues(cei, entityToPersist.getCode(), itemToPersist.getValues());
+        List<List<ItemToPersist>> chunks = new ArrayList<>();
+        groups.values().forEach(group -> chunks.addAll(Lists.partition(group, CHUNK_SIZE)));
+        return chunks;
+    }
 
-                    result = storageService.createOrUpdate(repository, cei);
-                    Set<EntityRef> persistedEntities = result.getPersistedEntities();
-                    context.putNodeReferences(entityToPersist.getName(), persistedEntities);
+    /**
+     * Relations are not persisted concurrently, as concurrent transactions linking the same nodes would lock each other.
+     * Neither are the source entities, as they are persisted along with their unique relation.
+     */
+    static boolean isParallelizable(List<ItemToPersist> chunk) {
+        ItemToPersist item = chunk.get(0);
+        return item instanceof EntityToPersist && !(item instanceof SourceEntityToPersist);
+    }
 
-                } else {
+    private static List<PersistedItem> getResult(Future<List<PersistedItem>> future) throws BusinessException, ELException, IOException, BusinessApiException, EntityDoesNotExistsException {
+        try {
+            return future.get();
 
-                    /* Item is a relation */
-                    final RelationToPersist relationToPersist = (RelationToPersist) itemToPersist;
-                    result = storageService.addCRTByValues(
-                    		repository,
-                            relationToPersist.getCode(),
-                            relationToPersist.getValues(),
-                            relationToPersist.getStartEntityToPersist().getValues(),
-                            relationToPersist.getEndEntityToPersist().getValues()
-                    );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BusinessException) {
+                throw (BusinessException) cause;
+            } else if (cause instanceof ELException) {
+                throw (ELException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof BusinessApiException) {
+                throw (BusinessApiException) cause;
+            } else if (cause instanceof EntityDoesNotExistsException) {
+                throw (EntityDoesNotExistsException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BusinessException(cause);
+        }
+    }
+
+    /**
+     * Persist a chunk of items in a single transaction
+     *
+     * @param repository Repository where to persist the items
+     * @param chunk Items to persist
+     * @param context Persisted nodes references
+     * @return the persisted items
+     */
+    private List<PersistedItem> persistChunk(Repository repository, List<ItemToPersist> chunk, SchedulerPersistenceContext context) throws BusinessException, ELException, IOException, BusinessApiException, EntityDoesNotExistsException {
+        List<PersistedItem> persistedItems = new ArrayList<>();
+
+        crossStorageTx.beginTransaction(repository);
+
+        try {
+            for (ItemToPersist itemToPersist : chunk) {
+                PersistenceActionResult result = persistItem(repository, itemToPersist, context);
+
+                if(result != null) {
+                    persistedItems.add(new PersistedItem(itemToPersist, result.getBaseEntityUuid()));
+                }
+            }
+
+        } catch (BusinessException | ELException | IOException | BusinessApiException | EntityDoesNotExistsException | RuntimeException e) {
+            crossStorageTx.rollbackTransaction(e);
+            throw e;
+        }
+
+        crossStorageTx.commitTransaction(repository);
+
+        return persistedItems;
+    }
+
+    private PersistenceActionResult persistItem(Repository repository, ItemToPersist itemToPersist, SchedulerPersistenceContext context) throws BusinessException, ELException, IOException, BusinessApiException, EntityDoesNotExistsException {
+
+        PersistenceActionResult result;
+
+        if (itemToPersist instanceof SourceEntityToPersist) {
 
-                    Set<EntityRef> startPersistedEntities = context.getNodeReferences(relationToPersist.getStartEntityToPersist().getName());
-                    Set<EntityRef> endPersistedEntities = context.getNodeReferences(relationToPersist.getEndEntityToPersist().getName());
-                    if (startPersistedEntities.isEmpty() || endPersistedEntities.isEmpty()) {
-                        // TODO: Make possible to have one node found by its id
-                        result = storageService.addCRTByValues(
-                              repository,
-                              relationToPersist.getCode(),
-                              relationToPersist.getValues(),
-                              relationToPersist.getStartEntityToPersist().getValues(),
-                              relationToPersist.getEndEntityToPersist().getValues()
-                        );
-                    } else {
-                        for (EntityRef startEntityRef : startPersistedEntities) {
-                            if (!startEntityRef.isTrusted()) {
-                                continue;
-                            }
-
-                            for (EntityRef endEntityRef : endPersistedEntities) {
-                                if (!endEntityRef.isTrusted()) {
-                                    continue;
-                                }
-
-                                result = storageService.addCRTByUuids(
-                                	  repository,
-                                      relationToPersist.getCode(),
-                                      relationToPersist.getValues(),
-                                      startEntityRef.getUuid(),
-                                      endEntityRef.getUuid()
-                                );
-                            }
+            /* Node is a source node */
+            final SourceEntityToPersist sourceNode = (SourceEntityToPersist) itemToPersist;
+            result = storageService.addSourceEntityUniqueCrt(
+            	  repository,
+                  sourceNode.getRelationToPersist().getCode(),
+                  sourceNode.getValues(),
+                  sourceNode.getRelationToPersist().getEndEntityToPersist().getValues()
+            );
+
+        } else if (itemToPersist instanceof EntityToPersist) {
+
+            /* Node is target or leaf node */
+            final EntityToPersist entityToPersist = (EntityToPersist) itemToPersist;
+            
+            CustomEntityInstance cei = new CustomEntityInstance();
+            cei.setCode((String) entityToPersist.getValues().get("code"));
+            cei.setCetCode(entityToPersist.getCode());
+            cei.setCet(cacheContainerProvider.getCustomEntityTemplate(cei.getCetCode()));
+            customFieldInstanceService.setCfValues(cei, entityToPersist.getCode(), itemToPersist.getValues());
+
+            result = storageService.createOrUpdate(repository, cei);
+            Set<EntityRef> persistedEntities = result.getPersistedEntities();
+            context.putNodeReferences(entityToPersist.getName(), persistedEntities);
+
+        } else {
+
+            /* Item is a relation */
+            final RelationToPersist relationToPersist = (RelationToPersist) itemToPersist;
+            result = storageService.addCRTByValues(
+            		repository,
+                    relationToPersist.getCode(),
+                    relationToPersist.getValues(),
+                    relationToPersist.getStartEntityToPersist().getValues(),
+                    relationToPersist.getEndEntityToPersist().getValues()
+            );
+
+            Set<EntityRef> startPersistedEntities = context.getNodeReferences(relationToPersist.getStartEntityToPersist().getName());
+            Set<EntityRef> endPersistedEntities = context.getNodeReferences(relationToPersist.getEndEntityToPersist().getName());
+            if (startPersistedEntities.isEmpty() || endPersistedEntities.isEmpty()) {
+                // TODO: Make possible to have one node found by its id
+                result = storageService.addCRTByValues(
+                      repository,
+                      relationToPersist.getCode(),
+                      relationToPersist.getValues(),
+                      relationToPersist.getStartEntityToPersist().getValues(),
+                      relationToPersist.getEndEntityToPersist().getValues()
+                );
+            } else {
+                List<Map.Entry<String, String>> uuids = new ArrayList<>();
+                for (EntityRef startEntityRef : startPersistedEntities) {
+                    if (!startEntityRef.isTrusted()) {
+                        continue;
+                    }
+
+                    for (EntityRef endEntityRef : endPersistedEntities) {
+                        if (!endEntityRef.isTrusted()) {
+                            continue;
                         }
+
+                        uuids.add(new AbstractMap.SimpleEntry<>(startEntityRef.getUuid(), endEntityRef.getUuid()));
                     }
                 }
-                
-                crossStorageTx.commitTransaction(repository);
-                
-                if(result != null) {
-                	persistedItems.add(new PersistedItem(itemToPersist, result.getBaseEntityUuid()));
-                } else {
-                	//LOGGER.warn("No persistence result from {}", itemToPersist);
+
+                // Persist all the relations at once
+                if (!uuids.isEmpty()) {
+                    List<PersistenceActionResult> results = storageService.addCRTByUuids(
+                            repository,
+                            relationToPersist.getCode(),
+                            relationToPersist.getValues(),
+                            uuids
+                    );
+                    result = results.isEmpty() ? null : results.get(results.size() - 1);
                 }
             }
-            
         }
 
-        return persistedItems;
+        return result;
     }
 }
@@ -21,8 +21,6 @@ import org.meveo.interfaces.EntityOrRelation;
 import org.meveo.interfaces.EntityRelation;
 import org.meveo.service.custom.CustomRelationshipTemplateService;
 
-import com.google.common.collect.Lists;
-
 import javax.inject.Inject;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,6 +35,12 @@ public class SchedulingService {
     }
 
     /**
+     * Build the persistence schedule of a graph of entities and relations. <br>
+     * Entities that are not part of a unique relation are persisted first, along with the targets of unique relations that are not sources.
+     * Then, level after level, the sources of the unique relations whose target was scheduled are persisted, followed by the relations
+     * themselves. Non unique relations are persisted at the end. <br>
+     * The unique relations are indexed by target once, so each relation is only visited when its target is scheduled.
+     *
      * @param entityOrRelations Relations and entities to persist. Collection will be modified - must not be final.
      * @return The persistence schedule built
      */
@@ -44,15 +48,40 @@ public class SchedulingService {
 
         AtomicPersistencePlan atomicPersistencePlan = new AtomicPersistencePlan();
 
-        /* Extract leafs, add them to the leaf nodes and remove them from the initial list */
-        final Set<Entity> leafs = getLeafs(entityOrRelations);
+        /* Index the unique relations by target, keeping their submission order */
+        final List<EntityRelation> uniqueRelations = new ArrayList<>();
+        final Map<Entity, List<Integer>> uniqueRelationsByTarget = new IdentityHashMap<>();
+        final Set<Entity> sources = newIdentitySet();
+
+        for (EntityOrRelation entityOrRelation : entityOrRelations) {
+            if (entityOrRelation instanceof EntityRelation && customRelationshipTemplateService.isUnique(entityOrRelation.getType())) {
+                EntityRelation relation = (EntityRelation) entityOrRelation;
+                uniqueRelationsByTarget.computeIfAbsent(relation.getTarget(), target -> new ArrayList<>()).add(uniqueRelations.size());
+                uniqueRelations.add(relation);
+                sources.add(relation.getSource());
+            }
+        }
+
+        /* Entities and relations that are scheduled, to be removed from the initial collection */
+        final Set<Entity> scheduledEntities = newIdentitySet();
+        final Set<EntityRelation> scheduledRelations = newIdentitySet();
+
+        /* Extract leafs and add them to the leaf nodes */
+        final Set<Entity> leafs = entityOrRelations.stream()
+                .filter(Entity.class::isInstance)
+                .map(Entity.class::cast)
+                .filter(entity -> !sources.contains(entity) && !uniqueRelationsByTarget.containsKey(entity))
+                .collect(Collectors.toSet());
         final Set<ItemToPersist> leafNodes = leafs.stream()
                 .map(SchedulingService::entityToNode)
                 .collect(Collectors.toSet());
-        entityOrRelations.removeAll(leafs);
+        scheduledEntities.addAll(leafs);
 
         /* Extract targets that are not source and add them to the leaf nodes*/
-        Set<Entity> targetsNoSources = getTargetsNoSources(entityOrRelations);
+        Set<Entity> targetsNoSources = uniqueRelations.stream()
+                .map(EntityRelation::getTarget)
+                .filter(entity -> !sources.contains(entity))
+                .collect(Collectors.toSet());
         final Set<ItemToPersist> targetsNoSourcesNodes = targetsNoSources.stream()
                 .map(SchedulingService::entityToNode)
                 .collect(Collectors.toSet());
@@ -60,35 +89,36 @@ public class SchedulingService {
         /* Initial targets only are considered as leafs */
         leafNodes.addAll(targetsNoSourcesNodes);
         
-        /* To improve performance by having smaller transactions, split leaf nodes in chunks */
-        List<List<ItemToPersist>> chunks = Lists.partition(List.copyOf(leafNodes), 1);
-        chunks.forEach(chunk -> atomicPersistencePlan.addEntities(Set.copyOf(chunk)));
+        /* Leaf nodes are independent from each other : the OrderedPersistenceService splits them in chunks persisted concurrently */
+        atomicPersistencePlan.addEntities(leafNodes);
 
         /* Enforce unity on node name name */
         final Comparator<ItemToPersist> codeComparator = Comparator.comparing(ItemToPersist::getName);
 
         /* Iterate over source nodes until there is no one left */
         while (!targetsNoSources.isEmpty()) {
-            entityOrRelations.removeAll(targetsNoSources);
-            final List<EntityRelation> relationsWithTargetsOnly = getRelationsWithTargetsOnly(entityOrRelations, targetsNoSources);
+            scheduledEntities.addAll(targetsNoSources);
+            final List<EntityRelation> relationsWithTargetsOnly = getRelationsWithTargetsOnly(uniqueRelations, uniqueRelationsByTarget, targetsNoSources);
+
+            /* Relations are converted once, as they are also referenced by their source nodes */
+            final List<RelationToPersist> relationsToPersist = relationsWithTargetsOnly.stream()
+                    .map(SchedulingService::entityRelationToRelation)
+                    .collect(Collectors.toList());
 
             /* Extract source nodes */
-            Set<ItemToPersist> sourceNodeSet = relationsWithTargetsOnly
-                    .stream()
-                    .map(entityRelation -> {
-                        RelationToPersist r = entityRelationToRelation(entityRelation);
-                        Entity source = entityRelation.getSource();
-                        return new SourceEntityToPersist(source.getType(), source.getCompoundName(), source.getProperties(), r);
-                    }).collect(Collectors.toCollection(() -> new TreeSet<>(codeComparator)));
+            Set<ItemToPersist> sourceNodeSet = new TreeSet<>(codeComparator);
+            for (int i = 0; i < relationsWithTargetsOnly.size(); i++) {
+                Entity source = relationsWithTargetsOnly.get(i).getSource();
+                sourceNodeSet.add(new SourceEntityToPersist(source.getType(), source.getCompoundName(), source.getProperties(), relationsToPersist.get(i)));
+            }
 
             atomicPersistencePlan.addEntities(sourceNodeSet);
 
             /* Persist unique relationships right after their targets */
-            Set<ItemToPersist> relationsWithTargetsOnlyToPersist = relationsWithTargetsOnly.stream()
-                    .map(SchedulingService::entityRelationToRelation)
+            Set<ItemToPersist> relationsWithTargetsOnlyToPersist = relationsToPersist.stream()
                     .collect(Collectors.toSet());
             atomicPersistencePlan.addEntities(relationsWithTargetsOnlyToPersist);
-            entityOrRelations.removeAll(relationsWithTargetsOnly);
+            scheduledRelations.addAll(relationsWithTargetsOnly);
 
             /* Update the targetsNoSources */
             targetsNoSources = relationsWithTargetsOnly.stream()
@@ -100,6 +130,7 @@ public class SchedulingService {
         Set<EntityRelation> remainingRels = entityOrRelations.stream()
                 .filter(EntityRelation.class::isInstance)
                 .map(EntityRelation.class::cast)
+                .filter(relation -> !scheduledRelations.contains(relation))
                 .collect(Collectors.toSet());
 
         final Set<ItemToPersist> relations = remainingRels.stream()
@@ -107,7 +138,9 @@ public class SchedulingService {
                 .collect(Collectors.toSet());
 
         atomicPersistencePlan.addEntities(relations);
-        entityOrRelations.removeAll(remainingRels);
+
+        /* Remove the scheduled items from the initial collection, all the relations being scheduled at this point */
+        entityOrRelations.removeIf(entityOrRelation -> entityOrRelation instanceof EntityRelation || scheduledEntities.contains(entityOrRelation));
 
         /* If there is entities left, throw an exception, it probably had a cyclic dependency between some nodes */
         if(!entityOrRelations.isEmpty()){
@@ -125,45 +158,24 @@ public class SchedulingService {
         return new RelationToPersist(e.getType(), e.getCompoundName(), e.getProperties(), entityToNode(e.getSource()), entityToNode(e.getTarget()));
     }
 
-    private List<EntityRelation> getRelationsWithTargetsOnly(Collection<EntityOrRelation> entityOrRelations, Set<Entity> targetsNoSources) {
-        return getUniqueRelations(entityOrRelations)
-                .stream()
-                .filter(relation -> targetsNoSources.contains(relation.getTarget()))
-                .collect(Collectors.toList());
-    }
-
-    private Set<Entity> getTargetsNoSources(Collection<EntityOrRelation> entityOrRelations) {
-        List<Entity> sources = getUniqueRelations(entityOrRelations).stream()
-                .map(EntityRelation::getSource)
-                .collect(Collectors.toList());
-        List<Entity> targets = getUniqueRelations(entityOrRelations).stream()
-                .map(EntityRelation::getTarget)
-                .collect(Collectors.toList());
-        return targets.stream()
-                .filter(entity -> !sources.contains(entity))
-                .collect(Collectors.toSet());
-    }
-
-    private Set<Entity> getLeafs(Collection<EntityOrRelation> entityOrRelations) {
-        List<Entity> sources = getUniqueRelations(entityOrRelations).stream()
-                .map(EntityRelation::getSource)
-                .collect(Collectors.toList());
-        List<Entity> targets = getUniqueRelations(entityOrRelations).stream()
-                .map(EntityRelation::getTarget)
+    /**
+     * Retrieve the unique relations pointing to the given targets, in their submission order. The relations are removed from the index.
+     */
+    private static List<EntityRelation> getRelationsWithTargetsOnly(List<EntityRelation> uniqueRelations, Map<Entity, List<Integer>> uniqueRelationsByTarget, Set<Entity> targetsNoSources) {
+        return targetsNoSources.stream()
+                .map(uniqueRelationsByTarget::remove)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .sorted()
+                .map(uniqueRelations::get)
                 .collect(Collectors.toList());
-        return entityOrRelations.stream()
-                .filter(Entity.class::isInstance)
-                .map(Entity.class::cast)
-                .filter(entity -> !sources.contains(entity) && !targets.contains(entity))
-                .collect(Collectors.toSet());
     }
 
-    private List<EntityRelation> getUniqueRelations(Collection<EntityOrRelation> entityOrRelations) {
-        return entityOrRelations.stream()
-                .filter(EntityRelation.class::isInstance)
-                .map(EntityRelation.class::cast)
-                .filter(relation -> customRelationshipTemplateService.isUnique(relation.getType()))
-                .collect(Collectors.toList());
+    /**
+     * {@link EntityOrRelation} doesn't override {@link Object#equals(Object)}, so entities and relations are compared by identity
+     */
+    private static <E extends EntityOrRelation> Set<E> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.persistence.sql;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.meveo.model.persistence.JacksonUtil;
+
+/**
+ * Encodes rows in the text format of the PostgreSQL <code>COPY ... FROM STDIN</code> command : one line per row, columns separated by tabs and null values written as
+ * <code>\N</code>.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public final class CopyRowEncoder {
+
+	private static final String NULL = "\\N";
+
+	private CopyRowEncoder() {
+
+	}
+
+	/**
+	 * Append a row, terminated by a line feed, to a buffer
+	 *
+	 * @param buffer buffer to append the row to
+	 * @param values values of the row, in the order of the copied columns
+	 */
+	public static void appendRow(StringBuilder buffer, List<Object> values) {
+		boolean first = true;
+		for (Object value : values) {
+			if (!first) {
+				buffer.append('\t');
+			}
+			appendValue(buffer, value);
+			first = false;
+		}
+		buffer.append('\n');
+	}
+
+	/**
+	 * Append a single value to a buffer
+	 *
+	 * @param buffer buffer to append the value to
+	 * @param value  value to append
+	 */
+	public static void appendValue(StringBuilder buffer, Object value) {
+		if (value == null) {
+			buffer.append(NULL);
+			return;
+		}
+
+		String text;
+		if (value instanceof Map || value instanceof Collection) {
+			text = JacksonUtil.toString(value);
+		} else if (value instanceof File) {
+			text = ((File) value).getAbsolutePath();
+		} else if (value instanceof Date) {
+			text = new Timestamp(((Date) value).getTime()).toString();
+		} else if (value instanceof Instant) {
+			text = Timestamp.from((Instant) value).toString();
+		} else if (value instanceof Boolean) {
+			// Accepted by both boolean and integer columns, booleans being stored as integers in custom tables
+			text = ((Boolean) value) ? "1" : "0";
+		} else {
+			text = value.toString();
+		}
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			default:
+				buffer.append(c);
+			}
+		}
+	}
+
+}
@@ -18,6 +18,7 @@ package org.meveo.service.base;
 import java.io.File;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -34,6 +35,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +43,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -86,7 +89,9 @@ import org.meveo.model.persistence.sql.SQLStorageConfiguration;
 import org.meveo.model.shared.DateUtils;
 import org.meveo.model.sql.SqlConfiguration;
 import org.meveo.model.transformer.AliasToEntityOrderedMapResultTransformer;
+import org.meveo.model.typereferences.GenericTypeReferences;
 import org.meveo.persistence.CrossStorageTransaction;
+import org.meveo.persistence.sql.CopyRowEncoder;
 import org.meveo.persistence.sql.SQLConnectionProvider;
 import org.meveo.persistence.sql.SqlConfigurationService;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
@@ -94,6 +99,8 @@ import org.meveo.service.custom.CustomEntityTemplateService;
 import org.meveo.service.custom.CustomTableService;
 import org.meveo.service.custom.PostgresReserverdKeywords;
 import org.meveo.util.MeveoParamBean;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 /**
  * Generic implementation that provides the default implementation for
@@ -125,6 +132,26 @@ public class NativePersistenceService extends BaseService {
 	 */
 	public static String FIELD_DISABLED = "disabled";
 
+	/**
+	 * Temporary table where the rows are copied before being inserted by {@link #bulkInsert}
+	 */
+	private static final String BULK_STAGING_TABLE = "meveo_bulk_staging";
+
+	/**
+	 * Temporary table used to resolve the entity references of the staged rows
+	 */
+	private static final String BULK_REFERENCES_TABLE = "meveo_bulk_references";
+
+	/**
+	 * Size of the buffer sent at once to the COPY command
+	 */
+	private static final int BULK_COPY_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of rows sent at once by {@link #batchInsert}
+	 */
+	private static final int BULK_INSERT_BATCH_SIZE = 500;
+
 	@Inject
 	@MeveoJpa
 	private EntityManagerWrapper emWrapper;
@@ -252,6 +279,66 @@ public class NativePersistenceService extends BaseService {
 		}
 	}
 
+	/**
+	 * Find several records by their identifiers using a single query
+	 *
+	 * @param sqlConnectionCode Datasource to query
+	 * @param tableName         Table name
+	 * @param uuids             Identifiers
+	 * @param selectFields      Fields to return, all fields if null
+	 * @return the values of the found records, indexed by uuid
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Map<String, Object>> findByIds(String sqlConnectionCode, String tableName, Collection<String> uuids, List<String> selectFields) {
+		Map<String, Map<String, Object>> valuesById = new HashMap<>();
+		if (uuids == null || uuids.isEmpty()) {
+			return valuesById;
+		}
+
+		try {
+			if (PostgresReserverdKeywords.isReserved(tableName)) {
+				tableName = "\"" + tableName + "\"";
+			}
+
+			Session session = crossStorageTransaction.getHibernateSession(sqlConnectionCode);
+
+			StringBuilder selectQuery = new StringBuilder();
+
+			selectQuery.append("SELECT ");
+
+			if (selectFields == null) {
+				selectQuery.append("*");
+			} else {
+				// Always select the uuid so the rows can be matched to their identifiers
+				selectQuery.append("uuid");
+				for (String field : selectFields) {
+					if (FIELD_ID.equals(field)) {
+						continue;
+					}
+					if (PostgresReserverdKeywords.isReserved(field)) {
+						field = "\"" + field.toLowerCase() + "\"";
+					}
+					selectQuery.append(", ").append(field);
+				}
+			}
+
+			NativeQuery query = session.createSQLQuery(selectQuery + " FROM {h-schema}" + tableName + " e WHERE uuid IN (:uuids)");
+			query.setParameterList("uuids", uuids);
+			query.setResultTransformer(AliasToEntityOrderedMapResultTransformer.INSTANCE);
+
+			List<Map<String, Object>> rows = query.list();
+			for (Map<String, Object> row : rows) {
+				valuesById.put((String) row.get(FIELD_ID), row);
+			}
+
+			return valuesById;
+
+		} catch (Exception e) {
+			log.error("Failed to retrieve values from table by uuids {}/{}", tableName, uuids, e);
+			throw e;
+		}
+	}
+
 	private void setSchema(String sqlConnectionCode, Connection connection) {
 		String schema = sqlConfigurationService.getSchema(sqlConnectionCode);		
 		if(!StringUtils.isBlank(schema)) {
@@ -696,6 +783,337 @@ public class NativePersistenceService extends BaseService {
 		});
 	}
 
+	/**
+	 * Insert rows into a table using the PostgreSQL COPY command. <br>
+	 * The rows are streamed into a temporary staging table, then moved to the target table with a single statement.
+	 * Uniqueness and entity references are thus resolved for the whole set of rows instead of row by row. <br>
+	 * Only the given table is filled: use {@link #batchInsert} for other databases or for templates extending a template stored in SQL.
+	 *
+	 * @param sqlConnectionCode Code of the sql configuration
+	 * @param tableName         Table name to insert values to
+	 * @param columns           Columns to fill, each row giving its values by column name
+	 * @param rows              Rows to insert. At most maxRows rows are consumed.
+	 * @param maxRows           Maximum number of rows to insert
+	 * @param entityReferences  Template referenced by each column holding an entity reference. The values of these columns that are
+	 *                          serialized JSON objects are replaced by the uuid of the record having the same unique values, which is
+	 *                          created if it does not exist.
+	 * @param skipConflicts     If true, the rows conflicting with an existing record on a unique field are ignored
+	 * @return Number of rows inserted in the target table
+	 * @throws BusinessException failed to insert the rows
+	 */
+	public int bulkInsert(String sqlConnectionCode, String tableName, List<String> columns, Iterator<Map<String, Object>> rows, int maxRows,
+			Map<String, CustomEntityTemplate> entityReferences, boolean skipConflicts) throws BusinessException {
+
+		String table = quoteIfReserved(tableName);
+		String columnList = columns.stream().map(this::quoteIfReserved).collect(Collectors.joining(", "));
+
+		Session hibernateSession = crossStorageTransaction.getHibernateSession(sqlConnectionCode);
+
+		try {
+			return hibernateSession.doReturningWork(connection -> {
+
+				setSchema(sqlConnectionCode, connection);
+
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("DROP TABLE IF EXISTS " + BULK_STAGING_TABLE);
+					statement.execute("CREATE TEMPORARY TABLE " + BULK_STAGING_TABLE + " AS SELECT " + columnList + " FROM " + table + " WITH NO DATA");
+
+					// References are loaded as serialized JSON, which does not fit the uuid column
+					for (String column : entityReferences.keySet()) {
+						statement.execute("ALTER TABLE " + BULK_STAGING_TABLE + " ALTER COLUMN " + quoteIfReserved(column) + " TYPE text");
+					}
+
+					int insertedRows = 0;
+					int copiedRows = copyIn(connection, columnList, columns, rows, maxRows);
+					if (copiedRows > 0) {
+						for (Entry<String, CustomEntityTemplate> entityReference : entityReferences.entrySet()) {
+							resolveEntityReferences(statement, entityReference.getKey(), entityReference.getValue());
+						}
+
+						insertedRows = statement.executeUpdate("INSERT INTO " + table + " (" + columnList + ") SELECT " + columnList + " FROM " + BULK_STAGING_TABLE
+								+ (skipConflicts ? " ON CONFLICT DO NOTHING" : ""));
+					}
+
+					statement.execute("DROP TABLE " + BULK_STAGING_TABLE);
+
+					if (!sqlConnectionCode.equals(SqlConfiguration.DEFAULT_SQL_CONNECTION)) {
+						connection.commit();
+					}
+
+					return insertedRows;
+				}
+			});
+
+		} catch (Exception e) {
+			log.error("Failed to bulk insert into table {}", tableName, e);
+			throw new BusinessException(e);
+		}
+	}
+
+	/**
+	 * Insert rows into the table of a template using batched JDBC inserts. <br>
+	 * Unlike {@link #bulkInsert}, it works with any database, and when the template extends a template stored in SQL, the values of the parent
+	 * fields are first inserted in the parent table, under the same uuid, as {@link #create(String, CustomEntityInstance)} does.
+	 *
+	 * @param sqlConnectionCode Code of the sql configuration
+	 * @param cet               Template of the rows
+	 * @param columns           Columns to fill, each row giving its values by column name
+	 * @param rows              Rows to insert. At most maxRows rows are consumed.
+	 * @param maxRows           Maximum number of rows to insert
+	 * @param entityReferences  Template referenced by each column holding an entity reference. The values of these columns that are
+	 *                          serialized JSON objects are replaced by the uuid of the record having the same unique values, which is
+	 *                          created if it does not exist.
+	 * @param skipConflicts     If true, the rows matching an existing record on a unique field are ignored
+	 * @return Number of rows inserted
+	 * @throws BusinessException failed to insert the rows
+	 */
+	public int batchInsert(String sqlConnectionCode, CustomEntityTemplate cet, List<String> columns, Iterator<Map<String, Object>> rows, int maxRows,
+			Map<String, CustomEntityTemplate> entityReferences, boolean skipConflicts) throws BusinessException {
+
+		String tableName = SQLStorageConfiguration.getDbTablename(cet);
+		Collection<CustomFieldTemplate> cfts = cache.getCustomFieldTemplates(cet.getAppliesTo()).values();
+
+		// Columns stored in the table of the parent template
+		CustomEntityTemplate parent = hasSqlParent(cet) ? cet.getSuperTemplate() : null;
+		List<String> parentColumns = new ArrayList<>();
+		if (parent != null) {
+			Set<String> parentFields = customFieldTemplateService.findByAppliesTo(parent.getAppliesTo()).values().stream()
+					.map(CustomFieldTemplate::getDbFieldname)
+					.collect(Collectors.toSet());
+			columns.stream().filter(parentFields::contains).forEach(parentColumns::add);
+		}
+		List<String> ownColumns = new ArrayList<>(columns);
+		ownColumns.removeAll(parentColumns);
+		if (parent != null) {
+			parentColumns.add(0, FIELD_ID);
+			ownColumns.add(0, FIELD_ID);
+		}
+
+		// Uuid of the referenced records, by serialized reference
+		Map<String, String> resolvedReferences = new HashMap<>();
+
+		try {
+			int readRows = 0;
+			int insertedRows = 0;
+			while (readRows < maxRows && rows.hasNext()) {
+				List<Map<String, Object>> batch = new ArrayList<>(BULK_INSERT_BATCH_SIZE);
+				while (batch.size() < BULK_INSERT_BATCH_SIZE && readRows < maxRows && rows.hasNext()) {
+					Map<String, Object> row = rows.next();
+					readRows++;
+
+					for (Entry<String, CustomEntityTemplate> entityReference : entityReferences.entrySet()) {
+						Object value = row.get(entityReference.getKey());
+						if (value instanceof String && ((String) value).startsWith("{")) {
+							String uuid = resolvedReferences.get(value);
+							if (uuid == null) {
+								uuid = resolveEntityReference(sqlConnectionCode, (String) value, entityReference.getValue());
+								resolvedReferences.put((String) value, uuid);
+							}
+							row.put(entityReference.getKey(), uuid);
+						}
+					}
+
+					if (skipConflicts && findIdByUniqueValues(sqlConnectionCode, tableName, row, cfts) != null) {
+						continue;
+					}
+
+					// The parent and child records share their uuid
+					if (parent != null) {
+						row.put(FIELD_ID, UUID.randomUUID().toString());
+					}
+					batch.add(row);
+				}
+
+				if (batch.isEmpty()) {
+					continue;
+				}
+
+				Session hibernateSession = crossStorageTransaction.getHibernateSession(sqlConnectionCode);
+				hibernateSession.doWork(connection -> {
+					setSchema(sqlConnectionCode, connection);
+
+					// Parent records first, as the child table references them
+					if (parent != null) {
+						executeBatch(connection, SQLStorageConfiguration.getDbTablename(parent), parentColumns, batch);
+					}
+					executeBatch(connection, tableName, ownColumns, batch);
+
+					if (!sqlConnectionCode.equals(SqlConfiguration.DEFAULT_SQL_CONNECTION)) {
+						connection.commit();
+					}
+				});
+				insertedRows += batch.size();
+			}
+
+			return insertedRows;
+
+		} catch (BusinessException e) {
+			throw e;
+
+		} catch (Exception e) {
+			log.error("Failed to batch insert into table {}", tableName, e);
+			throw new BusinessException(e);
+		}
+	}
+
+	/**
+	 * Insert the given columns of the rows with a single batch
+	 */
+	private void executeBatch(Connection connection, String tableName, List<String> columns, List<Map<String, Object>> rows) throws SQLException {
+		String sql = "INSERT INTO " + quoteIfReserved(tableName) + " (" + columns.stream().map(this::quoteIfReserved).collect(Collectors.joining(", "))
+				+ ") VALUES (" + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			for (Map<String, Object> row : rows) {
+				int parameterIndex = 1;
+				for (String column : columns) {
+					Object value = row.get(column);
+					if (value == null) {
+						ps.setNull(parameterIndex++, Types.NULL);
+					} else {
+						setParameterValue(ps, parameterIndex++, value);
+					}
+				}
+				ps.addBatch();
+			}
+			ps.executeBatch();
+
+		} catch (SQLException e) {
+			log.error("Failed to batch insert with sql {}", sql, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the uuid of the record of the referenced template having the unique values of the serialized reference, created if it does not exist
+	 */
+	private String resolveEntityReference(String sqlConnectionCode, String reference, CustomEntityTemplate referencedCet) throws BusinessException {
+		String refTable = SQLStorageConfiguration.getDbTablename(referencedCet);
+		Map<String, Object> values = JacksonUtil.fromString(reference, GenericTypeReferences.MAP_STRING_OBJECT);
+
+		String uuid = findIdByUniqueValues(sqlConnectionCode, refTable, values, cache.getCustomFieldTemplates(referencedCet.getAppliesTo()).values());
+		if (uuid == null) {
+			uuid = create(sqlConnectionCode, refTable, values, true);
+		}
+		return uuid;
+	}
+
+	/**
+	 * @return true if the template extends a template whose records are stored in SQL
+	 */
+	protected boolean hasSqlParent(CustomEntityTemplate cet) {
+		return cet.getSuperTemplate() != null && cet.getSuperTemplate().storedIn(DBStorageType.SQL);
+	}
+
+	/**
+	 * @return true if the database of the sql configuration is PostgreSQL
+	 */
+	protected boolean isPostgreSQL(String sqlConnectionCode) {
+		Session hibernateSession = crossStorageTransaction.getHibernateSession(sqlConnectionCode);
+		return hibernateSession.doReturningWork(connection -> "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName()));
+	}
+
+	/**
+	 * Stream rows into the staging table
+	 *
+	 * @return the number of rows copied
+	 */
+	private int copyIn(Connection connection, String columnList, List<String> columns, Iterator<Map<String, Object>> rows, int maxRows) throws SQLException {
+		CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + BULK_STAGING_TABLE + " (" + columnList + ") FROM STDIN");
+
+		StringBuilder buffer = new StringBuilder();
+		List<Object> values = new ArrayList<>(columns.size());
+		int copiedRows = 0;
+
+		try {
+			while (copiedRows < maxRows && rows.hasNext()) {
+				Map<String, Object> row = rows.next();
+
+				values.clear();
+				for (String column : columns) {
+					values.add(row.get(column));
+				}
+				CopyRowEncoder.appendRow(buffer, values);
+				copiedRows++;
+
+				if (buffer.length() >= BULK_COPY_BUFFER_SIZE) {
+					writeToCopy(copyIn, buffer);
+				}
+			}
+
+			writeToCopy(copyIn, buffer);
+			copyIn.endCopy();
+
+			return copiedRows;
+
+		} finally {
+			if (copyIn.isActive()) {
+				copyIn.cancelCopy();
+			}
+		}
+	}
+
+	private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+		if (buffer.length() == 0) {
+			return;
+		}
+
+		byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+		copyIn.writeToCopy(bytes, 0, bytes.length);
+		buffer.setLength(0);
+	}
+
+	/**
+	 * Replace the serialized references of a staging table column by the uuid of the referenced records. <br>
+	 * Existing records are matched on the unique fields of the referenced template, the missing ones are created.
+	 */
+	private void resolveEntityReferences(Statement statement, String column, CustomEntityTemplate referencedCet) throws SQLException {
+		String refTable = quoteIfReserved(SQLStorageConfiguration.getDbTablename(referencedCet));
+		String stagingColumn = quoteIfReserved(column);
+
+		List<CustomFieldTemplate> refFields = cache.getCustomFieldTemplates(referencedCet.getAppliesTo()).values().stream()
+				.filter(cft -> cft.getStoragesNullSafe().contains(DBStorageType.SQL))
+				.collect(Collectors.toList());
+
+		// One line per distinct reference, with the reference deserialized as a record of the referenced table
+		statement.execute("DROP TABLE IF EXISTS " + BULK_REFERENCES_TABLE);
+		statement.execute("CREATE TEMPORARY TABLE " + BULK_REFERENCES_TABLE + " AS SELECT value, jsonb_populate_record(NULL::" + refTable + ", value::jsonb) AS record, "
+				+ "CAST(NULL AS text) AS uuid, false AS created FROM (SELECT DISTINCT " + stagingColumn + " AS value FROM " + BULK_STAGING_TABLE + " WHERE "
+				+ stagingColumn + " LIKE '{%') v");
+
+		// Match the existing records on the unique values that are set
+		List<String> uniqueColumns = refFields.stream().filter(CustomFieldTemplate::isUnique).map(cft -> quoteIfReserved(cft.getDbFieldname())).collect(Collectors.toList());
+		if (!uniqueColumns.isEmpty()) {
+			String matchesUniqueValues = uniqueColumns.stream().map(c -> "((m.record)." + c + " IS NULL OR r." + c + " = (m.record)." + c + ")").collect(Collectors.joining(" AND "));
+			String hasUniqueValue = uniqueColumns.stream().map(c -> "(m.record)." + c + " IS NOT NULL").collect(Collectors.joining(" OR "));
+			statement.executeUpdate("UPDATE " + BULK_REFERENCES_TABLE + " m SET uuid = r.uuid FROM " + refTable + " r WHERE " + matchesUniqueValues + " AND (" + hasUniqueValue + ")");
+		}
+
+		// Create the missing records
+		statement.executeUpdate("UPDATE " + BULK_REFERENCES_TABLE + " SET uuid = md5(random()::text || clock_timestamp()::text)::uuid::text, created = true WHERE uuid IS NULL");
+
+		String refColumns = refFields.stream().map(cft -> quoteIfReserved(cft.getDbFieldname())).collect(Collectors.joining(", "));
+		String refValues = refFields.stream().map(cft -> "(record)." + quoteIfReserved(cft.getDbFieldname())).collect(Collectors.joining(", "));
+		if (!refFields.isEmpty()) {
+			refColumns = ", " + refColumns;
+			refValues = ", " + refValues;
+		}
+		int createdReferences = statement.executeUpdate("INSERT INTO " + refTable + " (" + FIELD_ID + refColumns + ") SELECT uuid" + refValues + " FROM " + BULK_REFERENCES_TABLE + " WHERE created");
+		if (createdReferences > 0) {
+			log.info("Created {} missing {} entity references", createdReferences, referencedCet.getCode());
+		}
+
+		statement.executeUpdate("UPDATE " + BULK_STAGING_TABLE + " s SET " + stagingColumn + " = m.uuid FROM " + BULK_REFERENCES_TABLE + " m WHERE s." + stagingColumn + " = m.value");
+		statement.execute("DROP TABLE " + BULK_REFERENCES_TABLE);
+	}
+
+	private String quoteIfReserved(String name) {
+		if (PostgresReserverdKeywords.isReserved(name)) {
+			return "\"" + name.toLowerCase() + "\"";
+		}
+		return name;
+	}
+
 	/**
 	 * Updates a {@linkplain CustomEntityInstance} in the database given a uuid.
 	 *
@@ -1444,6 +1862,20 @@ public class NativePersistenceService extends BaseService {
 			}
 		}
 
+		if (config.isKeyset()) {
+			String sortColumn = config.isSorted() ? "a." + config.getSortField() : null;
+			queryBuilder.addKeysetCriterion(sortColumn, !config.isSorted() || config.isAscendingSorting(), "a." + FIELD_ID, config.getSeekSortValue(), config.getSeekUuid());
+
+			// Once positioned after a record, the offset is not applicable anymore
+			PaginationConfiguration keysetConfig = new PaginationConfiguration(config);
+			if (config.hasSeek()) {
+				keysetConfig.setFirstRow(null);
+			}
+			queryBuilder.addPaginationConfiguration(keysetConfig, "a");
+
+			return queryBuilder;
+		}
+
 		queryBuilder.addPaginationConfiguration(config, "a");
 
 		// FIXME: Will only works for Postgres and few others ...
@@ -1518,6 +1950,12 @@ public class NativePersistenceService extends BaseService {
 	 */
 	public long count(String sqlConnectionCode, String tableName, PaginationConfiguration config) {
 		
+		// Keyset pagination only restricts the page, not the total count
+		if (config != null && config.isKeyset()) {
+			config = new PaginationConfiguration(config);
+			config.setKeyset(false);
+		}
+
 		QueryBuilder queryBuilder = getQuery(tableName, config);
 		Session session = crossStorageTransaction.getHibernateSession(sqlConnectionCode);
 
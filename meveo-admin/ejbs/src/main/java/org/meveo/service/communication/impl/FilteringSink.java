@@ -1,24 +1,28 @@
 package org.meveo.service.communication.impl;
 
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 import javax.ws.rs.sse.OutboundSseEvent;
 import javax.ws.rs.sse.SseEventSink;
 
 /**
- * @version 6.10.0
+ * @version 6.14.0
  */
 public class FilteringSink implements SseEventSink {
 	private SseEventSink sink;
 	private String callerIp;
 	private String userName;
 	private String filterEL;
+	private OutboundQueue<OutboundSseEvent> outboundQueue;
 
-	FilteringSink(String callerIp, String userName, String filterEL, SseEventSink sink) {
+	FilteringSink(String callerIp, String userName, String filterEL, SseEventSink sink, int queueSize, SlowConsumerPolicy policy,
+			Executor executor) {
 		this.callerIp = callerIp;
 		this.userName = userName;
 		this.filterEL = filterEL;
 		this.sink = sink;
+		this.outboundQueue = new OutboundQueue<>(queueSize, policy, executor, this::send, this::close);
 	}
 
 	public void close() {
@@ -26,7 +30,17 @@ public class FilteringSink implements SseEventSink {
 	}
 
 	public boolean isClosed() {
-		return sink.isClosed();
+		return sink.isClosed() || outboundQueue.isEvicted();
+	}
+
+	/**
+	 * Queue an event, sent asynchronously once the previous events are sent
+	 * 
+	 * @param outboundSseEvent Event to send
+	 * @return false if the sink was closed for being too slow
+	 */
+	public boolean offer(OutboundSseEvent outboundSseEvent) {
+		return outboundQueue.offer(outboundSseEvent);
 	}
 
 	@Override
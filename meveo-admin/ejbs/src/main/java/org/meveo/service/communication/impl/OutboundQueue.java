@@ -0,0 +1,171 @@
+package org.meveo.service.communication.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of the messages to send to a web notification subscriber. <br>
+ * Messages are sent one at a time, the next one once the previous one is written, so a slow subscriber only delays its own messages. When the queue
+ * is full, the {@link SlowConsumerPolicy} decides whether messages are dropped or the subscriber is disconnected.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ * @param <M> Type of the messages
+ */
+public class OutboundQueue<M> {
+
+	private static final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+	private final BlockingQueue<M> messages;
+
+	private final SlowConsumerPolicy policy;
+
+	/**
+	 * Executor continuing the sending once a message is written
+	 */
+	private final Executor executor;
+
+	/**
+	 * Write a message to the subscriber
+	 */
+	private final Function<M, CompletionStage<?>> sender;
+
+	/**
+	 * Disconnect the subscriber
+	 */
+	private final Runnable evictor;
+
+	/**
+	 * Whether a message is being written
+	 */
+	private final AtomicBoolean sending = new AtomicBoolean();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean evicted;
+
+	/**
+	 * @param capacity Maximum number of messages waiting to be sent
+	 * @param policy What to do when the queue is full
+	 * @param executor Executor continuing the sending once a message is written
+	 * @param sender Write a message to the subscriber
+	 * @param evictor Disconnect the subscriber
+	 */
+	public OutboundQueue(int capacity, SlowConsumerPolicy policy, Executor executor, Function<M, CompletionStage<?>> sender, Runnable evictor) {
+		this.messages = new ArrayBlockingQueue<>(capacity);
+		this.policy = policy;
+		this.executor = executor;
+		this.sender = sender;
+		this.evictor = evictor;
+	}
+
+	/**
+	 * Queue a message, and start sending the queued messages if they are not being sent already
+	 *
+	 * @param message Message to send
+	 * @return false if the subscriber has been evicted
+	 */
+	public boolean offer(M message) {
+		if (evicted) {
+			return false;
+		}
+
+		while (!messages.offer(message)) {
+			if (policy == SlowConsumerPolicy.EVICT) {
+				log.warn("Outbound queue full, disconnecting the subscriber");
+				evict();
+				return false;
+
+			} else if (policy == SlowConsumerPolicy.DROP_NEWEST) {
+				onDropped();
+				return true;
+
+			} else if (messages.poll() != null) {
+				onDropped();
+			}
+		}
+
+		sendNext();
+		return true;
+	}
+
+	/**
+	 * @return Whether the subscriber has been evicted
+	 */
+	public boolean isEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * @return Number of messages dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Disconnect the subscriber and forget its pending messages
+	 */
+	public void evict() {
+		if (evicted) {
+			return;
+		}
+		evicted = true;
+		messages.clear();
+		try {
+			evictor.run();
+		} catch (Exception e) {
+			log.debug("Failed to disconnect subscriber : {}", e.getMessage());
+		}
+	}
+
+	private void onDropped() {
+		long nbDropped = dropped.incrementAndGet();
+		// Don't flood the logs with a slow subscriber
+		if (nbDropped == 1 || nbDropped % 1000 == 0) {
+			log.warn("Outbound queue full, {} messages dropped", nbDropped);
+		}
+	}
+
+	private void sendNext() {
+		if (evicted || !sending.compareAndSet(false, true)) {
+			return;
+		}
+
+		M message = messages.poll();
+		if (message == null) {
+			sending.set(false);
+			// A message may have been queued after the poll, while sending was still set
+			if (!messages.isEmpty()) {
+				sendNext();
+			}
+			return;
+		}
+
+		CompletionStage<?> sent;
+		try {
+			sent = sender.apply(message);
+		} catch (RuntimeException e) {
+			sent = CompletableFuture.failedFuture(e);
+		}
+
+		sent.whenCompleteAsync((result, error) -> {
+			if (error != null) {
+				// The subscriber is most likely gone
+				log.debug("Failed to send message, disconnecting the subscriber : {}", error.getMessage());
+				evict();
+			}
+			sending.set(false);
+			sendNext();
+		}, executor);
+	}
+}
@@ -0,0 +1,25 @@
+package org.meveo.service.communication.impl;
+
+/**
+ * What to do when the outbound queue of a web notification subscriber is full
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public enum SlowConsumerPolicy {
+
+	/**
+	 * Drop the oldest message of the queue to make room for the new one
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Drop the new message
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Disconnect the subscriber
+	 */
+	EVICT
+}
@@ -6,7 +6,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
@@ -22,6 +27,8 @@ import javax.ws.rs.sse.OutboundSseEvent;
 import javax.ws.rs.sse.Sse;
 import javax.ws.rs.sse.SseEventSink;
 
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.elresolver.ELException;
 import org.meveo.model.notification.WebNotification;
 import org.meveo.service.base.MeveoValueExpressionWrapper;
 import org.meveo.service.notification.WebNotificationService;
@@ -29,10 +36,13 @@ import org.slf4j.Logger;
 
 /**
  * This class allow web client to subscribe to WebNotifications and publish
- * messages
+ * messages. <br>
+ * Each sink has its own outbound queue, so a slow client doesn't delay the
+ * messages sent to the others.
  */
 @Path("/sse")
 @Singleton
+@Lock(LockType.READ)
 public class SseManager {
 
 	@Inject
@@ -46,6 +56,23 @@ public class SseManager {
 
 	private Map<String, Map<String, FilteringSink>> notifFilteringSinks = new ConcurrentHashMap<>();
 
+	private int queueSize;
+
+	private SlowConsumerPolicy slowConsumerPolicy;
+
+	/**
+	 * Executor of the container, sending the queued events
+	 */
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	@PostConstruct
+	private void init() {
+		ParamBean paramBean = ParamBean.getInstance();
+		queueSize = Integer.parseInt(paramBean.getProperty("notification.outbound.queueSize", "1000"));
+		slowConsumerPolicy = SlowConsumerPolicy.valueOf(paramBean.getProperty("notification.outbound.slowConsumerPolicy", "DROP_OLDEST"));
+	}
+
 	@GET
 	@Path("/register/{notif}")
 	@Produces(MediaType.SERVER_SENT_EVENTS)
@@ -75,20 +102,22 @@ public class SseManager {
 			throw new IllegalStateException("web notification not active.");
 		}
 
-		Map<String, FilteringSink> filteringSinks = notifFilteringSinks.get(webNotification.getCode());
-		if (filteringSinks == null) {
-			filteringSinks = new HashMap<>();
-			notifFilteringSinks.put(webNotification.getCode(), filteringSinks);
+		// Parse the filter once, rather than on the first message
+		try {
+			MeveoValueExpressionWrapper.parseExpression(filterEL, Boolean.class);
+		} catch (ELException e) {
+			throw new IllegalStateException("Expression " + filterEL + " is not valid : " + e.getMessage());
 		}
-		FilteringSink filteringSink = new FilteringSink(callerIp, userName, filterEL, sink);
-		FilteringSink oldFilteringSink = filteringSinks.get(filteringSink.getKey());
+
+		Map<String, FilteringSink> filteringSinks = notifFilteringSinks.computeIfAbsent(webNotification.getCode(),
+				code -> new ConcurrentHashMap<>());
+		FilteringSink filteringSink = new FilteringSink(callerIp, userName, filterEL, sink, queueSize, slowConsumerPolicy, executor);
+		FilteringSink oldFilteringSink = filteringSinks.putIfAbsent(filteringSink.getKey(), filteringSink);
 		if (oldFilteringSink == null) {
-			filteringSinks.put(filteringSink.getKey(), filteringSink);
 			log.debug("notif={} with key={} has been successfully registered", notif, filteringSink.getKey());
 
 		} else {
-			if (oldFilteringSink.isClosed()) {
-				filteringSinks.put(filteringSink.getKey(), filteringSink);
+			if (oldFilteringSink.isClosed() && filteringSinks.replace(filteringSink.getKey(), oldFilteringSink, filteringSink)) {
 				log.debug("notif={} with key={} has been successfully re-registered", notif, filteringSink.getKey());
 			}
 		}
@@ -138,7 +167,9 @@ public class SseManager {
 
 	/**
 	 * This method broadcast a message to all clients that registered for the given
-	 * web notification code, and for which the filter match the context
+	 * web notification code, and for which the filter match the context. <br>
+	 * Each filter is evaluated once, whatever the number of clients sharing it,
+	 * and the message is queued for each client, to be sent asynchronously.
 	 * 
 	 * @param id
 	 * @param name
@@ -154,65 +185,43 @@ public class SseManager {
 			return;
 		}
 
-		Map<String, FilteringSink> closedSinks = new HashMap<>();
-		Map<String, FilteringSink> listeningSinks = new HashMap<>();
+		OutboundSseEvent.Builder eventBuilder = sse.newEventBuilder().name(name).data(data);
+		if (id != null) {
+			eventBuilder.id(id);
+		}
+		if (comment != null) {
+			eventBuilder.comment(comment);
+		}
+		OutboundSseEvent event = eventBuilder.reconnectDelay(10000).build();
+
+		Map<String, Boolean> filterResults = new HashMap<>();
 		for (Map.Entry<String, FilteringSink> entry : filteringSinks.entrySet()) {
 			FilteringSink filteringSink = entry.getValue();
 			if (filteringSink.isClosed()) {
-				closedSinks.put(entry.getKey(), filteringSink);
-
-			} else {
-				if (filteringSink.getfilterEL() == null || filteringSink.getfilterEL().isEmpty()) {
-					listeningSinks.put(entry.getKey(), filteringSink);
-
-				} else {
-					try {
-						Object res = MeveoValueExpressionWrapper.evaluateExpression(filteringSink.getfilterEL(),
-								context, Boolean.class);
-						boolean result = (Boolean) res;
-						if (result) {
-							listeningSinks.put(entry.getKey(), filteringSink);
-						}
-
-					} catch (Exception e) {
-						throw new IllegalStateException(
-								"Expression " + filteringSink.getfilterEL() + " do not evaluate to boolean");
-					}
+				filteringSinks.remove(entry.getKey(), filteringSink);
+				filteringSink.close();
+
+			} else if (filterResults.computeIfAbsent(filteringSink.getfilterEL(), filterEL -> matches(filterEL, context))) {
+				if (!filteringSink.offer(event)) {
+					filteringSinks.remove(entry.getKey(), filteringSink);
 				}
 			}
 		}
+	}
 
-		if (listeningSinks.size() > 0) {
-			OutboundSseEvent.Builder eventBuilder = sse.newEventBuilder().name(name).data(data);
-			if (id != null) {
-				eventBuilder.id(id);
-			}
-			if (comment != null) {
-				eventBuilder.comment(comment);
-			}
-			OutboundSseEvent event = eventBuilder.reconnectDelay(10000).build();
-			for (Map.Entry<String, FilteringSink> entry : listeningSinks.entrySet()) {
-				FilteringSink filteringSink = entry.getValue();
-				if (!filteringSink.isClosed()) {
-					try {
-						filteringSink.send(event);
-
-					} catch (Exception e) {
-						e.printStackTrace();
-						log.error(e.getMessage());
-					}
-
-				} else {
-					closedSinks.put(entry.getKey(), filteringSink);
-				}
-			}
+	private boolean matches(String filterEL, Map<Object, Object> context) {
+		if (filterEL == null || filterEL.isEmpty()) {
+			return true;
 		}
 
-		if (closedSinks.size() > 0) {
-			for (Map.Entry<String, FilteringSink> entry : closedSinks.entrySet()) {
-				entry.getValue().close();
-				filteringSinks.remove(entry.getKey());
-			}
+		try {
+			Object res = MeveoValueExpressionWrapper.evaluateExpression(filterEL, context, Boolean.class);
+			return Boolean.TRUE.equals(res);
+
+		} catch (Exception e) {
+			// Don't prevent the other clients from receiving the message
+			log.error("Expression {} do not evaluate to boolean", filterEL, e);
+			return false;
 		}
 	}
 
@@ -231,6 +240,6 @@ public class SseManager {
 				filteringSink.close();
 			}
 		}
-		filteringSinks.remove(notificationCode);
+		notifFilteringSinks.remove(notificationCode);
 	}
 }
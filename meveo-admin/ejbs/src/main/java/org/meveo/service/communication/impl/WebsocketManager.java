@@ -2,15 +2,21 @@ package org.meveo.service.communication.impl;
 
 import java.io.IOException;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.EndpointConfig;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -20,13 +26,20 @@ import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.elresolver.ELException;
 import org.meveo.model.notification.WebNotification;
 import org.meveo.service.base.MeveoValueExpressionWrapper;
 import org.meveo.service.notification.WebNotificationService;
 import org.slf4j.Logger;
 
+/**
+ * Web socket endpoint allowing web clients to subscribe to WebNotifications and publish messages. <br>
+ * Each session has its own outbound queue, so a slow client doesn't delay the messages sent to the others.
+ */
 @ServerEndpoint("/websocket/{notif-name}")
 @Singleton
+@Lock(LockType.READ)
 public class WebsocketManager {
 	
 	@Inject
@@ -35,7 +48,24 @@ public class WebsocketManager {
 	@Inject
 	private WebNotificationService webNotificationService;
 
-	private Map<String, List<Session>> notifSessions = new ConcurrentHashMap<>();
+	private Map<String, Set<Session>> notifSessions = new ConcurrentHashMap<>();
+
+	private int queueSize;
+
+	private SlowConsumerPolicy slowConsumerPolicy;
+
+	/**
+	 * Container managed executor sending the queued messages
+	 */
+	@Resource(lookup = "java:comp/DefaultManagedExecutorService")
+	private ManagedExecutorService executor;
+
+	@PostConstruct
+	private void init() {
+		ParamBean paramBean = ParamBean.getInstance();
+		queueSize = Integer.parseInt(paramBean.getProperty("notification.outbound.queueSize", "1000"));
+		slowConsumerPolicy = SlowConsumerPolicy.valueOf(paramBean.getProperty("notification.outbound.slowConsumerPolicy", "DROP_OLDEST"));
+	}
 	
 	@OnMessage
     public String onMessage(Session session,String message) {
@@ -64,18 +94,22 @@ public class WebsocketManager {
 			throw new IllegalStateException("web notification not active.");
 		}
 
-		List<Session> sessions = notifSessions.get(notifName);
-		if (sessions == null) {
-			sessions = new ArrayList<>();
-			notifSessions.put(webNotification.getCode(), sessions);
-		}
+		Set<Session> sessions = notifSessions.computeIfAbsent(webNotification.getCode(), code -> ConcurrentHashMap.newKeySet());
 		String filterEL = null;
 		if(session.getRequestParameterMap().containsKey("filter")) {
 			filterEL=session.getRequestParameterMap().get("filter").get(0);
+			// Parse the filter once, rather than on the first message
+			try {
+				MeveoValueExpressionWrapper.parseExpression(filterEL, Boolean.class);
+			} catch (ELException e) {
+				throw new IllegalStateException("Expression " + filterEL + " is not valid : " + e.getMessage());
+			}
 			session.getUserProperties().put("filterEL", filterEL);
 		}
 		session.getUserProperties().put("username", username);
 		session.getUserProperties().put("notifname", notifName);
+		session.getUserProperties().put("outboundQueue",
+				new OutboundQueue<String>(queueSize, slowConsumerPolicy, executor, message -> send(session, message), () -> evict(session)));
 		sessions.add(session);
 		log.info("username={} notif={} with session={} has been successfully registered"
 				,username, notifName, session.getId());
@@ -83,11 +117,32 @@ public class WebsocketManager {
 
     private void removeSession(Session session) {
     	String notifName = (String) session.getUserProperties().get("notifname");
-        List<Session> sessions = notifSessions.get(notifName);
-        if(sessions!=null && sessions.contains(session)) {
+        Set<Session> sessions = notifSessions.get(notifName);
+        if(sessions!=null) {
         	sessions.remove(session);
         } 
     }
+
+	private CompletableFuture<Void> send(Session session, String message) {
+		CompletableFuture<Void> sent = new CompletableFuture<>();
+		session.getAsyncRemote().sendText(message, result -> {
+			if (result.isOK()) {
+				sent.complete(null);
+			} else {
+				sent.completeExceptionally(result.getException());
+			}
+		});
+		return sent;
+	}
+
+	private void evict(Session session) {
+		removeSession(session);
+		try {
+			session.close(new CloseReason(CloseCodes.VIOLATED_POLICY, "Too slow to receive the messages"));
+		} catch (IOException e) {
+			log.debug("exception while closing websocket :{}", e.getMessage());
+		}
+	}
     
     
     @OnClose
@@ -102,52 +157,51 @@ public class WebsocketManager {
        removeSession(session);
     }    
     
-    public void sendMessage(String id, String name, String data, Map<Object, Object> context) {
-    	List<Session> sessions = notifSessions.get(name);
-    	List<Session> listeningSessions = new ArrayList<>();
-    	List<Session> sessionsToRemove = new ArrayList<>();
-    	for(Session session:sessions) {
-    		if (session.isOpen()) {
-    			if (session.getUserProperties().get("filterEL") == null || 
-    					((String)session.getUserProperties().get("filterEL")).isEmpty()) {
-    				listeningSessions.add(session);
-				} else {
-					try {
-						Object res = MeveoValueExpressionWrapper.evaluateExpression(
-								(String)session.getUserProperties().get("filterEL"),
-								context, Boolean.class);
-						boolean result = (Boolean) res;
-						if (result) {
-							listeningSessions.add(session);
-						}
-
-					} catch (Exception e) {
-						throw new IllegalStateException(
-								"Expression " + session.getUserProperties().get("filterEL") 
-								+ " do not evaluate to boolean");
-					}
+	/**
+	 * Queue a message for the sessions registered for the given web notification code, and for which the filter match the context. <br>
+	 * Each filter is evaluated once, whatever the number of sessions sharing it.
+	 */
+	public void sendMessage(String id, String name, String data, Map<Object, Object> context) {
+		Set<Session> sessions = notifSessions.get(name);
+		if (sessions == null) {
+			log.debug("cannot send message to {} as no one subscribed to it", name);
+			return;
+		}
+
+		String txtMessage = "{\"id\":\""+id+"\",\"name\":\""+name+"\",\"data\":\""+data+"\"}";
+		Map<String, Boolean> filterResults = new HashMap<>();
+		for (Session session : sessions) {
+			@SuppressWarnings("unchecked")
+			OutboundQueue<String> outboundQueue = (OutboundQueue<String>) session.getUserProperties().get("outboundQueue");
+			if (!session.isOpen() || outboundQueue == null) {
+				sessions.remove(session);
+
+			} else if (filterResults.computeIfAbsent((String) session.getUserProperties().get("filterEL"), filterEL -> matches(filterEL, context))) {
+				if (!outboundQueue.offer(txtMessage)) {
+					sessions.remove(session);
 				}
-    		} else {
-    			sessionsToRemove.add(session);
-    		}
-    	}
-    	if (listeningSessions.size() > 0) {
-    		String txtMessage = "{\"id\":\""+id+"\",\"name\":\""+name+"\",\"data\":\""+data+"\"}";
-    		for(Session session:listeningSessions) {
-    			if(session.isOpen()) {
-    				session.getAsyncRemote().sendText(txtMessage);
-    			} else {
-    				sessionsToRemove.add(session);
-    			}
-    		}
-    	}
-    	if(sessionsToRemove.size()>0) {
-    		sessions.removeAll(sessionsToRemove);
-    	}
-    }
+			}
+		}
+	}
+
+	private boolean matches(String filterEL, Map<Object, Object> context) {
+		if (filterEL == null || filterEL.isEmpty()) {
+			return true;
+		}
+
+		try {
+			Object res = MeveoValueExpressionWrapper.evaluateExpression(filterEL, context, Boolean.class);
+			return Boolean.TRUE.equals(res);
+
+		} catch (Exception e) {
+			// Don't prevent the other sessions from receiving the message
+			log.error("Expression {} do not evaluate to boolean", filterEL, e);
+			return false;
+		}
+	}
      
     public void removeNotification(String notificationCode) {
-    	List<Session> sessions = notifSessions.get(notificationCode);
+    	Set<Session> sessions = notifSessions.get(notificationCode);
 		if (sessions == null) {
 			log.debug("remove notification: no one was listening");
 			return;
@@ -1,7 +1,15 @@
 package org.meveo.service.custom;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -12,23 +20,34 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.api.exception.EntityDoesNotExistsException;
 import org.meveo.cache.CustomFieldsCacheContainerProvider;
 import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.elresolver.ELException;
+import org.meveo.model.BaseEntity;
 import org.meveo.model.crm.CustomFieldTemplate;
+import org.meveo.model.crm.custom.CustomFieldStorageTypeEnum;
+import org.meveo.model.crm.custom.CustomFieldTypeEnum;
 import org.meveo.model.crm.custom.CustomFieldValues;
 import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.persistence.DBStorageType;
+import org.meveo.model.persistence.JacksonUtil;
 import org.meveo.model.sql.SqlConfiguration;
 import org.meveo.model.wf.WFAction;
 import org.meveo.model.wf.WFTransition;
@@ -180,50 +199,402 @@ public class CustomEntityInstanceService extends BusinessService<CustomEntityIns
 		}
 	}
 
-	public List<CustomEntityInstance> list(String cetCode, Map<String, Object> values) {
+	public List<CustomEntityInstance> findByUuids(String cetCode, Collection<String> uuids) {
+		if (uuids == null || uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+
 		QueryBuilder qb = new QueryBuilder(getEntityClass(), "cei", null);
 		qb.addCriterion("cei.cetCode", "=", cetCode, true);
+		qb.addSqlCriterion("cei.uuid in :uuids", "uuids", uuids);
 
-		final List<CustomEntityInstance> resultList = qb.getTypedQuery(getEntityManager(), CustomEntityInstance.class).getResultList();
-
-		if (values != null && !values.isEmpty()) {
-			return resultList.stream()
-					.filter(customEntityInstance -> filterOnValues(values, customEntityInstance))
-					.collect(Collectors.toList());
-		}
+		return qb.getTypedQuery(getEntityManager(), CustomEntityInstance.class).getResultList();
+	}
 
-		return resultList;
+	public List<CustomEntityInstance> list(String cetCode, Map<String, Object> values) {
+		return list(cetCode, false, values, null);
 	}
 
 	public List<CustomEntityInstance> list(String cetCode, Map<String, Object> values, PaginationConfiguration paginationConfiguration) {
 		return list(cetCode, false, values, paginationConfiguration);
 	}
 
+	/**
+	 * List the instances of a CET. The filters on the values are translated to SQL criteria on the JSON values of the instances when possible, so
+	 * the filtering and the pagination are done by the database. The other filters are applied in memory.
+	 *
+	 * @param cetCode                 Code of the CET
+	 * @param isStoreAsTable          Whether the CET is stored as table
+	 * @param values                  Filters on the values, by field name optionally prefixed with a condition
+	 * @param paginationConfiguration Pagination and sorting to apply
+	 * @return the matching instances
+	 */
 	public List<CustomEntityInstance> list(String cetCode, boolean isStoreAsTable, Map<String, Object> values, PaginationConfiguration paginationConfiguration) {
+		Map<String, CustomFieldTemplate> cfts = getCustomFieldTemplates(cetCode);
+		QueryBuilder qb = new QueryBuilder("select {cei.*} from cust_cei cei", "cei");
+		Map<String, Object> remainingFilters = addCriteria(qb, cfts, cetCode, values);
+
+		if (paginationConfiguration != null) {
+			if (paginationConfiguration.isSorted()) {
+				String sortColumn = getSortColumn(cfts, paginationConfiguration.getSortField());
+				if (sortColumn != null) {
+					qb.addOrderCriterion(sortColumn, paginationConfiguration.isAscendingSorting());
+				} else {
+					log.warn("Can't sort the instances of CET {} by {}, only the code, description, uuid, id and single valued fields are supported", cetCode,
+							paginationConfiguration.getSortField());
+				}
+			}
+			// Make the pages stable
+			qb.addOrderCriterion("cei.id", true);
+		}
 
-		QueryBuilder qb = new QueryBuilder(getEntityClass(), "cei", null);
-		qb.addCriterion("cei.cetCode", "=", cetCode, true);
-		qb.addPaginationConfiguration(paginationConfiguration);
+		NativeQuery<CustomEntityInstance> query = qb.getNativeQuery(getEntityManager(), false);
+		query.addEntity("cei", CustomEntityInstance.class);
+
+		if (remainingFilters.isEmpty()) {
+			if (paginationConfiguration != null) {
+				qb.applyPagination(query, paginationConfiguration.getFirstRow(), paginationConfiguration.getNumberOfRows());
+			}
+			return query.getResultList();
+		}
+
+		// Some filters could not be translated, so the pagination has to be done after filtering
+		final List<CustomEntityInstance> resultList = query.getResultList()
+				.stream()
+				.filter(customEntityInstance -> filterOnValues(remainingFilters, customEntityInstance, isStoreAsTable))
+				.collect(Collectors.toList());
+
+		if (paginationConfiguration == null) {
+			return resultList;
+		}
+
+		int firstRow = paginationConfiguration.getFirstRow() != null ? Math.min(paginationConfiguration.getFirstRow(), resultList.size()) : 0;
+		int lastRow = paginationConfiguration.getNumberOfRows() != null ? Math.min(firstRow + paginationConfiguration.getNumberOfRows(), resultList.size()) : resultList.size();
+		return new ArrayList<>(resultList.subList(firstRow, lastRow));
+	}
+
+	/**
+	 * Creates a GIN index on the values of the instances of a CET, used by the equality filters of
+	 * {@link #list(String, boolean, Map, PaginationConfiguration)}. <br>
+	 * The index is built concurrently, so the writes to the instances table are not blocked while it is built. As this can't be done in a
+	 * transaction, it is built asynchronously on a dedicated connection. Nothing is done if a valid index already exists, while an invalid one is
+	 * rebuilt.
+	 *
+	 * @param cetCode Code of the CET
+	 */
+	@Asynchronous
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void createValuesIndex(String cetCode) {
+		Boolean valid = withIndexConnection(cetCode, connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					"select i.indisvalid from pg_index i join pg_class c on c.oid = i.indexrelid where c.relname = ?")) {
+				statement.setString(1, getValuesIndexName(cetCode));
+				try (ResultSet resultSet = statement.executeQuery()) {
+					return resultSet.next() ? resultSet.getBoolean(1) : null;
+				}
+			}
+		});
+
+		if (Boolean.TRUE.equals(valid)) {
+			log.debug("Values index of CET {} already exists", cetCode);
+			return;
+
+		} else if (Boolean.FALSE.equals(valid)) {
+			// Left by a failed concurrent build, it has to be rebuilt
+			executeIndexStatement(cetCode, "DROP INDEX CONCURRENTLY IF EXISTS " + getValuesIndexName(cetCode));
+		}
 
-		final List<CustomEntityInstance> resultList = qb.getTypedQuery(getEntityManager(), CustomEntityInstance.class).getResultList();
+		Boolean created = executeIndexStatement(cetCode, "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + getValuesIndexName(cetCode)
+				+ " ON cust_cei USING gin ((cast(cf_values as jsonb)) jsonb_path_ops) WHERE cet_code = " + toSqlLiteral(cetCode));
+		if (created == null) {
+			// A failed concurrent build leaves an invalid index, that would be kept by the next creation
+			removeValuesIndex(cetCode);
+		}
+	}
+
+	/**
+	 * Removes the index created by {@link #createValuesIndex(String)}, if any
+	 *
+	 * @param cetCode Code of the CET
+	 */
+	@Asynchronous
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void removeValuesIndex(String cetCode) {
+		executeIndexStatement(cetCode, "DROP INDEX CONCURRENTLY IF EXISTS " + getValuesIndexName(cetCode));
+	}
+
+	/**
+	 * Executes a statement on the values index of a CET, in auto-commit mode
+	 *
+	 * @return null if the statement failed
+	 */
+	private Boolean executeIndexStatement(String cetCode, String sql) {
+		return withIndexConnection(cetCode, connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(sql);
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Runs a work on a dedicated connection in auto-commit mode, as the concurrent index statements can't be run in a transaction
+	 *
+	 * @return the result of the work, or null if it failed
+	 */
+	private <T> T withIndexConnection(String cetCode, IndexWork<T> work) {
+		SessionFactoryImplementor sessionFactory = getEntityManager().unwrap(Session.class).getSessionFactory().unwrap(SessionFactoryImplementor.class);
+		ConnectionProvider connectionProvider = sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
 
-		if (values != null && !values.isEmpty()) {
-			return resultList.stream()
-					.filter(customEntityInstance -> filterOnValues(values, customEntityInstance, isStoreAsTable))
-					.collect(Collectors.toList());
+		Connection connection = null;
+		try {
+			connection = connectionProvider.getConnection();
+			connection.setAutoCommit(true);
+			return work.execute(connection);
+
+		} catch (SQLException e) {
+			log.error("Failed to update the values index of CET {}", cetCode, e);
+			return null;
+
+		} finally {
+			if (connection != null) {
+				try {
+					connectionProvider.closeConnection(connection);
+				} catch (SQLException e) {
+					log.error("Failed to release connection used to update the values index of CET {}", cetCode, e);
+				}
+			}
 		}
+	}
 
-		return resultList;
+	@FunctionalInterface
+	private interface IndexWork<T> {
+		T execute(Connection connection) throws SQLException;
 	}
 
+	/**
+	 * Count the instances of a CET matching the filters of the pagination configuration
+	 *
+	 * @param cetCode                 Code of the CET
+	 * @param paginationConfiguration Filters to apply
+	 * @return the number of matching instances
+	 */
 	public long count(String cetCode, PaginationConfiguration paginationConfiguration) {
+		Map<String, Object> values = paginationConfiguration != null ? paginationConfiguration.getFilters() : null;
 
-		QueryBuilder qb = new QueryBuilder(getEntityClass(), "cei", null);
-		qb.addCriterion("cei.cetCode", "=", cetCode, true);
+		Map<String, CustomFieldTemplate> cfts = getCustomFieldTemplates(cetCode);
+		QueryBuilder qb = new QueryBuilder("select {cei.*} from cust_cei cei", "cei");
+		Map<String, Object> remainingFilters = addCriteria(qb, cfts, cetCode, values);
+
+		if (!remainingFilters.isEmpty()) {
+			// Some filters can only be applied in memory
+			return list(cetCode, values).size();
+		}
+
+		return ((Number) qb.getNativeCountQuery(getEntityManager()).getSingleResult()).longValue();
+	}
 
-		qb.addPaginationConfiguration(paginationConfiguration);
+	private Map<String, CustomFieldTemplate> getCustomFieldTemplates(String cetCode) {
+		CustomEntityTemplate cet = cetCache.getCustomEntityTemplate(cetCode);
+		Map<String, CustomFieldTemplate> cfts = cet != null ? cetCache.getCustomFieldTemplates(cet.getAppliesTo()) : null;
+		return cfts != null ? cfts : new HashMap<>();
+	}
+
+	/**
+	 * Restricts the query to the instances of a CET, and translates the filters on the values to SQL criteria
+	 *
+	 * @return the filters that could not be translated
+	 */
+	private Map<String, Object> addCriteria(QueryBuilder qb, Map<String, CustomFieldTemplate> cfts, String cetCode, Map<String, Object> values) {
+		// The CET code is inlined rather than bound, so the planner can match the partial values index even with a generic plan
+		qb.addSql("cei.cet_code = " + toSqlLiteral(cetCode));
+
+		Map<String, Object> remainingFilters = new HashMap<>();
+		if (values != null) {
+			for (Map.Entry<String, Object> filter : values.entrySet()) {
+				if (filter.getValue() != null && !addValueCriterion(qb, cfts, filter.getKey(), filter.getValue())) {
+					remainingFilters.put(filter.getKey(), filter.getValue());
+				}
+			}
+		}
+		return remainingFilters;
+	}
+
+	/**
+	 * Translates a filter to a SQL criterion on the instances
+	 *
+	 * @return false if the filter can't be expressed in SQL
+	 */
+	private boolean addValueCriterion(QueryBuilder qb, Map<String, CustomFieldTemplate> cfts, String filterKey, Object filterValue) {
+		String[] fieldInfo = filterKey.split(" ");
+		String condition = fieldInfo.length == 1 ? null : fieldInfo[0];
+		String fieldName = fieldInfo.length == 1 ? fieldInfo[0] : fieldInfo[1];
+		String param = qb.convertFieldToParam(fieldName);
+
+		CustomFieldTemplate cft = getCft(cfts, fieldName);
+		if (cft == null) {
+			if (condition == null && fieldName.equals("code")) {
+				qb.addSqlCriterion("cei.code ~* :" + param, param, toRegex(filterValue));
+				return true;
+			} else if (condition == null && fieldName.equals("uuid")) {
+				qb.addSqlCriterion("cei.uuid = :" + param, param, filterValue.toString());
+				return true;
+			}
+			return false;
+		}
+
+		String jsonKey = getJsonKey(cft);
+		if (jsonKey == null) {
+			return false;
+		}
+
+		String value = getJsonValue(cft.getCode(), jsonKey, true);
+
+		try {
+			if ("fromRange".equals(condition) || "toRange".equals(condition)) {
+				String operator = "fromRange".equals(condition) ? " >= :" : " <= :";
+				if (cft.getFieldType() == CustomFieldTypeEnum.DATE) {
+					qb.addSqlCriterion("cast(" + value + " as timestamptz)" + operator + param, param, toTimestamp(filterValue));
+					return true;
+				} else if (cft.getFieldType() == CustomFieldTypeEnum.LONG || cft.getFieldType() == CustomFieldTypeEnum.DOUBLE) {
+					qb.addSqlCriterion("cast(" + value + " as numeric)" + operator + param, param, Double.valueOf(filterValue.toString()));
+					return true;
+				}
+				return false;
+
+			} else if (filterValue.toString().contains("*")) {
+				if (!jsonKey.equals("string")) {
+					return false;
+				}
+				qb.addSqlCriterion(value + " ~* :" + param, param, toRegex(filterValue));
+				return true;
+
+			} else if (cft.getFieldType() == CustomFieldTypeEnum.DATE) {
+				qb.addSqlCriterion("cast(" + value + " as timestamptz) = :" + param, param, toTimestamp(filterValue));
+				return true;
+			}
+
+			// Containment can use the GIN index on the values
+			Object jsonValue;
+			switch (cft.getFieldType()) {
+			case LONG:
+				jsonValue = Long.valueOf(filterValue.toString());
+				break;
+			case DOUBLE:
+				jsonValue = Double.valueOf(filterValue.toString());
+				break;
+			case BOOLEAN:
+				if (!(filterValue instanceof Boolean) && !"true".equals(filterValue) && !"false".equals(filterValue)) {
+					return false;
+				}
+				jsonValue = Boolean.valueOf(filterValue.toString());
+				break;
+			default:
+				jsonValue = filterValue.toString();
+			}
+
+			String json = JacksonUtil.toString(Map.of(cft.getCode(), List.of(Map.of(jsonKey, jsonValue))));
+			qb.addSqlCriterion("cast(cei.cf_values as jsonb) @> cast(:" + param + " as jsonb)", param, json);
+			return true;
+
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			// Value does not match the type of the field
+			return false;
+		}
+	}
+
+	/**
+	 * @return the SQL expression to sort on, or null if the field can't be sorted in SQL
+	 */
+	private String getSortColumn(Map<String, CustomFieldTemplate> cfts, String sortField) {
+		CustomFieldTemplate cft = getCft(cfts, sortField);
+		if (cft == null) {
+			switch (sortField) {
+			case "code":
+			case "description":
+			case "uuid":
+			case "id":
+				return "cei." + sortField;
+			default:
+				return null;
+			}
+		}
+
+		String jsonKey = getJsonKey(cft);
+		return jsonKey != null ? getJsonValue(cft.getCode(), jsonKey, false) : null;
+	}
+
+	private static CustomFieldTemplate getCft(Map<String, CustomFieldTemplate> cfts, String fieldName) {
+		CustomFieldTemplate cft = cfts.get(fieldName);
+		if (cft == null) {
+			cft = cfts.values()
+					.stream()
+					.filter(f -> f.getCode().equalsIgnoreCase(fieldName))
+					.findFirst()
+					.orElse(null);
+		}
+		return cft;
+	}
+
+	/**
+	 * @return the key of the value in the JSON representation of the field, or null if the field is not stored as a single value
+	 */
+	private static String getJsonKey(CustomFieldTemplate cft) {
+		if (cft.getStorageType() != CustomFieldStorageTypeEnum.SINGLE || cft.isVersionable() || cft.getFieldType() == null) {
+			return null;
+		}
+
+		switch (cft.getFieldType()) {
+		case STRING:
+		case LIST:
+		case TEXT_AREA:
+		case LONG_TEXT:
+			return "string";
+		case LONG:
+			return "long";
+		case DOUBLE:
+			return "double";
+		case BOOLEAN:
+			return "boolean";
+		case DATE:
+			return "date";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param asText whether to extract the value as text, or as JSON
+	 * @return the SQL expression of the value of a field
+	 */
+	private static String getJsonValue(String cftCode, String jsonKey, boolean asText) {
+		return "cast(cei.cf_values as jsonb) -> " + toSqlLiteral(cftCode) + " -> 0 " + (asText ? "->> '" : "-> '") + jsonKey + "'";
+	}
+
+	/**
+	 * @return a case insensitive regex matching the whole value, "*" being the wildcard
+	 */
+	private static String toRegex(Object filterValue) {
+		return "^(" + filterValue.toString().replace("*", ".*") + ")$";
+	}
+
+	private static Timestamp toTimestamp(Object value) {
+		if (value instanceof Date) {
+			return new Timestamp(((Date) value).getTime());
+		} else if (value instanceof Instant) {
+			return Timestamp.from((Instant) value);
+		} else if (value instanceof Number) {
+			return new Timestamp(((Number) value).longValue());
+		}
+		return Timestamp.from(Instant.parse(value.toString()));
+	}
+
+	private static String toSqlLiteral(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
 
-		return qb.count(getEntityManager());
+	private static String getValuesIndexName(String cetCode) {
+		return "cust_cei_cf_values_" + BaseEntity.cleanUpAndLowercaseCodeOrId(cetCode);
 	}
 
 	private boolean filterOnValues(Map<String, Object> filterValues, CustomEntityInstance customEntityInstance) {
@@ -187,6 +187,9 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
 
         if (cet.getSqlStorageConfiguration() != null && cet.getSqlStorageConfiguration().isStoreAsTable()) {
             customTableCreatorService.createTable(cet);
+
+        } else if (isValuesIndexEnabled(paramBean, cet)) {
+            customEntityInstanceService.createValuesIndex(cet.getCode());
         }
 
         elasticClient.createCETMapping(cet);
@@ -541,6 +544,7 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
 
         } else if (cet.getSqlStorageConfiguration() != null) {
             customEntityInstanceService.removeByCet(cet.getCode());
+            customEntityInstanceService.removeValuesIndex(cet.getCode());
         }
 
         if (cet.getNeo4JStorageConfiguration() != null && cet.getAvailableStorages() != null && cet.getAvailableStorages().contains(DBStorageType.NEO4J)) {
@@ -653,6 +657,10 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
             }
         }
 
+        if (isValuesIndexEnabled(paramBean, cet)) {
+            customEntityInstanceService.createValuesIndex(cet.getCode());
+        }
+
         // Synchronize neoj4 indexes
         if (cet.getAvailableStorages() != null && cet.getAvailableStorages().contains(DBStorageType.NEO4J)) {
             neo4jService.addUUIDIndexes(cet);
@@ -676,6 +684,16 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
         return cetUpdated;
     }
 
+    /**
+     * @return whether the values of the instances of the CET, stored in the generic table, should be indexed
+     */
+    private boolean isValuesIndexEnabled(ParamBean paramBean, CustomEntityTemplate cet) {
+        return cet.storedIn(DBStorageType.SQL)
+                && cet.getSqlStorageConfiguration() != null
+                && !cet.getSqlStorageConfiguration().isStoreAsTable()
+                && Boolean.parseBoolean(paramBean.getProperty("persistence.ceiValuesIndex", "false"));
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Asynchronous
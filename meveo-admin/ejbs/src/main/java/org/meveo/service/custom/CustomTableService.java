@@ -30,12 +30,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
@@ -62,6 +64,7 @@ import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.model.crm.CustomFieldTemplate;
+import org.meveo.model.crm.EntityReferenceWrapper;
 import org.meveo.model.crm.custom.CustomFieldStorageTypeEnum;
 import org.meveo.model.crm.custom.CustomFieldTypeEnum;
 import org.meveo.model.customEntities.CustomEntityInstance;
@@ -88,6 +91,7 @@ import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
+import com.google.common.collect.Iterators;
 
 /**
  * @author Edward P. Legaspi | czetsuya@gmail.com
@@ -101,6 +105,16 @@ public class CustomTableService extends NativePersistenceService {
      */
     public static final String FILE_APPEND = "_append";
 
+    /**
+     * Number of records retrieved at once when exporting a table
+     */
+    private static final int EXPORT_PAGE_SIZE = 500;
+
+    /**
+     * Number of lines inserted per transaction when importing a file
+     */
+    private static final int IMPORT_CHUNK_SIZE = 100000;
+
     @Inject
     private ElasticClient elasticClient;
 
@@ -301,11 +315,12 @@ public class CustomTableService extends NativePersistenceService {
 
         try {
             final String dbTablename = SQLStorageConfiguration.getDbTablename(cet);
-            QueryBuilder queryBuilder = getQuery(dbTablename, config);
 
-            SQLQuery query = queryBuilder.getNativeQuery(getEntityManager(sqlConnectionCode), true);
+            // Use keyset pagination so that each page costs the same, whatever its position in the table
+            PaginationConfiguration page = new PaginationConfiguration(config);
+            page.setKeyset(true);
+            page.setNumberOfRows(EXPORT_PAGE_SIZE);
 
-            int firstRow = 0;
             int nrItemsFound;
 
             ParamBean parambean = paramBeanFactory.getInstance();
@@ -342,9 +357,14 @@ public class CustomTableService extends NativePersistenceService {
                 SequenceWriter sWriter = oWriter.writeValues(fileWriter);
 
                 do {
-                    queryBuilder.applyPagination(query, firstRow, 500);
+                    QueryBuilder queryBuilder = getQuery(dbTablename, page);
+                    SQLQuery query = queryBuilder.getNativeQuery(getEntityManager(sqlConnectionCode), true);
                     List<Map<String, Object>> values = query.list();
 
+                    if (!values.isEmpty()) {
+                        page.seekAfter(values.get(values.size() - 1));
+                    }
+
                     /* Fetch entity references */
                     Map<String, Map<String, String>> entityReferencesCache = new HashMap<>();	// Cache used to avoid fetching multiple time the same data
                     for(Map<String, Object> map : values) {
@@ -362,11 +382,10 @@ public class CustomTableService extends NativePersistenceService {
                     }
                     
                     nrItemsFound = values.size();
-                    firstRow = firstRow + 500;
 
                     sWriter.writeAll(values);
 
-                } while (nrItemsFound == 500);
+                } while (nrItemsFound == EXPORT_PAGE_SIZE);
 
             } catch (IOException e) {
                 log.error("Failed to write {} table data to a file {}", dbTablename, exportFile.getAbsolutePath(), e);
@@ -417,11 +436,26 @@ public class CustomTableService extends NativePersistenceService {
      * 
      * @param cet Custom table definition
      * @param inputStream Data stream
-     * @param append True if data should be appended to the existing data. If false, data will be added in batch. One by one otherwise.
+     * @param append True if data should be appended to the existing data. If true, lines conflicting with an existing record on a unique field are ignored.
      * @return Number of records imported
      * @throws BusinessException General business exception
      */
     public int importData(String sqlConnectionCode, CustomEntityTemplate cet, InputStream inputStream, boolean append) throws BusinessException {
+    	return importData(sqlConnectionCode, cet, inputStream, append, null);
+    }
+
+    /**
+     * Import data into custom table. <br>
+     * Lines are streamed to the database with the COPY command on PostgreSQL, by chunks of {@value #IMPORT_CHUNK_SIZE} lines each inserted in a new transaction.
+     * 
+     * @param cet Custom table definition
+     * @param inputStream Data stream
+     * @param append True if data should be appended to the existing data. If true, lines conflicting with an existing record on a unique field are ignored.
+     * @param statistics Statistics updated with the number of records imported after each chunk. Optional.
+     * @return Number of records imported
+     * @throws BusinessException General business exception
+     */
+    public int importData(String sqlConnectionCode, CustomEntityTemplate cet, InputStream inputStream, boolean append, DataImportExportStatistics statistics) throws BusinessException {
 
         final String dbTableName = SQLStorageConfiguration.getDbTablename(cet);
         // Custom table fields. Fields will be sorted by their GUI 'field' position.
@@ -438,56 +472,39 @@ public class CustomTableService extends NativePersistenceService {
             return pos1 - pos2;
         });
 
-        int importedLines = 0;
+        // Only the fields stored in the table are imported
+        List<String> columns = new ArrayList<>();
+        Map<String, CustomEntityTemplate> entityReferences = new HashMap<>();
+        for (CustomFieldTemplate cft : fields) {
+        	if (!cft.getStoragesNullSafe().contains(DBStorageType.SQL)) {
+        		continue;
+        	}
+        	columns.add(cft.getDbFieldname());
+
+        	if (cft.getFieldType() == CustomFieldTypeEnum.ENTITY && cft.getStorageType() == CustomFieldStorageTypeEnum.SINGLE) {
+        		CustomEntityTemplate referencedCet = customFieldsCacheContainerProvider.getCustomEntityTemplate(cft.getEntityClazzCetCode());
+        		if (referencedCet != null && referencedCet.getSqlStorageConfiguration() != null && referencedCet.getSqlStorageConfiguration().isStoreAsTable()) {
+        			entityReferences.put(cft.getDbFieldname(), referencedCet);
+        		}
+        	}
+        }
+
         int importedLinesTotal = 0;
-        List<Map<String, Object>> values = new ArrayList<>();
 
         ObjectReader oReader = getCSVReader(fields);
 
         try (Reader reader = new InputStreamReader(inputStream)) {
-        	
-    		Map<String, Map<String, String>> entityReferencesCache = new HashMap<>(); // Cache used to avoid fetching multiple time the same data
 
             MappingIterator<Map<String, Object>> mappingIterator = oReader.readValues(reader);
+            Iterator<Map<String, Object>> rows = Iterators.transform(mappingIterator, lineValues -> toImportedRow(lineValues, cfts, entityReferences.keySet()));
 
-            while (mappingIterator.hasNext()) {
-                Map<String, Object> lineValues = mappingIterator.next();
-            	lineValues.remove("uuid");
-                
-                if(append) {
-                	lineValues = convertValue(lineValues, cfts, true, null);
-                	replaceEntityreferences(sqlConnectionCode, fields, entityReferencesCache, lineValues);
-                	String uuid = findIdByUniqueValues(sqlConnectionCode, dbTableName, lineValues, fields);
-                	if(uuid == null) {
-                		final String tablename = SQLStorageConfiguration.getDbTablename(cet);
-                		super.createInNewTx(sqlConnectionCode, tablename, lineValues);
-                		importedLines++;
-                        importedLinesTotal++;
-                	}
-                } else {
-	            	// Save to DB every 500 records
-	                if (importedLines >= 500) {
-	
-	                    saveBatch(sqlConnectionCode, cfts, fields, cet.getCode(), values, entityReferencesCache);
-	
-	                    values.clear();
-	                    importedLines = 0;
-	                }
-	                importedLines++;
-	                importedLinesTotal++;
-	            	values.add(lineValues);
-                }
-                
-                
-                if (importedLinesTotal % 30000 == 0) {
-                    log.trace("Imported {} lines to {} table", importedLinesTotal, dbTableName);
-                }
-                
-            }
+            while (rows.hasNext()) {
+            	importedLinesTotal += customTableService.get().bulkInsertInNewTx(sqlConnectionCode, cet, columns, rows, IMPORT_CHUNK_SIZE, entityReferences, append);
 
-            if(!append) {
-                // Save remaining records
-	            saveBatch(sqlConnectionCode, cfts, fields, cet.getCode(), values, entityReferencesCache);
+            	if (statistics != null) {
+            		statistics.setItemsProcessed(importedLinesTotal);
+            	}
+                log.trace("Imported {} lines to {} table", importedLinesTotal, dbTableName);
             }
 
             // Re-populate ES index
@@ -500,11 +517,65 @@ public class CustomTableService extends NativePersistenceService {
 
         } catch (IOException e) {
             throw new BusinessException(e);
+
+        } catch (RuntimeException e) {
+        	if (e.getCause() instanceof ValidationException) {
+        		throw (ValidationException) e.getCause();
+        	}
+        	throw e;
         }
 
         return importedLinesTotal;
     }
 
+    /**
+     * Insert rows into the table of a template, in a new transaction. <br>
+     * The COPY command is used on PostgreSQL. Batched inserts are used on other databases, and for templates extending a template stored in SQL,
+     * whose parent records must be inserted first.
+     * 
+     * @see NativePersistenceService#bulkInsert(String, String, List, Iterator, int, Map, boolean)
+     * @see NativePersistenceService#batchInsert(String, CustomEntityTemplate, List, Iterator, int, Map, boolean)
+     */
+    @Transactional(TxType.REQUIRES_NEW)
+    public int bulkInsertInNewTx(String sqlConnectionCode, CustomEntityTemplate cet, List<String> columns, Iterator<Map<String, Object>> rows, int maxRows,
+    		Map<String, CustomEntityTemplate> entityReferences, boolean skipConflicts) throws BusinessException {
+
+    	if (hasSqlParent(cet) || !isPostgreSQL(sqlConnectionCode)) {
+    		return batchInsert(sqlConnectionCode, cet, columns, rows, maxRows, entityReferences, skipConflicts);
+    	}
+    	return bulkInsert(sqlConnectionCode, SQLStorageConfiguration.getDbTablename(cet), columns, rows, maxRows, entityReferences, skipConflicts);
+    }
+
+    /**
+     * Convert an imported line to the values to insert. The entity references are serialized with their keys converted to column names and sorted,
+     * so that identical references are resolved once.
+     */
+    private Map<String, Object> toImportedRow(Map<String, Object> lineValues, Map<String, CustomFieldTemplate> cfts, Set<String> entityReferenceColumns) {
+    	lineValues.remove(NativePersistenceService.FIELD_ID);
+
+    	Map<String, Object> values;
+    	try {
+    		values = convertValue(lineValues, cfts, false, null);
+    	} catch (ValidationException e) {
+    		throw new RuntimeException(e);
+    	}
+
+    	for (String column : entityReferenceColumns) {
+    		Object value = values.get(column);
+    		if (value instanceof EntityReferenceWrapper) {
+    			values.put(column, ((EntityReferenceWrapper) value).getUuid());
+
+    		} else if (value instanceof String && ((String) value).startsWith("{")) {
+    			Map<String, Object> referenceValues = JacksonUtil.fromString((String) value, GenericTypeReferences.MAP_STRING_OBJECT);
+    			Map<String, Object> sortedValues = new TreeMap<>();
+    			referenceValues.forEach((key, referenceValue) -> sortedValues.put(CustomFieldTemplate.getDbFieldname(key), referenceValue));
+    			values.put(column, JacksonUtil.toString(sortedValues));
+    		}
+    	}
+
+    	return values;
+    }
+
 	public int importData(String sqlConnectionCode, CustomModelObject customModelObject, List<CustomEntityInstance> ceis, boolean append) throws BusinessException {
 		if (ceis == null || ceis.isEmpty()) {
 			return 0;
@@ -601,10 +672,26 @@ public class CustomTableService extends NativePersistenceService {
     @Asynchronous
 //    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Future<DataImportExportStatistics> importDataAsync(String sqlConnectionCode, CustomEntityTemplate customEntityTemplate, InputStream inputStream, boolean append) {
+    	return importDataAsync(sqlConnectionCode, customEntityTemplate, inputStream, append, new DataImportExportStatistics(0));
+    }
+
+    /**
+     * Import data into custom table in asynchronous mode
+     *
+     * @param customEntityTemplate Custom table definition
+     * @param inputStream Data stream
+     * @param append True if data should be appended to the existing data
+     * @param statistics Statistics updated with the number of records imported while the import is in progress
+     * @return A future with a number of records imported or exception occurred
+     */
+    @Asynchronous
+    public Future<DataImportExportStatistics> importDataAsync(String sqlConnectionCode, CustomEntityTemplate customEntityTemplate, InputStream inputStream, boolean append,
+    		DataImportExportStatistics statistics) {
 
         try {
-            int itemsImported = importData(sqlConnectionCode, customEntityTemplate, inputStream, append);
-            return new AsyncResult<>(new DataImportExportStatistics(itemsImported));
+            int itemsImported = importData(sqlConnectionCode, customEntityTemplate, inputStream, append, statistics);
+            statistics.setItemsProcessed(itemsImported);
+            return new AsyncResult<>(statistics);
 
         } catch (Exception e) {
         	log.error("Error importing data", e);
@@ -612,86 +699,6 @@ public class CustomTableService extends NativePersistenceService {
         }
     }
 
-	private void saveBatch(String sqlConnectionCode, Map<String, CustomFieldTemplate> cfts, List<CustomFieldTemplate> fields, String cetCode, List<Map<String, Object>> values,
-			Map<String, Map<String, String>> entityReferencesCache) throws BusinessException {
-
-		List<CustomEntityInstance> ceis = new ArrayList<>();
-		for (Map<String, Object> value : values) {
-			CustomEntityInstance cei = new CustomEntityInstance();
-			cei.setCetCode(cetCode);
-			customFieldInstanceService.setCfValues(cei, cei.getCetCode(), value);
-			ceis.add(cei);
-		}
-
-		saveBatch(sqlConnectionCode, cfts, fields, ceis, entityReferencesCache);
-	}
-
-	/**
-	 * Inserts a list of {@linkplain CustomEntityInstance} into the database in batch.
-	 *
-	 * @param cfts map of {@link CustomFieldTemplate}
-	 * @param fields list of {@link CustomFieldTemplate}
-	 * @param ceis list of transient {@link CustomEntityInstance}
-	 * @param entityReferencesCache
-	 * @throws BusinessException batch saving failed
-	 */
-	private void saveBatch(String sqlConnectionCode, Map<String, CustomFieldTemplate> cfts, List<CustomFieldTemplate> fields,  List<CustomEntityInstance> ceis, Map<String, Map<String, String>> entityReferencesCache) throws BusinessException {
-		
-		if(ceis == null || ceis.isEmpty()) {
-			return;
-		}
-
-		List<Map<String, Object>> values = ceis.stream().map(CustomEntityInstance::getCfValuesAsValues).collect(Collectors.toList());
-		values = convertValues(values, cfts, false);
-		values = replaceEntityReferences(sqlConnectionCode, fields, values, entityReferencesCache);
-        final CustomEntityTemplate cet = customEntityTemplateService.findByCodeOrDbTablename(ceis.get(0).getTableName());
-        customTableService.get().createInNewTx(sqlConnectionCode, cet, false, values);
-	}
-
-	private List<Map<String, Object>> replaceEntityReferences(String sqlConnectionCode, List<CustomFieldTemplate> fields, List<Map<String, Object>> oldvalues, Map<String, Map<String, String>> entityReferencesCache) throws BusinessException {
-		List<Map<String, Object>> values = new ArrayList<>(oldvalues);
-		/* Create or retrieve entity references */
-		for (Map<String, Object> map : values) {
-		    replaceEntityreferences(sqlConnectionCode, fields, entityReferencesCache, map);
-		}
-		return values;
-	}
-
-	private void replaceEntityreferences(String sqlConnectionCode, List<CustomFieldTemplate> fields, Map<String, Map<String, String>> entityReferencesCache, Map<String, Object> entityRefValueMap) throws BusinessException {
-		final HashMap<String, Object> iterationMap = new HashMap<>(entityRefValueMap);
-		for (Entry<String, Object> entry : iterationMap.entrySet()) {
-		    String key = entry.getKey();
-		    Object value = entry.getValue();
-		    final Optional<CustomFieldTemplate> templateOptional = fields.stream().filter(f -> f.getDbFieldname().equals(key)).findFirst();
-
-		    if (templateOptional.isPresent() && templateOptional.get().getFieldType() == CustomFieldTypeEnum.ENTITY) {
-		    	String entityRefTableName = SQLStorageConfiguration.getCetDbTablename(templateOptional.get().getEntityClazzCetCode());
-		        // Try to retrieve record first
-		        String uuid = entityReferencesCache.computeIfAbsent(key, k -> new HashMap<>())
-		                .computeIfAbsent(
-		                        (String) value,
-		                        serializedValues -> {
-		                            Map<String, Object> entityRefValues = JacksonUtil.fromString(serializedValues, GenericTypeReferences.MAP_STRING_OBJECT);
-		                            return findIdByUniqueValues(sqlConnectionCode, entityRefTableName, entityRefValues, fields);
-		                        }
-		                );
-
-		        // If record is not found, create it
-				if (uuid == null) {
-					Map<String, Object> entityRefValues = JacksonUtil.fromString((String) value, GenericTypeReferences.MAP_STRING_OBJECT);
-					log.info("Creating missing entity reference {}", entityRefValues);
-					CustomEntityTemplate cet = customFieldsCacheContainerProvider.getCustomEntityTemplate(templateOptional.get().getEntityClazzCetCode());
-					CustomEntityInstance cei = new CustomEntityInstance();
-					cei.setCetCode(cet.getCode());
-					customFieldInstanceService.setCfValues(cei, cei.getCetCode(), entityRefValues);
-					uuid = create(sqlConnectionCode, cet, cei);
-				}
-
-		        entityRefValueMap.put(key, uuid);
-		    }
-		}
-	}
-
     /**
      * Get the CSV file reader. Schema is created from field's dbFieldname values.
      * 
@@ -982,6 +989,65 @@ public class CustomTableService extends NativePersistenceService {
 		return replaceKeys(cfts, convertedData);
 	}
 
+	/**
+	 * Retrieves and convert data of several rows from database table, using one query per table
+	 *
+	 * @param cet          Template of the data
+	 * @param uuids        UUIDs of the rows
+	 * @param selectFields Fields to retrieve. Will retrieve all fields if null
+	 * @return the converted rows data, indexed by uuid
+	 */
+	public Map<String, Map<String, Object>> findByIds(String sqlConnectionCode, CustomEntityTemplate cet, Collection<String> uuids, List<String> selectFields) {
+		var selectFieldsCopy = selectFields == null ? null : new ArrayList<>(selectFields);
+
+		// Retrieve fields of the template
+		Collection<CustomFieldTemplate> cfts = customFieldsCacheContainerProvider.getCustomFieldTemplates(cet.getAppliesTo()).values();
+
+		Map<String, Map<String, Object>> dataById = new HashMap<>();
+
+		// Complete data with parent table
+		if(cet.getSuperTemplate() != null && cet.getSuperTemplate().storedIn(DBStorageType.SQL)) {
+			var parentCfts = customFieldsCacheContainerProvider.getCustomFieldTemplates(cet.getSuperTemplate().getAppliesTo());
+			List<String> parentFieldsToSelect;
+			if(selectFieldsCopy != null) {
+				parentFieldsToSelect = new ArrayList<>();
+				parentCfts.values()
+					.forEach(cft -> {
+						var dbColKey = cft.getCode();
+						var isFieldSelected =  selectFieldsCopy.remove(dbColKey);
+						if(isFieldSelected) {
+							parentFieldsToSelect.add(dbColKey);
+						}
+					});
+			} else {
+				parentFieldsToSelect = null;
+			}
+
+			super.findByIds(sqlConnectionCode, SQLStorageConfiguration.getDbTablename(cet.getSuperTemplate()), uuids, parentFieldsToSelect)
+				.forEach((uuid, parentData) -> dataById.computeIfAbsent(uuid, k -> new HashMap<>()).putAll(parentData));
+		}
+
+		// Get raw data
+		super.findByIds(sqlConnectionCode, SQLStorageConfiguration.getDbTablename(cet), uuids, selectFieldsCopy)
+			.forEach((uuid, rowData) -> dataById.computeIfAbsent(uuid, k -> new HashMap<>()).putAll(rowData));
+
+		if(dataById.isEmpty()) {
+			return dataById;
+		}
+
+		// Format the data to the representation defined by the fields
+		List<String> ids = new ArrayList<>(dataById.keySet());
+		List<Map<String, Object>> convertedData = convertData(ids.stream().map(dataById::get).collect(Collectors.toList()), cet);
+
+		// Replace the db column names by the fields codes
+		Map<String, Map<String, Object>> result = new HashMap<>();
+		for(int i = 0; i < ids.size(); i++) {
+			result.put(ids.get(i), replaceKeys(cfts, convertedData.get(i)));
+		}
+
+		return result;
+	}
+
 	/**
 	 * Convert the data to the expected format. For instance, deserializes lists
 	 *
@@ -17,7 +17,7 @@ public class DataImportExportStatistics implements Serializable {
     /**
      * Number of items processed
      */
-    private Integer itemsProcessed;
+    private volatile Integer itemsProcessed;
 
     /**
      * Processing result message
@@ -70,6 +70,13 @@ public class DataImportExportStatistics implements Serializable {
         return itemsProcessed;
     }
 
+    /**
+     * @param itemsProcessed Number of items processed
+     */
+    public void setItemsProcessed(Integer itemsProcessed) {
+        this.itemsProcessed = itemsProcessed;
+    }
+
     /**
      * @return Processing result message
      */
@@ -1,6 +1,8 @@
 package org.meveo.service.filter;
 
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -8,8 +10,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
@@ -18,6 +23,13 @@ import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
 
 import org.apache.commons.lang3.EnumUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.commons.utils.FilteredQueryBuilder;
 import org.meveo.commons.utils.QueryBuilder;
@@ -222,6 +234,89 @@ public class FilterService extends BusinessService<Filter> {
 
     }
 
+    /**
+     * Execute a filter and hand the filtered entities over in batches, without loading all of them in memory. <br>
+     * Entities are read through a forward only cursor of a stateless session, on a dedicated read only connection, so the reading is not bound to a
+     * transaction. As with {@link #filteredListAsObjects(Filter)}, the entities are detached. <br>
+     * As the stateless session does not load lazy associations, navigating one of them on a filtered entity fails with a
+     * {@link org.hibernate.LazyInitializationException}: consumers must only use the fields of the entities and the associations fetched by the filter.
+     * <br>
+     * The rows are only streamed because auto-commit is turned off on the connection: with auto-commit on, the PostgreSQL driver ignores the fetch
+     * size and loads the whole result.
+     *
+     * @param filter Filter to execute
+     * @param fetchSize Number of rows fetched from the database at once
+     * @param batchSize Number of entities in a batch
+     * @param batchConsumer Called with each batch. Returns false to stop reading.
+     * @return Number of entities read
+     * @throws BusinessException Failed to execute the filter
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long scrollFilteredEntities(Filter filter, int fetchSize, int batchSize, Predicate<List<IEntity>> batchConsumer) throws BusinessException {
+
+        FilteredQueryBuilder fqb = getFilteredQueryBuilder(filter);
+        log.debug("query={}", fqb.getSqlString());
+
+        SessionFactoryImplementor sessionFactory = getEntityManager().unwrap(Session.class).getSessionFactory().unwrap(SessionFactoryImplementor.class);
+        ConnectionProvider connectionProvider = sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+
+        long count = 0;
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            // Cursors are only used outside of auto-commit mode
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+
+            StatelessSession session = sessionFactory.openStatelessSession(connection);
+            ScrollableResults results = null;
+            try {
+                org.hibernate.query.Query<?> query = session.createQuery(fqb.getSqlString());
+                fqb.getParams().forEach((name, value) -> query.setParameter(name, value));
+                query.setFetchSize(fetchSize);
+                query.setReadOnly(true);
+
+                results = query.scroll(ScrollMode.FORWARD_ONLY);
+                List<IEntity> batch = new ArrayList<>(batchSize);
+                while (results.next()) {
+                    batch.add((IEntity) results.get(0));
+                    count++;
+                    if (batch.size() == batchSize) {
+                        if (!batchConsumer.test(batch)) {
+                            return count;
+                        }
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batchConsumer.test(batch);
+                }
+
+            } finally {
+                if (results != null) {
+                    results.close();
+                }
+                session.close();
+            }
+            return count;
+
+        } catch (SQLException | HibernateException e) {
+            throw new BusinessException("Failed to execute filter " + filter.getCode(), e);
+
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                    connection.setReadOnly(false);
+                    connection.setAutoCommit(true);
+                    connectionProvider.closeConnection(connection);
+                } catch (SQLException e) {
+                    log.error("Failed to release connection used to execute filter {}", filter.getCode(), e);
+                }
+            }
+        }
+    }
+
     public String filteredList(String filterName, Integer firstRow, Integer numberOfRows) throws BusinessException {
         Filter filter = (Filter) findByCode(filterName);
         return filteredList(filter, firstRow, numberOfRows);
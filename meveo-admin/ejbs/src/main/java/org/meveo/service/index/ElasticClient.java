@@ -14,6 +14,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.AsyncResult;
 import javax.ejb.Asynchronous;
@@ -23,6 +24,7 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkItemResponse.Failure;
 import org.elasticsearch.action.bulk.BulkRequest;
@@ -47,6 +49,7 @@ import org.elasticsearch.search.sort.SortOrder;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.cache.CustomFieldsCacheContainerProvider;
+import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ReflectionUtils;
 import org.meveo.commons.utils.StringUtils;
 import org.meveo.model.BaseEntity;
@@ -57,6 +60,7 @@ import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.customEntities.CustomTableRecord;
 import org.meveo.model.persistence.sql.SQLStorageConfiguration;
+import org.meveo.security.CurrentUser;
 import org.meveo.security.MeveoUser;
 import org.meveo.security.keycloak.CurrentUserProvider;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
@@ -117,6 +121,10 @@ public class ElasticClient {
     @EJB
     private ElasticClient multitenantElasticClient;
 
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
     /**
      * Store and index entity in Elastic Search. In case of update, a full update will be performed unless it is configured in elasticSearchConfiguration.json to always do upsert.
      *
@@ -438,19 +446,19 @@ public class ElasticClient {
 
         for (ElasticSearchChangeset change : queuedChanges.getQueuedChanges().values()) {
 
-            if (change.getAction() == ElasticSearchAction.ADD_REPLACE) {
-                bulkRequest.add(new IndexRequest(change.getIndex(), ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).source(change.getSource()));
-
-            } else if (change.getAction() == ElasticSearchAction.UPDATE) {
-                bulkRequest.add(new UpdateRequest(change.getIndex(), ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).doc(change.getSource()));
-
-            } else if (change.getAction() == ElasticSearchAction.UPSERT) {
-                bulkRequest.add(new UpdateRequest(change.getIndex(), ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).upsert(change.getSource()));
-
-            } else if (change.getAction() == ElasticSearchAction.DELETE) {
-
-                if (change.getIdForES() != null) {
-                    bulkRequest.add(new DeleteRequest(change.getIndex(), ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()));
+            DocWriteRequest<?> request = toRequest(change, change.getIndex());
+            if (request == null) {
+                continue;
+            }
+            bulkRequest.add(request);
+
+            // Indexes being rebuilt receive the change too, so it is not lost when they replace the current ones
+            for (IndexRebuild rebuild : esConnection.getRebuilds()) {
+                if (rebuild.hasIndex(change.getIndex())) {
+                    DocWriteRequest<?> rebuildRequest = toRequest(change, rebuild.getIndex(change.getIndex()));
+                    if (rebuild.record(rebuildRequest)) {
+                        bulkRequest.add(rebuildRequest);
+                    }
                 }
             }
         }
@@ -481,6 +489,28 @@ public class ElasticClient {
         queuedChanges.clear();
     }
 
+    /**
+     * @param change Change to a document
+     * @param index Index to apply the change to
+     * @return the request applying the change, or null if there is nothing to apply
+     */
+    private static DocWriteRequest<?> toRequest(ElasticSearchChangeset change, String index) {
+
+        if (change.getAction() == ElasticSearchAction.ADD_REPLACE) {
+            return new IndexRequest(index, ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).source(change.getSource());
+
+        } else if (change.getAction() == ElasticSearchAction.UPDATE) {
+            return new UpdateRequest(index, ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).doc(change.getSource());
+
+        } else if (change.getAction() == ElasticSearchAction.UPSERT) {
+            return new UpdateRequest(index, ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES()).upsert(change.getSource());
+
+        } else if (change.getAction() == ElasticSearchAction.DELETE && change.getIdForES() != null) {
+            return new DeleteRequest(index, ElasticSearchConfiguration.MAPPING_DOC_TYPE, change.getIdForES());
+        }
+        return null;
+    }
+
     /**
      * Execute a primefaces data table component compatible search. See other search methods for documentation on search implementation. A search by query/full text search will be
      * used if paginationConfig.fullTextFilter value is provided.
@@ -974,7 +1004,7 @@ public class ElasticClient {
     /**
      * Delete and recreate Elastic search index structure and populate it with data for a current provider
      *
-     * @param dropIndexes Shall current indexes for provider be dropped first
+     * @param dropIndexes Shall indexes for provider that are not part of the configuration anymore be dropped once the indexes are rebuilt
      * @param reinitESConnection Should connection to ES be re-established
      * @param providerCode Current provider code. For information purpose only, so dont need to look it up
      * @return Reindexing statistics
@@ -996,16 +1026,46 @@ public class ElasticClient {
                 esConnection.reinitES();
             }
 
-            // Drop all indexes for the current provider
-            if (dropIndexes) {
-                esPopulationService.dropIndexes();
+            ParamBean paramBean = ParamBean.getInstance();
+            int parallelism = Integer.parseInt(paramBean.getProperty("elasticsearch.reindex.parallelism", "4"));
+            long timeout = Long.parseLong(paramBean.getProperty("elasticsearch.reindex.timeoutMinutes", "60"));
+
+            // Build new indexes for the current provider, the current ones remain searchable until the new ones are populated
+            IndexRebuild rebuild = new IndexRebuild(esConnection.getClient(), statistics, paramBean);
+            esConnection.addRebuild(rebuild);
+            try {
+                rebuildIndexes(rebuild, statistics, parallelism, timeout, dropIndexes, providerCode);
+            } finally {
+                esConnection.removeRebuild(rebuild);
             }
-            // Recreate all indexes for the current provider
-            esPopulationService.createIndexes();
 
-            // Repopulate index from DB
+        } catch (Exception e) {
+            log.error("Failed to repopulate Elastic Search for provider {}", providerCode, e);
+            statistics.setException(e);
+        }
+
+        return statistics;
+    }
 
-            // Process each class
+    /**
+     * Create the new indexes of a rebuild, populate them, and replace the current indexes with them
+     *
+     * @param rebuild Rebuild of the indexes of the current provider
+     * @param statistics Statistics of the rebuild
+     * @param parallelism Maximum number of custom tables populated concurrently
+     * @param timeout Maximum time to wait for the documents to be indexed, in minutes
+     * @param dropIndexes Shall indexes for provider that are not part of the configuration anymore be dropped once the indexes are rebuilt
+     * @param providerCode Current provider code. For information purpose only
+     * @throws BusinessException General exception in communication with or action execution in Elastic search
+     */
+    private void rebuildIndexes(IndexRebuild rebuild, ReindexingStatistics statistics, int parallelism, long timeout, boolean dropIndexes, String providerCode)
+            throws BusinessException {
+
+        try {
+            esPopulationService.createIndexes(rebuild);
+
+            // Repopulate index from DB, processing several classes concurrently
+            List<Future<ReindexingStatistics>> populations = new ArrayList<>();
             for (String classname : esConfiguration.getEntityClassesManaged()) {
 
                 if (classname.equals(CustomTableRecord.class.getName())) {
@@ -1013,23 +1073,45 @@ public class ElasticClient {
                     List<CustomEntityTemplate> cets = customEntityTemplateService.listCustomTableTemplates();
 
                     for (CustomEntityTemplate cet : cets) {
-
-                        populateAll(statistics, classname, cet);
+                        if (populations.size() >= parallelism) {
+                            populations.remove(0).get();
+                        }
+                        populations.add(multitenantElasticClient.populateAll(currentUser, statistics, classname, cet, rebuild));
                     }
 
                 } else {
-                    populateAll(statistics, classname, null);
+                    populateAll(statistics, classname, null, rebuild);
                 }
             }
 
-            log.info("Finished repopulating Elastic Search for provider {}", providerCode);
+            for (Future<ReindexingStatistics> population : populations) {
+                population.get();
+            }
+
+            if (!rebuild.awaitClose(timeout, TimeUnit.MINUTES)) {
+                statistics.setException(new BusinessException("Timed out waiting for the documents to be indexed"));
+            } else {
+                rebuild.replay();
+            }
 
         } catch (Exception e) {
-            log.error("Failed to repopulate Elastic Search for provider {}", providerCode, e);
+            rebuild.close();
             statistics.setException(e);
         }
 
-        return statistics;
+        if (statistics.getException() != null) {
+            log.error("Failed to repopulate Elastic Search for provider {}", providerCode, statistics.getException());
+            esPopulationService.dropRebuildIndexes(rebuild);
+            return;
+        }
+
+        // Replace current indexes, and drop the ones that are not part of the configuration anymore
+        esPopulationService.swapIndexes(rebuild);
+        if (dropIndexes) {
+            esPopulationService.dropIndexes(rebuild.getIndices());
+        }
+
+        log.info("Finished repopulating Elastic Search for provider {}", providerCode);
     }
 
     /**
@@ -1147,6 +1229,28 @@ public class ElasticClient {
         return new AsyncResult<>(statistics);
     }
 
+    /**
+     * Populate the new indexes of a rebuild with ALL data for a given entity class/custom entity code. Part of cleanAndReindex() method.
+     *
+     * @param lastCurrentUser Current user
+     * @param statistics Statistics of the rebuild
+     * @param classname Full name of an Entity class to rebuild
+     * @param cet Custom entity template to rebuild. Applies ONLY to custom tables.
+     * @param rebuild Rebuild to send the documents to
+     * @return Reindexing statistics of the rebuild
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Future<ReindexingStatistics> populateAll(MeveoUser lastCurrentUser, ReindexingStatistics statistics, String classname, CustomEntityTemplate cet,
+            IndexRebuild rebuild) {
+
+        currentUserProvider.reestablishAuthentication(lastCurrentUser);
+
+        populateAll(statistics, classname, cet, rebuild);
+
+        return new AsyncResult<>(statistics);
+    }
+
     /**
      * Repopulate ALL data for a given entity class/custom entity code. Note: assumes that current data has been deleted already.
      *
@@ -1155,6 +1259,18 @@ public class ElasticClient {
      * @throws BusinessException General exception
      */
     private void populateAll(ReindexingStatistics statistics, String classname, CustomEntityTemplate cet) {
+        populateAll(statistics, classname, cet, null);
+    }
+
+    /**
+     * Repopulate ALL data for a given entity class/custom entity code. Note: assumes that current data has been deleted already.
+     *
+     * @param classname Full name of an Entity class to rebuild
+     * @param cet Custom entity template to rebuild. Applies ONLY to custom tables.
+     * @param rebuild Rebuild to send the documents to. If null, documents are sent to the current indexes.
+     * @throws BusinessException General exception
+     */
+    private void populateAll(ReindexingStatistics statistics, String classname, CustomEntityTemplate cet, IndexRebuild rebuild) {
 
         log.info("Started to repopulate Elastic Search for {}/{}", classname, cet != null ? cet.getCode() : null);
 
@@ -1171,7 +1287,7 @@ public class ElasticClient {
                 final String dbTableName = SQLStorageConfiguration.getDbTablename(cet);
                 log.info("Started to populate Elastic Search with data from {} table", dbTableName);
 
-                Object fromId = 0;
+                Object fromId = null;
 
                 int recordCount = esPopulationService.getRecordCountInNativeTable(dbTableName);
                 int recordsRemaining = recordCount;
@@ -1179,7 +1295,7 @@ public class ElasticClient {
                 while (recordsRemaining > 0) {
 
                     Object[] processedInfo = esPopulationService.populateIndexFromNativeTable(dbTableName, fromId,
-                            recordsRemaining > INDEX_POPULATE_CT_PAGE_SIZE ? INDEX_POPULATE_CT_PAGE_SIZE : -1, statistics);
+                            recordsRemaining > INDEX_POPULATE_CT_PAGE_SIZE ? INDEX_POPULATE_CT_PAGE_SIZE : -1, statistics, rebuild);
 
                     totalProcessed = totalProcessed + (int) processedInfo[0];
                     fromId = processedInfo[1];
@@ -1197,7 +1313,7 @@ public class ElasticClient {
                 boolean hasMore = true;
 
                 while (hasMore) {
-                    Object[] processedInfo = esPopulationService.populateIndex(classname, fromId, INDEX_POPULATE_PAGE_SIZE, statistics);
+                    Object[] processedInfo = esPopulationService.populateIndex(classname, fromId, INDEX_POPULATE_PAGE_SIZE, statistics, rebuild);
 
                     totalProcessed = totalProcessed + (int) processedInfo[0];
                     fromId = processedInfo[1];
@@ -1,5 +1,9 @@
 package org.meveo.service.index;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpHost;
 import org.elasticsearch.action.main.MainResponse;
@@ -48,6 +52,12 @@ public class ElasticClientConnection {
      */
     private boolean esEnabled = false;
 
+    /**
+     * Index rebuilds in progress on this node, receiving a copy of the changes made to the indexes they rebuild. Changes made by other cluster
+     * nodes are not seen, see {@link IndexRebuild}
+     */
+    private final Set<IndexRebuild> rebuilds = ConcurrentHashMap.newKeySet();
+
     /**
      * Initialize Elastic Search client connection
      */
@@ -141,4 +151,27 @@ public class ElasticClientConnection {
     public RestHighLevelClient getClient() {
         return client;
     }
+
+    /**
+     * Register an index rebuild, so the changes to the indexes it rebuilds are also sent to its new indexes
+     * 
+     * @param rebuild Index rebuild starting
+     */
+    public void addRebuild(IndexRebuild rebuild) {
+        rebuilds.add(rebuild);
+    }
+
+    /**
+     * @param rebuild Index rebuild finished
+     */
+    public void removeRebuild(IndexRebuild rebuild) {
+        rebuilds.remove(rebuild);
+    }
+
+    /**
+     * @return Index rebuilds in progress
+     */
+    public Collection<IndexRebuild> getRebuilds() {
+        return rebuilds;
+    }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import java.net.HttpURLConnection;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +34,8 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
 import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
@@ -49,7 +52,6 @@ import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.RestStatus;
 import org.hibernate.SQLQuery;
-import org.hibernate.Session;
 import org.hibernate.proxy.HibernateProxy;
 import org.infinispan.Cache;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
@@ -57,6 +59,7 @@ import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.commons.utils.ReflectionUtils;
 import org.meveo.jpa.EntityManagerWrapper;
 import org.meveo.jpa.JpaAmpNewTx;
@@ -74,7 +77,7 @@ import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.customEntities.CustomTableRecord;
 import org.meveo.model.persistence.JacksonUtil;
-import org.meveo.model.transformer.AliasToEntityOrderedMapResultTransformer;
+import org.meveo.model.typereferences.GenericTypeReferences;
 import org.meveo.security.CurrentUser;
 import org.meveo.security.MeveoUser;
 import org.meveo.service.base.MeveoValueExpressionWrapper;
@@ -147,10 +150,27 @@ public class ElasticSearchIndexPopulationService implements Serializable {
      * @return An array consisting of: Number of items added and last identifier processed
      * @throws BusinessException Communication with ES/bulk request execution exception
      */
-    @SuppressWarnings("unchecked")
     @JpaAmpNewTx
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Object[] populateIndex(String classname, Object fromId, int pageSize, ReindexingStatistics statistics) throws BusinessException {
+        return populateIndex(classname, fromId, pageSize, statistics, null);
+    }
+
+    /**
+     * Populate index with data of a given entity class
+     *
+     * @param classname Entity full classname
+     * @param fromId Populate starting record id
+     * @param pageSize Number of records to retrieve
+     * @param statistics Statistics to add progress info to
+     * @param rebuild Rebuild to send the documents to. If null, documents are sent to the current index in a single bulk request.
+     * @return An array consisting of: Number of items added and last identifier processed
+     * @throws BusinessException Communication with ES/bulk request execution exception
+     */
+    @SuppressWarnings("unchecked")
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Object[] populateIndex(String classname, Object fromId, int pageSize, ReindexingStatistics statistics, IndexRebuild rebuild) throws BusinessException {
 
         Set<String> cftIndexable = new HashSet<>();
         Set<String> cftNotIndexable = new HashSet<>();
@@ -208,6 +228,12 @@ public class ElasticSearchIndexPopulationService implements Serializable {
             }
         }
 
+        // Progress is reported by the rebuild once the documents are sent
+        if (rebuild != null) {
+            bulkRequest.requests().forEach(request -> rebuild.add((IndexRequest) request));
+            return new Object[] { found, lastId };
+        }
+
         // Execute bulk request
 
         int failedRequests = 0;
@@ -484,12 +510,24 @@ public class ElasticSearchIndexPopulationService implements Serializable {
      * @throws BusinessException Failed to delete an index in ES exception
      */
     public void dropIndexes() throws BusinessException {
+        dropIndexes(Collections.emptySet());
+    }
+
+    /**
+     * Make a REST call to drop indexes of a <b>current provider</b>, except the given ones. Index names are prefixed by provider code (removed spaces and
+     * lowercase).
+     *
+     * @param indicesToKeep Full names of the indexes not to drop
+     * @throws BusinessException Failed to delete an index in ES exception
+     */
+    public void dropIndexes(Collection<String> indicesToKeep) throws BusinessException {
 
         String indexPrefix = currentUser.getProviderCode() == null ? "null" : BaseEntity.cleanUpAndLowercaseCodeOrId(currentUser.getProviderCode());
 
         log.debug("Dropping all Elastic Search indexes with prefix {}", indexPrefix);
 
         List<String> indexNames = getIndicesFromES();
+        indexNames.removeAll(indicesToKeep);
 
         // Delete indices
         RestHighLevelClient client = esConnection.getClient();
@@ -520,6 +558,18 @@ public class ElasticSearchIndexPopulationService implements Serializable {
     @JpaAmpNewTx
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void createIndexes() throws BusinessException {
+        createIndexes(null);
+    }
+
+    /**
+     * Create indexes for a <b>current provider</b>. Index names are prefixed by provider code (removed spaces and lowercase).
+     *
+     * @param rebuild Rebuild to create the new indexes for. If null, the indexes are created with their configured names and aliases.
+     * @throws BusinessException Failure to create index in ES exception.
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void createIndexes(IndexRebuild rebuild) throws BusinessException {
 
         String indexPrefix = currentUser.getProviderCode() == null ? "null" : BaseEntity.cleanUpAndLowercaseCodeOrId(currentUser.getProviderCode());
 
@@ -537,6 +587,11 @@ public class ElasticSearchIndexPopulationService implements Serializable {
 
             log.debug("Creating index for entity: {} with model {}", indexName, modelJson);
 
+            if (rebuild != null) {
+                createRebuildIndex(indexName, modelJson, rebuild);
+                continue;
+            }
+
             createIndexRequest = new CreateIndexRequest(indexName);
             createIndexRequest.source(modelJson, XContentType.JSON);
 
@@ -553,7 +608,7 @@ public class ElasticSearchIndexPopulationService implements Serializable {
         // Create mappings for custom entity templates
         List<CustomEntityTemplate> cets = customEntityTemplateService.listNoCache();
         for (CustomEntityTemplate cet : cets) {
-            createCETIndex(cet);
+            createCETIndex(cet, rebuild);
         }
 
         log.trace("Updating Elastic Search mappings for CFTs with prefix {}", indexPrefix);
@@ -561,7 +616,7 @@ public class ElasticSearchIndexPopulationService implements Serializable {
         // Update model mapping with custom fields
         List<CustomFieldTemplate> cfts = customFieldTemplateService.getCFTForIndex();
         for (CustomFieldTemplate cft : cfts) {
-            updateCFMapping(cft);
+            updateCFMapping(cft, rebuild);
         }
 
     }
@@ -609,6 +664,17 @@ public class ElasticSearchIndexPopulationService implements Serializable {
      * @throws BusinessException business exception
      */
     public void createCETIndex(CustomEntityTemplate cet) throws BusinessException {
+        createCETIndex(cet, null);
+    }
+
+    /**
+     * Update Elastic Search model with custom entity template definitions - depending on the configuration might create new index for each CET
+     *
+     * @param cet Custom entity template
+     * @param rebuild Rebuild to create the new index for. If null, the index is created with its configured name and alias.
+     * @throws BusinessException business exception
+     */
+    public void createCETIndex(CustomEntityTemplate cet, IndexRebuild rebuild) throws BusinessException {
 
     	boolean storeAsTable = cet.getSqlStorageConfiguration() != null && cet.getSqlStorageConfiguration().isStoreAsTable();
         Class<? extends ISearchable> instanceClass = storeAsTable ? CustomTableRecord.class : CustomEntityInstance.class;
@@ -629,21 +695,7 @@ public class ElasticSearchIndexPopulationService implements Serializable {
         }
 
         // Check if index is not defined yet, and define it if thats the case
-        boolean indexExists = false;
-
-        GetIndexRequest getIndexRequest = new GetIndexRequest();
-        getIndexRequest.indices(indexName);
-        try {
-            GetIndexResponse response = esConnection.getClient().indices().get(getIndexRequest, RequestOptions.DEFAULT);
-            indexExists = response.indices().length != 0;
-        } catch (IOException e) {
-            throw new BusinessException("Failed to get index " + indexName + " information in Elastic Search.", e);
-        } catch (ElasticsearchStatusException e) {
-            if (!(e.status() == RestStatus.NOT_FOUND && e.getMessage().contains("type=index_not_found_exception"))) {
-                throw new BusinessException("Failed to find index " + indexName + " in Elastic Search.", e);
-            }
-            // index was not found, so continue on
-        }
+        boolean indexExists = rebuild != null ? rebuild.hasIndex(indexName) : getRealIndices(indexName).length != 0;
 
         if (!indexExists) {
 
@@ -658,6 +710,11 @@ public class ElasticSearchIndexPopulationService implements Serializable {
 
             log.debug("Creating index {}/{} for Custom entity template: {} with model {}", realIndexName, indexName, cet.getCode(), modelJson);
 
+            if (rebuild != null) {
+                createRebuildIndex(realIndexName, modelJson, rebuild);
+                return;
+            }
+
             CreateIndexRequest createIndexRequest = new CreateIndexRequest(realIndexName);
             createIndexRequest.source(modelJson, XContentType.JSON);
 
@@ -679,8 +736,19 @@ public class ElasticSearchIndexPopulationService implements Serializable {
      * @param cft Custom field template
      * @throws BusinessException business exception
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public void updateCFMapping(CustomFieldTemplate cft) throws BusinessException {
+        updateCFMapping(cft, null);
+    }
+
+    /**
+     * Update Elastic Search model with custom field definition.
+     *
+     * @param cft Custom field template
+     * @param rebuild Rebuild whose new index should be updated. If null, the current index is updated.
+     * @throws BusinessException business exception
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void updateCFMapping(CustomFieldTemplate cft, IndexRebuild rebuild) throws BusinessException {
 
         // Not interested in indexing
         if (cft.getIndexType() == null) {
@@ -735,7 +803,7 @@ public class ElasticSearchIndexPopulationService implements Serializable {
             return;
         }
 
-        String indexName = indexAndType.getIndexName();
+        String indexName = rebuild != null ? rebuild.getIndex(indexAndType.getIndexName()) : indexAndType.getIndexName();
 
         log.debug("Updating index {} mapping with custom field {} mapping {}", indexName, cleanupCFTFieldname, fieldMappingJson);
 
@@ -774,20 +842,39 @@ public class ElasticSearchIndexPopulationService implements Serializable {
      * Populate index with data of a given db table
      *
      * @param tableName Native table name
-     * @param fromId Populate starting record id
+     * @param fromId Populate the records whose uuid comes after this one. Null to start from the first record.
      * @param pageSize Number of records to retrieve. Value of -1 will retrieve all remaining records
      * @param statistics Statistics to add progress info to
      * @return An array consisting of: Number of items added and last identifier processed
      * @throws BusinessException Communication with ES/bulk request execution exception
      */
-    @SuppressWarnings("unchecked")
     @JpaAmpNewTx
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Object[] populateIndexFromNativeTable(String tableName, Object fromId, int pageSize, ReindexingStatistics statistics) throws BusinessException {
+        return populateIndexFromNativeTable(tableName, fromId, pageSize, statistics, null);
+    }
 
-        Session session = getEntityManager().unwrap(Session.class);
-        SQLQuery query = session.createSQLQuery("select * from " + tableName + " e where e.id>" + fromId + " order by e.id");
-        query.setResultTransformer(AliasToEntityOrderedMapResultTransformer.INSTANCE);
+    /**
+     * Populate index with data of a given db table
+     *
+     * @param tableName Native table name
+     * @param fromId Populate the records whose uuid comes after this one. Null to start from the first record.
+     * @param pageSize Number of records to retrieve. Value of -1 will retrieve all remaining records
+     * @param statistics Statistics to add progress info to
+     * @param rebuild Rebuild to send the documents to. If null, documents are sent to the current index in a single bulk request.
+     * @return An array consisting of: Number of items added and last identifier processed
+     * @throws BusinessException Communication with ES/bulk request execution exception
+     */
+    @SuppressWarnings("unchecked")
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Object[] populateIndexFromNativeTable(String tableName, Object fromId, int pageSize, ReindexingStatistics statistics, IndexRebuild rebuild) throws BusinessException {
+
+        // Keyset pagination on uuid, so that each page costs the same whatever its position in the table
+        QueryBuilder queryBuilder = new QueryBuilder("select * from " + tableName + " e");
+        queryBuilder.addKeysetCriterion(null, true, "e." + NativePersistenceService.FIELD_ID, null, fromId);
+
+        SQLQuery query = queryBuilder.getNativeQuery(getEntityManager(), true);
         if (pageSize > -1) {
             query.setMaxResults(pageSize);
         }
@@ -840,6 +927,12 @@ public class ElasticSearchIndexPopulationService implements Serializable {
             bulkRequest.add(new IndexRequest(indexName, ElasticSearchConfiguration.MAPPING_DOC_TYPE, idForES).source(convertedValues));
         }
 
+        // Progress is reported by the rebuild once the documents are sent
+        if (rebuild != null) {
+            bulkRequest.requests().forEach(request -> rebuild.add((IndexRequest) request));
+            return new Object[] { found, lastId };
+        }
+
         // Execute bulk request
 
         int failedRequests = 0;
@@ -864,6 +957,114 @@ public class ElasticSearchIndexPopulationService implements Serializable {
         return new Object[] { found, lastId };
     }
 
+    /**
+     * Create a new index for a rebuild. The index is created without the aliases of its configuration, so searches keep using the current index until
+     * {@link #swapIndexes(IndexRebuild)} is called.
+     *
+     * @param realIndexName Index name, as defined in the configuration
+     * @param modelJson Index configuration
+     * @param rebuild Rebuild to create the index for
+     * @throws BusinessException Failure to create index in ES exception.
+     */
+    private void createRebuildIndex(String realIndexName, String modelJson, IndexRebuild rebuild) throws BusinessException {
+
+        Map<String, Object> model = JacksonUtil.fromString(modelJson, GenericTypeReferences.MAP_STRING_OBJECT);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> aliases = (Map<String, Object>) model.remove("aliases");
+
+        String newIndexName = rebuild.getNewIndexName(realIndexName);
+
+        log.debug("Creating index {} to rebuild index {}", newIndexName, realIndexName);
+
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(newIndexName);
+        createIndexRequest.source(model);
+
+        try {
+            esConnection.getClient().indices().create(createIndexRequest, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new BusinessException("Failed to create index " + newIndexName + " in Elastic Search.", e);
+        }
+
+        // An index without alias is replaced by an alias with its name
+        if (aliases == null || aliases.isEmpty()) {
+            rebuild.addIndex(realIndexName, newIndexName);
+        } else {
+            aliases.keySet().forEach(alias -> rebuild.addIndex(alias, newIndexName));
+        }
+    }
+
+    /**
+     * Replace the current indexes by the new indexes of a rebuild. Aliases are moved to the new indexes and the current indexes are deleted in a single
+     * atomic operation.
+     *
+     * @param rebuild Rebuild whose indexes are populated
+     * @throws BusinessException Failure to update the aliases in ES exception.
+     */
+    public void swapIndexes(IndexRebuild rebuild) throws BusinessException {
+
+        IndicesAliasesRequest aliasesRequest = new IndicesAliasesRequest();
+
+        for (Entry<String, String> index : rebuild.getIndicesByAlias().entrySet()) {
+            for (String currentIndex : getRealIndices(index.getKey())) {
+                if (!rebuild.getIndices().contains(currentIndex)) {
+                    aliasesRequest.addAliasAction(AliasActions.removeIndex().index(currentIndex));
+                }
+            }
+            aliasesRequest.addAliasAction(AliasActions.add().index(index.getValue()).alias(index.getKey()));
+        }
+
+        log.debug("Replacing indexes {}", rebuild.getIndicesByAlias());
+
+        try {
+            esConnection.getClient().indices().updateAliases(aliasesRequest, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new BusinessException("Failed to replace indexes " + rebuild.getIndicesByAlias().keySet() + " in Elastic Search.", e);
+        }
+    }
+
+    /**
+     * Delete the new indexes of a failed rebuild
+     *
+     * @param rebuild Rebuild whose indexes should be deleted
+     * @throws BusinessException Failed to delete an index in ES exception
+     */
+    public void dropRebuildIndexes(IndexRebuild rebuild) throws BusinessException {
+
+        if (rebuild.getIndices().isEmpty()) {
+            return;
+        }
+
+        DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest(rebuild.getIndices().stream().distinct().toArray(String[]::new));
+        try {
+            esConnection.getClient().indices().delete(deleteIndexRequest, RequestOptions.DEFAULT);
+        } catch (IOException | ElasticsearchStatusException e) {
+            throw new BusinessException("Failed to delete indexes " + rebuild.getIndices() + " in Elastic Search.", e);
+        }
+    }
+
+    /**
+     * @param indexName Index or alias name
+     * @return the names of the indexes an alias points to, the name of the index itself if it is not an alias, or an empty array if there is no such index
+     * @throws BusinessException Elastic search index information can not be accessed
+     */
+    private String[] getRealIndices(String indexName) throws BusinessException {
+
+        GetIndexRequest getIndexRequest = new GetIndexRequest();
+        getIndexRequest.indices(indexName);
+        try {
+            GetIndexResponse response = esConnection.getClient().indices().get(getIndexRequest, RequestOptions.DEFAULT);
+            return response.indices();
+        } catch (IOException e) {
+            throw new BusinessException("Failed to get index " + indexName + " information in Elastic Search.", e);
+        } catch (ElasticsearchStatusException e) {
+            if (!(e.status() == RestStatus.NOT_FOUND && e.getMessage().contains("type=index_not_found_exception"))) {
+                throw new BusinessException("Failed to find index " + indexName + " in Elastic Search.", e);
+            }
+            // index was not found
+            return new String[0];
+        }
+    }
+
     /**
      * Remove custom entity template definition from Elastic Search model. Applies only for cases where each custom entity template has its own index - that is no type is used.
      *
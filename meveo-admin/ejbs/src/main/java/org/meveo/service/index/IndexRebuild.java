@@ -0,0 +1,276 @@
+package org.meveo.service.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuild of the indexes of a provider. The indexes are rebuilt into new indexes, that replace the current indexes behind their aliases once they are
+ * populated, so search remains available during the rebuild. <br>
+ * Documents are sent through a {@link BulkProcessor}, that groups them in bulk requests executed concurrently and retried with a backoff when Elastic
+ * Search rejects them. <br>
+ * The changes made by the application to the current indexes during the rebuild are recorded, and replayed to the new indexes once they are populated,
+ * so they are not lost when the new indexes replace the current ones. From then on, until the indexes are replaced, changes are sent to both indexes. <br>
+ * Running rebuilds are only known by the {@link ElasticClientConnection} of the node running them. In a cluster, the changes handled by the other nodes
+ * are not recorded and are lost when the indexes are replaced, so a rebuild should be run while the other nodes don't write to the indexes.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class IndexRebuild implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexRebuild.class);
+
+    /**
+     * Suffix of the new indexes
+     */
+    private final String version = String.valueOf(System.currentTimeMillis());
+
+    /**
+     * New indexes, by the alias they will replace
+     */
+    private final Map<String, String> indicesByAlias = new ConcurrentHashMap<>();
+
+    /**
+     * Aliases, by new index
+     */
+    private final Map<String, String> aliasesByIndex = new ConcurrentHashMap<>();
+
+    private final ReindexingStatistics statistics;
+
+    private final RestHighLevelClient client;
+
+    private final BulkProcessor bulkProcessor;
+
+    private final int bulkActions;
+
+    /**
+     * Changes made to the current indexes while the new indexes are populated, targeting the new indexes
+     */
+    private final List<DocWriteRequest<?>> changes = new ArrayList<>();
+
+    /**
+     * Whether the recorded changes were replayed
+     */
+    private boolean replayed;
+
+    /**
+     * @param client Elastic Search client
+     * @param statistics Statistics to report the progress to, by index
+     * @param paramBean Configuration of the bulk processor
+     */
+    public IndexRebuild(RestHighLevelClient client, ReindexingStatistics statistics, ParamBean paramBean) {
+        this.statistics = statistics;
+        this.client = client;
+
+        int concurrentRequests = Integer.parseInt(paramBean.getProperty("elasticsearch.reindex.concurrentRequests", "4"));
+        this.bulkActions = Integer.parseInt(paramBean.getProperty("elasticsearch.reindex.bulkActions", "1000"));
+        long bulkSize = Long.parseLong(paramBean.getProperty("elasticsearch.reindex.bulkSizeMb", "5"));
+        long backoffDelay = Long.parseLong(paramBean.getProperty("elasticsearch.reindex.backoffDelayMs", "100"));
+        int backoffRetries = Integer.parseInt(paramBean.getProperty("elasticsearch.reindex.backoffRetries", "5"));
+
+        this.bulkProcessor = BulkProcessor.builder((request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener), new ProgressListener())
+            .setConcurrentRequests(concurrentRequests)
+            .setBulkActions(bulkActions)
+            .setBulkSize(new ByteSizeValue(bulkSize, ByteSizeUnit.MB))
+            .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(backoffDelay), backoffRetries))
+            .build();
+    }
+
+    /**
+     * @param realIndexName Name of the index, as defined in the configuration
+     * @return the name of the new index
+     */
+    public String getNewIndexName(String realIndexName) {
+        return realIndexName + "_" + version;
+    }
+
+    /**
+     * Register a new index
+     *
+     * @param alias Alias the index will replace
+     * @param index New index
+     */
+    public void addIndex(String alias, String index) {
+        indicesByAlias.put(alias, index);
+        aliasesByIndex.put(index, alias);
+    }
+
+    /**
+     * @param alias Alias of an index
+     * @return Whether a new index was created for the alias
+     */
+    public boolean hasIndex(String alias) {
+        return indicesByAlias.containsKey(alias);
+    }
+
+    /**
+     * @param alias Alias of an index
+     * @return the new index that will replace the alias, or the alias itself if the index is not rebuilt
+     */
+    public String getIndex(String alias) {
+        return indicesByAlias.getOrDefault(alias, alias);
+    }
+
+    /**
+     * @return New indexes, by the alias they will replace
+     */
+    public Map<String, String> getIndicesByAlias() {
+        return indicesByAlias;
+    }
+
+    /**
+     * @return New indexes
+     */
+    public Collection<String> getIndices() {
+        return indicesByAlias.values();
+    }
+
+    /**
+     * Queue a document for indexing in the new index of its alias
+     *
+     * @param request Index request, targeting an alias
+     */
+    public void add(IndexRequest request) {
+        bulkProcessor.add(request.index(getIndex(request.index())));
+    }
+
+    /**
+     * Record a change made to a current index, to apply it to the new index that will replace it
+     *
+     * @param request Change, targeting the new index
+     * @return true if the change should be sent now, as the recorded changes were already replayed
+     */
+    public synchronized boolean record(DocWriteRequest<?> request) {
+        if (replayed) {
+            return true;
+        }
+        changes.add(request);
+        return false;
+    }
+
+    /**
+     * Apply the recorded changes to the new indexes, once they are populated. Changes recorded afterwards are sent directly. <br>
+     * The changes made during the replay wait for it to complete, so they are applied after the recorded ones.
+     *
+     * @throws BusinessException if the changes could not be sent
+     */
+    public synchronized void replay() throws BusinessException {
+        log.info("Replaying {} changes made during the rebuild of indexes {}", changes.size(), indicesByAlias.keySet());
+
+        for (int from = 0; from < changes.size(); from += bulkActions) {
+            BulkRequest bulkRequest = new BulkRequest();
+            changes.subList(from, Math.min(from + bulkActions, changes.size())).forEach(bulkRequest::add);
+
+            BulkResponse bulkResponse;
+            try {
+                bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new BusinessException("Failed to replay the changes made during the rebuild of indexes " + indicesByAlias.keySet(), e);
+            }
+
+            for (BulkItemResponse bulkItemResponse : bulkResponse.getItems()) {
+                if (bulkItemResponse.isFailed()) {
+                    log.error("Failed to replay {} in Elastic Search for {}/{} reason: {}", bulkItemResponse.getOpType(), bulkItemResponse.getIndex(),
+                        bulkItemResponse.getId(), bulkItemResponse.getFailureMessage(), bulkItemResponse.getFailure().getCause());
+                }
+            }
+        }
+
+        changes.clear();
+        replayed = true;
+    }
+
+    /**
+     * Send the queued documents and wait for all the bulk requests to complete
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return Whether all the bulk requests completed before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        return bulkProcessor.awaitClose(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        bulkProcessor.close();
+    }
+
+    private String getAlias(String index) {
+        return aliasesByIndex.getOrDefault(index, index);
+    }
+
+    /**
+     * Reports the progress of each index to the statistics
+     */
+    private class ProgressListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            Map<String, int[]> processed = new HashMap<>();
+
+            for (BulkItemResponse bulkItemResponse : response.getItems()) {
+                int[] counts = processed.computeIfAbsent(getAlias(bulkItemResponse.getIndex()), alias -> new int[2]);
+                counts[0]++;
+                if (bulkItemResponse.isFailed()) {
+                    log.error("Failed to add document to Elastic Search for {}/{} reason: {}", bulkItemResponse.getIndex(), bulkItemResponse.getId(),
+                        bulkItemResponse.getFailureMessage(), bulkItemResponse.getFailure().getCause());
+                    counts[1]++;
+                }
+            }
+
+            report(processed);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("Failed to execute ES bulk request of {} documents", request.numberOfActions(), failure);
+
+            Map<String, int[]> processed = new HashMap<>();
+            for (DocWriteRequest<?> docRequest : request.requests()) {
+                int[] counts = processed.computeIfAbsent(getAlias(docRequest.index()), alias -> new int[2]);
+                counts[0]++;
+                counts[1]++;
+            }
+
+            report(processed);
+            statistics.setException(failure);
+        }
+
+        private void report(Map<String, int[]> processed) {
+            processed.forEach((alias, counts) -> {
+                int total = statistics.updateStatistics(alias, counts[0], counts[1]);
+                log.info("Rebuilding index {}: {} documents processed", alias, total);
+            });
+        }
+    }
+
+}
@@ -6,7 +6,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 /**
- * Reindexing statistics
+ * Reindexing statistics. Statistics can be updated concurrently.
  *
  * @author Andrius Karpavicius
  */
@@ -22,7 +22,7 @@ public class ReindexingStatistics implements Serializable {
     /**
      * Occurred exception
      */
-    private Throwable exception;
+    private volatile Throwable exception;
 
     /**
      * @return Records processed
@@ -58,14 +58,16 @@ public class ReindexingStatistics implements Serializable {
      * @param classname Classname that statistics are tracked for
      * @param addTotal Additional total number of records processed
      * @param addFailed Additional number of records failed
+     * @return Total number of records processed for the classname
      */
-    public void updateStatistics(String classname, int addTotal, int addFailed) {
+    public synchronized int updateStatistics(String classname, int addTotal, int addFailed) {
         if (!recordsProcessed.containsKey(classname)) {
             recordsProcessed.put(classname, new ReindexRecordsProcessed(addTotal, addFailed));
 
         } else {
             recordsProcessed.get(classname).updateStatistics(addTotal, addFailed);
         }
+        return recordsProcessed.get(classname).getTotal();
     }
 
     /**
@@ -73,7 +75,7 @@ public class ReindexingStatistics implements Serializable {
      *
      * @param statistics Statistics to aggregate
      */
-    public void updateStatistics(ReindexingStatistics statistics) {
+    public synchronized void updateStatistics(ReindexingStatistics statistics) {
 
         if (statistics.getException() != null) {
             this.setException(statistics.getException());
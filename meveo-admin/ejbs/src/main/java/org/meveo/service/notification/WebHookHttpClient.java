@@ -0,0 +1,162 @@
+package org.meveo.service.notification;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+
+import org.meveo.commons.utils.ParamBean;
+import org.slf4j.Logger;
+
+/**
+ * HTTP client shared by the web hooks. <br>
+ * Requests are sent with non-blocking I/O, so a request in flight doesn't hold a thread, and connections are kept alive and reused between the
+ * requests to the same host. The number of concurrent requests to a host is capped : the requests above the cap are queued until a request to that
+ * host completes.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@Singleton
+@Lock(LockType.READ)
+public class WebHookHttpClient {
+
+    @Inject
+    private Logger log;
+
+    private HttpClient client;
+
+    /**
+     * Threads completing the requests
+     */
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ManagedExecutorService executor;
+
+    private Duration readTimeout;
+
+    private int maxRequestsPerHost;
+
+    /**
+     * Requests queues, by host and port
+     */
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        ParamBean paramBean = ParamBean.getInstance();
+
+        long connectTimeout = Long.parseLong(paramBean.getProperty("webhook.connectTimeoutMs", "5000"));
+        long readTimeout = Long.parseLong(paramBean.getProperty("webhook.readTimeoutMs", "30000"));
+        int maxRequestsPerHost = Integer.parseInt(paramBean.getProperty("webhook.maxRequestsPerHost", "20"));
+        if (paramBean.getProperties().containsKey("webhook.nbThreads")) {
+            log.warn("Property webhook.nbThreads is not used anymore, web hook requests are completed by the managed executor of the container");
+        }
+
+        init(Duration.ofMillis(connectTimeout), Duration.ofMillis(readTimeout), maxRequestsPerHost, executor);
+    }
+
+    /**
+     * @param connectTimeout Maximum time to establish a connection
+     * @param readTimeout Maximum time to wait for the response of a request
+     * @param maxRequestsPerHost Maximum number of concurrent requests to a host
+     * @param executor Executor completing the requests
+     */
+    void init(Duration connectTimeout, Duration readTimeout, int maxRequestsPerHost, Executor executor) {
+        this.readTimeout = readTimeout;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+
+        // HTTP/1.1 as the web hooks were sent with HttpURLConnection, that doesn't try to upgrade the connection
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(connectTimeout)
+            .executor(executor)
+            .build();
+    }
+
+    /**
+     * @param uri URI of the request
+     * @return a request builder, with the read timeout set
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(readTimeout);
+    }
+
+    /**
+     * Send a request, once there are less than the maximum number of requests in progress to its host
+     *
+     * @param request Request to send
+     * @return the response, completed exceptionally if the request failed or timed out
+     */
+    public CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        HostQueue queue = hosts.computeIfAbsent(request.uri().getHost() + ":" + request.uri().getPort(), host -> new HostQueue());
+
+        queue.submit(() -> {
+            try {
+                client.sendAsync(request, BodyHandlers.ofString()).whenComplete((result, error) -> {
+                    queue.release();
+                    if (error != null) {
+                        response.completeExceptionally(error);
+                    } else {
+                        response.complete(result);
+                    }
+                });
+            } catch (RuntimeException e) {
+                queue.release();
+                response.completeExceptionally(e);
+            }
+        });
+
+        return response;
+    }
+
+    /**
+     * Requests to a host, started while there are less requests in progress than the cap
+     */
+    private class HostQueue {
+
+        private final Semaphore permits = new Semaphore(maxRequestsPerHost);
+
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        private void submit(Runnable request) {
+            pending.add(request);
+            startPending();
+        }
+
+        private void release() {
+            permits.release();
+            startPending();
+        }
+
+        private void startPending() {
+            while (!pending.isEmpty() && permits.tryAcquire()) {
+                Runnable request = pending.poll();
+                if (request == null) {
+                    // Taken by another thread in the meantime
+                    permits.release();
+                } else {
+                    request.run();
+                }
+            }
+        }
+    }
+}
@@ -1,18 +1,17 @@
 package org.meveo.service.notification;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 
@@ -31,7 +30,8 @@ import org.slf4j.Logger;
 
 /**
  * @author Edward P. Legaspi
- * @lastModifiedVersion 5.0
+ * @author clement.bareth
+ * @lastModifiedVersion 6.14.0
  */
 @Stateless
 public class WebHookNotifier {
@@ -48,6 +48,15 @@ public class WebHookNotifier {
     @Inject
     private CurrentUserProvider currentUserProvider;
 
+    @Inject
+    private WebHookHttpClient webHookHttpClient;
+
+    /**
+     * Proxy to this bean, to handle the responses asynchronously
+     */
+    @EJB
+    private WebHookNotifier webHookNotifier;
+
     private String evaluate(String expression, Object entityOrEvent, Map<String, Object> context) throws ELException {
         HashMap<Object, Object> userMap = new HashMap<Object, Object>();
         userMap.put("event", entityOrEvent);
@@ -83,7 +92,6 @@ public class WebHookNotifier {
         currentUserProvider.reestablishAuthentication(lastCurrentUser);
 
         log.debug("webhook sendRequest");
-        String result = "";
 
         try {
             String url = webHook.getHttpProtocol().name().toLowerCase() + "://" + webHook.getHost().replace("http://", "");
@@ -115,9 +123,7 @@ public class WebHookNotifier {
                 }
             }
             log.debug("webhook url: {}", url);
-            URL obj = new URL(url);
-
-            HttpURLConnection conn = (HttpURLConnection) obj.openConnection();
+            HttpRequest.Builder request = webHookHttpClient.newRequest(URI.create(url));
 
             Map<String, String> headers = evaluateMap(webHook.getHeaders(), entityOrEvent, context);
             if (!StringUtils.isBlank(webHook.getUsername()) && !headers.containsKey("Authorization")) {
@@ -126,46 +132,73 @@ public class WebHookNotifier {
             }
 
             for (String key : headers.keySet()) {
-                conn.setRequestProperty(key, headers.get(key));
+                try {
+                    request.header(key, headers.get(key));
+                } catch (IllegalArgumentException e) {
+                    // Headers like Host or Content-Length are set by the client
+                    log.warn("webhook header {} ignored : {}", key, e.getMessage());
+                }
             }
 
             if (WebHookMethodEnum.HTTP_GET == webHook.getHttpMethod()) {
-                conn.setRequestMethod("GET");
-            } else if (WebHookMethodEnum.HTTP_POST == webHook.getHttpMethod()) {
-                conn.setRequestMethod("POST");
-            } else if (WebHookMethodEnum.HTTP_PUT == webHook.getHttpMethod()) {
-                conn.setRequestMethod("PUT");
+                request.GET();
             } else if (WebHookMethodEnum.HTTP_DELETE == webHook.getHttpMethod()) {
-                conn.setRequestMethod("DELETE");
-            }
-            conn.setUseCaches(false);
-
-            if (WebHookMethodEnum.HTTP_GET != webHook.getHttpMethod() && WebHookMethodEnum.HTTP_DELETE != webHook.getHttpMethod()) {
-                conn.setDoOutput(true);
-                OutputStream os = conn.getOutputStream();
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
-                writer.write(paramQuery);
-                writer.flush();
-                writer.close();
-                os.close();
+                request.DELETE();
+            } else {
+                // Same default content type as HttpURLConnection
+                if (headers.keySet().stream().noneMatch("Content-Type"::equalsIgnoreCase)) {
+                    request.header("Content-Type", "application/x-www-form-urlencoded");
+                }
+                String method = WebHookMethodEnum.HTTP_PUT == webHook.getHttpMethod() ? "PUT" : "POST";
+                request.method(method, BodyPublishers.ofString(paramQuery, StandardCharsets.UTF_8));
             }
-            int responseCode = conn.getResponseCode();
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            String inputLine;
-            StringBuffer response = new StringBuffer();
 
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
+            // The response is handled once received, without holding a thread while waiting for it
+            webHookHttpClient.send(request.build()).whenComplete((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                webHookNotifier.handleResponse(webHook, entityOrEvent, response != null ? response.statusCode() : 0, response != null ? response.body() : null, cause,
+                    lastCurrentUser);
+            });
+
+        } catch (Exception e) {
+            try {
+                log.debug("webhook business error : ", e);
+                notificationHistoryService.create(webHook, entityOrEvent, e.getMessage(),
+                    e instanceof IOException ? NotificationHistoryStatusEnum.TO_RETRY : NotificationHistoryStatusEnum.FAILED);
+            } catch (BusinessException e2) {
+                log.error("Failed to create notification history", e2);
+
             }
-            in.close();
-            result = response.toString();
-            if (responseCode != 200) {
-                try {
-                    log.debug("webhook httpStatus error : " + responseCode + " response=" + result);
-                    notificationHistoryService.create(webHook, entityOrEvent, "http error status=" + responseCode + " response=" + result, NotificationHistoryStatusEnum.FAILED);
-                } catch (BusinessException e2) {
-                    log.error("Failed to create webhook ", entityOrEvent);
-                }
+        }
+    }
+
+    /**
+     * Record the result of a web hook request and execute the web hook function with the response
+     * 
+     * @param webHook Webhook type notification that was fired
+     * @param entityOrEvent Entity or event that triggered notification
+     * @param responseCode HTTP status of the response
+     * @param result Body of the response
+     * @param error Error that prevented to get a response, if any
+     * @param lastCurrentUser Current user, to reestablish as the response is handled outside of the request thread
+     */
+    @Asynchronous
+    public void handleResponse(WebHook webHook, Object entityOrEvent, int responseCode, String result, Throwable error, MeveoUser lastCurrentUser) {
+
+        currentUserProvider.reestablishAuthentication(lastCurrentUser);
+
+        try {
+            if (error != null) {
+                log.debug("webhook request error : ", error);
+                notificationHistoryService.create(webHook, entityOrEvent, error.getMessage(),
+                    error instanceof IOException ? NotificationHistoryStatusEnum.TO_RETRY : NotificationHistoryStatusEnum.FAILED);
+
+            } else if (responseCode != 200) {
+                log.debug("webhook httpStatus error : " + responseCode + " response=" + result);
+                // Server errors are retried, as were the errors reading the response with HttpURLConnection
+                notificationHistoryService.create(webHook, entityOrEvent, "http error status=" + responseCode + " response=" + result,
+                    responseCode >= 400 ? NotificationHistoryStatusEnum.TO_RETRY : NotificationHistoryStatusEnum.FAILED);
+
             } else {
                 if (webHook.getFunction() != null) {
                     HashMap<Object, Object> userMap = new HashMap<Object, Object>();
@@ -188,17 +221,9 @@ public class WebHookNotifier {
                 }
                 log.debug("webhook answer : " + result);
                 notificationHistoryService.create(webHook, entityOrEvent, result, NotificationHistoryStatusEnum.SENT);
-
-            }
-        } catch (Exception e) {
-            try {
-                log.debug("webhook business error : ", e);
-                notificationHistoryService.create(webHook, entityOrEvent, e.getMessage(),
-                    e instanceof IOException ? NotificationHistoryStatusEnum.TO_RETRY : NotificationHistoryStatusEnum.FAILED);
-            } catch (BusinessException e2) {
-                log.error("Failed to create notification history", e2);
-
             }
+        } catch (BusinessException e) {
+            log.error("Failed to create notification history", e);
         }
     }
 }
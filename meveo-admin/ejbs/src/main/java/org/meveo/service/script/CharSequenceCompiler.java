@@ -89,7 +89,12 @@ public class CharSequenceCompiler<T> {
    
    private final ClassLoaderImpl classLoader;
    
-   private static URLClassLoader urlClassLoader;
+   private static volatile URLClassLoader urlClassLoader;
+   
+   /**
+    * Guards the replacement of {@link #urlClassLoader}
+    */
+   private static final Object CLASS_LOADER_LOCK = new Object();
    
    static {
 	   compiler = ToolProvider.getSystemJavaCompiler();
@@ -248,9 +253,11 @@ public class CharSequenceCompiler<T> {
 				   return (Class<T>) tmpClassLoader.loadClass(qualifiedClassName);
 			   }
 		   } else {
-			   urlClassLoader.close(); // Close previous UrlClassLoader
-			   urlClassLoader = new URLClassLoader(urls, this.getClassLoader()); // Re-instantiate a new one
-			   return (Class<T>) urlClassLoader.loadClass(qualifiedClassName);
+			   synchronized (CLASS_LOADER_LOCK) {
+				   urlClassLoader.close(); // Close previous UrlClassLoader
+				   urlClassLoader = new URLClassLoader(urls, this.getClassLoader()); // Re-instantiate a new one
+				   return (Class<T>) urlClassLoader.loadClass(qualifiedClassName);
+			   }
 		   }
 		   
 //		   Class<T> loadClass = loadClass(qualifiedClassName);
@@ -260,6 +267,71 @@ public class CharSequenceCompiler<T> {
 	   }
    }
 
+	/**
+	 * Compile several java classes with a single compiler invocation, into the classes directory.
+	 * <br>
+	 * Unlike {@link #compile(String, CharSequence, DiagnosticCollector, boolean)}, the classes are not loaded : they are loaded on
+	 * first use with {@link #getCompiledClass(String)}, once {@link #reloadCompiledClasses()} has been called.
+	 * <br>
+	 * Thread safety: this method can be called concurrently for distinct sets of classes.
+	 *
+	 * @param sources         Source of each class, by fully qualified class name
+	 * @param options         The compiler options (such as "-cp")
+	 * @param diagnosticsList Any diagnostics generated by compiling the sources are added to this list.
+	 * @throws CharSequenceCompilerException if the sources cannot be compiled
+	 */
+	public static void compileAll(
+			final Map<String, ? extends CharSequence> sources,
+			final List<String> options,
+			final DiagnosticCollector<JavaFileObject> diagnosticsList) throws CharSequenceCompilerException {
+
+		File classesDirectory = CustomEntityTemplateService.getClassesDir(null);
+		if (!classesDirectory.exists()) {
+			classesDirectory.mkdirs();
+		}
+
+		// Sources are named after their package so that classes with the same simple name don't collide
+		List<JavaFileObject> javaFilesToCompile = new ArrayList<>();
+		sources.forEach((qualifiedClassName, source) -> javaFilesToCompile.add(new JavaFileObjectImpl(qualifiedClassName.replace('.', '/'), source)));
+
+		List<String> compilerOptions = new ArrayList<>(options);
+		compilerOptions.add("-sourcepath");
+		compilerOptions.add(GitHelper.getRepositoryDir(null, "Meveo/src/main/java/").getAbsolutePath());
+		compilerOptions.add("-d");
+		compilerOptions.add(classesDirectory.getAbsolutePath());
+
+		// The shared file manager is not thread safe, so each invocation uses its own
+		try (JavaFileManager standardFileManager = compiler.getStandardFileManager(diagnosticsList, null, null)) {
+			FileManagerImpl taskFileManager = new FileManagerImpl(standardFileManager, new ClassLoaderImpl(CharSequenceCompiler.class.getClassLoader()));
+			final CompilationTask task = compiler.getTask(null, taskFileManager, diagnosticsList, compilerOptions, null, javaFilesToCompile);
+			final Boolean result = task.call();
+
+			if (result == null || !result.booleanValue()) {
+				throw new CharSequenceCompilerException("Compilation failed.", sources.keySet(), diagnosticsList);
+			}
+
+		} catch (IOException e) {
+			throw new CharSequenceCompilerException(sources.keySet(), e, diagnosticsList);
+		}
+	}
+
+	/**
+	 * Replace the class loader of the compiled classes, so classes compiled again are not served from the previous loader. <br>
+	 * To be called once the classes compiled with {@link #compileAll(Map, List, DiagnosticCollector)} are all written.
+	 */
+	public static void reloadCompiledClasses() {
+		synchronized (CLASS_LOADER_LOCK) {
+			try {
+				URL[] urls = { CustomEntityTemplateService.getClassesDir(null).toURI().toURL() };
+				URLClassLoader previousClassLoader = urlClassLoader;
+				urlClassLoader = new URLClassLoader(urls, new ClassLoaderImpl(CharSequenceCompiler.class.getClassLoader()));
+				previousClassLoader.close();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to close previous class loader", e);
+			}
+		}
+	}
+
    /**
     * Load a class that was generated by this instance or accessible from its
     * parent class loader. Use this method if you need access to additional
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.service.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashes of the sources of the scripts whose classes were compiled in a classes directory. <br>
+ * A script whose source hash is unchanged and whose class file still exists does not need to be compiled again.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class CompiledScriptCache {
+
+	/** Name of the file holding the hashes, stored in the classes directory */
+	public static final String INDEX_FILE = "script-sources.properties";
+
+	private static final Logger LOG = LoggerFactory.getLogger(CompiledScriptCache.class);
+
+	private final File classesDirectory;
+
+	private final File indexFile;
+
+	private Properties hashes;
+
+	/**
+	 * @param classesDirectory directory where the script classes are compiled
+	 */
+	public CompiledScriptCache(File classesDirectory) {
+		this.classesDirectory = classesDirectory;
+		this.indexFile = new File(classesDirectory, INDEX_FILE);
+	}
+
+	/**
+	 * @param source source of a script
+	 * @return the SHA-256 hash of the source, in hexadecimal
+	 */
+	public static String hash(CharSequence source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is supported by every JVM
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param qualifiedClassName class name of the script
+	 * @param sourceHash         hash of the current source of the script
+	 * @return true if the script class was compiled from the same source and is still present in the classes directory
+	 */
+	public synchronized boolean isUpToDate(String qualifiedClassName, String sourceHash) {
+		return sourceHash.equals(getHashes().getProperty(qualifiedClassName)) && getClassFile(qualifiedClassName).exists();
+	}
+
+	/**
+	 * Record that a script class has been compiled
+	 *
+	 * @param qualifiedClassName class name of the script
+	 * @param sourceHash         hash of the compiled source
+	 */
+	public synchronized void update(String qualifiedClassName, String sourceHash) {
+		getHashes().setProperty(qualifiedClassName, sourceHash);
+		store();
+	}
+
+	/**
+	 * Forget a script class, so it is compiled again on next check
+	 *
+	 * @param qualifiedClassName class name of the script
+	 */
+	public synchronized void remove(String qualifiedClassName) {
+		if (getHashes().remove(qualifiedClassName) != null) {
+			store();
+		}
+	}
+
+	/**
+	 * @param qualifiedClassName class name of the script
+	 * @return the file of the compiled class
+	 */
+	public File getClassFile(String qualifiedClassName) {
+		return new File(classesDirectory, qualifiedClassName.replace('.', File.separatorChar) + ".class");
+	}
+
+	private Properties getHashes() {
+		if (hashes == null) {
+			hashes = new Properties();
+			if (indexFile.exists()) {
+				try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+					hashes.load(in);
+				} catch (IOException e) {
+					// Every script will be considered as changed
+					LOG.warn("Can't read compiled scripts index {}", indexFile, e);
+				}
+			}
+		}
+		return hashes;
+	}
+
+	private void store() {
+		try {
+			classesDirectory.mkdirs();
+
+			// Write then move, so an interrupted write never leaves a truncated index
+			File tmpFile = new File(classesDirectory, INDEX_FILE + ".tmp");
+			try (OutputStream out = Files.newOutputStream(tmpFile.toPath())) {
+				hashes.store(out, null);
+			}
+			Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		} catch (IOException e) {
+			LOG.warn("Can't write compiled scripts index {}", indexFile, e);
+		}
+	}
+
+}
@@ -39,6 +39,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
@@ -47,8 +48,10 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.persistence.FlushModeType;
@@ -78,6 +81,7 @@ import org.meveo.admin.exception.ElementNotFoundException;
 import org.meveo.admin.exception.InvalidScriptException;
 import org.meveo.admin.util.ResourceBundle;
 import org.meveo.cache.CacheKeyStr;
+import org.meveo.cache.LoadOnceCache;
 import org.meveo.commons.utils.FileUtils;
 import org.meveo.commons.utils.MeveoFileUtils;
 import org.meveo.commons.utils.ReflectionUtils;
@@ -101,6 +105,7 @@ import org.meveo.security.CurrentUser;
 import org.meveo.security.MeveoUser;
 import org.meveo.service.admin.impl.ModuleInstallationContext;
 import org.meveo.service.config.impl.MavenConfigurationService;
+import org.meveo.service.custom.CustomEntityTemplateService;
 import org.meveo.service.git.GitClient;
 import org.meveo.service.git.GitHelper;
 import org.meveo.service.git.MeveoRepository;
@@ -124,7 +129,13 @@ import com.github.javaparser.ast.type.ClassOrInterfaceType;
 public abstract class CustomScriptService<T extends CustomScript> extends FunctionService<T, ScriptInterface> {
 
     private static final Map<CacheKeyStr, ScriptInterfaceSupplier> ALL_SCRIPT_INTERFACES = new ConcurrentHashMap<>();
+
+    /** Compiles each missing script once, without blocking the lookups of the compiled ones */
+    private static final LoadOnceCache<CacheKeyStr, ScriptInterfaceSupplier> SCRIPT_INTERFACES_LOADER = new LoadOnceCache<>(ALL_SCRIPT_INTERFACES);
     
+    /** Source hashes of the script classes compiled on disk */
+    private static final CompiledScriptCache COMPILED_SCRIPTS = new CompiledScriptCache(CustomEntityTemplateService.getClassesDir(null));
+
     /** Class path used to compile scripts */
     public static final AtomicReference<String> CLASSPATH_REFERENCE = new AtomicReference<>("");
     
@@ -149,6 +160,10 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
     
     @Inject
     private ModuleInstallationContext moduleInstallCtx;
+
+    /** Runs the script compilations and the javascript executions */
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ManagedExecutorService executor;
     
     private RepositorySystem defaultRepositorySystem;
 
@@ -502,7 +517,9 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
     }
 
     /**
-     * Build the classpath and compile all scripts.
+     * Build the classpath and compile the scripts whose source changed since their last compilation. <br>
+     * Scripts linked by an import are compiled together by a single compiler invocation, the unrelated groups being compiled in parallel.
+     * Compiled classes are loaded on first use.
      *
      * @param scripts list of scripts
      */
@@ -511,14 +528,106 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
 
             constructClassPath();
 
+            Map<String, T> javaScripts = new HashMap<>();
+            Map<String, String> sources = new HashMap<>();
+            Map<String, String> hashes = new HashMap<>();
+            Map<String, List<String>> imports = new HashMap<>();
+            List<String> changedScripts = new ArrayList<>();
+
             for (T script : scripts) {
-                loadClassInCache(script.getCode());
+                if (script.getSourceTypeEnum() != JAVA) {
+                    continue;
+                }
+
+                String source = findScriptFile(script).exists() ? readScriptFile(script) : script.getScript();
+                if (source == null) {
+                    continue;
+                }
+
+                String hash = CompiledScriptCache.hash(source);
+                javaScripts.put(script.getCode(), script);
+                sources.put(script.getCode(), source);
+                hashes.put(script.getCode(), hash);
+                imports.put(script.getCode(), getImportScripts(source));
+
+                if (!COMPILED_SCRIPTS.isUpToDate(script.getCode(), hash)) {
+                    changedScripts.add(script.getCode());
+                }
+            }
+
+            Set<String> scriptsToCompile = ScriptCompilationPlan.withDependents(changedScripts, imports);
+            if (scriptsToCompile.isEmpty()) {
+                log.info("The {} compiled scripts are up to date", sources.size());
+                return;
+            }
+
+            scriptsToCompile.forEach(code -> addScriptDependencies(javaScripts.get(code)));
+
+            // Up to date scripts are imported from the classes directory instead of being compiled again
+            List<String> options = Arrays.asList(
+            		"-cp", CLASSPATH_REFERENCE.get() + File.pathSeparator + CustomEntityTemplateService.getClassesDirectory(null),
+            		"-implicit:none");
+
+            List<Set<String>> groups = ScriptCompilationPlan.groups(scriptsToCompile, imports);
+            log.info("Compiling {} of {} scripts in {} groups", scriptsToCompile.size(), sources.size(), groups.size());
+
+            List<CompletableFuture<Set<String>>> compilations = groups.stream()
+            		.map(group -> CompletableFuture.supplyAsync(() -> compileGroup(group, sources, options), executor))
+            		.collect(Collectors.toList());
+
+            Set<String> compiledScripts = new HashSet<>();
+            compilations.forEach(compilation -> compiledScripts.addAll(compilation.join()));
+
+            // Load the new classes once all the groups are written
+            CharSequenceCompiler.reloadCompiledClasses();
+
+            for (String code : scriptsToCompile) {
+                clearCompiledScripts(code);
+                if (compiledScripts.contains(code)) {
+                    COMPILED_SCRIPTS.update(code, hashes.get(code));
+                } else {
+                    // Don't serve the class of a previous version, the script will be compiled again on first use and its errors reported
+                    COMPILED_SCRIPTS.remove(code);
+                    COMPILED_SCRIPTS.getClassFile(code).delete();
+                }
             }
+
         } catch (Exception e) {
             log.error("", e);
         }
     }
 
+    /**
+     * Compile a group of scripts with a single compiler invocation. If the group does not compile, its scripts are compiled one by one
+     * so that a script with errors doesn't prevent the others from being compiled.
+     *
+     * @param group   code of the scripts to compile
+     * @param sources source of the scripts, by code
+     * @param options compiler options
+     * @return the code of the compiled scripts
+     */
+    private static Set<String> compileGroup(Collection<String> group, Map<String, String> sources, List<String> options) {
+        Map<String, String> groupSources = new HashMap<>();
+        group.forEach(code -> groupSources.put(code, sources.get(code)));
+
+        try {
+            CharSequenceCompiler.compileAll(groupSources, options, new DiagnosticCollector<>());
+            return new HashSet<>(group);
+
+        } catch (CharSequenceCompilerException e) {
+            if (group.size() == 1) {
+                staticLogger.warn("Script {} does not compile, it will be compiled again on first use", group.iterator().next());
+                return Collections.emptySet();
+            }
+
+            Set<String> compiledScripts = new HashSet<>();
+            for (String code : group) {
+                compiledScripts.addAll(compileGroup(Collections.singleton(code), sources, options));
+            }
+            return compiledScripts;
+        }
+    }
+
     /**
      * @param scriptCode code of the script to re-compile
      */
@@ -820,11 +929,19 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
                 Class<ScriptInterface> compiledScript;
                 compiledScript = compileJavaSource(sourceCode, testCompile);
 
+                if (!testCompile) {
+                    COMPILED_SCRIPTS.update(scriptCode, CompiledScriptCache.hash(sourceCode));
+                }
+
                 return null;
 
             } catch (CharSequenceCompilerException e) {
                 log.error("Failed to compile script {}. Compilation errors:", scriptCode);
 
+                if (!testCompile) {
+                    COMPILED_SCRIPTS.remove(scriptCode);
+                }
+
                 List<ScriptInstanceError> scriptErrors = new ArrayList<>();
 
                 List<Diagnostic<? extends JavaFileObject>> diagnosticList = e.getDiagnostics().getDiagnostics();
@@ -856,7 +973,7 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
                 return scriptErrors;
             }
         } else {
-            ScriptInterface engine = new ES5ScriptEngine(sourceCode);
+            ScriptInterface engine = new ES5ScriptEngine(scriptCode, sourceCode, executor);
             ALL_SCRIPT_INTERFACES.put(new CacheKeyStr(currentUser.getProviderCode(), scriptCode), () -> engine);
             return null;
         }
@@ -884,7 +1001,7 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
      * @return Script interface Class
      * @throws Exception if error occurs
      */
-    public synchronized ScriptInterface getScriptInterface(String scriptCode) throws Exception {
+    public ScriptInterface getScriptInterface(String scriptCode) throws Exception {
         ScriptInterfaceSupplier supplier = ALL_SCRIPT_INTERFACES.get(new CacheKeyStr(currentUser.getProviderCode(), scriptCode));
 
         if (supplier == null) {
@@ -896,7 +1013,7 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
 
     /**
      * Compile the script class for a given script code if it is not compile yet.
-     * NOTE: method is executed synchronously due to WRITE lock. DO NOT CHANGE IT,
+     * NOTE: concurrent calls for the same script wait for a single compilation,
      * so there would be only one attempt to compile a new script class
      *
      * @param scriptCode Script code
@@ -906,30 +1023,38 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
      * @throws ElementNotFoundException Script not found
      */
     protected ScriptInterfaceSupplier getScriptInterfaceWCompile(String scriptCode) throws ElementNotFoundException, InvalidScriptException {
+        try {
+            return SCRIPT_INTERFACES_LOADER.get(new CacheKeyStr(currentUser.getProviderCode(), scriptCode), () -> compileInCache(scriptCode));
+
+        } catch (ElementNotFoundException | InvalidScriptException e) {
+            throw e;
+
+        } catch (BusinessException e) {
+            throw new InvalidScriptException(scriptCode, getEntityClass().getName());
+        }
+    }
+
+    private ScriptInterfaceSupplier compileInCache(String scriptCode) throws ElementNotFoundException, InvalidScriptException {
         ScriptInterfaceSupplier result;
 
-        result = ALL_SCRIPT_INTERFACES.get(new CacheKeyStr(currentUser.getProviderCode(), scriptCode));
+        List<String> fetchFields = Arrays.asList("mavenDependencies");
+        T script = findByCode(scriptCode, fetchFields);
+        if (script == null) {
+            log.debug("ScriptInstance with {} does not exist", scriptCode);
+            throw new ElementNotFoundException(scriptCode, getEntityClass().getName());
+        }
 
-        if (result == null) {
-        	List<String> fetchFields = Arrays.asList("mavenDependencies");
-            T script = findByCode(scriptCode, fetchFields);
-            if (script == null) {
-                log.debug("ScriptInstance with {} does not exist", scriptCode);
-                throw new ElementNotFoundException(scriptCode, getEntityClass().getName());
-            }
-            
-            //compileScript(script, false, false);
-            loadClassInCache(scriptCode);
-            
-            if (script.isError()) {
-                log.debug("ScriptInstance {} failed to compile. Errors: {}", scriptCode, script.getScriptErrors());
-                throw new InvalidScriptException(scriptCode, getEntityClass().getName());
-            }
-            
-            result = ALL_SCRIPT_INTERFACES.get(new CacheKeyStr(currentUser.getProviderCode(), scriptCode));
-            detach(script);
+        //compileScript(script, false, false);
+        loadClassInCache(scriptCode);
+
+        if (script.isError()) {
+            log.debug("ScriptInstance {} failed to compile. Errors: {}", scriptCode, script.getScriptErrors());
+            throw new InvalidScriptException(scriptCode, getEntityClass().getName());
         }
 
+        result = ALL_SCRIPT_INTERFACES.get(new CacheKeyStr(currentUser.getProviderCode(), scriptCode));
+        detach(script);
+
         if (result == null) {
             log.debug("ScriptInstance with {} does not exist", scriptCode);
             throw new ElementNotFoundException(scriptCode, getEntityClass().getName());
@@ -946,7 +1071,7 @@ public abstract class CustomScriptService<T extends CustomScript> extends Functi
      * @throws InvalidScriptException Were not able to instantiate or compile a
      *                                script
      */
-    public synchronized ScriptInterface getScriptInstance(String scriptCode) throws InvalidScriptException {
+    public ScriptInterface getScriptInstance(String scriptCode) throws InvalidScriptException {
         try {
             return getScriptInterface(scriptCode);
         } catch (Exception e) {
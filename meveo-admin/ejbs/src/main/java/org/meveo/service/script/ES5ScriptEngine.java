@@ -1,36 +1,77 @@
 package org.meveo.service.script;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.script.Bindings;
-import javax.script.ScriptContext;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineFactory;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-import javax.script.SimpleScriptContext;
-
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.commons.utils.EjbUtils;
+import org.meveo.commons.utils.ParamBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.graalvm.polyglot.Context;
 
 /**
+ * Executes a javascript function. <br>
+ * The script source is parsed once by an engine shared by all the scripts, and executions run on the executor given by the caller. The number of
+ * concurrent executions of a script is limited by the <code>meveo.script.js.maxConcurrency</code> property, an execution failing when no slot
+ * is freed within <code>meveo.script.js.permitTimeoutMs</code> milliseconds. <br>
+ * When the <code>meveo.script.js.pooledContexts</code> property is true, the contexts are kept from one execution to another instead of being
+ * created for each execution. The global variables defined by an execution are then visible to the next ones. <br>
+ * As the instance is shared by the concurrent executions of the script, an execution is identified by its method context.
+ *
  * Created by Hien Bach on 4/5/2019.
  */
 public class ES5ScriptEngine implements ScriptInterface {
-	
-    private String script;
-    private AtomicBoolean isInterrupted = new AtomicBoolean(false);
-    public Map<String, Object> methodContext;
-    private ScriptEngine jsEngine;
-    private CompletableFuture<?> scriptExecution;
-    
+
+    private static final Engine ENGINE = Engine.create();
+
+    private static final int MAX_CONCURRENCY = Integer.parseInt(ParamBean.getInstance().getProperty("meveo.script.js.maxConcurrency", "16"));
+
+    private static final long PERMIT_TIMEOUT_MS = Long.parseLong(ParamBean.getInstance().getProperty("meveo.script.js.permitTimeoutMs", "30000"));
+
+    private static final long CANCEL_TIMEOUT_MS = Long.parseLong(ParamBean.getInstance().getProperty("meveo.script.js.cancelTimeoutMs", "10000"));
+
+    private static final boolean POOLED_CONTEXTS = Boolean.parseBoolean(ParamBean.getInstance().getProperty("meveo.script.js.pooledContexts", "false"));
+
+    private final Source script;
+
+    /** Executor running the executions */
+    private final Executor executor;
+
+    /** Executions in progress, by method context */
+    private final Map<Map<String, Object>, Execution> executions = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /** Limits the concurrent executions of the script */
+    private final Semaphore executionPermits = new Semaphore(MAX_CONCURRENCY);
+
+    /** Contexts released by the previous executions, in pooled mode */
+    private final BlockingQueue<Context> idleContexts = new ArrayBlockingQueue<>(MAX_CONCURRENCY);
+
     private static Logger LOG = LoggerFactory.getLogger(ES5ScriptEngine.class);
 
+    static {
+    	if (ParamBean.getInstance().getProperties().containsKey("meveo.script.js.threads")) {
+    		LOG.warn("Property meveo.script.js.threads is not used anymore, scripts are executed by the managed executor of the container");
+    	}
+    }
+
     @Override
     public void init(Map<String, Object> methodContext) throws BusinessException {
 
@@ -38,64 +79,182 @@ public class ES5ScriptEngine implements ScriptInterface {
 
     @Override
     public void execute(Map<String, Object> methodContext) throws BusinessException {
-    	this.methodContext = methodContext;
-    	
+        CompletableFuture<Map<String, Object>> execution = executeAsync(methodContext);
         try {
-        	scriptExecution = CompletableFuture.runAsync(() -> {
-				try (Context context = Context.newBuilder("js")
-	                          .allowAllAccess(true)
-	                          .build()) {
-					 
-		            var jsBindings = context.getBindings("js");
-		            jsBindings.putMember("polyglot.js.allowAllAccess", true);
-		            methodContext.forEach(jsBindings::putMember);
-		            jsBindings.putMember("methodContext", methodContext);
-		            jsBindings.putMember("JAVA_CTX", new JavaCtx());
-		            
-		            context.eval("js", script);
-				}
-			});
-        	
-        	scriptExecution.get();
-        } catch (Exception e) {
-        	LOG.error("Error executing script", e);
+        	execution.get();
+
+        } catch (InterruptedException e) {
+        	Thread.currentThread().interrupt();
+        	cancel(methodContext);
+        	throw new BusinessException("Interrupted while executing script", e);
+
+        } catch (ExecutionException e) {
+        	throw new BusinessException(e.getCause());
         }
     }
 
+    /**
+     * Start an execution of the script, once less than <code>meveo.script.js.maxConcurrency</code> executions are in progress. The caller waits
+     * at most <code>meveo.script.js.permitTimeoutMs</code> milliseconds for an execution to end.
+     *
+     * @param methodContext Method variables, identifying the execution
+     * @return the method context, once the script is executed. Completed exceptionally if the script fails or can't be started in time.
+     */
+    public CompletableFuture<Map<String, Object>> executeAsync(Map<String, Object> methodContext) {
+    	try {
+    		if (!executionPermits.tryAcquire(PERMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+    			return CompletableFuture.failedFuture(new BusinessException("Too many concurrent executions of the script, none ended within " + PERMIT_TIMEOUT_MS + " ms"));
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return CompletableFuture.failedFuture(e);
+    	}
+
+    	Execution execution = new Execution();
+    	executions.put(methodContext, execution);
+
+    	CompletableFuture<Map<String, Object>> result = execution.future.whenComplete((values, error) -> {
+    		executions.remove(methodContext);
+    		executionPermits.release();
+    	});
+
+    	try {
+    		executor.execute(() -> {
+    			try {
+    				execute(methodContext, execution.javaCtx);
+    				execution.future.complete(methodContext);
+    			} catch (Throwable e) {
+    				execution.future.completeExceptionally(e);
+    			}
+    		});
+    	} catch (RuntimeException e) {
+    		execution.future.completeExceptionally(e);
+    	}
+
+    	return result;
+    }
+
+    private void execute(Map<String, Object> methodContext, JavaCtx javaCtx) {
+    	Context context = POOLED_CONTEXTS ? idleContexts.poll() : null;
+    	if (context == null) {
+    		context = Context.newBuilder("js")
+    				.engine(ENGINE)
+    				.allowAllAccess(true)
+    				.build();
+    	}
+
+    	boolean reusable = POOLED_CONTEXTS;
+    	Value jsBindings = context.getBindings("js");
+    	try {
+    		jsBindings.putMember("polyglot.js.allowAllAccess", true);
+    		methodContext.forEach(jsBindings::putMember);
+    		jsBindings.putMember("methodContext", methodContext);
+    		jsBindings.putMember("JAVA_CTX", javaCtx);
+
+    		context.eval(script);
+
+    	} catch (PolyglotException e) {
+    		// The context can't be reused if the error doesn't come from the script
+    		reusable &= !(e.isInternalError() || e.isCancelled() || e.isExit());
+    		throw e;
+
+    	} finally {
+    		if (reusable) {
+    			// Don't keep references to the context of this execution
+    			methodContext.keySet().forEach(jsBindings::removeMember);
+    			jsBindings.removeMember("methodContext");
+    			jsBindings.removeMember("JAVA_CTX");
+    			reusable = idleContexts.offer(context);
+    		}
+
+    		if (!reusable) {
+    			context.close();
+    		}
+    	}
+    }
+
     @Override
     public void finalize(Map<String, Object> methodContext) throws BusinessException {
 
     }
 
+    /**
+     * Stop all the executions in progress
+     */
     @Override
     public Map<String, Object> cancel() {
+    	List<Map<String, Object>> methodContexts;
+    	synchronized (executions) {
+    		methodContexts = new ArrayList<>(executions.keySet());
+    	}
+    	methodContexts.forEach(this::cancel);
+    	return new HashMap<>();
+    }
+
+    @Override
+    public Map<String, Object> cancel(Map<String, Object> methodContext) {
+    	Execution execution = executions.get(methodContext);
+    	if (execution == null) {
+    		return methodContext;
+    	}
+
 		try {
-			isInterrupted.set(true);
-			scriptExecution.get();
-			
+			execution.javaCtx.interrupted.set(true);
+			execution.future.get(CANCEL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (TimeoutException e) {
+			LOG.warn("Script execution did not stop within {} ms after being cancelled", CANCEL_TIMEOUT_MS);
 		} catch (Exception e) {
 			LOG.error("Error cancelling script", e);
 		}
-		
+
         return methodContext;
     }
 
-    public ES5ScriptEngine(String script) {
-        this.script = script;
+    /**
+     * @param script   source of the script
+     * @param executor executor running the executions
+     */
+    public ES5ScriptEngine(String script, Executor executor) {
+        this("script", script, executor);
     }
 
-    public class JavaCtx {
-    	
+    /**
+     * @param scriptCode code of the script, used to identify its source in the engine
+     * @param script     source of the script
+     * @param executor   executor running the executions
+     */
+    public ES5ScriptEngine(String scriptCode, String script, Executor executor) {
+        this.script = Source.newBuilder("js", script, scriptCode).buildLiteral();
+        this.executor = executor;
+    }
+
+    /**
+     * State of an execution of the script
+     */
+    private static class Execution {
+
+    	private final JavaCtx javaCtx = new JavaCtx();
+
+    	private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+    }
+
+    public static class JavaCtx {
+
+    	private final AtomicBoolean interrupted = new AtomicBoolean(false);
+
     	public Object getServiceInterface(String name) {
     		return EjbUtils.getServiceInterface(name);
     	}
-    	
+
     	public boolean isInterrupted() {
-    		return isInterrupted.get();
+    		return interrupted.get();
     	}
-    	
+
     	public Thread getCurrentThread() {
     		return Thread.currentThread();
     	}
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.service.script;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the scripts to compile in groups that can be compiled independently, according to the scripts they import.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public final class ScriptCompilationPlan {
+
+	private ScriptCompilationPlan() {
+
+	}
+
+	/**
+	 * Add to the changed scripts the scripts that import them, directly or not, as they must be compiled again too
+	 *
+	 * @param changedScripts scripts whose source changed
+	 * @param imports        scripts imported by each script
+	 * @return the changed scripts and their dependents
+	 */
+	public static Set<String> withDependents(Collection<String> changedScripts, Map<String, ? extends Collection<String>> imports) {
+		Map<String, List<String>> dependents = new HashMap<>();
+		imports.forEach((script, importedScripts) -> {
+			for (String importedScript : importedScripts) {
+				dependents.computeIfAbsent(importedScript, k -> new ArrayList<>()).add(script);
+			}
+		});
+
+		Set<String> result = new LinkedHashSet<>(changedScripts);
+		Deque<String> toVisit = new ArrayDeque<>(changedScripts);
+		while (!toVisit.isEmpty()) {
+			for (String dependent : dependents.getOrDefault(toVisit.pop(), Collections.emptyList())) {
+				if (result.add(dependent)) {
+					toVisit.push(dependent);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Group the scripts linked by an import, so each group can be compiled by its own compiler invocation, in parallel of the other groups.
+	 *
+	 * @param scripts scripts to compile
+	 * @param imports scripts imported by each script
+	 * @return the groups of scripts to compile together
+	 */
+	public static List<Set<String>> groups(Collection<String> scripts, Map<String, ? extends Collection<String>> imports) {
+		Set<String> scriptSet = new HashSet<>(scripts);
+		Map<String, Set<String>> links = new HashMap<>();
+		for (String script : scripts) {
+			links.computeIfAbsent(script, k -> new HashSet<>());
+			Collection<String> importedScripts = imports.get(script);
+			if (importedScripts == null) {
+				continue;
+			}
+
+			for (String importedScript : importedScripts) {
+				if (scriptSet.contains(importedScript)) {
+					links.get(script).add(importedScript);
+					links.computeIfAbsent(importedScript, k -> new HashSet<>()).add(script);
+				}
+			}
+		}
+
+		List<Set<String>> groups = new ArrayList<>();
+		Set<String> grouped = new HashSet<>();
+		for (String script : scripts) {
+			if (!grouped.add(script)) {
+				continue;
+			}
+
+			Set<String> group = new LinkedHashSet<>();
+			Deque<String> toVisit = new ArrayDeque<>();
+			toVisit.push(script);
+			while (!toVisit.isEmpty()) {
+				String current = toVisit.pop();
+				group.add(current);
+				for (String linked : links.get(current)) {
+					if (grouped.add(linked)) {
+						toVisit.push(linked);
+					}
+				}
+			}
+			groups.add(group);
+		}
+
+		return groups;
+	}
+
+}
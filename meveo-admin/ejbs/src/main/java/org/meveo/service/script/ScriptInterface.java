@@ -50,6 +50,15 @@ public interface ScriptInterface {
 		return new HashMap<>();
 	}
 
+	/**
+	 * Immediatly stop the execution started with the given method context and return current results
+	 * 
+	 * @param methodContext Method variables of the execution
+	 */
+	default Map<String, Object> cancel(Map<String, Object> methodContext) {
+		return cancel();
+	}
+
 	/**
 	 * Executed after the main {@link #execute(Map)} method.
 	 * 
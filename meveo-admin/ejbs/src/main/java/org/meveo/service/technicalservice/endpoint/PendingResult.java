@@ -3,6 +3,7 @@
  */
 package org.meveo.service.technicalservice.endpoint;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import org.meveo.service.script.ScriptInterface;
@@ -15,6 +16,7 @@ public class PendingResult {
 	
 	private CompletableFuture<EndpointResult> result;
 	private ScriptInterface engine;
+	private Map<String, Object> methodContext;
 	/**
 	 * @return the {@link #result}
 	 */
@@ -39,6 +41,18 @@ public class PendingResult {
 	public void setEngine(ScriptInterface engine) {
 		this.engine = engine;
 	}
+	/**
+	 * @return the {@link #methodContext}, identifying the execution in its engine
+	 */
+	public Map<String, Object> getMethodContext() {
+		return methodContext;
+	}
+	/**
+	 * @param methodContext the methodContext to set
+	 */
+	public void setMethodContext(Map<String, Object> methodContext) {
+		this.methodContext = methodContext;
+	}
 	
 	
 
@@ -0,0 +1,79 @@
+package org.meveo.commons.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Test;
+
+public class XlsxToCsvReaderTest {
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testReadWorkbook() throws IOException {
+		File file = newFile(workbook(2));
+
+		try (XlsxToCsvReader reader = new XlsxToCsvReader(file, ";", executor)) {
+			assertEquals("name 0;0" + System.lineSeparator() + "name 1;1", readAll(reader));
+		}
+	}
+
+	@Test
+	public void testTruncatedWorkbook() throws IOException {
+		byte[] workbook = workbook(1000);
+		File file = newFile(Arrays.copyOf(workbook, workbook.length / 2));
+
+		try (XlsxToCsvReader reader = new XlsxToCsvReader(file, ";", executor)) {
+			readAll(reader);
+			fail("Reading a truncated workbook should fail instead of ending normally");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private static String readAll(Reader reader) throws IOException {
+		StringWriter content = new StringWriter();
+		reader.transferTo(content);
+		return content.toString();
+	}
+
+	private static byte[] workbook(int nbRows) throws IOException {
+		try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+			Sheet sheet = workbook.createSheet();
+			for (int i = 0; i < nbRows; i++) {
+				Row row = sheet.createRow(i);
+				row.createCell(0).setCellValue("name " + i);
+				row.createCell(1).setCellValue(i);
+			}
+			workbook.write(out);
+			return out.toByteArray();
+		}
+	}
+
+	private static File newFile(byte[] content) throws IOException {
+		File file = File.createTempFile("workbook", ".xlsx");
+		file.deleteOnExit();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+}
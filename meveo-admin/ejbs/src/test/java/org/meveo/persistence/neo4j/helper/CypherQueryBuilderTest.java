@@ -0,0 +1,70 @@
+package org.meveo.persistence.neo4j.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class CypherQueryBuilderTest {
+
+	@Test
+	public void testCountWithoutFilters() {
+		CypherQueryBuilder query = CypherQueryBuilder.create("Person");
+
+		assertTrue(query.isSupported());
+		assertEquals("MATCH (n:Person) RETURN count(n) AS count", query.toCountStatement());
+	}
+
+	@Test
+	public void testCountWithFilters() {
+		Map<String, Object> filters = new LinkedHashMap<>();
+		filters.put("name", "John");
+		filters.put("fromRange age", 18);
+		filters.put("ne city", "Paris");
+		filters.put("inList code", List.of("a", "b"));
+		filters.put("uuid", "1234");
+
+		CypherQueryBuilder query = CypherQueryBuilder.create("Person").filters(filters);
+
+		assertTrue(query.isSupported());
+		assertEquals("MATCH (n:Person) WHERE n.`name` = $p0 AND n.`age` >= $p1 AND n.`city` <> $p2 AND n.`code` IN $p3 AND n.meveo_uuid = $p4 RETURN count(n) AS count",
+				query.toCountStatement());
+		assertEquals(18L, query.getParameters().get("p1"));
+	}
+
+	@Test
+	public void testWildcard() {
+		CypherQueryBuilder query = CypherQueryBuilder.create("Person").filter("name", "Jo*n.");
+
+		assertEquals("MATCH (n:Person) WHERE n.`name` =~ $p0 RETURN count(n) AS count", query.toCountStatement());
+		assertTrue("John.".matches((String) query.getParameters().get("p0")));
+		assertFalse("Johnx".matches((String) query.getParameters().get("p0")));
+	}
+
+	@Test
+	public void testStableOrderPage() {
+		CypherQueryBuilder query = CypherQueryBuilder.create("Person").filter("name", "Jo*").orderBy("age", false);
+
+		assertEquals("MATCH (n:Person) WHERE n.`name` =~ $p0 RETURN n.meveo_uuid AS uuid ORDER BY n.`age` DESC, n.meveo_uuid DESC SKIP 20 LIMIT 10",
+				query.toUuidsStatement(20, 10));
+		assertEquals("MATCH (n:Person) RETURN n.meveo_uuid AS uuid ORDER BY n.meveo_uuid ASC LIMIT 10",
+				CypherQueryBuilder.create("Person").orderBy(null, true).toUuidsStatement(0, 10));
+	}
+
+	@Test
+	public void testUnsupportedFilter() {
+		assertFalse(CypherQueryBuilder.create("Person").filter("birthDate", new Date()).isSupported());
+		assertFalse(CypherQueryBuilder.create("Person").filter("minmaxRange age weight", 10).isSupported());
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.meveo.persistence.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class OrderedPersistenceServiceTest {
+
+	@BeforeClass
+	public static void configure() throws IOException {
+		// The chunk size and parallelism are read from the configuration, outside of the application server
+		File properties = File.createTempFile("meveo-admin", ".properties");
+		properties.deleteOnExit();
+		System.setProperty("meveo-admin.properties", properties.getAbsolutePath());
+	}
+
+	@Test
+	public void testMixedPlanChunks() {
+		EntityToPersist person = new EntityToPersist("Person", "person", Map.of("name", "John"));
+		EntityToPersist company = new EntityToPersist("Company", "company", Map.of("name", "Acme"));
+		RelationToPersist worksFor = new RelationToPersist("WorksFor", "worksFor", Map.of(), person, company);
+		SourceEntityToPersist employee = new SourceEntityToPersist("Person", "employee", Map.of("name", "Jane"), worksFor);
+
+		Set<ItemToPersist> items = new LinkedHashSet<>(List.of(person, company, worksFor, employee));
+		List<List<ItemToPersist>> chunks = OrderedPersistenceService.split(items);
+
+		// Source entities are not grouped with the entities of the same template
+		assertEquals(4, chunks.size());
+		assertEquals(List.of(person), chunks.get(0));
+		assertEquals(List.of(company), chunks.get(1));
+		assertEquals(List.of(worksFor), chunks.get(2));
+		assertEquals(List.of(employee), chunks.get(3));
+
+		assertTrue(OrderedPersistenceService.isParallelizable(chunks.get(0)));
+		assertTrue(OrderedPersistenceService.isParallelizable(chunks.get(1)));
+		assertFalse(OrderedPersistenceService.isParallelizable(chunks.get(2)));
+		assertFalse(OrderedPersistenceService.isParallelizable(chunks.get(3)));
+	}
+
+}
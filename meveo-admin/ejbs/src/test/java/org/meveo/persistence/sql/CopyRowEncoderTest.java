@@ -0,0 +1,40 @@
+package org.meveo.persistence.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author clement.bareth
+ */
+public class CopyRowEncoderTest {
+
+	@Test
+	public void testNullAndSeparators() {
+		StringBuilder buffer = new StringBuilder();
+		CopyRowEncoder.appendRow(buffer, Arrays.asList("a", null, 12L, true));
+
+		assertEquals("a\t\\N\t12\t1\n", buffer.toString());
+	}
+
+	@Test
+	public void testEscaping() {
+		StringBuilder buffer = new StringBuilder();
+		CopyRowEncoder.appendValue(buffer, "back\\slash\ttab\nline\rreturn");
+
+		assertEquals("back\\\\slash\\ttab\\nline\\rreturn", buffer.toString());
+	}
+
+	@Test
+	public void testCollection() {
+		StringBuilder buffer = new StringBuilder();
+		List<Object> values = Arrays.asList(Arrays.asList("x", "y"));
+		CopyRowEncoder.appendRow(buffer, values);
+
+		assertEquals("[\"x\",\"y\"]\n", buffer.toString());
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.meveo.service.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author clement.bareth
+ */
+public class WebHookHttpClientTest {
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private ExecutorService clientExecutor;
+
+	private WebHookHttpClient client;
+
+	private final Set<Integer> clientPorts = new HashSet<>();
+
+	private final AtomicInteger inProgress = new AtomicInteger();
+
+	private final AtomicInteger maxInProgress = new AtomicInteger();
+
+	@Before
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.createContext("/echo", exchange -> {
+			synchronized (clientPorts) {
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+			}
+			respond(exchange, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+		});
+		server.createContext("/slow", exchange -> {
+			maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			inProgress.decrementAndGet();
+			respond(exchange, "done");
+		});
+		server.start();
+
+		clientExecutor = Executors.newFixedThreadPool(2);
+		client = new WebHookHttpClient();
+		client.init(Duration.ofSeconds(1), Duration.ofSeconds(5), 2, clientExecutor);
+	}
+
+	@After
+	public void stop() {
+		clientExecutor.shutdownNow();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testConnectionReuse() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			HttpResponse<String> response = client.send(client.newRequest(uri("/echo")).POST(BodyPublishers.ofString("hello " + i)).build()).get(5, TimeUnit.SECONDS);
+
+			assertEquals(200, response.statusCode());
+			assertEquals("hello " + i, response.body());
+		}
+
+		assertEquals("Requests should be sent on the same connection", 1, clientPorts.size());
+	}
+
+	@Test
+	public void testMaxRequestsPerHost() throws Exception {
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			responses.add(client.send(client.newRequest(uri("/slow")).GET().build()));
+		}
+
+		for (CompletableFuture<HttpResponse<String>> response : responses) {
+			assertEquals("done", response.get(10, TimeUnit.SECONDS).body());
+		}
+		assertEquals(2, maxInProgress.get());
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		client = new WebHookHttpClient();
+		client.init(Duration.ofSeconds(1), Duration.ofMillis(100), 1, clientExecutor);
+
+		try {
+			client.send(client.newRequest(uri("/slow")).GET().build()).get(5, TimeUnit.SECONDS);
+			fail("Request should time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof HttpTimeoutException);
+		}
+
+		// The permit of the timed out request is released
+		client.send(client.newRequest(uri("/echo")).POST(BodyPublishers.ofString("after timeout")).build()).get(5, TimeUnit.SECONDS);
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package org.meveo.service.script;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author clement.bareth
+ */
+public class ScriptCompilationPlanTest {
+
+	private static final Map<String, List<String>> IMPORTS = Map.of(
+			"a", List.of(),
+			"b", List.of("a"),
+			"c", List.of("b"),
+			"d", List.of(),
+			"e", List.of("d"));
+
+	@Test
+	public void testTransitiveDependents() {
+		Set<String> toCompile = ScriptCompilationPlan.withDependents(List.of("a"), IMPORTS);
+
+		assertEquals(Set.of("a", "b", "c"), toCompile);
+	}
+
+	@Test
+	public void testUnchangedDependency() {
+		Set<String> toCompile = ScriptCompilationPlan.withDependents(List.of("e"), IMPORTS);
+
+		assertEquals(Set.of("e"), toCompile);
+	}
+
+	@Test
+	public void testGroups() {
+		List<Set<String>> groups = ScriptCompilationPlan.groups(Arrays.asList("a", "b", "c", "d", "e"), IMPORTS);
+
+		assertEquals(2, groups.size());
+		assertEquals(Set.of("a", "b", "c"), groups.get(0));
+		assertEquals(Set.of("d", "e"), groups.get(1));
+	}
+
+	@Test
+	public void testImportOutsideOfCompiledScripts() {
+		// "b" imports "a", which is up to date and thus not part of the compiled scripts
+		List<Set<String>> groups = ScriptCompilationPlan.groups(Arrays.asList("b", "d"), IMPORTS);
+
+		assertEquals(List.of(Set.of("b"), Set.of("d")), groups);
+	}
+
+}
@@ -119,6 +119,8 @@ public class CustomTableBean extends BaseBean<CustomEntityTemplate> {
 
 	private Future<DataImportExportStatistics> importFuture;
 
+	private DataImportExportStatistics importStatistics;
+
 	private String cet;
 
 	private Map<String, Object> selectedRow;
@@ -437,7 +439,8 @@ public class CustomTableBean extends BaseBean<CustomEntityTemplate> {
 				customTableService.remove(repositoryProvider.getRepository().getSqlConfigurationCode(), entity);
 			}
 
-			importFuture = customTableService.importDataAsync(getSqlConnectionCode(), entity, file.getInputstream(), appendImportedData);
+			importStatistics = new DataImportExportStatistics(0);
+			importFuture = customTableService.importDataAsync(getSqlConnectionCode(), entity, file.getInputstream(), appendImportedData, importStatistics);
 			messages.info(new BundleKey("messages", "customTable.importFile.started"));
 
 		} catch (Exception e) {
@@ -545,6 +548,10 @@ public class CustomTableBean extends BaseBean<CustomEntityTemplate> {
 		return importFuture;
 	}
 
+	public DataImportExportStatistics getImportStatistics() {
+		return importStatistics;
+	}
+
 	public String getCet() {
 		return cet;
 	}
@@ -35,6 +35,24 @@ public class Neo4jConfigurationDto extends BusinessEntityDto {
 	@ApiModelProperty("Neo4j password")
 	private String neo4jPassword;
 
+	/*
+	 * Maximum size of the connection pool
+	 */
+	@ApiModelProperty("Maximum number of connections kept by the driver")
+	private Integer maxConnectionPoolSize;
+
+	/*
+	 * Connection acquisition timeout
+	 */
+	@ApiModelProperty("Maximum time, in milliseconds, to wait for a connection of the pool")
+	private Long connectionAcquisitionTimeout;
+
+	/*
+	 * Maximum connection lifetime
+	 */
+	@ApiModelProperty("Maximum time, in milliseconds, a connection of the pool is kept")
+	private Long maxConnectionLifetime;
+
 	public Neo4jConfigurationDto() {
 
 	}
@@ -46,6 +64,9 @@ public class Neo4jConfigurationDto extends BusinessEntityDto {
 			neo4jUrl = e.getNeo4jUrl();
 			neo4jLogin = e.getNeo4jLogin();
 			neo4jPassword = e.getNeo4jPassword();
+			maxConnectionPoolSize = e.getMaxConnectionPoolSize();
+			connectionAcquisitionTimeout = e.getConnectionAcquisitionTimeout();
+			maxConnectionLifetime = e.getMaxConnectionLifetime();
 		}
 	}
 
@@ -72,4 +93,28 @@ public class Neo4jConfigurationDto extends BusinessEntityDto {
 	public void setNeo4jPassword(String neo4jPassword) {
 		this.neo4jPassword = neo4jPassword;
 	}
+
+	public Integer getMaxConnectionPoolSize() {
+		return maxConnectionPoolSize;
+	}
+
+	public void setMaxConnectionPoolSize(Integer maxConnectionPoolSize) {
+		this.maxConnectionPoolSize = maxConnectionPoolSize;
+	}
+
+	public Long getConnectionAcquisitionTimeout() {
+		return connectionAcquisitionTimeout;
+	}
+
+	public void setConnectionAcquisitionTimeout(Long connectionAcquisitionTimeout) {
+		this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+	}
+
+	public Long getMaxConnectionLifetime() {
+		return maxConnectionLifetime;
+	}
+
+	public void setMaxConnectionLifetime(Long maxConnectionLifetime) {
+		this.maxConnectionLifetime = maxConnectionLifetime;
+	}
 }
@@ -2,6 +2,7 @@ package org.meveo.api.neo4j;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.ejb.Stateless;
@@ -15,6 +16,7 @@ import org.meveo.api.exception.MeveoApiException;
 import org.meveo.api.utils.DtoUtils;
 import org.meveo.exceptions.EntityDoesNotExistsException;
 import org.meveo.model.neo4j.Neo4JConfiguration;
+import org.meveo.persistence.neo4j.base.Neo4jConnectionProvider;
 import org.meveo.service.neo4j.Neo4jConfigurationService;;
 
 /**
@@ -26,6 +28,9 @@ public class Neo4jConfigurationApi extends BaseApi {
 	@Inject
 	private Neo4jConfigurationService neo4jConfigurationService;
 
+	@Inject
+	private Neo4jConnectionProvider neo4jConnectionProvider;
+
 	private Neo4JConfiguration toNeo4jConfiguration(Neo4jConfigurationDto source, Neo4JConfiguration target) {
 		if (target == null) {
 			target = new Neo4JConfiguration();
@@ -35,6 +40,9 @@ public class Neo4jConfigurationApi extends BaseApi {
 		target.setNeo4jUrl(source.getNeo4jUrl());
 		target.setNeo4jLogin(source.getNeo4jLogin());
 		target.setClearPassword(source.getNeo4jPassword());
+		target.setMaxConnectionPoolSize(source.getMaxConnectionPoolSize());
+		target.setConnectionAcquisitionTimeout(source.getConnectionAcquisitionTimeout());
+		target.setMaxConnectionLifetime(source.getMaxConnectionLifetime());
 
 		return target;
 	}
@@ -93,6 +101,13 @@ public class Neo4jConfigurationApi extends BaseApi {
 		return entities != null ? entities.stream().map(e -> new Neo4jConfigurationDto(e)).collect(Collectors.toList()) : new ArrayList<Neo4jConfigurationDto>();
 	}
 
+	/**
+	 * @return the sessions usage and connection pool settings, by neo4j configuration code
+	 */
+	public Map<String, Map<String, Object>> getMetrics() {
+		return neo4jConnectionProvider.getMetrics();
+	}
+
 	public void remove(String code) throws BusinessException {
 		Neo4JConfiguration entity = neo4jConfigurationService.findByCode(code);
 		if (entity == null) {
@@ -40,4 +40,11 @@ public class JacksonJsonProvider extends JacksonJaxbJsonProvider {
 		super.setAnnotationsToUse(DEFAULT_ANNOTATIONS);
 		super.setMapper(OBJECT_MAPPER);
 	}
+
+	/**
+	 * @return the mapper used to serialize the JSON responses
+	 */
+	public static ObjectMapper getObjectMapper() {
+		return OBJECT_MAPPER;
+	}
 }
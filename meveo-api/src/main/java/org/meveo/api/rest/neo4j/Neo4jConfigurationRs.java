@@ -1,5 +1,7 @@
 package org.meveo.api.rest.neo4j;
 
+import java.util.Map;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -81,6 +83,17 @@ public interface Neo4jConfigurationRs extends IBaseRs {
 	@ApiOperation(value = "list of binary storages")
 	Neo4jConfigurationsResponseDto list();
 
+	/**
+	 * Sessions usage and connection pool settings of the neo4j configurations
+	 * 
+	 * @return The metrics by neo4j configuration code
+	 */
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(value = "Sessions usage and connection pool settings by neo4j configuration")
+	Map<String, Map<String, Object>> getMetrics();
+
 	/**
 	 * Remove an existing binary storage with a given code
 	 * 
@@ -1,5 +1,7 @@
 package org.meveo.api.rest.neo4j.impl;
 
+import java.util.Map;
+
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.interceptor.Interceptors;
@@ -89,6 +91,11 @@ public class Neo4jConfigurationRsImpl extends BaseRs implements Neo4jConfigurati
 		return result;
 	}
 
+	@Override
+	public Map<String, Map<String, Object>> getMetrics() {
+		return neo4jConfigurationApi.getMetrics();
+	}
+
 	@Override
 	public ActionStatus remove(String code) {
 		ActionStatus result = new ActionStatus(ActionStatusEnum.SUCCESS, "");
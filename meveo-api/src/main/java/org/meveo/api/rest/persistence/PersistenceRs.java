@@ -17,6 +17,7 @@
 package org.meveo.api.rest.persistence;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -28,6 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -56,6 +58,7 @@ import javax.ws.rs.ServerErrorException;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.io.FileUtils;
@@ -68,6 +71,7 @@ import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.api.dto.PersistenceDto;
 import org.meveo.api.exception.BusinessApiException;
 import org.meveo.api.exception.EntityDoesNotExistsException;
+import org.meveo.api.rest.JacksonJsonProvider;
 import org.meveo.api.rest.RestUtils;
 import org.meveo.cache.CustomFieldsCacheContainerProvider;
 import org.meveo.elresolver.ELException;
@@ -103,6 +107,10 @@ import org.meveo.service.storage.RepositoryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -118,6 +126,16 @@ public class PersistenceRs {
 
 	protected static final Logger LOGGER = LoggerFactory.getLogger(PersistenceRs.class);
 
+	/**
+	 * Newline delimited JSON media type
+	 */
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+	/**
+	 * Default number of entities loaded at once when streaming a list
+	 */
+	private static final int STREAM_FETCH_SIZE = 500;
+
 	@Inject
 	private SchedulingService schedulingService;
 
@@ -216,6 +234,98 @@ public class PersistenceRs {
 		}
 	}
 
+	/**
+	 * Streams the data of a given CET as newline delimited JSON. <br>
+	 * The records are loaded page by page and written as soon as they are loaded, binaries are base 64 encoded on the fly.
+	 */
+	@POST
+	@Path("/{cetCode}/list/stream")
+	@Produces(APPLICATION_NDJSON)
+	@ApiOperation("Stream data for a given CET as newline delimited JSON")
+	public Response listAsStream(@HeaderParam("Base64-Encode") @ApiParam("Base 64 encode") boolean base64Encode,
+			@PathParam("cetCode") @ApiParam("Code of the custom entity template") String cetCode,
+			@QueryParam("withCount") @ApiParam("If true returns the count of entities in the X-Total-Count header") Boolean withCount,
+			@QueryParam("fetchSize") @ApiParam("Number of entities loaded at once") Integer fetchSize,
+			@ApiParam("Pagination configuration information") PaginationConfiguration paginationConfiguration) throws EntityDoesNotExistsException {
+		final CustomEntityTemplate customEntityTemplate = cache.getCustomEntityTemplate(cetCode);
+		if (customEntityTemplate == null) {
+			throw new NotFoundException("Custom entity template with code " + cetCode + " does not exists");
+		}
+
+		final PaginationConfiguration pagination = paginationConfiguration == null ? new PaginationConfiguration() : paginationConfiguration;
+
+		Repository repository = repositoryService.findByCode(repositoryCode);
+
+		hasAccessToRepository(repository);
+
+		Iterator<Map<String, Object>> cursor = crossStorageService.iterate(repository, customEntityTemplate, pagination, fetchSize != null && fetchSize > 0 ? fetchSize : STREAM_FETCH_SIZE);
+		Map<String, CustomFieldTemplate> customFieldTemplates = cache.getCustomFieldTemplates(customEntityTemplate.getAppliesTo());
+
+		StreamingOutput output = outputStream -> {
+			try (JsonGenerator generator = JacksonJsonProvider.getObjectMapper().getFactory().createGenerator(outputStream)) {
+				generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+
+				while (cursor.hasNext()) {
+					Map<String, Object> values = cursor.next();
+					if (!base64Encode) {
+						convertFiles(customEntityTemplate, values, false);
+					}
+
+					writeNdjsonLine(generator, customFieldTemplates, serializeJpaEntities(values), base64Encode);
+				}
+			}
+		};
+
+		Response.ResponseBuilder response = Response.ok(output, APPLICATION_NDJSON);
+
+		if (withCount != null && withCount) {
+			response.header("X-Total-Count", crossStorageService.count(repository, customEntityTemplate, pagination));
+		}
+
+		return response.build();
+	}
+
+	/**
+	 * Write a record as a single JSON line, encoding binaries as base 64 while reading them if requested
+	 */
+	@SuppressWarnings("rawtypes")
+	private void writeNdjsonLine(JsonGenerator generator, Map<String, CustomFieldTemplate> customFieldTemplates, Map<String, Object> values, boolean base64) throws IOException {
+		generator.writeStartObject();
+
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			generator.writeFieldName(entry.getKey());
+
+			CustomFieldTemplate cft = customFieldTemplates.get(entry.getKey());
+			boolean isBinary = cft != null && cft.getFieldType() == CustomFieldTypeEnum.BINARY;
+			Object value = entry.getValue();
+
+			if (base64 && cft != null && (value instanceof File || (value instanceof String && isBinary))) {
+				writeBase64(generator, value);
+
+			} else if (base64 && cft != null && value instanceof List && ((List) value).stream().anyMatch(o -> o instanceof File || (o instanceof String && isBinary))) {
+				generator.writeStartArray();
+				for (Object file : (List) value) {
+					writeBase64(generator, file);
+				}
+				generator.writeEndArray();
+
+			} else {
+				generator.writeObject(value);
+			}
+		}
+
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+		generator.flush();
+	}
+
+	private void writeBase64(JsonGenerator generator, Object file) throws IOException {
+		File actualFile = file instanceof File ? (File) file : new File(String.valueOf(file));
+		try (InputStream inputStream = new FileInputStream(actualFile)) {
+			generator.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, inputStream, -1);
+		}
+	}
+
 	@DELETE
 	@Path("/{cetCode}/{uuid}")
 	@ApiOperation(value = "Delete persistence by cet code")
@@ -25,11 +25,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import javax.ejb.EJB;
 import javax.inject.Inject;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.annotation.MultipartConfig;
@@ -70,12 +76,13 @@ import com.fasterxml.jackson.dataformat.xml.XmlMapper;
  * If the endpoint is configured as POST, it should be called via POST requests and parameters should be in body as a JSON map.<br>
  * Header "Keep-data" indicates we don't want to remove the execution result from cache.<br>
  * Header "Wait-For-Finish" indicates that we want to wait until one exuction finishes and get results after. (Otherwise returns status 102).<br>
- * Header "Persistence-Context-Id" indiciates the id of the persistence context we want to save the result
+ * Header "Persistence-Context-Id" indiciates the id of the persistence context we want to save the result<br>
+ * Waiting for an asynchronous execution does not hold the request thread : the response is written once the execution finishes or the delay expires.
  * @author clement.bareth
  * @author Edward P. Legaspi | edward.legaspi@manaty.net
  * @version 6.10
  */
-@WebServlet("/rest/*")
+@WebServlet(urlPatterns = "/rest/*", asyncSupported = true)
 @MultipartConfig
 public class EndpointServlet extends HttpServlet {
 
@@ -103,7 +110,7 @@ public class EndpointServlet extends HttpServlet {
                 .setMethod(EndpointHttpMethod.DELETE)
                 .createEndpointExecution();
 
-        doRequest(endpointExecution, true);
+        doRequest(req, endpointExecution, true);
     }
 
     @Override
@@ -146,7 +153,7 @@ public class EndpointServlet extends HttpServlet {
                 .setMethod(EndpointHttpMethod.POST)
                 .createEndpointExecution();
 
-        doRequest(endpointExecution, false);
+        doRequest(req, endpointExecution, false);
     }
 
     @Override
@@ -158,10 +165,10 @@ public class EndpointServlet extends HttpServlet {
                 .setMethod(EndpointHttpMethod.GET)
                 .createEndpointExecution();
 
-        doRequest(endpointExecution, false);
+        doRequest(req, endpointExecution, false);
     }
 
-    private void doRequest(EndpointExecution endpointExecution, boolean cancel) throws IOException {
+    private void doRequest(HttpServletRequest req, EndpointExecution endpointExecution, boolean cancel) throws IOException {
 
         // Retrieve endpoint
         final Endpoint endpoint = endpointExecution.getEndpoint();
@@ -206,50 +213,149 @@ public class EndpointServlet extends HttpServlet {
 
         try {
             PendingResult pendingExecution = endpointCacheContainer.getPendingExecution(endpointExecution.getFirstUriPart());
-            final Future<EndpointResult> execResult = pendingExecution != null ? pendingExecution.getResult() : null;
+            final CompletableFuture<EndpointResult> execResult = pendingExecution != null ? pendingExecution.getResult() : null;
             if (execResult != null && endpointExecution.getMethod() == EndpointHttpMethod.GET || endpointExecution.getMethod() == EndpointHttpMethod.DELETE) {
                 if (cancel) {
-                    pendingExecution.getEngine().cancel();
+                    pendingExecution.getEngine().cancel(pendingExecution.getMethodContext());
                 }
 
-                // Wait for max delay if defined
-                long start = System.currentTimeMillis();
-                if (endpointExecution.getDelayValue() != null) {
-                    while (System.currentTimeMillis() - start < endpointExecution.getDelayUnit().toMillis(endpointExecution.getDelayValue())) {
-                        if (execResult.isDone()) {
-                            break;
-                        }
-                        Thread.sleep(10L);
-                    }
-                }
+                if (execResult.isDone()) {
+                    setPendingResponse(execResult.get(), endpointExecution);
+
+                } else if (endpointExecution.isWait()) {
+                    completeAsync(req, endpointExecution, execResult, endpointResult -> setPendingResponse(endpointResult, endpointExecution));
+
+                } else if (endpointExecution.getDelayValue() != null) {
+                    // Wait for max delay, the timeout applies to a copy so that the pending execution goes on
+                    CompletableFuture<EndpointResult> delayedResult = execResult.thenApply(Function.identity())
+                            .completeOnTimeout(null, endpointExecution.getDelayValue(), endpointExecution.getDelayUnit());
+                    completeAsync(req, endpointExecution, delayedResult, endpointResult -> setPendingResponse(endpointResult, endpointExecution));
 
-                if (execResult.isDone() || endpointExecution.isWait()) {
-                    EndpointResult endpointResult = execResult.get();
-                    setReponse(endpointResult.getResult(), endpointExecution);
-                    if (!endpointExecution.isKeep()) {
-                        log.info("Removing execution results with id {}", endpointExecution.getFirstUriPart());
-                        endpointCacheContainer.remove(endpointExecution.getFirstUriPart());
-                    }
                 } else {
-                    endpointExecution.getResp().getWriter().print("In progress");
-                    endpointExecution.getResp().setStatus(202);
+                    setPendingResponse(null, endpointExecution);
                 }
             } else {
-                launchEndpoint(endpointExecution, endpoint);
+                launchEndpoint(req, endpointExecution, endpoint);
             }
         } catch (Exception e) {
-            log.error("Error while executing request", e);
+            setErrorResponse(e, endpointExecution);
+        } finally {
+            if (!req.isAsyncStarted()) {
+                closeResponse(endpointExecution);
+            }
+        }
+    }
+
+    /**
+     * Release the request thread and write the response once the result is available
+     *
+     * @param req               the request
+     * @param endpointExecution the execution
+     * @param result            future result of the execution
+     * @param responseWriter    writes the response from the result
+     */
+    private <T> void completeAsync(HttpServletRequest req, EndpointExecution endpointExecution, CompletableFuture<T> result, ResponseWriter<T> responseWriter) {
+        AsyncContext asyncContext = req.startAsync();
+
+        // Don't hold the request forever if the execution hangs
+        long timeout = Long.parseLong(ParamBean.getInstance().getProperty("endpoint.asyncTimeoutMs", "300000"));
+        asyncContext.setTimeout(timeout);
+
+        // The response is written either by the execution or by the timeout, whichever comes first
+        AtomicBoolean responded = new AtomicBoolean();
+
+        asyncContext.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (!responded.compareAndSet(false, true)) {
+                    return;
+                }
+                log.warn("Execution of {} did not complete within {} ms", endpointExecution.getFirstUriPart(), timeout);
+                try {
+                    endpointExecution.getResp().setStatus(504);
+                    endpointExecution.getResp().getWriter().print("Execution timed out");
+                } catch (IOException | IllegalStateException e) {
+                    log.error("Can't write timeout response", e);
+                } finally {
+                    closeResponse(endpointExecution);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // The client is most likely gone, nothing to write
+                if (responded.compareAndSet(false, true)) {
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        result.whenComplete((value, error) -> {
+            if (!responded.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (error != null) {
+                    setErrorResponse(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error, endpointExecution);
+                } else {
+                    responseWriter.write(value);
+                }
+            } catch (Exception e) {
+                setErrorResponse(e, endpointExecution);
+            } finally {
+                closeResponse(endpointExecution);
+                asyncContext.complete();
+            }
+        });
+    }
+
+    private void setPendingResponse(EndpointResult endpointResult, EndpointExecution endpointExecution) throws IOException {
+        // Execution is still in progress
+        if (endpointResult == null) {
+            endpointExecution.getResp().getWriter().print("In progress");
+            endpointExecution.getResp().setStatus(202);
+            return;
+        }
+
+        setReponse(endpointResult.getResult(), endpointExecution);
+        if (!endpointExecution.isKeep()) {
+            log.info("Removing execution results with id {}", endpointExecution.getFirstUriPart());
+            endpointCacheContainer.remove(endpointExecution.getFirstUriPart());
+        }
+    }
+
+    private void setErrorResponse(Throwable e, EndpointExecution endpointExecution) {
+        log.error("Error while executing request", e);
+        try {
             endpointExecution.getResp().setStatus(500);
             endpointExecution.getResp().getWriter().print(e.toString());
-        } finally {
-            if(endpointExecution.getResponse().getOutput() == null) {
+        } catch (IOException | IllegalStateException e1) {
+            log.error("Can't write error response", e1);
+        }
+    }
+
+    private void closeResponse(EndpointExecution endpointExecution) {
+        if (endpointExecution.getResponse().getOutput() == null) {
+            try {
                 endpointExecution.getResp().getWriter().flush();
                 endpointExecution.getResp().getWriter().close();
+            } catch (IOException | IllegalStateException e) {
+                log.error("Can't close response", e);
             }
         }
     }
 
-    private void launchEndpoint(EndpointExecution endpointExecution, Endpoint endpoint) throws BusinessException, ExecutionException, InterruptedException, IOException {
+    private void launchEndpoint(HttpServletRequest req, EndpointExecution endpointExecution, Endpoint endpoint) throws BusinessException, ExecutionException, InterruptedException, IOException {
         // Endpoint does not exists
         if (endpoint == null) {
             endpointExecution.getResp().setStatus(404);    // Not found
@@ -293,21 +399,32 @@ public class EndpointServlet extends HttpServlet {
             return;
         }
 
-        final EndpointResult execResult = execution.getResult().get();    // Wait until execution is over
-        endpointExecution.getResp().setStatus(200); // OK
-        if (endpointExecution.isKeep()) {
-            // If user wants to keep the result in cache, return the data along with its id
-            Map<String, Object> returnedValue = new HashMap<>();
-            returnedValue.put("id", id.toString());
-            returnedValue.put("data", execResult.getResult());
-            endpointExecution.getResp().getWriter().println(JacksonUtil.toString(returnedValue));
-        } else {
-            // If user doesn't want to keep the result in cache, only return the data
-            endpointExecution.getResp().setContentType(execResult.getContentType());
-            endpointExecution.getResp().getWriter().println(execResult.getResult());
-            endpointCacheContainer.remove(id.toString());
-        }
+        // Write the response once execution is over
+        completeAsync(req, endpointExecution, execution.getResult(), execResult -> {
+            endpointExecution.getResp().setStatus(200); // OK
+            if (endpointExecution.isKeep()) {
+                // If user wants to keep the result in cache, return the data along with its id
+                Map<String, Object> returnedValue = new HashMap<>();
+                returnedValue.put("id", id.toString());
+                returnedValue.put("data", execResult.getResult());
+                endpointExecution.getResp().getWriter().println(JacksonUtil.toString(returnedValue));
+            } else {
+                // If user doesn't want to keep the result in cache, only return the data
+                endpointExecution.getResp().setContentType(execResult.getContentType());
+                endpointExecution.getResp().getWriter().println(execResult.getResult());
+                endpointCacheContainer.remove(id.toString());
+            }
+        });
+    }
 
+    /**
+     * Writes the response of an execution
+     *
+     * @param <T> Type of the result
+     */
+    @FunctionalInterface
+    private interface ResponseWriter<T> {
+        void write(T result) throws IOException;
     }
 
     private void setReponse(String transformedResult, EndpointExecution endpointExecution) throws IOException {
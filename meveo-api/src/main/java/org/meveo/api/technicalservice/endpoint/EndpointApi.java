@@ -147,6 +147,7 @@ public class EndpointApi extends BaseCrudApi<Endpoint, EndpointDto> {
 
 		PendingResult pendingResult = new PendingResult();
 		pendingResult.setEngine(executionEngine);
+		pendingResult.setMethodContext(parameterMap);
 		pendingResult.setResult(future);
 
 		return pendingResult;
@@ -200,7 +201,7 @@ public class EndpointApi extends BaseCrudApi<Endpoint, EndpointDto> {
 				});
 				return resultFuture.get(execution.getDelayValue(), execution.getDelayUnit());
 			} catch (TimeoutException e) {
-				return executionEngine.cancel();
+				return executionEngine.cancel(parameterMap);
 			}
 		} else {
 			return functionService.execute(executionEngine, parameterMap);
@@ -770,12 +771,12 @@ public class EndpointApi extends BaseCrudApi<Endpoint, EndpointDto> {
 			((Map<?, ?>) returnValue).remove("userTx");
 		}
 
-		final String serializedResult = JacksonUtil.toStringPrettyPrinted(returnValue);
 		if (StringUtils.isBlank(endpoint.getJsonataTransformer())) {
-			return serializedResult;
+			return JacksonUtil.toStringPrettyPrinted(returnValue);
 		}
-		
-		return JSONata.transform(endpoint.getJsonataTransformer(), serializedResult);
+
+		// The JSON is only parsed by the transformer, no need to indent it
+		return JSONata.transform(endpoint.getJsonataTransformer(), JacksonUtil.toString(returnValue));
 	}
 
 	/**
@@ -16,37 +16,159 @@
 
 package org.meveo.api.utils;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.IOUtils;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
 
+/**
+ * Executes JSONata expressions. <br>
+ * The JSONata library is parsed once by a shared engine and evaluated in a bounded pool of contexts, reused from one call to another.
+ * Each context keeps the functions compiled for the last used expressions.
+ */
 public class JSONata {
 
+    /** Maximum number of contexts, a context being used by a single thread at a time */
+    private static final int MAX_CONTEXTS = Runtime.getRuntime().availableProcessors();
+
+    /** Number of compiled expressions kept by each context */
+    private static final int MAX_COMPILED_EXPRESSIONS = 128;
+
+    private static final Engine ENGINE = Engine.create();
+
+    private static final Source JSONATA_SOURCE = loadSource("/jsonata/jsonata.js");
+
+    private static final Source JSONATA_RUNNER_SOURCE = loadSource("/jsonata/jsonata.execute.js");
+
+    private static final BlockingQueue<JSONataContext> IDLE_CONTEXTS = new ArrayBlockingQueue<>(MAX_CONTEXTS);
+
+    private static final AtomicInteger CONTEXTS = new AtomicInteger();
+
+    /**
+     * Transform a JSON document
+     *
+     * @param expression JSONata expression
+     * @param data       JSON document to transform
+     * @return the result of the expression, serialized as JSON
+     */
     public static String transform(String expression, String data) {
+        JSONataContext context = null;
         try {
-            final InputStream jsonataFile = JSONata.class.getResourceAsStream("/jsonata/jsonata.js");
-            final String jsonata = IOUtils.toString(jsonataFile, StandardCharsets.UTF_8);
-            final InputStream jsonataRunnerFile = JSONata.class.getResourceAsStream("/jsonata/jsonata.execute.js");
-            final String jsonataRunner = IOUtils.toString(jsonataRunnerFile, StandardCharsets.UTF_8);
-            
-			try (Context context = Context.newBuilder("js")
-                    .allowAllAccess(true)
-                    .build()) {
-			 
-		          var jsBindings = context.getBindings("js");
-		          jsBindings.putMember("polyglot.js.allowAllAccess", true);
-		          
-		          context.eval("js", jsonata);
-		          context.eval("js", jsonataRunner);
-		          var runJsonataFn = context.getBindings("js").getMember("runJsonata");
-		          var result = runJsonataFn.execute(data, expression);
-		          return result.asString();
-			}
+            context = acquire();
+            return context.transform(expression, data);
 
-        } catch (Exception e) {
+        } catch (PolyglotException e) {
+            // The context can't be trusted anymore if the error doesn't come from the expression
+            if (e.isInternalError() || e.isCancelled() || e.isExit()) {
+                discard(context);
+                context = null;
+            }
             throw new RuntimeException(e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+
+        } finally {
+            if (context != null) {
+                IDLE_CONTEXTS.offer(context);
+            }
+        }
+    }
+
+    private static JSONataContext acquire() throws InterruptedException {
+        while (true) {
+            JSONataContext context = IDLE_CONTEXTS.poll();
+            if (context != null) {
+                return context;
+            }
+
+            if (CONTEXTS.incrementAndGet() <= MAX_CONTEXTS) {
+                try {
+                    return new JSONataContext();
+                } catch (RuntimeException e) {
+                    CONTEXTS.decrementAndGet();
+                    throw e;
+                }
+            }
+            CONTEXTS.decrementAndGet();
+
+            // Every context is in use, wait for one to be released or discarded
+            context = IDLE_CONTEXTS.poll(100, TimeUnit.MILLISECONDS);
+            if (context != null) {
+                return context;
+            }
+        }
+    }
+
+    private static void discard(JSONataContext context) {
+        CONTEXTS.decrementAndGet();
+        try {
+            context.close();
+        } catch (Exception e) {
+            // Context is dropped anyway
+        }
+    }
+
+    private static Source loadSource(String resource) {
+        try (Reader reader = new InputStreamReader(JSONata.class.getResourceAsStream(resource), StandardCharsets.UTF_8)) {
+            return Source.newBuilder("js", reader, resource).build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read " + resource, e);
+        }
+    }
+
+    /**
+     * Context where the JSONata library has been evaluated
+     */
+    private static class JSONataContext implements AutoCloseable {
+
+        private final Context context;
+
+        private final Value compileFn;
+
+        private final Map<String, Value> compiledExpressions = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Value> eldest) {
+                return size() > MAX_COMPILED_EXPRESSIONS;
+            }
+        };
+
+        private JSONataContext() {
+            context = Context.newBuilder("js")
+                    .engine(ENGINE)
+                    .allowAllAccess(true)
+                    .build();
+
+            context.getBindings("js").putMember("polyglot.js.allowAllAccess", true);
+            context.eval(JSONATA_SOURCE);
+            context.eval(JSONATA_RUNNER_SOURCE);
+            compileFn = context.getBindings("js").getMember("compileJsonata");
+        }
+
+        private String transform(String expression, String data) {
+            Value compiledExpression = compiledExpressions.computeIfAbsent(expression, compileFn::execute);
+            return compiledExpression.execute(data).asString();
+        }
+
+        @Override
+        public void close() {
+            context.close();
         }
     }
 }
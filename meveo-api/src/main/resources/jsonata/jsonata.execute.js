@@ -9,4 +9,12 @@ var runJsonata = function (inputData, expressionInput) {
         functionResult = expression.evaluate(inputData);
         return JSON.stringify(functionResult, null, 2);
     }
-};
\ No newline at end of file
+};
+
+var compileJsonata = function (expressionInput) {
+    //compile the jsonata expression once, the returned function being reused for each input JSON.
+    var expression = jsonata(expressionInput);
+    return function (inputData) {
+        return JSON.stringify(expression.evaluate(JSON.parse(inputData)), null, 2);
+    };
+};
@@ -16,6 +16,12 @@
 
 package org.meveo.api.jsonata;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.meveo.api.utils.JSONata;
@@ -105,4 +111,22 @@ public class JsonataTest {
         String returnedValue = JSONata.transform(expr, input);
         Assert.assertEquals(returned, returnedValue);
     }
+
+    @Test
+    public void testConcurrentTransformations() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final String expression = i % 2 == 0 ? expr : "Account.Order[1].OrderID";
+                results.add(executor.submit(() -> JSONata.transform(expression, input)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertEquals(i % 2 == 0 ? returned : "\"order104\"", results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
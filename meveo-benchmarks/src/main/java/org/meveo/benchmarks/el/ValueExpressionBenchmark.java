@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.benchmarks.el;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.el.ArrayELResolver;
+import javax.el.BeanELResolver;
+import javax.el.CompositeELResolver;
+import javax.el.ELContext;
+import javax.el.ELResolver;
+import javax.el.ExpressionFactory;
+import javax.el.FunctionMapper;
+import javax.el.ListELResolver;
+import javax.el.MapELResolver;
+import javax.el.VariableMapper;
+
+import org.meveo.elresolver.ELException;
+import org.meveo.elresolver.MeveoDefaultFunctionMapper;
+import org.meveo.elresolver.SimpleELResolver;
+import org.meveo.elresolver.SimpleVariableMapper;
+import org.meveo.elresolver.ValueExpressionWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluation of an EL expression, as done by {@link ValueExpressionWrapper#evaluateExpression(String, Map, Class)}. <br>
+ * {@link #parseEachTime()} reproduces the former implementation, which parsed the expression and built new resolvers for every evaluation.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ValueExpressionBenchmark {
+
+	@Param({ "#{entity.code == 'ABC' and entity.value > 10}", "#{string:startsWith(entity.code, 'A') ? entity.value * 2 : 0}" })
+	private String expression;
+
+	private final ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
+
+	private final FunctionMapper functionMapper = new MeveoDefaultFunctionMapper();
+
+	private Entity entity;
+
+	@Setup(Level.Trial)
+	public void createEntity() {
+		entity = new Entity("ABC", 42);
+	}
+
+	@Benchmark
+	public Object parseEachTime() {
+		Map<Object, Object> userMap = new HashMap<>();
+		userMap.put("entity", entity);
+
+		SimpleELResolver simpleELResolver = new SimpleELResolver(userMap);
+		VariableMapper variableMapper = new SimpleVariableMapper();
+		CompositeELResolver compositeELResolver = new CompositeELResolver();
+		compositeELResolver.add(simpleELResolver);
+		compositeELResolver.add(new ArrayELResolver());
+		compositeELResolver.add(new ListELResolver());
+		compositeELResolver.add(new BeanELResolver());
+		compositeELResolver.add(new MapELResolver());
+
+		ELContext context = new ELContext() {
+
+			@Override
+			public ELResolver getELResolver() {
+				return compositeELResolver;
+			}
+
+			@Override
+			public FunctionMapper getFunctionMapper() {
+				return functionMapper;
+			}
+
+			@Override
+			public VariableMapper getVariableMapper() {
+				return variableMapper;
+			}
+		};
+
+		return expressionFactory.createValueExpression(context, expression, Object.class).getValue(context);
+	}
+
+	@Benchmark
+	public Object cachedExpression() throws ELException {
+		Map<Object, Object> userMap = new HashMap<>();
+		userMap.put("entity", entity);
+
+		return ValueExpressionWrapper.evaluateExpression(expression, userMap, Object.class);
+	}
+
+	public static class Entity {
+
+		private final String code;
+
+		private final int value;
+
+		public Entity(String code, int value) {
+			this.code = code;
+			this.value = value;
+		}
+
+		public String getCode() {
+			return code;
+		}
+
+		public int getValue() {
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,433 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.benchmarks.persistence;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.model.CustomEntity;
+import org.meveo.model.customEntities.CustomEntityInstance;
+import org.meveo.model.persistence.CEIUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversion of 1M entities of a 30 fields custom entity class by {@link CEIUtils#pojoToCei(Object)} and
+ * {@link CEIUtils#ceiToPojo(CustomEntityInstance, Class)}. <br>
+ * The entities are taken from a pool of distinct instances, so the pool fits in memory. Scores are given per converted entity.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CEIUtilsBenchmark {
+
+	private static final int CONVERSIONS = 1_000_000;
+
+	private static final int POOL_SIZE = 1_000;
+
+	private GeneratedEntity[] pojos;
+
+	private CustomEntityInstance[] ceis;
+
+	@Setup(Level.Trial)
+	public void generateEntities() {
+		pojos = new GeneratedEntity[POOL_SIZE];
+		ceis = new CustomEntityInstance[POOL_SIZE];
+
+		for (int i = 0; i < POOL_SIZE; i++) {
+			GeneratedEntity entity = new GeneratedEntity();
+			entity.setUuid(UUID.randomUUID().toString());
+			entity.setName1("name1-" + i);
+			entity.setName2("name2-" + i);
+			entity.setName3("name3-" + i);
+			entity.setName4("name4-" + i);
+			entity.setName5("name5-" + i);
+			entity.setName6("name6-" + i);
+			entity.setName7("name7-" + i);
+			entity.setName8("name8-" + i);
+			entity.setName9("name9-" + i);
+			entity.setName10("name10-" + i);
+			entity.setCount1((long) i * 1);
+			entity.setCount2((long) i * 2);
+			entity.setCount3((long) i * 3);
+			entity.setCount4((long) i * 4);
+			entity.setCount5((long) i * 5);
+			entity.setCount6((long) i * 6);
+			entity.setCount7((long) i * 7);
+			entity.setCount8((long) i * 8);
+			entity.setCount9((long) i * 9);
+			entity.setCount10((long) i * 10);
+			entity.setAmount1(i / 1.0);
+			entity.setAmount2(i / 2.0);
+			entity.setAmount3(i / 3.0);
+			entity.setAmount4(i / 4.0);
+			entity.setAmount5(i / 5.0);
+			entity.setAmount6(i / 6.0);
+			entity.setAmount7(i / 7.0);
+			entity.setAmount8(i / 8.0);
+			entity.setAmount9(i / 9.0);
+			pojos[i] = entity;
+			ceis[i] = CEIUtils.pojoToCei(entity);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CONVERSIONS)
+	public void pojoToCei(Blackhole blackhole) {
+		for (int i = 0; i < CONVERSIONS; i++) {
+			blackhole.consume(CEIUtils.pojoToCei(pojos[i % POOL_SIZE]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CONVERSIONS)
+	public void ceiToPojo(Blackhole blackhole) {
+		for (int i = 0; i < CONVERSIONS; i++) {
+			blackhole.consume(CEIUtils.ceiToPojo(ceis[i % POOL_SIZE], GeneratedEntity.class));
+		}
+	}
+
+	/**
+	 * Same shape as the classes generated for the custom entity templates
+	 */
+	public static class GeneratedEntity implements CustomEntity {
+
+		private String uuid;
+
+		private String name1;
+
+		private String name2;
+
+		private String name3;
+
+		private String name4;
+
+		private String name5;
+
+		private String name6;
+
+		private String name7;
+
+		private String name8;
+
+		private String name9;
+
+		private String name10;
+
+		private Long count1;
+
+		private Long count2;
+
+		private Long count3;
+
+		private Long count4;
+
+		private Long count5;
+
+		private Long count6;
+
+		private Long count7;
+
+		private Long count8;
+
+		private Long count9;
+
+		private Long count10;
+
+		private Double amount1;
+
+		private Double amount2;
+
+		private Double amount3;
+
+		private Double amount4;
+
+		private Double amount5;
+
+		private Double amount6;
+
+		private Double amount7;
+
+		private Double amount8;
+
+		private Double amount9;
+
+		@Override
+		public String getCetCode() {
+			return "GeneratedEntity";
+		}
+
+		@Override
+		public String getUuid() {
+			return uuid;
+		}
+
+		public void setUuid(String uuid) {
+			this.uuid = uuid;
+		}
+
+		public String getName1() {
+			return name1;
+		}
+
+		public void setName1(String name1) {
+			this.name1 = name1;
+		}
+
+		public String getName2() {
+			return name2;
+		}
+
+		public void setName2(String name2) {
+			this.name2 = name2;
+		}
+
+		public String getName3() {
+			return name3;
+		}
+
+		public void setName3(String name3) {
+			this.name3 = name3;
+		}
+
+		public String getName4() {
+			return name4;
+		}
+
+		public void setName4(String name4) {
+			this.name4 = name4;
+		}
+
+		public String getName5() {
+			return name5;
+		}
+
+		public void setName5(String name5) {
+			this.name5 = name5;
+		}
+
+		public String getName6() {
+			return name6;
+		}
+
+		public void setName6(String name6) {
+			this.name6 = name6;
+		}
+
+		public String getName7() {
+			return name7;
+		}
+
+		public void setName7(String name7) {
+			this.name7 = name7;
+		}
+
+		public String getName8() {
+			return name8;
+		}
+
+		public void setName8(String name8) {
+			this.name8 = name8;
+		}
+
+		public String getName9() {
+			return name9;
+		}
+
+		public void setName9(String name9) {
+			this.name9 = name9;
+		}
+
+		public String getName10() {
+			return name10;
+		}
+
+		public void setName10(String name10) {
+			this.name10 = name10;
+		}
+
+		public Long getCount1() {
+			return count1;
+		}
+
+		public void setCount1(Long count1) {
+			this.count1 = count1;
+		}
+
+		public Long getCount2() {
+			return count2;
+		}
+
+		public void setCount2(Long count2) {
+			this.count2 = count2;
+		}
+
+		public Long getCount3() {
+			return count3;
+		}
+
+		public void setCount3(Long count3) {
+			this.count3 = count3;
+		}
+
+		public Long getCount4() {
+			return count4;
+		}
+
+		public void setCount4(Long count4) {
+			this.count4 = count4;
+		}
+
+		public Long getCount5() {
+			return count5;
+		}
+
+		public void setCount5(Long count5) {
+			this.count5 = count5;
+		}
+
+		public Long getCount6() {
+			return count6;
+		}
+
+		public void setCount6(Long count6) {
+			this.count6 = count6;
+		}
+
+		public Long getCount7() {
+			return count7;
+		}
+
+		public void setCount7(Long count7) {
+			this.count7 = count7;
+		}
+
+		public Long getCount8() {
+			return count8;
+		}
+
+		public void setCount8(Long count8) {
+			this.count8 = count8;
+		}
+
+		public Long getCount9() {
+			return count9;
+		}
+
+		public void setCount9(Long count9) {
+			this.count9 = count9;
+		}
+
+		public Long getCount10() {
+			return count10;
+		}
+
+		public void setCount10(Long count10) {
+			this.count10 = count10;
+		}
+
+		public Double getAmount1() {
+			return amount1;
+		}
+
+		public void setAmount1(Double amount1) {
+			this.amount1 = amount1;
+		}
+
+		public Double getAmount2() {
+			return amount2;
+		}
+
+		public void setAmount2(Double amount2) {
+			this.amount2 = amount2;
+		}
+
+		public Double getAmount3() {
+			return amount3;
+		}
+
+		public void setAmount3(Double amount3) {
+			this.amount3 = amount3;
+		}
+
+		public Double getAmount4() {
+			return amount4;
+		}
+
+		public void setAmount4(Double amount4) {
+			this.amount4 = amount4;
+		}
+
+		public Double getAmount5() {
+			return amount5;
+		}
+
+		public void setAmount5(Double amount5) {
+			this.amount5 = amount5;
+		}
+
+		public Double getAmount6() {
+			return amount6;
+		}
+
+		public void setAmount6(Double amount6) {
+			this.amount6 = amount6;
+		}
+
+		public Double getAmount7() {
+			return amount7;
+		}
+
+		public void setAmount7(Double amount7) {
+			this.amount7 = amount7;
+		}
+
+		public Double getAmount8() {
+			return amount8;
+		}
+
+		public void setAmount8(Double amount8) {
+			this.amount8 = amount8;
+		}
+
+		public Double getAmount9() {
+			return amount9;
+		}
+
+		public void setAmount9(Double amount9) {
+			this.amount9 = amount9;
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.benchmarks.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.persistence.RecordsByUuid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merge of the SQL and Neo4J result sets done by {@link org.meveo.persistence.CrossStorageService#find}. <br>
+ * {@link #linearMerge()} reproduces the former implementation, which scanned the SQL rows for every Neo4J row.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CrossStorageMergeBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int rows;
+
+	private List<Map<String, Object>> sqlRows;
+
+	private List<Map<String, Object>> neo4jRows;
+
+	@Setup(Level.Trial)
+	public void generateRows() {
+		Random random = new Random(42);
+		sqlRows = new ArrayList<>(rows);
+		neo4jRows = new ArrayList<>(rows);
+
+		for (int i = 0; i < rows; i++) {
+			String uuid = UUID.randomUUID().toString();
+
+			Map<String, Object> sqlRow = new HashMap<>();
+			sqlRow.put("uuid", uuid);
+			sqlRow.put("sqlField", random.nextLong());
+			sqlRows.add(sqlRow);
+
+			Map<String, Object> neo4jRow = new HashMap<>();
+			neo4jRow.put("uuid", uuid);
+			neo4jRow.put("neo4jField", random.nextLong());
+			neo4jRows.add(neo4jRow);
+		}
+
+		Collections.shuffle(neo4jRows, random);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> linearMerge() {
+		List<Map<String, Object>> valuesList = copy(sqlRows);
+		for (Map<String, Object> neo4jRow : neo4jRows) {
+			mergeData(valuesList, new HashMap<>(neo4jRow));
+		}
+		return valuesList;
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> indexedMerge() {
+		List<Map<String, Object>> valuesList = copy(sqlRows);
+		RecordsByUuid recordsByUuid = new RecordsByUuid(valuesList);
+		for (Map<String, Object> neo4jRow : neo4jRows) {
+			recordsByUuid.merge(new HashMap<>(neo4jRow));
+		}
+		return valuesList;
+	}
+
+	private static List<Map<String, Object>> copy(List<Map<String, Object>> rows) {
+		List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+		rows.forEach(row -> copy.add(new HashMap<>(row)));
+		return copy;
+	}
+
+	private static void mergeData(List<Map<String, Object>> valuesList, Map<String, Object> resultMap) {
+		String uuid = (String) (resultMap.get("uuid") != null ? resultMap.get("uuid") : resultMap.get("meveo_uuid"));
+
+		boolean found = false;
+		for (Map<String, Object> mapOfValues : valuesList) {
+			String uuid2 = (String) (mapOfValues.get("uuid") != null ? mapOfValues.get("uuid") : mapOfValues.get("meveo_uuid"));
+			if (uuid.equals(uuid2)) {
+				mapOfValues.putAll(resultMap);
+				found = true;
+				break;
+			}
+		}
+
+		if (!found) {
+			valuesList.add(resultMap);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.benchmarks.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.interfaces.Entity;
+import org.meveo.interfaces.EntityOrRelation;
+import org.meveo.interfaces.EntityRelation;
+import org.meveo.persistence.scheduler.AtomicPersistencePlan;
+import org.meveo.persistence.scheduler.CyclicDependencyException;
+import org.meveo.persistence.scheduler.SchedulingService;
+import org.meveo.service.custom.CustomRelationshipTemplateService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduling of a persistence graph by {@link SchedulingService#schedule(java.util.Collection)}. <br>
+ * The graphs have three relations per node, two thirds of them being unique. The time per operation should grow linearly with the number of
+ * nodes.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SchedulingBenchmark {
+
+	private static final String UNIQUE_RELATION = "uniqueRelation";
+
+	private static final String RELATION = "relation";
+
+	@Param({ "1000", "10000", "100000" })
+	private int nodes;
+
+	private List<EntityOrRelation> graph;
+
+	private SchedulingService schedulingService;
+
+	@Setup(Level.Trial)
+	public void generateGraph() {
+		schedulingService = new SchedulingService(new CustomRelationshipTemplateService() {
+			@Override
+			public boolean isUnique(String code) {
+				return UNIQUE_RELATION.equals(code);
+			}
+		});
+
+		Random random = new Random(42);
+		List<Entity> entities = new ArrayList<>(nodes);
+		graph = new ArrayList<>(nodes * 4);
+
+		for (int i = 0; i < nodes; i++) {
+			Entity entity = new Entity.Builder()
+					.type("Node" + i % 10)
+					.name("node" + i)
+					.properties(Map.of("value", i))
+					.build();
+			entities.add(entity);
+			graph.add(entity);
+		}
+
+		/* Relations always point to a node created before their source, so the graph is acyclic */
+		for (int i = 0; i < nodes * 3; i++) {
+			int source = 1 + random.nextInt(nodes - 1);
+			int target = random.nextInt(source);
+			graph.add(new EntityRelation.Builder()
+					.type(i % 3 == 0 ? RELATION : UNIQUE_RELATION)
+					.name("relation" + i)
+					.source(entities.get(source))
+					.target(entities.get(target))
+					.build());
+		}
+	}
+
+	@Benchmark
+	public AtomicPersistencePlan schedule() throws CyclicDependencyException {
+		/* The scheduled collection is modified */
+		return schedulingService.schedule(new ArrayList<>(graph));
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2018-2019 Webdrone SAS (https://www.webdrone.fr/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. This program is
+ * not suitable for any direct or indirect application in MILITARY industry See the GNU Affero
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.meveo.benchmarks.script;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.cache.CacheKeyStr;
+import org.meveo.cache.LoadOnceCache;
+import org.meveo.service.script.ScriptInterfaceSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup of already compiled scripts, as done by {@link org.meveo.service.script.CustomScriptService#getScriptInterface(String)}. <br>
+ * {@link #synchronizedLookup()} reproduces the former implementation, where every lookup went through the service monitor. <br>
+ * Run with an increasing number of threads to compare the scaling, e.g. <code>java -jar benchmarks.jar ScriptLookupBenchmark -t 1</code>, then <code>-t 2</code>,
+ * <code>-t 4</code>, ... up to the number of cores.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ScriptLookupBenchmark {
+
+	private static final int SCRIPTS = 200;
+
+	private final Object monitor = new Object();
+
+	private CacheKeyStr[] keys;
+
+	private Map<CacheKeyStr, ScriptInterfaceSupplier> scriptInterfaces;
+
+	private LoadOnceCache<CacheKeyStr, ScriptInterfaceSupplier> loader;
+
+	@Setup(Level.Trial)
+	public void compileScripts() {
+		keys = new CacheKeyStr[SCRIPTS];
+		scriptInterfaces = new ConcurrentHashMap<>();
+		loader = new LoadOnceCache<>(scriptInterfaces);
+
+		for (int i = 0; i < SCRIPTS; i++) {
+			keys[i] = new CacheKeyStr("default", "org.meveo.script.Script" + i);
+			scriptInterfaces.put(keys[i], () -> null);
+		}
+	}
+
+	@Benchmark
+	public ScriptInterfaceSupplier synchronizedLookup() {
+		CacheKeyStr key = randomKey();
+		synchronized (monitor) {
+			ScriptInterfaceSupplier supplier = scriptInterfaces.get(key);
+			if (supplier == null) {
+				throw new IllegalStateException();
+			}
+			return supplier;
+		}
+	}
+
+	@Benchmark
+	public ScriptInterfaceSupplier lockFreeLookup() {
+		return loader.get(randomKey(), () -> {
+			throw new IllegalStateException();
+		});
+	}
+
+	private CacheKeyStr randomKey() {
+		return keys[ThreadLocalRandom.current().nextInt(SCRIPTS)];
+	}
+
+}
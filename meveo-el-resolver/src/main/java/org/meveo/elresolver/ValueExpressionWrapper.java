@@ -1,8 +1,11 @@
 package org.meveo.elresolver;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import javax.el.*;
 
@@ -14,6 +17,8 @@ public class ValueExpressionWrapper {
 
     private static final String MAPPER_CLASS_NAME = "mapper.class.name";
 
+    private static final String CACHE_SIZE = "meveo.el.cacheSize";
+
     static ExpressionFactory expressionFactory = ExpressionFactory.newInstance();
 
     private SimpleELResolver simpleELResolver;
@@ -22,9 +27,40 @@ public class ValueExpressionWrapper {
 
     private ValueExpression ve;
 
+    /** Whether an evaluation is in progress with this context */
+    private boolean evaluating;
+
     static protected Logger log = LoggerFactory.getLogger(ValueExpressionWrapper.class);
 
-    static HashMap<String, ValueExpressionWrapper> valueExpressionWrapperMap = new HashMap<>();
+    /** Maximum number of parsed expressions kept in cache */
+    private static final int maxCachedExpressions = Integer.getInteger(CACHE_SIZE, 1000);
+
+    /**
+     * Parsed expressions, by expression and expected result class. They don't hold any state of the evaluation. <br>
+     * Expressions may be built from data, so the least recently used ones are evicted once {@link #maxCachedExpressions} are cached.
+     */
+    private static final Map<ExpressionKey, ValueExpression> valueExpressions = Collections.synchronizedMap(new LinkedHashMap<ExpressionKey, ValueExpression>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ExpressionKey, ValueExpression> eldest) {
+            return size() > maxCachedExpressions;
+        }
+    });
+
+    /** Evaluation context of each thread, reused by the evaluations that are not nested in another one */
+    private static final ThreadLocal<ValueExpressionWrapper> threadWrappers = new ThreadLocal<>();
+
+    /** Resolvers that don't depend on the evaluated variables, shared by all the evaluations to keep their introspection caches */
+    private static final CompositeELResolver commonELResolver = new CompositeELResolver();
+
+    static {
+        commonELResolver.add(new ArrayELResolver());
+        commonELResolver.add(new ListELResolver());
+        commonELResolver.add(new BeanELResolver());
+        commonELResolver.add(new MapELResolver());
+    }
 
     private static FunctionMapper functionMapper = null;
 
@@ -209,15 +245,55 @@ public class ValueExpressionWrapper {
         return result;
     }
 
+    /**
+     * Parse an expression, so it is ready to be evaluated. Useful to reject an invalid expression before it is evaluated.
+     * 
+     * @param expression Expression to parse
+     * @param resultClass An expected result class
+     * @throws ELException if the expression can't be parsed
+     */
+    public static void parseExpression(String expression, @SuppressWarnings("rawtypes") Class resultClass) throws ELException {
+        if (StringUtils.isBlank(expression) || (!expression.contains("#{") && !expression.contains("${"))) {
+            return;
+        }
+        expression = StringUtils.trim(expression);
+
+        try {
+            new ValueExpressionWrapper(expression, new HashMap<>(), resultClass);
+
+        } catch (Exception e) {
+            throw new ELException("Error while parsing expression " + expression + " : " + e.getMessage());
+        }
+    }
+
     private static Object getValue(String expression, Map<Object, Object> userMap, @SuppressWarnings("rawtypes") Class resultClass) {
-        ValueExpressionWrapper result = null;
-        if (valueExpressionWrapperMap.containsKey(expression)) {
-            result = valueExpressionWrapperMap.get(expression);
+        ValueExpressionWrapper wrapper = threadWrappers.get();
+        if (wrapper == null) {
+            wrapper = new ValueExpressionWrapper();
+            threadWrappers.set(wrapper);
+
+        } else if (wrapper.evaluating) {
+            // Evaluation nested in another one, from an EL function for example, don't overwrite the context of the enclosing evaluation
+            wrapper = new ValueExpressionWrapper();
         }
-        if (result == null) {
-            result = new ValueExpressionWrapper(expression, userMap, resultClass);
+        return wrapper.evaluate(expression, userMap, resultClass);
+    }
+
+    /**
+     * Retrieve the parsed expression from the cache, or parse it
+     * 
+     * @param expression Expression to parse
+     * @param resultClass An expected result class
+     * @return The parsed expression
+     */
+    private ValueExpression getValueExpression(String expression, Class<?> resultClass) {
+        ExpressionKey key = new ExpressionKey(expression, resultClass);
+        ValueExpression valueExpression = valueExpressions.get(key);
+        if (valueExpression == null) {
+            valueExpression = expressionFactory.createValueExpression(context, expression, resultClass);
+            valueExpressions.put(key, valueExpression);
         }
-        return result.getValue(userMap);
+        return valueExpression;
     }
 
     protected Map<String,Object> getAdditionalSources(String expression, Map<Object, Object> userMap){
@@ -243,19 +319,25 @@ public class ValueExpressionWrapper {
     }
 
     protected ValueExpressionWrapper(String expression, Map<Object, Object> userMap, @SuppressWarnings("rawtypes") Class resultClass) {
+        this();
         Map<String, Object> additionalSources = getAdditionalSources(expression, userMap);
         userMap.putAll(additionalSources);
-        simpleELResolver = new SimpleELResolver(userMap);
+        simpleELResolver.setUserMap(userMap);
+        ve = getValueExpression(expression, resultClass);
+    }
+
+    /**
+     * Build an evaluation context, without any variable
+     */
+    private ValueExpressionWrapper() {
+        simpleELResolver = new SimpleELResolver(null);
         final VariableMapper variableMapper = new SimpleVariableMapper();
         if(functionMapper == null) {
             functionMapper = getMapper();
         }
         final CompositeELResolver compositeELResolver = new CompositeELResolver();
         compositeELResolver.add(simpleELResolver);
-        compositeELResolver.add(new ArrayELResolver());
-        compositeELResolver.add(new ListELResolver());
-        compositeELResolver.add(new BeanELResolver());
-        compositeELResolver.add(new MapELResolver());
+        compositeELResolver.add(commonELResolver);
         context = new ELContext() {
             @Override
             public ELResolver getELResolver() {
@@ -272,15 +354,50 @@ public class ValueExpressionWrapper {
                 return variableMapper;
             }
         };
-        ve = expressionFactory.createValueExpression(context, expression, resultClass);
     }
 
-    private Object getValue(Map<Object, Object> userMap) {
+    /**
+     * Evaluate an expression with this context. The variables are released once evaluated, so the context does not keep them.
+     */
+    private Object evaluate(String expression, Map<Object, Object> userMap, Class<?> resultClass) {
+        userMap.putAll(getAdditionalSources(expression, userMap));
         simpleELResolver.setUserMap(userMap);
-        return ve.getValue(context);
+        evaluating = true;
+        try {
+            return getValueExpression(expression, resultClass).getValue(context);
+
+        } finally {
+            evaluating = false;
+            simpleELResolver.setUserMap(null);
+        }
     }
 
     public static boolean collectionContains(String[] collection, String key) {
         return Arrays.asList(collection).contains(key);
     }
+
+    private static final class ExpressionKey {
+
+        private final String expression;
+
+        private final Class<?> resultClass;
+
+        private ExpressionKey(String expression, Class<?> resultClass) {
+            this.expression = expression;
+            this.resultClass = resultClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ExpressionKey)) return false;
+            ExpressionKey that = (ExpressionKey) o;
+            return expression.equals(that.expression) && Objects.equals(resultClass, that.resultClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expression.hashCode() + Objects.hashCode(resultClass);
+        }
+    }
 }
\ No newline at end of file
@@ -72,6 +72,24 @@ public class Neo4JConfiguration extends BusinessEntity {
 	 */
 	@Column(name = "neo4j_password")
 	private String neo4jPassword;
+
+	/**
+	 * Maximum number of connections kept by the driver for the repository. Driver default is used if not set.
+	 */
+	@Column(name = "max_connection_pool_size")
+	private Integer maxConnectionPoolSize;
+
+	/**
+	 * Maximum time, in milliseconds, to wait for a connection of the pool to be available. Driver default is used if not set.
+	 */
+	@Column(name = "connection_acquisition_timeout")
+	private Long connectionAcquisitionTimeout;
+
+	/**
+	 * Maximum time, in milliseconds, a connection of the pool is kept before being closed. Driver default is used if not set.
+	 */
+	@Column(name = "max_connection_lifetime")
+	private Long maxConnectionLifetime;
 	
 	@Transient
 	private String clearPassword;
@@ -116,6 +134,48 @@ public class Neo4JConfiguration extends BusinessEntity {
 	}
 	
 
+	/**
+	 * @return the {@link #maxConnectionPoolSize}
+	 */
+	public Integer getMaxConnectionPoolSize() {
+		return maxConnectionPoolSize;
+	}
+
+	/**
+	 * @param maxConnectionPoolSize the maxConnectionPoolSize to set
+	 */
+	public void setMaxConnectionPoolSize(Integer maxConnectionPoolSize) {
+		this.maxConnectionPoolSize = maxConnectionPoolSize;
+	}
+
+	/**
+	 * @return the {@link #connectionAcquisitionTimeout}
+	 */
+	public Long getConnectionAcquisitionTimeout() {
+		return connectionAcquisitionTimeout;
+	}
+
+	/**
+	 * @param connectionAcquisitionTimeout the connectionAcquisitionTimeout to set
+	 */
+	public void setConnectionAcquisitionTimeout(Long connectionAcquisitionTimeout) {
+		this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+	}
+
+	/**
+	 * @return the {@link #maxConnectionLifetime}
+	 */
+	public Long getMaxConnectionLifetime() {
+		return maxConnectionLifetime;
+	}
+
+	/**
+	 * @param maxConnectionLifetime the maxConnectionLifetime to set
+	 */
+	public void setMaxConnectionLifetime(Long maxConnectionLifetime) {
+		this.maxConnectionLifetime = maxConnectionLifetime;
+	}
+
 	/**
 	 * @return the {@link #clearPassword}
 	 */
@@ -5,20 +5,15 @@ package org.meveo.model.persistence;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
 import javax.persistence.Entity;
-import javax.persistence.Id;
 
-import org.meveo.commons.utils.ReflectionUtils;
-import org.meveo.model.CustomEntity;
 import org.meveo.model.crm.CustomFieldTemplate;
 import org.meveo.model.crm.custom.CustomFieldTypeEnum;
 import org.meveo.model.crm.custom.CustomFieldValues;
@@ -27,17 +22,18 @@ import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.security.PasswordUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 
 /**
  * Utilitary class for manipulating {@link CustomEntityInstance}
  * 
  * @author clement.bareth
  * @since 6.8.0
- * @version 6.12.0
+ * @version 6.14.0
  */
 public class CEIUtils {
 	
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	
 	/**
 	 * @param cei  The entity to hash
 	 * @param cfts Custom fields of the entity template
@@ -77,21 +73,7 @@ public class CEIUtils {
 			pojoAsMap = (Map<String, Object>) pojo;
 		} else { 
 			// Transform POJO into Map
-			Map<String, Object> values = new HashMap<>();
-			Stream.of(pojo.getClass().getMethods())
-				.filter(m -> m.getName().startsWith("get") | m.getName().startsWith("is"))
-				.filter(m -> m.getParameterCount() == 0)
-				.forEach(m -> {
-					var key = getFieldForGetter(pojo.getClass(), m);
-					try {
-						if(key != null) {
-							var value = m.invoke(pojo);
-							values.put(key, value);
-						}
-					} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-						throw new RuntimeException(e);
-					}
-				});
+			Map<String, Object> values = PojoMetadata.of(pojo.getClass()).getValues(pojo);
 				
 			pojoAsMap = new HashMap<>();
 			values.entrySet()
@@ -130,61 +112,36 @@ public class CEIUtils {
 		return deserialize(pojoValues, pojoClass);
 	}
 	
-	private static String getFieldForGetter(Class<?> clazz, Method getter) {
-		String fieldName;
-		if(getter.getName().startsWith("is")) {
-			fieldName = getter.getName().substring(2);
-		} else {
-			fieldName = getter.getName().substring(3);
-		}
-		
-		return ReflectionUtils.getAllFields(new ArrayList<>(),clazz)
-			.stream()
-			.filter(f -> f.getName().toUpperCase().equals(fieldName.toUpperCase()))
-			.findFirst()
-			.map(Field::getName)
-			.orElse(null);
-	}
-	
 	private static void setIdField(Object object, Object id) {
-		ReflectionUtils.getAllFields(new ArrayList<>(),object.getClass())
-			.stream()
-			.filter(f -> f.getAnnotation(Id.class) != null)
-			.findFirst()
-			.ifPresent(f -> {
-				try {
-					f.setAccessible(true);
-					f.set(object, id);
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new RuntimeException(e);
-				}
-			});
+		Field idField = PojoMetadata.of(object.getClass()).getIdField();
+		if (idField != null) {
+			try {
+				idField.set(object, id);
+			} catch (IllegalArgumentException | IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
 	}
 	
 	private static void setUUIDField(Object object, String value) {
-		var setter = findSetter("uuid", object.getClass());
-		if (setter != null) {
-			try {
-				setter.invoke(object, value);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+		var setter = PojoMetadata.of(object.getClass()).getSetter("uuid");
+		try {
+			setter.set(object, value);
+		} catch (IllegalArgumentException | InvocationTargetException e) {
 
-			}
 		}
 	}
 	
 	private static Object getIdValue(Object object) {
-		return ReflectionUtils.getAllFields(new ArrayList<>(),object.getClass())
-				.stream()
-				.filter(f -> f.getAnnotation(Id.class) != null)
-				.findFirst()
-				.map(f -> {
-					try {
-						f.setAccessible(true);
-						return f.get(object);
-					} catch (IllegalArgumentException | IllegalAccessException e) {
-						throw new RuntimeException(e);
-					}
-				}).orElse(null);
+		Field idField = PojoMetadata.of(object.getClass()).getIdField();
+		if (idField == null) {
+			return null;
+		}
+		try {
+			return idField.get(object);
+		} catch (IllegalArgumentException | IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	/**
@@ -194,42 +151,37 @@ public class CEIUtils {
 	 */
 	public static <T> T deserialize(Map<String, Object> value, Class<T> clazz) throws RuntimeException {
 		try {
-			T instance = clazz.getDeclaredConstructor().newInstance();
+			PojoMetadata metadata = PojoMetadata.of(clazz);
+			T instance = clazz.cast(metadata.newInstance());
 			for (var entry : value.entrySet()) {
-				var setter = findSetter(entry.getKey(), clazz);
+				var setter = metadata.getSetter(entry.getKey());
 
 				Object lazyInitInstance = null;
 
-				Class<?> paramType = setter.getParameters()[0].getType();
+				Class<?> paramType = setter.getType();
 
 				// if type extends CustomEntity set the UUID
-				if (CustomEntity.class.isAssignableFrom(paramType)) {
-					lazyInitInstance = paramType
-							.getDeclaredConstructor()
-							.newInstance();
+				if (setter.isCustomEntity()) {
+					lazyInitInstance = PojoMetadata.of(paramType).newInstance();
 					setUUIDField(lazyInitInstance, (String) entry.getValue());
-					setter.invoke(instance, lazyInitInstance);
+					setter.set(instance, lazyInitInstance);
 
 				} else {
 					try {
-						var type = setter.getParameters()[0].getParameterizedType();
-						var jacksonType = TypeFactory.defaultInstance().constructType(type);
-						var convertedValue = new ObjectMapper().convertValue(entry.getValue(), jacksonType);
-						setter.invoke(instance, convertedValue);
+						var convertedValue = OBJECT_MAPPER.convertValue(entry.getValue(), setter.getJavaType());
+						setter.set(instance, convertedValue);
 
 					} catch (IllegalArgumentException e) {
 						try {
-							lazyInitInstance = paramType
-									.getDeclaredConstructor()
-									.newInstance();
+							lazyInitInstance = PojoMetadata.of(paramType).newInstance();
 							setIdField(lazyInitInstance, entry.getValue());
-							setter.invoke(instance, lazyInitInstance);
+							setter.set(instance, lazyInitInstance);
 
 						} catch (NoSuchMethodException nm) {
 							// convert to factory if there are more types in this group
-							if (setter.getParameters()[0].getType().isAssignableFrom(Instant.class)) {
+							if (paramType.isAssignableFrom(Instant.class)) {
 								Instant val = ((Timestamp) entry.getValue()).toInstant();
-								setter.invoke(instance, val);
+								setter.set(instance, val);
 							}
 						}
 					}
@@ -242,11 +194,4 @@ public class CEIUtils {
 		}
 	}
 
-	private static Method findSetter(String fieldName, Class<?> clazz) {
-		return Stream.of(clazz.getMethods())
-			.filter(m -> m.getName().toUpperCase().equals("SET" + fieldName.toUpperCase()))
-			.findFirst()
-			.orElseThrow(() -> new IllegalArgumentException("No setter found for field " + fieldName + " in " + clazz));
-	}
-
 }
@@ -0,0 +1,231 @@
+/**
+ *
+ */
+package org.meveo.model.persistence;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Id;
+
+import org.meveo.commons.utils.ReflectionUtils;
+import org.meveo.model.CustomEntity;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Reflection metadata of a POJO class used by {@link CEIUtils} : getters, setters, identifier field and constructor. <br>
+ * The metadata is computed once per class, so the conversions don't have to look for the accessors of each field of each converted entity.
+ *
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+final class PojoMetadata {
+
+	private static final ClassValue<PojoMetadata> REGISTRY = new ClassValue<>() {
+
+		@Override
+		protected PojoMetadata computeValue(Class<?> type) {
+			return new PojoMetadata(type);
+		}
+	};
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Constructor<?> constructor;
+
+	private final Field idField;
+
+	/** Getters of the fields of the class */
+	private final List<Getter> getters = new ArrayList<>();
+
+	/** Setters, by upper case method name */
+	private final Map<String, Setter> setters = new HashMap<>();
+
+	/**
+	 * @param type the class of the POJO
+	 * @return the metadata of the class
+	 */
+	static PojoMetadata of(Class<?> type) {
+		return REGISTRY.get(type);
+	}
+
+	private PojoMetadata(Class<?> type) {
+		Constructor<?> defaultConstructor;
+		try {
+			defaultConstructor = type.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			defaultConstructor = null;
+		}
+		this.constructor = defaultConstructor;
+
+		List<Field> fields = ReflectionUtils.getAllFields(new ArrayList<>(), type);
+
+		this.idField = fields.stream()
+				.filter(f -> f.getAnnotation(Id.class) != null)
+				.findFirst()
+				.orElse(null);
+		if (idField != null) {
+			idField.setAccessible(true);
+		}
+
+		Map<String, String> fieldNames = new HashMap<>();
+		fields.forEach(f -> fieldNames.putIfAbsent(f.getName().toUpperCase(), f.getName()));
+
+		for (Method method : type.getMethods()) {
+			String methodName = method.getName();
+
+			if ((methodName.startsWith("get") || methodName.startsWith("is")) && method.getParameterCount() == 0) {
+				String fieldName = fieldNames.get(methodName.substring(methodName.startsWith("is") ? 2 : 3).toUpperCase());
+				MethodHandle handle = fieldName != null ? unreflect(method, GETTER_TYPE) : null;
+				if (handle != null) {
+					getters.add(new Getter(fieldName, handle));
+				}
+
+			} else if (methodName.toUpperCase().startsWith("SET") && method.getParameterCount() == 1 && !setters.containsKey(methodName.toUpperCase())) {
+				MethodHandle handle = unreflect(method, SETTER_TYPE);
+				if (handle != null) {
+					setters.put(methodName.toUpperCase(), new Setter(method, handle));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a new instance of the class, built with its no-arg constructor
+	 */
+	Object newInstance() throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		if (constructor == null) {
+			throw new NoSuchMethodException("No default constructor");
+		}
+		return constructor.newInstance();
+	}
+
+	/**
+	 * @param pojo the instance to read
+	 * @return the values of the fields having a getter, by field name
+	 */
+	Map<String, Object> getValues(Object pojo) {
+		Map<String, Object> values = new HashMap<>();
+		for (Getter getter : getters) {
+			values.put(getter.fieldName, getter.get(pojo));
+		}
+		return values;
+	}
+
+	/**
+	 * @param fieldName name of the field
+	 * @return the setter of the field
+	 * @throws IllegalArgumentException if there is no setter for the field
+	 */
+	Setter getSetter(String fieldName) {
+		Setter setter = setters.get("SET" + fieldName.toUpperCase());
+		if (setter == null) {
+			throw new IllegalArgumentException("No setter found for field " + fieldName);
+		}
+		return setter;
+	}
+
+	/**
+	 * @return the field annotated with {@link Id}, if any
+	 */
+	Field getIdField() {
+		return idField;
+	}
+
+	private static MethodHandle unreflect(Method method, MethodType type) {
+		try {
+			method.trySetAccessible();
+			return LOOKUP.unreflect(method).asType(type);
+		} catch (IllegalAccessException | RuntimeException e) {
+			// Method can't be called from outside its class
+			return null;
+		}
+	}
+
+	private static final class Getter {
+
+		private final String fieldName;
+
+		private final MethodHandle handle;
+
+		private Getter(String fieldName, MethodHandle handle) {
+			this.fieldName = fieldName;
+			this.handle = handle;
+		}
+
+		private Object get(Object pojo) {
+			try {
+				return (Object) handle.invokeExact(pojo);
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	static final class Setter {
+
+		private final Class<?> type;
+
+		/** Type of the parameter, wrapped if primitive */
+		private final Class<?> wrappedType;
+
+		/** Type used to convert the values with Jackson */
+		private final JavaType javaType;
+
+		private final MethodHandle handle;
+
+		private Setter(Method method, MethodHandle handle) {
+			this.type = method.getParameterTypes()[0];
+			this.wrappedType = MethodType.methodType(type).wrap().returnType();
+			this.javaType = TypeFactory.defaultInstance().constructType(method.getGenericParameterTypes()[0]);
+			this.handle = handle;
+		}
+
+		Class<?> getType() {
+			return type;
+		}
+
+		JavaType getJavaType() {
+			return javaType;
+		}
+
+		boolean isCustomEntity() {
+			return CustomEntity.class.isAssignableFrom(type);
+		}
+
+		/**
+		 * Invoke the setter, with the same error reporting as {@link Method#invoke(Object, Object...)}
+		 *
+		 * @param instance the instance to modify
+		 * @param value the value to set
+		 * @throws IllegalArgumentException if the value is not assignable to the parameter of the setter
+		 * @throws InvocationTargetException if the setter throws an exception
+		 */
+		void set(Object instance, Object value) throws InvocationTargetException {
+			if (value == null ? type.isPrimitive() : !wrappedType.isInstance(value)) {
+				throw new IllegalArgumentException("argument type mismatch");
+			}
+
+			try {
+				handle.invokeExact(instance, value);
+			} catch (Throwable e) {
+				throw new InvocationTargetException(e);
+			}
+		}
+	}
+}
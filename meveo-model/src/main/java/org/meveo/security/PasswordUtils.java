@@ -1,16 +1,22 @@
 package org.meveo.security;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -18,21 +24,54 @@ import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.lang.StringUtils;
 
 /**
+ * Encryption of the passwords and secret values. <br>
+ * Values are encrypted with AES-GCM, using a random IV for each value and the salt as additional authenticated data. The encrypted values are
+ * prefixed by their format version, so the values encrypted with AES-CBC by the previous versions can still be decrypted. <br>
+ * Derived keys are cached, as the key derivation is intentionally slow.
+ *
  * @author clement.bareth
  * @since 6.12.0
- * @version 6.12.0
+ * @version 6.14.0
  */
 public class PasswordUtils {
 
 	private static String factoryInstance = "PBKDF2WithHmacSHA256";
 	private static String cipherInstance = "AES/CBC/PKCS5PADDING";
+	private static String gcmCipherInstance = "AES/GCM/NoPadding";
 	private static String secretKeyType = "AES";
-	private static byte[] ivCode = new byte[16];
 	private static String SECRET_PREFIX = new String("🔒");
-	
+	private static String NO_SECRET = "NoSecret";
+
+	/** Prefix of the values encrypted with AES-GCM. It can't be part of a Base64 string, unlike the values encrypted with AES-CBC. */
+	private static final String VERSION_PREFIX = "v2:";
+
+	/** Salt used to derive the AES-GCM key, the salt of each value being authenticated instead */
+	private static final String GCM_KEY_SALT = "meveo.security.gcm";
+
+	private static final int GCM_IV_LENGTH = 12;
+	private static final int GCM_TAG_LENGTH = 128;
+	private static final int CBC_IV_LENGTH = 16;
+
+	/** Maximum number of derived keys kept in cache */
+	private static final int maxCachedKeys = Integer.getInteger("meveo.security.keyCacheSize", 1000);
+
+	/** Derived keys, by secret and salt */
+	private static final Map<List<String>, SecretKey> keys = Collections.synchronizedMap(new LinkedHashMap<List<String>, SecretKey>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		// Salts are computed from the values, evict the least recently used keys so the cache doesn't grow indefinitely
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<String>, SecretKey> eldest) {
+			return size() > maxCachedKeys;
+		}
+	});
+
+	private static final SecureRandom secureRandom = new SecureRandom();
+
 	/**
 	 * Generate a salt from the given values
-	 * 
+	 *
 	 * @param values the values
 	 * @return the salt
 	 */
@@ -43,15 +82,15 @@ public class PasswordUtils {
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException(e);
 		}
-		
+
 		String stringValues = StringUtils.join(values);
 		byte[] encodedhash = digest.digest(stringValues.getBytes(StandardCharsets.UTF_8));
 		return new String(encodedhash, StandardCharsets.UTF_8);
 	}
 
 	/**
-	 * Encrypt the given value with AES 
-	 * 
+	 * Encrypt the given value with AES
+	 *
 	 * @param salt the salt to use during encryption
 	 * @param value the value to encrypt
 	 * @return the encrypted value
@@ -59,18 +98,15 @@ public class PasswordUtils {
 	 */
 	public static String encrypt(String salt, String value) {
 		try {
-			Cipher cipher = initCipher(salt, Cipher.ENCRYPT_MODE);
-			byte[] encrypted = cipher.doFinal(value.getBytes());
-			byte[] cipherWithIv = addIVToCipher(encrypted);
-			return Base64.getEncoder().encodeToString(cipherWithIv);
+			return encryptGcm(getSecret(), salt, value);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Encrypt the given value with AES 
-	 * 
+	 * Encrypt the given value with AES
+	 *
 	 * @param salt the salt used for the encryption
 	 * @param encrypted the encrypted value to decrypt
 	 * @return the decrypted value
@@ -78,18 +114,18 @@ public class PasswordUtils {
 	 */
 	public static String decrypt(String salt, String encrypted) {
 		try {
-			Cipher cipher = initCipher(salt, Cipher.DECRYPT_MODE);
-			byte[] original = cipher.doFinal(Base64.getDecoder().decode(encrypted));
-			byte[] originalWithoutIv = Arrays.copyOfRange(original, 16, original.length);
-			return new String(originalWithoutIv);
+			if (encrypted.startsWith(VERSION_PREFIX)) {
+				return decryptGcm(getSecret(), salt, encrypted);
+			}
+			return decryptCbc(getSecret(), salt, encrypted);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
-	
+
 	/**
-	 * Encrypt the given value with AES 
-	 * 
+	 * Encrypt the given value with AES
+	 *
 	 * @param salt the salt to use during encryption
 	 * @param value the value to encrypt
 	 * @return the encrypted value
@@ -97,18 +133,15 @@ public class PasswordUtils {
 	 */
 	public static String encryptNoSecret(String salt, String value) {
 		try {
-			Cipher cipher = initCipherNoSecret(salt, Cipher.ENCRYPT_MODE);
-			byte[] encrypted = cipher.doFinal(value.getBytes());
-			byte[] cipherWithIv = addIVToCipher(encrypted);
-			return SECRET_PREFIX + Base64.getEncoder().encodeToString(cipherWithIv); // We use "␎" to retrieve whether a string is encoded
+			return SECRET_PREFIX + encryptGcm(NO_SECRET, salt, value); // We use "␎" to retrieve whether a string is encoded
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Encrypt the given value with AES 
-	 * 
+	 * Encrypt the given value with AES
+	 *
 	 * @param salt the salt used for the encryption
 	 * @param encrypted the encrypted value to decrypt
 	 * @return the decrypted value
@@ -121,50 +154,68 @@ public class PasswordUtils {
 			// Consider the string is not encrypted
 			return encrypted;
 		}
-		
+
 		try {
-			Cipher cipher = initCipherNoSecret(salt, Cipher.DECRYPT_MODE);
-			byte[] decodedBytes = Base64.getDecoder().decode(encrypted);
-			byte[] original = cipher.doFinal(decodedBytes);
-			byte[] originalWithoutIv = Arrays.copyOfRange(original, 16, original.length);
-			return new String(originalWithoutIv);
+			if (encrypted.startsWith(VERSION_PREFIX)) {
+				return decryptGcm(NO_SECRET, salt, encrypted);
+			}
+			return decryptCbc(NO_SECRET, salt, encrypted);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
-	
-	private static Cipher initCipherNoSecret(String salt, int mode) throws Exception {
-		SecretKeyFactory factory = SecretKeyFactory.getInstance(factoryInstance);
-		KeySpec spec = new PBEKeySpec("NoSecret".toCharArray(), salt.getBytes(), 65536, 256);
-		SecretKey tmp = factory.generateSecret(spec);
-		SecretKeySpec skeySpec = new SecretKeySpec(tmp.getEncoded(), secretKeyType);
-		Cipher cipher = Cipher.getInstance(cipherInstance);
-		// Generating random IV
-		SecureRandom random = new SecureRandom();
-		random.nextBytes(ivCode);
-		cipher.init(mode, skeySpec, new IvParameterSpec(ivCode));
-		return cipher;
+
+	private static String getSecret() {
+		return System.getProperty("meveo.security.secret", "NoDefaultKey");
+	}
+
+	private static String encryptGcm(String secret, String salt, String value) throws GeneralSecurityException {
+		byte[] iv = new byte[GCM_IV_LENGTH];
+		secureRandom.nextBytes(iv);
+
+		Cipher cipher = Cipher.getInstance(gcmCipherInstance);
+		cipher.init(Cipher.ENCRYPT_MODE, getKey(secret, GCM_KEY_SALT), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+		cipher.updateAAD(salt.getBytes(StandardCharsets.UTF_8));
+		byte[] encrypted = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+
+		byte[] cipherWithIv = new byte[iv.length + encrypted.length];
+		System.arraycopy(iv, 0, cipherWithIv, 0, iv.length);
+		System.arraycopy(encrypted, 0, cipherWithIv, iv.length, encrypted.length);
+		return VERSION_PREFIX + Base64.getEncoder().encodeToString(cipherWithIv);
 	}
 
-	private static Cipher initCipher(String salt, int mode) throws Exception {
-		String secretKey = System.getProperty("meveo.security.secret", "NoDefaultKey");
+	private static String decryptGcm(String secret, String salt, String encrypted) throws GeneralSecurityException {
+		byte[] cipherWithIv = Base64.getDecoder().decode(encrypted.substring(VERSION_PREFIX.length()));
+
+		Cipher cipher = Cipher.getInstance(gcmCipherInstance);
+		cipher.init(Cipher.DECRYPT_MODE, getKey(secret, GCM_KEY_SALT), new GCMParameterSpec(GCM_TAG_LENGTH, cipherWithIv, 0, GCM_IV_LENGTH));
+		cipher.updateAAD(salt.getBytes(StandardCharsets.UTF_8));
+		byte[] original = cipher.doFinal(cipherWithIv, GCM_IV_LENGTH, cipherWithIv.length - GCM_IV_LENGTH);
+		return new String(original, StandardCharsets.UTF_8);
+	}
 
-		SecretKeyFactory factory = SecretKeyFactory.getInstance(factoryInstance);
-		KeySpec spec = new PBEKeySpec(secretKey.toCharArray(), salt.getBytes(), 65536, 256);
-		SecretKey tmp = factory.generateSecret(spec);
-		SecretKeySpec skeySpec = new SecretKeySpec(tmp.getEncoded(), secretKeyType);
+	/**
+	 * Decrypt a value encrypted with AES-CBC. The IV is stored as the first block of the value, so decrypting the whole value with any IV
+	 * gives the original value preceded by a block to drop.
+	 */
+	private static String decryptCbc(String secret, String salt, String encrypted) throws GeneralSecurityException {
 		Cipher cipher = Cipher.getInstance(cipherInstance);
-		// Generating random IV
-		SecureRandom random = new SecureRandom();
-		random.nextBytes(ivCode);
-		cipher.init(mode, skeySpec, new IvParameterSpec(ivCode));
-		return cipher;
+		cipher.init(Cipher.DECRYPT_MODE, getKey(secret, salt), new IvParameterSpec(new byte[CBC_IV_LENGTH]));
+		byte[] original = cipher.doFinal(Base64.getDecoder().decode(encrypted));
+		byte[] originalWithoutIv = Arrays.copyOfRange(original, CBC_IV_LENGTH, original.length);
+		return new String(originalWithoutIv);
 	}
 
-	private static byte[] addIVToCipher(byte[] encrypted) {
-		byte[] cipherWithIv = new byte[ivCode.length + encrypted.length];
-		System.arraycopy(ivCode, 0, cipherWithIv, 0, ivCode.length);
-		System.arraycopy(encrypted, 0, cipherWithIv, ivCode.length, encrypted.length);
-		return cipherWithIv;
+	private static SecretKey getKey(String secret, String salt) throws GeneralSecurityException {
+		List<String> cacheKey = List.of(secret, salt);
+		SecretKey key = keys.get(cacheKey);
+		if (key == null) {
+			SecretKeyFactory factory = SecretKeyFactory.getInstance(factoryInstance);
+			KeySpec spec = new PBEKeySpec(secret.toCharArray(), salt.getBytes(), 65536, 256);
+			SecretKey tmp = factory.generateSecret(spec);
+			key = new SecretKeySpec(tmp.getEncoded(), secretKeyType);
+			keys.put(cacheKey, key);
+		}
+		return key;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package org.meveo.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author clement.bareth
+ * @since 6.14.0
+ */
+public class PasswordUtilsTest {
+
+	private static final String SALT = PasswordUtils.getSalt("code", "url");
+
+	@BeforeClass
+	public static void setSecret() {
+		System.setProperty("meveo.security.secret", "mySecret");
+	}
+
+	@Test
+	public void testEncryptDecrypt() {
+		String encrypted = PasswordUtils.encrypt(SALT, "my password");
+
+		assertTrue(encrypted.startsWith("v2:"));
+		assertNotEquals(encrypted, PasswordUtils.encrypt(SALT, "my password"));
+		assertEquals("my password", PasswordUtils.decrypt(SALT, encrypted));
+	}
+
+	@Test
+	public void testEncryptDecryptNoSecret() {
+		String encrypted = PasswordUtils.encryptNoSecret(SALT, "secret value");
+
+		assertEquals("secret value", PasswordUtils.decryptNoSecret(SALT, encrypted));
+		assertEquals("not encrypted", PasswordUtils.decryptNoSecret(SALT, "not encrypted"));
+	}
+
+	@Test
+	public void testDecryptLegacyValues() {
+		assertEquals("my password, longer than one block",
+				PasswordUtils.decrypt(SALT, "Y6587my+HZ0SrzARbtqr2wZ40+NpYmioN9rfLzxeSYb2X4VqPf/nnV8/I6fvTnKnTOoLexbb99uLv9/eKP3R3g=="));
+		assertEquals("secret value", PasswordUtils.decryptNoSecret(SALT, "🔒WelNfvBw6STdKTKM/Jc1UfEZuUikY6Bv158D7Irp8Wc="));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testDecryptWithOtherSalt() {
+		String encrypted = PasswordUtils.encrypt(SALT, "my password");
+		PasswordUtils.decrypt(PasswordUtils.getSalt("other"), encrypted);
+	}
+
+}